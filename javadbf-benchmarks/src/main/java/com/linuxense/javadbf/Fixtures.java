@@ -0,0 +1,234 @@
+/*
+  Fixtures
+	Generates the DBF and FPT files the benchmarks run against.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.LocalDate;
+
+/**
+	Builds benchmark fixtures. Every fixture is generated from a fixed seed so
+	runs with the same parameters read and write the same bytes.
+*/
+final class Fixtures {
+
+	static final long SEED = 0x5EEDL;
+
+	static final int MEMO_BLOCK_SIZE = 64;
+
+	private static final LocalDate EPOCH = new LocalDate(2000, 1, 1);
+
+	/**
+		Table layouts modelled on the tables the library is used with.
+	*/
+	enum Schema {
+
+		/* ids, amounts and quantities */
+		NARROW_NUMERIC {
+			List<DBFField> fields() {
+				List<DBFField> fields = new ArrayList<DBFField>();
+				fields.add(field("ID", 'N', 10, 0));
+				fields.add(field("AMOUNT", 'N', 12, 2));
+				fields.add(field("QTY", 'N', 5, 0));
+				fields.add(field("RATE", 'F', 10, 4));
+				return fields;
+			}
+
+			Object[] row(Random random, int index) {
+				return new Object[] {
+					new BigDecimal(index),
+					BigDecimal.valueOf(random.nextInt(10000000), 2),
+					new BigDecimal(random.nextInt(1000)),
+					Double.valueOf(random.nextInt(1000000) / 10000.0)
+				};
+			}
+		},
+
+		/* names, addresses and free text */
+		WIDE_CHARACTER {
+			List<DBFField> fields() {
+				List<DBFField> fields = new ArrayList<DBFField>();
+				fields.add(field("CODE", 'C', 10, 0));
+				fields.add(field("NAME", 'C', 60, 0));
+				fields.add(field("ADDRESS", 'C', 120, 0));
+				fields.add(field("NOTES", 'C', 254, 0));
+				return fields;
+			}
+
+			Object[] row(Random random, int index) {
+				return new Object[] {
+					"C" + index,
+					text(random, 5 + random.nextInt(40)),
+					text(random, 20 + random.nextInt(80)),
+					text(random, random.nextInt(254))
+				};
+			}
+		},
+
+		/* booking style rows, mostly dates */
+		DATE_HEAVY {
+			List<DBFField> fields() {
+				List<DBFField> fields = new ArrayList<DBFField>();
+				fields.add(field("ID", 'N', 10, 0));
+				fields.add(field("CREATED", 'D', 8, 0));
+				fields.add(field("UPDATED", 'D', 8, 0));
+				fields.add(field("DUE", 'D', 8, 0));
+				fields.add(field("PAID", 'D', 8, 0));
+				fields.add(field("ACTIVE", 'L', 1, 0));
+				return fields;
+			}
+
+			Object[] row(Random random, int index) {
+				LocalDate created = EPOCH.plusDays(random.nextInt(9000));
+				return new Object[] {
+					new BigDecimal(index),
+					created,
+					created.plusDays(random.nextInt(30)),
+					created.plusDays(30),
+					random.nextInt(4) == 0 ? null : created.plusDays(random.nextInt(60)),
+					Boolean.valueOf(random.nextBoolean())
+				};
+			}
+		};
+
+		abstract List<DBFField> fields();
+
+		abstract Object[] row(Random random, int index);
+	}
+
+	private Fixtures() {
+	}
+
+	/**
+		Returns the rows of the given schema, generated from the fixed seed.
+	*/
+	static List<Object[]> createRows(Schema schema, int records) {
+
+		Random random = new Random(SEED);
+		List<Object[]> rows = new ArrayList<Object[]>(records);
+
+		for (int i = 0; i < records; i++) {
+			rows.add(schema.row(random, i));
+		}
+
+		return rows;
+	}
+
+	/**
+		Writes a DBF file with the given number of records to a temporary
+		file which is removed when the JVM exits.
+	*/
+	static File createTable(Schema schema, int records) throws IOException {
+
+		File file = File.createTempFile("javadbf-" + schema.name().toLowerCase() + "-", ".dbf");
+		file.deleteOnExit();
+		file.delete();
+
+		Random random = new Random(SEED);
+		DBFWriter writer = new DBFWriter(file);
+		try {
+			writer.setFields(schema.fields());
+			for (int i = 0; i < records; i++) {
+				writer.addRecord(schema.row(random, i));
+			}
+			writer.write();
+		} finally {
+			writer.close();
+		}
+
+		return file;
+	}
+
+	/**
+		Writes a FPT memo file holding the given number of memos of random
+		length up to maxLength. The block address of every memo is stored in
+		addresses, which must be at least memos long.
+	*/
+	static File createMemoFile(int memos, int maxLength, int[] addresses) throws IOException {
+
+		File file = File.createTempFile("javadbf-memo-", ".fpt");
+		file.deleteOnExit();
+
+		Random random = new Random(SEED);
+		Charset charset = LanguageDriver.DEFAULT_CHARSET;
+
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		try {
+			channel.truncate(0);
+
+			int nextBlock = 512 / MEMO_BLOCK_SIZE;
+			channel.position(nextBlock * MEMO_BLOCK_SIZE);
+
+			for (int i = 0; i < memos; i++) {
+				byte[] data = text(random, 1 + random.nextInt(maxLength)).getBytes(charset);
+				int blocks = (8 + data.length + MEMO_BLOCK_SIZE - 1) / MEMO_BLOCK_SIZE;
+
+				ByteBuffer buff = ByteBuffer.allocate(blocks * MEMO_BLOCK_SIZE);
+				buff.order(ByteOrder.BIG_ENDIAN);
+				buff.putInt(1); /* memo record type */
+				buff.putInt(data.length);
+				buff.put(data);
+				buff.clear();
+				while (buff.hasRemaining()) {
+					channel.write(buff);
+				}
+
+				addresses[i] = nextBlock;
+				nextBlock += blocks;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(512);
+			header.order(ByteOrder.BIG_ENDIAN);
+			header.putInt(nextBlock); /* 0-3 */
+			header.putShort((short) 0); /* 4-5 */
+			header.putShort((short) MEMO_BLOCK_SIZE); /* 6-7 */
+			header.clear();
+			channel.position(0);
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+		} finally {
+			channel.close();
+		}
+
+		return file;
+	}
+
+	static DBFField field(String name, char type, int length, int decimals) {
+
+		DBFField field = new DBFField();
+		field.setName(name);
+		field.setDataType((byte) type);
+		if (type != 'D') {
+			field.setFieldLength(length);
+			field.setDecimalCount(decimals);
+		}
+		return field;
+	}
+
+	private static String text(Random random, int length) {
+
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			int c = random.nextInt(27);
+			chars[i] = c == 26 ? ' ' : (char) ('A' + c);
+		}
+		return new String(chars);
+	}
+}
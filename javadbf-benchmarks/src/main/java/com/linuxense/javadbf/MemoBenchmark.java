@@ -0,0 +1,78 @@
+/*
+  MemoBenchmark
+	Random memo fetches through FPTMemoFile.getMemo().
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+	One operation fetches one memo. Memos are fetched in a shuffled order so
+	the benchmark does not degrade into a sequential read.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoBenchmark {
+
+	@Param({"10000"})
+	public int memos;
+
+	@Param({"64", "1024", "16384"})
+	public int maxLength;
+
+	private int[] addresses;
+	private FPTMemoFile memoFile;
+	private int next;
+
+	@Setup
+	public void createMemoFile() throws IOException {
+		addresses = new int[memos];
+		File file = Fixtures.createMemoFile(memos, maxLength, addresses);
+
+		Random random = new Random(Fixtures.SEED);
+		for (int i = addresses.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = addresses[i];
+			addresses[i] = addresses[j];
+			addresses[j] = t;
+		}
+
+		memoFile = new FPTMemoFile(file, "r", LanguageDriver.DEFAULT_CHARSET);
+	}
+
+	@TearDown
+	public void closeMemoFile() throws IOException {
+		memoFile.close();
+	}
+
+	@Benchmark
+	public String getMemo() throws IOException {
+		int address = addresses[next];
+		next = (next + 1) % addresses.length;
+		return memoFile.getMemo(address);
+	}
+}
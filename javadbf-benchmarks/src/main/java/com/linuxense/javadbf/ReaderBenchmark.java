@@ -0,0 +1,69 @@
+/*
+  ReaderBenchmark
+	Full table scans through DBFReader.nextRecord().
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+	One operation is a scan of the whole table, so the time and the
+	allocation figures of -prof gc are per table: divide by records for
+	the per record cost.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+
+	@Param({"NARROW_NUMERIC", "WIDE_CHARACTER", "DATE_HEAVY"})
+	public Fixtures.Schema schema;
+
+	@Param({"100000"})
+	public int records;
+
+	private File table;
+
+	@Setup
+	public void createTable() throws IOException {
+		table = Fixtures.createTable(schema, records);
+	}
+
+	@Benchmark
+	public int nextRecord(Blackhole blackhole) throws IOException {
+		DBFReader reader = new DBFReader(table);
+		try {
+			int count = 0;
+			Object[] record;
+			while ((record = reader.nextRecord()) != null) {
+				blackhole.consume(record);
+				count++;
+			}
+			return count;
+		} finally {
+			reader.close();
+		}
+	}
+}
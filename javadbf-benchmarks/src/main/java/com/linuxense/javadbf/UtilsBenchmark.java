@@ -0,0 +1,70 @@
+/*
+  UtilsBenchmark
+	The formatting helpers used for every field the writer encodes.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+
+	private final Charset charset = LanguageDriver.DEFAULT_CHARSET;
+
+	private final String text = "Phorest Salon Software";
+	private final BigDecimal decimal = new BigDecimal("12345.678");
+	private final Double number = Double.valueOf(12345.678);
+	private final byte[] padded = "      123.45".getBytes();
+
+	@Benchmark
+	public byte[] textPadding() {
+		return Utils.textPadding(text, charset, 60);
+	}
+
+	@Benchmark
+	public byte[] textPaddingRight() {
+		return Utils.textPadding(text, charset, 60, Utils.ALIGN_RIGHT);
+	}
+
+	@Benchmark
+	public byte[] decimalFormating() {
+		return Utils.decimalFormating(decimal, charset, 12, 2);
+	}
+
+	@Benchmark
+	public byte[] doubleFormating() throws UnsupportedEncodingException {
+		return Utils.doubleFormating(number, charset, 12, 2);
+	}
+
+	@Benchmark
+	public byte[] trimLeftSpaces() {
+		return Utils.trimLeftSpaces(padded);
+	}
+
+	@Benchmark
+	public byte[] trimNulls() {
+		return Utils.trimNulls(padded);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+  WriterBenchmark
+	Writes a table through DBFWriter in buffered and append mode.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+	One operation writes the whole table. The rows are generated once in
+	setup so only the encoding and I/O are measured.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterBenchmark {
+
+	/* discards everything written to it */
+	private static final OutputStream NULL_OUTPUT = new OutputStream() {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Param({"NARROW_NUMERIC", "WIDE_CHARACTER", "DATE_HEAVY"})
+	public Fixtures.Schema schema;
+
+	@Param({"100000"})
+	public int records;
+
+	private List<DBFField> fields;
+	private List<Object[]> rows;
+	private File table;
+
+	@Setup
+	public void createRows() throws IOException {
+		fields = schema.fields();
+		rows = Fixtures.createRows(schema, records);
+		table = File.createTempFile("javadbf-append-", ".dbf");
+		table.deleteOnExit();
+	}
+
+	@TearDown
+	public void deleteTable() {
+		table.delete();
+	}
+
+	@Benchmark
+	public void buffered() throws IOException {
+		DBFWriter writer = new DBFWriter();
+		writer.setFields(fields);
+		for (Object[] row : rows) {
+			writer.addRecord(row);
+		}
+		writer.write(NULL_OUTPUT);
+	}
+
+	@Benchmark
+	public long append() throws IOException {
+		table.delete();
+
+		DBFWriter writer = new DBFWriter(table);
+		try {
+			writer.setFields(fields);
+			for (Object[] row : rows) {
+				writer.addRecord(row);
+			}
+			writer.write();
+		} finally {
+			writer.close();
+		}
+
+		return table.length();
+	}
+}
@@ -0,0 +1,834 @@
+/*
+  DBFAggregate
+	Class for computing sums, counts, minimums and maximums over a table.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.LocalDate;
+
+/**
+	Aggregates the records of a table, optionally grouped by some fields:
+
+	<pre>
+	List&lt;DBFAggregate.Row&gt; rows = DBFAggregate.on(reader)
+		.groupBy("STAFF").sum("AMOUNT").count().min("DATE")
+		.execute();
+	</pre>
+
+	Numbers are parsed from the record bytes into long accumulators, scaled
+	by the decimal count of their field, so sums are exact and no BigDecimal
+	is created per record. NUMBER, FLOAT and INTEGER fields can be summed,
+	averaged and compared; DATE fields compared. Blank values are left out,
+	as in SQL. Deleted records are skipped.
+
+	The records are aggregated from the current record of the reader to the
+	end of the table, and the reader is left at the end. A table read from
+	a file is split into ranges of records which are scanned by
+	getParallelism() threads at once with positional reads. Each thread
+	aggregates into its own groups, and the groups are merged at the end.
+	Other readers, a DBFTailReader among them, are scanned on the calling
+	thread. Either way only the records matching the filter of the reader
+	are aggregated, see DBFReader.setFilter().
+
+	Records are grouped by the bytes of the group fields, and groups whose
+	values turn out equal once decoded are merged. Rows come sorted by their
+	keys, blank keys first.
+*/
+public class DBFAggregate {
+
+	/* records a scanning thread takes at a time */
+	static final int RECORDS_PER_RANGE = 16384;
+
+	/* value of a blank field */
+	static final long NULL = Long.MIN_VALUE;
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private enum Function {
+		COUNT, SUM, MIN, MAX, AVG
+	}
+
+	private final DBFReader reader;
+	private final List<DBFField> fields;
+	private final int[] offsets;
+
+	private final List<Integer> groupFields = new ArrayList<Integer>();
+	private final List<Function> functions = new ArrayList<Function>();
+	private final List<Integer> functionFields = new ArrayList<Integer>();
+	private final List<String> columns = new ArrayList<String>();
+
+	private ExecutorService executor;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private DBFAggregate(DBFReader reader) {
+		this.reader = reader;
+		this.fields = reader.header.getFieldList();
+		this.offsets = new int[fields.size()];
+
+		int offset = 1;
+		for (int i = 0; i < fields.size(); i++) {
+			offsets[i] = offset;
+			offset += fields.get(i).getFieldLength();
+		}
+	}
+
+	/**
+		Starts an aggregation over the records of the reader.
+	*/
+	public static DBFAggregate on(DBFReader reader) throws DBFException {
+		reader.checkIfClosed();
+		return new DBFAggregate(reader);
+	}
+
+	/**
+		Groups the records by the values of the fields. Memo fields cannot be
+		grouped by.
+	*/
+	public DBFAggregate groupBy(String... names) {
+		for (String name : names) {
+			int field = field(name);
+			if (fields.get(field).getDataType() == DBFField.DataType.MEMO) {
+				throw new IllegalArgumentException("Cannot group by memo field " + name);
+			}
+			groupFields.add(Integer.valueOf(field));
+			columns.add(fields.get(field).getName());
+		}
+		return this;
+	}
+
+	/**
+		Counts the records, as a Long.
+	*/
+	public DBFAggregate count() {
+		functions.add(Function.COUNT);
+		functionFields.add(Integer.valueOf(-1));
+		columns.add("COUNT(*)");
+		return this;
+	}
+
+	/**
+		Sums a NUMBER, FLOAT or INTEGER field, as a BigDecimal with the decimal
+		count of the field or as a Long.
+	*/
+	public DBFAggregate sum(String name) {
+		return add(Function.SUM, name, false);
+	}
+
+	/**
+		Averages a NUMBER, FLOAT or INTEGER field, as a Double.
+	*/
+	public DBFAggregate avg(String name) {
+		return add(Function.AVG, name, false);
+	}
+
+	/**
+		Finds the smallest value of a NUMBER, FLOAT, INTEGER or DATE field, as
+		a BigDecimal, Long or LocalDate.
+	*/
+	public DBFAggregate min(String name) {
+		return add(Function.MIN, name, true);
+	}
+
+	/**
+		Finds the largest value of a NUMBER, FLOAT, INTEGER or DATE field. See min().
+	*/
+	public DBFAggregate max(String name) {
+		return add(Function.MAX, name, true);
+	}
+
+	private DBFAggregate add(Function function, String name, boolean dates) {
+		int field = field(name);
+		DBFField.DataType type = fields.get(field).getDataType();
+
+		if (type != DBFField.DataType.NUMBER && type != DBFField.DataType.FLOAT && type != DBFField.DataType.INTEGER
+				&& !(dates && type == DBFField.DataType.DATE)) {
+			throw new IllegalArgumentException("Cannot " + function.name().toLowerCase() + " field " + name + " of type " + type);
+		}
+
+		functions.add(function);
+		functionFields.add(Integer.valueOf(field));
+		columns.add(function.name() + "(" + fields.get(field).getName() + ")");
+		return this;
+	}
+
+	private int field(String name) {
+		for (int i = 0; i < fields.size(); i++) {
+			if (fields.get(i).getName().equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("No field " + name);
+	}
+
+	/**
+		Returns the names of the group fields followed by those of the
+		aggregates, like SUM(AMOUNT).
+	*/
+	public List<String> getColumns() {
+		return Collections.unmodifiableList(columns);
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+		Sets the executor ranges are scanned on. It is not shut down. Pass null
+		to use a thread pool of getParallelism() threads for each execute().
+	*/
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+		Sets the number of threads scanning at once, the number of processors
+		by default.
+	*/
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism should be a positive number");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+		Scans the table and returns a row per group, or a single row without
+		group fields.
+	*/
+	public List<Row> execute() throws DBFException {
+		reader.checkIfClosed();
+
+		Map<Key, Group> groups;
+		if (reader.scansInRanges() && parallelism > 1) {
+			groups = scanParallel();
+			reader.skipToEnd();
+		} else {
+			groups = new HashMap<Key, Group>();
+			ByteBuffer buff;
+			while ((buff = reader.nextRecordBuffer()) != null) {
+				/* offsets count the deleted flag, which is just before the position */
+				aggregate(groups, buff, buff.position() - 1);
+			}
+		}
+
+		return rows(groups);
+	}
+
+	private Map<Key, Group> scanParallel() throws DBFException {
+		final int records = reader.header.getNumberOfRecords();
+		final AtomicInteger nextRange = new AtomicInteger(reader.recordIndex);
+		int threads = Math.max(1, Math.min(parallelism, (records - reader.recordIndex + RECORDS_PER_RANGE - 1) / RECORDS_PER_RANGE));
+
+		ExecutorService t_executor = executor != null ? executor : Executors.newFixedThreadPool(threads);
+		List<Future<Map<Key, Group>>> futures = new ArrayList<Future<Map<Key, Group>>>();
+
+		try {
+			for (int i = 0; i < threads; i++) {
+				futures.add(t_executor.submit(new Callable<Map<Key, Group>>() {
+
+					public Map<Key, Group> call() throws IOException {
+						return scanRanges(records, nextRange);
+					}
+				}));
+			}
+
+			Map<Key, Group> groups = null;
+			for (Future<Map<Key, Group>> future : futures) {
+				Map<Key, Group> partial = future.get();
+
+				if (groups == null) {
+					groups = partial;
+				} else {
+					merge(groups, partial);
+				}
+			}
+
+			return groups;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBFException("Interrupted while aggregating", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof DBFException) {
+				throw (DBFException) e.getCause();
+			}
+			throw new DBFException("Failed to aggregate: " + e.getCause(), e.getCause());
+		} finally {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			if (executor == null) {
+				t_executor.shutdown();
+			}
+		}
+	}
+
+	/* aggregates the ranges of records this thread takes into its own groups */
+	private Map<Key, Group> scanRanges(int records, AtomicInteger nextRange) throws IOException {
+		Map<Key, Group> groups = new HashMap<Key, Group>();
+		int recordLength = reader.header.getRecordLength();
+		ByteBuffer buff = ByteBuffer.allocate(RECORDS_PER_RANGE * recordLength);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		int first;
+		while ((first = nextRange.getAndAdd(RECORDS_PER_RANGE)) < records && first >= 0) {
+			int count = Math.min(RECORDS_PER_RANGE, records - first);
+			if (!mayMatch(first, count)) {
+				continue;
+			}
+
+			long position = reader.header.getHeaderLength() + (long) first * recordLength;
+
+			buff.clear();
+			buff.limit(count * recordLength);
+			while (buff.hasRemaining()) {
+				int read = reader.dataChannel.read(buff, position + buff.position());
+				if (read < 0) {
+					break;
+				}
+				if (reader.statistics != null) {
+					reader.statistics.channelRead(read);
+				}
+			}
+
+			int end = buff.position() - buff.position() % recordLength;
+			for (int p = 0; p < end; p += recordLength) {
+				byte flag = buff.get(p);
+
+				if (flag == DBFBase.END_OF_DATA) {
+					break;
+				}
+				if (flag != '*') {
+					if (reader.filter == null || reader.filter.matches(buff, p)) {
+						aggregate(groups, buff, p);
+					}
+				} else if (reader.statistics != null) {
+					reader.statistics.recordSkippedDeleted();
+				}
+			}
+		}
+
+		return groups;
+	}
+
+	/* tells whether the zone map of the reader, if any, leaves some records of the range to look at */
+	private boolean mayMatch(int first, int count) {
+		DBFFilter filter = reader.filter;
+		DBFZoneMap zoneMap = reader.zoneMap;
+
+		if (filter == null || zoneMap == null || !zoneMap.covers(filter.field, reader.header.getRecordLength())) {
+			return true;
+		}
+
+		for (int block = first / zoneMap.getBlockRecords(); block <= (first + count - 1) / zoneMap.getBlockRecords(); block++) {
+			if (zoneMap.mayMatch(filter, block)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* adds the record starting at the deleted flag at p to its group */
+	private void aggregate(Map<Key, Group> groups, ByteBuffer buff, int p) throws DBFException {
+		Key key;
+
+		if (groupFields.isEmpty()) {
+			key = Key.EMPTY;
+		} else {
+			int length = 0;
+			for (int i = 0; i < groupFields.size(); i++) {
+				length += fields.get(groupFields.get(i).intValue()).getFieldLength();
+			}
+
+			byte[] bytes = new byte[length];
+			int t_offset = 0;
+			for (int i = 0; i < groupFields.size(); i++) {
+				int field = groupFields.get(i).intValue();
+				int t_length = fields.get(field).getFieldLength();
+				for (int j = 0; j < t_length; j++) {
+					bytes[t_offset++] = buff.get(p + offsets[field] + j);
+				}
+			}
+			key = new Key(bytes);
+		}
+
+		Group group = groups.get(key);
+		if (group == null) {
+			group = new Group(functions.size());
+			groups.put(key, group);
+		}
+
+		group.count++;
+
+		for (int k = 0; k < functions.size(); k++) {
+			Function function = functions.get(k);
+			if (function == Function.COUNT) {
+				continue;
+			}
+
+			int field = functionFields.get(k).intValue();
+			long value = value(fields.get(field), buff, p + offsets[field]);
+			if (value != NULL) {
+				group.add(k, function, value);
+			}
+		}
+	}
+
+	/* merges the groups of another thread into the groups */
+	private void merge(Map<Key, Group> groups, Map<Key, Group> partial) {
+		for (Map.Entry<Key, Group> entry : partial.entrySet()) {
+			Group group = groups.get(entry.getKey());
+
+			if (group == null) {
+				groups.put(entry.getKey(), entry.getValue());
+			} else {
+				group.merge(entry.getValue(), functions);
+			}
+		}
+	}
+
+	private List<Row> rows(Map<Key, Group> groups) throws DBFException {
+		Map<List<Object>, Group> decoded = new LinkedHashMap<List<Object>, Group>();
+
+		for (Map.Entry<Key, Group> entry : groups.entrySet()) {
+			List<Object> keys = decodeKeys(entry.getKey().bytes);
+			Group group = decoded.get(keys);
+
+			if (group == null) {
+				decoded.put(keys, entry.getValue());
+			} else {
+				group.merge(entry.getValue(), functions);
+			}
+		}
+
+		/* without group fields there is always one row, even for an empty table */
+		if (groupFields.isEmpty() && decoded.isEmpty()) {
+			decoded.put(Collections.emptyList(), new Group(functions.size()));
+		}
+
+		List<Row> rows = new ArrayList<Row>(decoded.size());
+		for (Map.Entry<List<Object>, Group> entry : decoded.entrySet()) {
+			Group group = entry.getValue();
+			Object[] values = new Object[functions.size()];
+
+			for (int k = 0; k < values.length; k++) {
+				values[k] = result(k, group);
+			}
+
+			rows.add(new Row(columns, entry.getKey().toArray(), values));
+		}
+
+		Collections.sort(rows, new Comparator<Row>() {
+
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public int compare(Row a, Row b) {
+				for (int i = 0; i < a.keys.length; i++) {
+					Object x = a.keys[i];
+					Object y = b.keys[i];
+
+					int c = x == null ? (y == null ? 0 : -1) : y == null ? 1 : ((Comparable) x).compareTo(y);
+					if (c != 0) {
+						return c;
+					}
+				}
+				return 0;
+			}
+		});
+
+		return rows;
+	}
+
+	private List<Object> decodeKeys(byte[] bytes) throws DBFException {
+		List<Object> keys = new ArrayList<Object>(groupFields.size());
+		ByteBuffer buff = ByteBuffer.wrap(bytes);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+		int offset = 0;
+
+		for (int i = 0; i < groupFields.size(); i++) {
+			DBFField field = fields.get(groupFields.get(i).intValue());
+			int length = field.getFieldLength();
+
+			switch (field.getDataType()) {
+
+				case CHARACTER:
+					int end = offset + length;
+					while (end > offset && (bytes[end - 1] == ' ' || bytes[end - 1] == 0)) {
+						end--;
+					}
+					keys.add(new String(bytes, offset, end - offset, reader.characterSet));
+					break;
+
+				case NUMBER:
+				case FLOAT:
+					long value = value(field, buff, offset);
+					keys.add(value == NULL ? null : BigDecimal.valueOf(value, field.getDecimalCount()));
+					break;
+
+				case INTEGER:
+					keys.add(Integer.valueOf(buff.getInt(offset)));
+					break;
+
+				case DATE:
+					long date = value(field, buff, offset);
+					keys.add(date == NULL ? null : date(date));
+					break;
+
+				case LOGICAL:
+					byte b = bytes[offset];
+					keys.add(b == 'T' || b == 't' || b == 'Y' || b == 'y' ? Boolean.TRUE : b == 'F' || b == 'f' || b == 'N' || b == 'n' ? Boolean.FALSE
+							: null);
+					break;
+
+				default:
+					keys.add(null);
+			}
+
+			offset += length;
+		}
+
+		return keys;
+	}
+
+	private Object result(int k, Group group) {
+		Function function = functions.get(k);
+
+		if (function == Function.COUNT) {
+			return Long.valueOf(group.count);
+		}
+
+		if (group.values[k] == 0) {
+			return null;
+		}
+
+		DBFField field = fields.get(functionFields.get(k).intValue());
+		int scale = field.getDataType() == DBFField.DataType.INTEGER ? 0 : field.getDecimalCount();
+
+		switch (function) {
+
+			case SUM:
+				BigInteger sum = group.sum(k);
+				if (field.getDataType() == DBFField.DataType.INTEGER) {
+					return Long.valueOf(sum.longValue());
+				}
+				return new BigDecimal(sum, scale);
+
+			case AVG:
+				return Double.valueOf(new BigDecimal(group.sum(k), scale).divide(BigDecimal.valueOf(group.values[k]), 16, RoundingMode.HALF_EVEN)
+						.doubleValue());
+
+			default:
+				long value = group.accumulators[k];
+				if (field.getDataType() == DBFField.DataType.DATE) {
+					return date(value);
+				} else if (field.getDataType() == DBFField.DataType.INTEGER) {
+					return Long.valueOf(value);
+				}
+				return BigDecimal.valueOf(value, scale);
+		}
+	}
+
+	private static LocalDate date(long yyyymmdd) {
+		return new LocalDate((int) (yyyymmdd / 10000), (int) (yyyymmdd / 100 % 100), (int) (yyyymmdd % 100));
+	}
+
+	/*
+	 Reads a field as a long: numbers scaled by their decimal count, dates as
+	 yyyymmdd, logicals as 0 or 1. Returns NULL for blank or invalid values.
+	*/
+	static long value(DBFField field, ByteBuffer buff, int position) throws DBFException {
+		int length = field.getFieldLength();
+
+		switch (field.getDataType()) {
+
+			case INTEGER:
+				return buff.getInt(position);
+
+			case DATE:
+				long date = 0;
+				for (int i = position; i < position + 8; i++) {
+					byte b = buff.get(i);
+					if (b < '0' || b > '9') {
+						return NULL;
+					}
+					date = date * 10 + (b - '0');
+				}
+
+				int month = (int) (date / 100 % 100);
+				int day = (int) (date % 100);
+				return month >= 1 && month <= 12 && day >= 1 && day <= 31 ? date : NULL;
+
+			case LOGICAL:
+				byte b = buff.get(position);
+				return b == 'T' || b == 't' || b == 'Y' || b == 'y' ? 1 : b == 'F' || b == 'f' || b == 'N' || b == 'n' ? 0 : NULL;
+
+			default:
+				return scaled(buff, position, length, field.getDecimalCount());
+		}
+	}
+
+	/* parses a number into a long in units of 10^-scale */
+	private static long scaled(ByteBuffer buff, int position, int length, int scale) throws DBFException {
+		int end = position + length;
+		int i = position;
+
+		while (i < end && (buff.get(i) == ' ' || buff.get(i) == 0)) {
+			i++;
+		}
+		while (end > i && (buff.get(end - 1) == ' ' || buff.get(end - 1) == 0)) {
+			end--;
+		}
+		if (i == end) {
+			return NULL;
+		}
+
+		int start = i;
+		boolean negative = false;
+		if (buff.get(i) == '-' || buff.get(i) == '+') {
+			negative = buff.get(i) == '-';
+			i++;
+		}
+
+		long value = 0;
+		int digits = 0;
+		int decimals = -1;
+
+		for (; i < end; i++) {
+			byte b = buff.get(i);
+
+			if (b >= '0' && b <= '9') {
+				value = value * 10 + (b - '0');
+				if (value != 0) {
+					digits++;
+				}
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else if (b == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+
+		decimals = Math.max(0, decimals);
+
+		if (i == end && digits + scale - decimals <= 18 && decimals <= scale) {
+			value *= POWERS_OF_TEN[scale - decimals];
+			return negative ? -value : value;
+		}
+
+		/* exponents, more decimals than the field, missing values and anything else unusual */
+		StringBuilder sb = new StringBuilder(end - start);
+		for (int j = start; j < end; j++) {
+			byte b = buff.get(j);
+			if (b == '?' || b == '*') {
+				return NULL;
+			}
+			sb.append((char) b);
+		}
+
+		try {
+			return new BigDecimal(sb.toString()).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValue();
+		} catch (NumberFormatException e) {
+			throw new DBFException("Failed to parse Number: \"" + sb + "\"", e);
+		}
+	}
+
+	/* the bytes of the group fields of a record */
+	private static final class Key {
+		static final Key EMPTY = new Key(new byte[0]);
+
+		final byte[] bytes;
+		final int hash;
+
+		Key(byte[] bytes) {
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && Arrays.equals(bytes, ((Key) other).bytes);
+		}
+	}
+
+	/* accumulators of a group; sums move to a BigInteger when they would overflow */
+	private static final class Group {
+		long count;
+		final long[] accumulators;
+		final long[] values;
+		BigInteger[] overflow;
+
+		Group(int functions) {
+			accumulators = new long[functions];
+			values = new long[functions];
+		}
+
+		void add(int k, Function function, long value) {
+			switch (function) {
+
+				case MIN:
+					if (values[k] == 0 || value < accumulators[k]) {
+						accumulators[k] = value;
+					}
+					break;
+
+				case MAX:
+					if (values[k] == 0 || value > accumulators[k]) {
+						accumulators[k] = value;
+					}
+					break;
+
+				default:
+					addToSum(k, value);
+			}
+
+			values[k]++;
+		}
+
+		void merge(Group other, List<Function> functions) {
+			count += other.count;
+
+			for (int k = 0; k < accumulators.length; k++) {
+				if (other.values[k] == 0) {
+					continue;
+				}
+
+				switch (functions.get(k)) {
+
+					case MIN:
+						if (values[k] == 0 || other.accumulators[k] < accumulators[k]) {
+							accumulators[k] = other.accumulators[k];
+						}
+						break;
+
+					case MAX:
+						if (values[k] == 0 || other.accumulators[k] > accumulators[k]) {
+							accumulators[k] = other.accumulators[k];
+						}
+						break;
+
+					default:
+						addToSum(k, other.accumulators[k]);
+						if (other.overflow != null && other.overflow[k] != null) {
+							addOverflow(k, other.overflow[k]);
+						}
+				}
+
+				values[k] += other.values[k];
+			}
+		}
+
+		BigInteger sum(int k) {
+			BigInteger sum = BigInteger.valueOf(accumulators[k]);
+			return overflow != null && overflow[k] != null ? sum.add(overflow[k]) : sum;
+		}
+
+		private void addToSum(int k, long value) {
+			long sum = accumulators[k];
+			long result = sum + value;
+
+			if (((sum ^ result) & (value ^ result)) < 0) {
+				addOverflow(k, BigInteger.valueOf(sum));
+				result = value;
+			}
+
+			accumulators[k] = result;
+		}
+
+		private void addOverflow(int k, BigInteger value) {
+			if (overflow == null) {
+				overflow = new BigInteger[accumulators.length];
+			}
+			overflow[k] = overflow[k] == null ? value : overflow[k].add(value);
+		}
+	}
+
+	/**
+		A group: the values of its group fields and of the aggregates, in the
+		order they were added. Aggregates over blank values only are null.
+	*/
+	public static final class Row {
+		private final List<String> columns;
+		private final Object[] keys;
+		private final Object[] values;
+
+		Row(List<String> columns, Object[] keys, Object[] values) {
+			this.columns = columns;
+			this.keys = keys;
+			this.values = values;
+		}
+
+		public int getKeyCount() {
+			return keys.length;
+		}
+
+		public Object getKey(int index) {
+			return keys[index];
+		}
+
+		public int getValueCount() {
+			return values.length;
+		}
+
+		public Object getValue(int index) {
+			return values[index];
+		}
+
+		/**
+			Returns a value by column name, see DBFAggregate.getColumns().
+		*/
+		public Object get(String column) {
+			int index = columns.indexOf(column);
+			if (index < 0) {
+				throw new IllegalArgumentException("No column " + column);
+			}
+			return index < keys.length ? keys[index] : values[index - keys.length];
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(keys) + " " + Arrays.toString(values);
+		}
+	}
+}
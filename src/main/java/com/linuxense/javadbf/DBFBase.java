@@ -21,6 +21,8 @@ public abstract class DBFBase implements Closeable {
 	protected Charset characterSet = LanguageDriver.DEFAULT_CHARSET;
 
 	protected DBFHeader header;
+
+	protected DBFStatistics statistics;
 	
 	/* 
 	 If the library is used in a non-latin environment use this method to set 
@@ -35,4 +37,16 @@ public abstract class DBFBase implements Closeable {
 	public void setCharactersetName( String characterSetName) {
 		this.characterSet = Charset.forName(characterSetName);
 	}
+
+	public DBFStatistics getStatistics() {
+		return statistics;
+	}
+
+	/*
+	 Starts counting records, I/O and parse time in the given statistics, which
+	 may be shared with other readers and writers. Pass null to stop counting.
+	*/
+	public void setStatistics( DBFStatistics statistics) {
+		this.statistics = statistics;
+	}
 }
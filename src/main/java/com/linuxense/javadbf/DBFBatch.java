@@ -0,0 +1,364 @@
+/*
+  DBFBatch
+	Class for processing all the tables of a directory concurrently.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+	Opens every table of a directory matching a glob pattern and passes it
+	to a handler, a number of tables at a time.
+
+	<pre>
+	DBFBatch batch = new DBFBatch();
+	batch.setConcurrency(8);
+	DBFBatch.Report report = batch.process(Paths.get("/data/client"), "*.{dbf,DBF}", new DBFBatch.FileHandler() {
+		public void handle(Path file, DBFReader reader) throws IOException {
+			...
+		}
+	});
+	</pre>
+
+	Every file is a task on the executor, but at most getConcurrency()
+	tables are open at the same time, whatever the executor, so the disk is
+	kept busy without running out of file descriptors. Without an executor a
+	fixed thread pool of getConcurrency() threads is used for the run. On
+	Java 21 and later pass Executors.newVirtualThreadPerTaskExecutor() to run
+	every file on its own virtual thread.
+
+	A failing file does not stop the others: its error is collected in the
+	report. Read buffers are reused from one table to the next, and
+	process( Path, String, Class, RecordHandler) binds the record mapper once
+	per distinct set of fields rather than once per table. All readers count
+	into one DBFStatistics, which the progress listener sees after each file.
+*/
+public class DBFBatch {
+
+	public static final int DEFAULT_CONCURRENCY = 4;
+
+	/**
+		Callback for process( Path, String, FileHandler). Called on the
+		executor threads, for several tables at the same time. The reader is
+		closed once the handler returns.
+	*/
+	public interface FileHandler {
+
+		void handle(Path file, DBFReader reader) throws IOException;
+	}
+
+	/**
+		Callback for process( Path, String, Class, RecordHandler), called for
+		every record of every table, for several tables at the same time.
+	*/
+	public interface RecordHandler<T> {
+
+		void handleRecord(Path file, T record) throws IOException;
+	}
+
+	/**
+		Receives the progress of a run after each file, one call at a time.
+	*/
+	public interface ProgressListener {
+
+		void progress(Report report);
+	}
+
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private ExecutorService executor;
+	private ProgressListener progressListener;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final ConcurrentHashMap<List<Object>, DBFRecordMapper<?>> mappers = new ConcurrentHashMap<List<Object>, DBFRecordMapper<?>>();
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+		Sets the number of tables open at the same time.
+	*/
+	public void setConcurrency(int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Concurrency should be a positive number");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+		Sets the executor files are processed on. It is not shut down by the
+		batch. Pass null to use a thread pool of getConcurrency() threads.
+	*/
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+		Passes every table of the directory whose name matches the glob
+		pattern to the handler and waits for all of them.
+
+		@param directory the directory, not searched recursively.
+		@param glob pattern of the file names, like "*.dbf", see FileSystem.getPathMatcher().
+		@return what was done and the errors of the files that failed.
+	*/
+	public Report process(Path directory, String glob, final FileHandler handler) throws IOException, InterruptedException {
+		List<Path> files = new ArrayList<Path>();
+
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob);
+		try {
+			for (Path file : stream) {
+				if (Files.isRegularFile(file)) {
+					files.add(file);
+				}
+			}
+		} finally {
+			stream.close();
+		}
+
+		Collections.sort(files);
+
+		return process(files, handler);
+	}
+
+	/**
+		Passes every record of every table of the directory whose name matches
+		the glob pattern to the handler, as an object of the given class, see
+		DBFRecordMapper.
+	*/
+	public <T> Report process(Path directory, String glob, final Class<T> type, final RecordHandler<? super T> handler) throws IOException,
+			InterruptedException {
+		return process(directory, glob, new FileHandler() {
+
+			public void handle(Path file, DBFReader reader) throws IOException {
+				DBFRecordMapper<T> mapper = mapper(type, reader.header.getFieldList());
+				T record;
+
+				while ((record = reader.nextRecord(mapper)) != null) {
+					handler.handleRecord(file, record);
+				}
+			}
+		});
+	}
+
+	/**
+		Passes every table of the list to the handler and waits for all of them.
+	*/
+	public Report process(List<Path> files, final FileHandler handler) throws InterruptedException {
+		final Report report = new Report(files.size());
+		final Semaphore permits = new Semaphore(concurrency);
+
+		ExecutorService t_executor = executor != null ? executor : Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, files.size())));
+		List<Future<?>> futures = new ArrayList<Future<?>>(files.size());
+
+		try {
+			for (final Path file : files) {
+				futures.add(t_executor.submit(new Callable<Void>() {
+
+					public Void call() throws InterruptedException {
+						permits.acquire();
+						try {
+							processFile(file, handler, report);
+						} finally {
+							permits.release();
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					/* errors of the files are in the report, this is a bug in the batch or an Error */
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		} finally {
+			if (executor == null) {
+				t_executor.shutdownNow();
+			}
+		}
+
+		return report;
+	}
+
+	private void processFile(Path file, FileHandler handler, Report report) {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocate(DBFReader.READ_BUFFER_SIZE);
+		}
+
+		long t_start = System.nanoTime();
+		Exception error = null;
+		DBFReader reader = null;
+
+		try {
+			reader = new DBFReader(file.toFile(), buffer);
+			reader.setStatistics(report.statistics);
+			handler.handle(file, reader);
+		} catch (IOException e) {
+			error = e;
+		} catch (RuntimeException e) {
+			error = e;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					if (error == null) {
+						error = e;
+					}
+				}
+			}
+			buffers.offer(buffer);
+		}
+
+		ProgressListener listener = progressListener;
+		synchronized (report) {
+			report.fileDone(file, System.nanoTime() - t_start, error);
+			if (listener != null) {
+				listener.progress(report);
+			}
+		}
+	}
+
+	/* returns the mapper of the class for the fields, binding it on first use */
+	@SuppressWarnings("unchecked")
+	<T> DBFRecordMapper<T> mapper(Class<T> type, List<DBFField> fields) throws DBFException {
+		List<Object> key = new ArrayList<Object>(fields.size() * 3 + 1);
+		key.add(type);
+		for (DBFField field : fields) {
+			key.addAll(Arrays.asList(field.getName(), field.getDataType(), Integer.valueOf(field.getFieldLength())));
+		}
+
+		DBFRecordMapper<?> mapper = mappers.get(key);
+		if (mapper == null) {
+			mapper = DBFRecordMapper.bind(type, fields);
+			DBFRecordMapper<?> existing = mappers.putIfAbsent(key, mapper);
+			if (existing != null) {
+				mapper = existing;
+			}
+		}
+
+		return (DBFRecordMapper<T>) mapper;
+	}
+
+	/**
+		Progress and outcome of a run.
+	*/
+	public static final class Report {
+		private final int files;
+		private final long startNanos = System.nanoTime();
+		private final DBFStatistics statistics = new DBFStatistics();
+
+		private int completed = 0;
+		private long fileNanos = 0;
+		private long endNanos = 0;
+		private final Map<Path, Exception> errors = new LinkedHashMap<Path, Exception>();
+
+		Report(int files) {
+			this.files = files;
+		}
+
+		synchronized void fileDone(Path file, long nanos, Exception error) {
+			completed++;
+			fileNanos += nanos;
+			endNanos = System.nanoTime();
+			if (error != null) {
+				errors.put(file, error);
+			}
+		}
+
+		/**
+			Returns the number of files matched.
+		*/
+		public int getFiles() {
+			return files;
+		}
+
+		/**
+			Returns the number of files done so far, failed ones included.
+		*/
+		public synchronized int getCompleted() {
+			return completed;
+		}
+
+		public synchronized int getFailed() {
+			return errors.size();
+		}
+
+		/**
+			Returns the error of every file that failed, in the order they failed.
+		*/
+		public synchronized Map<Path, Exception> getErrors() {
+			return Collections.unmodifiableMap(new LinkedHashMap<Path, Exception>(errors));
+		}
+
+		/**
+			Returns the time from the start of the run to the last file done.
+		*/
+		public synchronized long getElapsedNanos() {
+			return completed == 0 ? 0 : endNanos - startNanos;
+		}
+
+		/**
+			Returns the time the files took, added up.
+		*/
+		public synchronized long getFileNanos() {
+			return fileNanos;
+		}
+
+		/**
+			Returns the records, bytes and memos read from all the files so far.
+		*/
+		public DBFStatistics.Snapshot getStatistics() {
+			return statistics.snapshot();
+		}
+
+		@Override
+		public synchronized String toString() {
+			return new StringBuilder().append(completed).append(" of ").append(files).append(" files done, ").append(errors.size())
+					.append(" failed, ").append(getElapsedNanos() / 1000000).append(" ms\n").append(statistics.snapshot()).toString();
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+  DBFColumnReader
+	Class for reading the records of a columnar snapshot one by one.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+	Reads a snapshot written by DBFColumnTable.write() record by record, the
+	way DBFReader reads a table:
+
+	<pre>
+	DBFColumnTable.convert(new File("bookings.dbf"), new File("bookings.dbcol"));
+
+	DBFColumnReader reader = new DBFColumnReader(new File("bookings.dbcol"));
+	reader.setFilter("BRANCH", "LONDON");
+	Object[] record;
+	while ((record = reader.nextRecord()) != null) {
+		...
+	}
+	reader.close();
+	</pre>
+
+	The snapshot is memory mapped, see DBFColumnTable.map(). Records come
+	with the Java types of DBFReader.nextRecord(), and a filter is matched
+	on the column of its field alone, so records are only put together for
+	the rows that match. getTable() gives the typed getters and queries of
+	DBFColumnTable over the same mapping. A snapshot holds no deleted
+	records.
+*/
+public class DBFColumnReader extends DBFBase {
+
+	private final DBFColumnTable table;
+
+	/* the next row to read, and the rows matching the filter or null for all of them */
+	private int next = 0;
+	private int[] matches;
+	private int nextMatch;
+
+	private boolean isClosed = false;
+
+	/**
+		Maps the snapshot and starts at its first record.
+	*/
+	public DBFColumnReader(File snapshot) throws DBFException {
+		table = DBFColumnTable.map(snapshot);
+		header = table.header;
+		characterSet = table.charset;
+	}
+
+	/**
+		Returns the table of the snapshot, for column access.
+	*/
+	public DBFColumnTable getTable() {
+		return table;
+	}
+
+	/**
+		Returns the number of records in the snapshot.
+	*/
+	public int getRecordCount() {
+		return table.getRowCount();
+	}
+
+	/**
+		Returns the field at the given index, the first field being 0.
+	*/
+	public DBFField getField(int index) throws DBFException {
+		checkIfClosed();
+		return table.getFields().get(index);
+	}
+
+	public int getFieldCount() throws DBFException {
+		checkIfClosed();
+		return table.getFields().size();
+	}
+
+	/**
+		Makes nextRecord() return only the records whose value of the field
+		lies between from and to, both included, from the next record on.
+		The bounds are those of DBFReader.setFilter( String, Object, Object).
+
+		@param fieldName the field to filter on, or null for no filter.
+	*/
+	public void setFilter(String fieldName, Object from, Object to) throws DBFException {
+		checkIfClosed();
+
+		if (fieldName == null) {
+			matches = null;
+			return;
+		}
+
+		matches = table.find(fieldName, from, to);
+		nextMatch = Arrays.binarySearch(matches, next);
+		if (nextMatch < 0) {
+			nextMatch = -nextMatch - 1;
+		}
+	}
+
+	/**
+		Makes nextRecord() return only the records whose value of the field
+		equals the value. See setFilter( String, Object, Object).
+	*/
+	public void setFilter(String fieldName, Object value) throws DBFException {
+		setFilter(fieldName, value, value);
+	}
+
+	/**
+		Returns the next record, or null at the end of the snapshot.
+	*/
+	public Object[] nextRecord() throws DBFException {
+		checkIfClosed();
+
+		int row;
+		if (matches != null) {
+			if (nextMatch == matches.length) {
+				return null;
+			}
+			row = matches[nextMatch++];
+		} else {
+			if (next == table.getRowCount()) {
+				return null;
+			}
+			row = next;
+		}
+
+		next = row + 1;
+		return table.getRecord(row);
+	}
+
+	/**
+		Returns the record at the given index, the first record being 0,
+		without moving the position of nextRecord().
+	*/
+	public Object[] getRecord(int index) throws DBFException {
+		checkIfClosed();
+
+		if (index < 0 || index >= table.getRowCount()) {
+			throw new DBFException("No record " + index + ", the snapshot has " + table.getRowCount() + " records");
+		}
+		return table.getRecord(index);
+	}
+
+	/**
+		Closes the reader. The mapping is released once the reader and its
+		table are garbage collected.
+	*/
+	public void close() {
+		isClosed = true;
+	}
+
+	private void checkIfClosed() throws DBFException {
+		if (isClosed) {
+			throw new DBFException("Source is not open");
+		}
+	}
+}
@@ -0,0 +1,1016 @@
+/*
+  DBFColumnTable
+	Class for holding a table in memory, outside the heap, column by column.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+/**
+	A table loaded into direct buffers, one per column, to be queried many
+	times without reading and decoding its records again. Meant for the
+	small reference tables every request looks up:
+
+	<pre>
+	DBFColumnTable staff = DBFColumnTable.load(new File("staff.dbf"));
+	int name = staff.getFieldIndex("NAME");
+	for (int row : staff.find("BRANCH", "LONDON")) {
+		String s = staff.getString(row, name);
+	}
+	</pre>
+
+	The values of a column are stored by the type of its field: NUMBER as
+	longs in units of 10^-decimal count, FLOAT as doubles, INTEGER as ints,
+	DATE as ints counting the days since 1970-01-01, LOGICAL as bits and
+	CHARACTER as int codes into a dictionary of the distinct values of the
+	column, which is kept on the heap. Blank values are flagged in a bitset
+	per column. Memo fields are not loaded and read as null.
+
+	getValue() and getRecord() return what DBFReader.nextRecord() would.
+	The typed getters create no objects. find() matches a range like
+	DBFReader.setFilter() on the stored values; a range of a character
+	field is matched once per distinct value rather than per row. A loaded
+	table is never modified, so any number of threads may query it at once.
+
+	write() saves the columns to a snapshot file and map() maps one into
+	memory, so a table converted once can be queried by later runs without
+	reading the DBF again. DBFColumnReader reads a snapshot record by record.
+
+	A column holds at most MAX_ROWS rows, as its values are kept in a single
+	buffer; loading or mapping more throws a DBFException.
+*/
+public final class DBFColumnTable {
+
+	private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+	private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	/* signature at both ends of a snapshot file */
+	private static final byte[] SIGNATURE = { 'D', 'B', 'C', '1' };
+
+	/* regions of a snapshot file start at multiples of this */
+	private static final int ALIGNMENT = 8;
+
+	/** The most rows a table holds, so that the values of a NUMBER column fit in a buffer. */
+	public static final int MAX_ROWS = Integer.MAX_VALUE / 8;
+
+	/* rows convert() loads at a time, a multiple of 64 so that the bits of one group follow those of the last */
+	static final int ROW_GROUP = 64 * 1024;
+
+	final DBFHeader header;
+	final Charset charset;
+	private final List<DBFField> fields;
+	private final Column[] columns;
+	private int rows;
+
+	private DBFColumnTable(DBFHeader header, Charset charset) {
+		this.header = header;
+		this.fields = Collections.unmodifiableList(new ArrayList<DBFField>(header.getFieldList()));
+		this.charset = charset;
+		this.columns = new Column[fields.size()];
+
+		int offset = 1;
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new Column(fields.get(i), offset);
+			offset += fields.get(i).getFieldLength();
+		}
+	}
+
+	/**
+		Loads the live records of a table file.
+	*/
+	public static DBFColumnTable load(File table) throws DBFException {
+		DBFReader reader = new DBFReader(table);
+		try {
+			return load(reader);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				/* opened for reading only */
+			}
+		}
+	}
+
+	/**
+		Loads the records the reader has left, the ones matching its filter
+		only, see DBFReader.setFilter(). The reader is not closed.
+	*/
+	public static DBFColumnTable load(DBFReader reader) throws DBFException {
+		DBFColumnTable table = new DBFColumnTable(reader.header.copy(), reader.characterSet);
+		for (Column column : table.columns) {
+			column.allocate(Math.min(Math.max(reader.getRecordCount(), 16), MAX_ROWS));
+		}
+
+		ByteBuffer buff;
+		while ((buff = reader.nextRecordBuffer()) != null) {
+			table.add(buff, buff.position() - 1);
+		}
+
+		return table;
+	}
+
+	/**
+		Loads the live records of a table file and writes them to a snapshot
+		file, see write(). The records are loaded ROW_GROUP at a time and
+		their columns spooled to a temporary file next to the snapshot, so
+		only the dictionaries of the character columns are held for the
+		whole table.
+	*/
+	public static void convert(File table, File snapshot) throws DBFException {
+		DBFReader reader = new DBFReader(table);
+		try {
+			convert(reader, snapshot);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				/* opened for reading only */
+			}
+		}
+	}
+
+	private static void convert(DBFReader reader, File snapshot) throws DBFException {
+		DBFColumnTable group = new DBFColumnTable(reader.header.copy(), reader.characterSet);
+		for (Column column : group.columns) {
+			column.allocate(ROW_GROUP);
+		}
+
+		File spool = new File(snapshot.getPath() + ".rows");
+		try {
+			RandomAccessFile file = new RandomAccessFile(spool, "rw");
+			try {
+				FileChannel channel = file.getChannel();
+
+				int rows = 0;
+				ByteBuffer buff;
+				do {
+					buff = reader.nextRecordBuffer();
+					if (buff != null) {
+						group.add(buff, buff.position() - 1);
+					}
+					if (group.rows == ROW_GROUP || buff == null) {
+						rows = checkRows((long) rows + group.rows);
+						group.spool(channel);
+					}
+				} while (buff != null);
+
+				/* the codes of the character columns are those of the dictionaries of the group */
+				group.rows = rows;
+				group.write(snapshot, channel);
+			} finally {
+				file.close();
+			}
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException("Failed to convert to snapshot " + snapshot + ": " + e.getMessage(), e);
+		} finally {
+			spool.delete();
+		}
+	}
+
+	/* appends the values and the nulls of every column to the spool and empties the group */
+	private void spool(FileChannel spool) throws IOException {
+		for (Column c : columns) {
+			writeFully(spool, region(c.data, c.dataLength(rows)));
+			writeFully(spool, region(c.nulls, c.nullsLength(rows)));
+			c.clear();
+		}
+		rows = 0;
+	}
+
+	/*
+	 copies the values, or the nulls, of a column from the row groups convert()
+	 spooled and returns where they start
+	*/
+	private long copy(FileChannel spool, int column, boolean nulls, FileChannel channel) throws IOException {
+		long start = align(channel);
+
+		long groupLength = 0;
+		for (Column c : columns) {
+			groupLength += c.dataLength(ROW_GROUP) + c.nullsLength(ROW_GROUP);
+		}
+
+		for (int first = 0; first < rows; first += ROW_GROUP) {
+			int count = Math.min(ROW_GROUP, rows - first);
+
+			long position = (long) (first / ROW_GROUP) * groupLength;
+			for (int i = 0; i < column; i++) {
+				position += columns[i].dataLength(count) + columns[i].nullsLength(count);
+			}
+			long length = columns[column].dataLength(count);
+			if (nulls) {
+				position += length;
+				length = columns[column].nullsLength(count);
+			}
+
+			while (length > 0) {
+				long n = spool.transferTo(position, length, channel);
+				if (n <= 0) {
+					throw new DBFException("Unexpected end of the spooled rows at " + position);
+				}
+				position += n;
+				length -= n;
+			}
+		}
+		return start;
+	}
+
+	/**
+		Writes the table to a snapshot file, which map() opens again without
+		decoding anything. The file starts with the signature DBC1 and holds
+		the columns one after the other, each region starting at a multiple
+		of 8 bytes: the values of the column as they are kept in memory, in
+		little endian byte order, its null bitset and, for a character
+		column, the bytes of its distinct values in code order. A footer
+		follows with the DBF header of the table, the character set and the
+		offset and length of every region, then the footer length and the
+		signature again. The file is written under a temporary name and
+		moved into place, atomically where the file system supports it.
+	*/
+	public void write(File snapshot) throws DBFException {
+		write(snapshot, null);
+	}
+
+	/* writes the snapshot, taking the values and the nulls from the row groups convert() spooled if any */
+	private void write(File snapshot, FileChannel spool) throws DBFException {
+		File tmp = new File(snapshot.getPath() + ".tmp");
+
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				FileChannel channel = out.getChannel();
+
+				/* offset and length of the values, the nulls and the dictionary of each column */
+				long[] regions = new long[columns.length * 6];
+
+				write(channel, ByteBuffer.wrap(SIGNATURE));
+
+				for (int i = 0; i < columns.length; i++) {
+					Column c = columns[i];
+
+					if (spool == null) {
+						regions[i * 6] = write(channel, region(c.data, c.dataLength(rows)));
+						regions[i * 6 + 2] = write(channel, region(c.nulls, c.nullsLength(rows)));
+					} else {
+						regions[i * 6] = copy(spool, i, false, channel);
+						regions[i * 6 + 2] = copy(spool, i, true, channel);
+					}
+					regions[i * 6 + 1] = c.dataLength(rows);
+					regions[i * 6 + 3] = c.nullsLength(rows);
+
+					if (c.dictionary != null) {
+						regions[i * 6 + 4] = write(channel, c.dictionary, c.field.getFieldLength());
+						regions[i * 6 + 5] = c.dictionary.size();
+					}
+				}
+
+				DBFHeader t_header = header.copy();
+				t_header.setNumberOfRecords(rows);
+				byte[] charsetName = charset.name().getBytes("US-ASCII");
+
+				ByteBuffer footer = ByteBuffer.allocate(t_header.findHeaderLength() + 2 + charsetName.length + 4 + regions.length * 8 + 4 + SIGNATURE.length);
+				footer.order(ByteOrder.LITTLE_ENDIAN);
+
+				t_header.write(footer);
+				footer.putShort((short) charsetName.length);
+				footer.put(charsetName);
+				footer.putInt(columns.length);
+				for (long value : regions) {
+					footer.putLong(value);
+				}
+				footer.putInt(footer.position());
+				footer.put(SIGNATURE);
+				footer.flip();
+
+				write(channel, footer);
+			} finally {
+				out.close();
+			}
+
+			try {
+				Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			throw new DBFException("Failed to write snapshot " + snapshot + ": " + e.getMessage(), e);
+		}
+	}
+
+	/* the first length bytes of a column buffer */
+	private static ByteBuffer region(ByteBuffer buff, long length) {
+		ByteBuffer region = buff.duplicate();
+		region.clear();
+		region.limit((int) length);
+		return region;
+	}
+
+	/* writes the buffer at the next multiple of ALIGNMENT and returns where it starts */
+	private static long write(FileChannel channel, ByteBuffer buff) throws IOException {
+		long start = align(channel);
+		writeFully(channel, buff);
+		return start;
+	}
+
+	/* writes the values of a dictionary in code order at the next multiple of ALIGNMENT */
+	private static long write(FileChannel channel, DBFStringDictionary dictionary, int length) throws IOException {
+		long start = align(channel);
+
+		ByteBuffer values = ByteBuffer.allocate(Math.max(1, 64 * 1024 / length) * length);
+		for (int code = 0; code < dictionary.size(); code++) {
+			if (!values.hasRemaining()) {
+				values.flip();
+				writeFully(channel, values);
+				values.clear();
+			}
+			values.put(dictionary.bytes(code));
+		}
+		values.flip();
+		writeFully(channel, values);
+
+		return start;
+	}
+
+	/* pads the file with zeros to the next multiple of ALIGNMENT and returns its position */
+	private static long align(FileChannel channel) throws IOException {
+		long position = channel.position();
+		int padding = (int) ((ALIGNMENT - position % ALIGNMENT) % ALIGNMENT);
+		writeFully(channel, ByteBuffer.allocate(padding));
+		return channel.position();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buff) throws IOException {
+		while (buff.hasRemaining()) {
+			channel.write(buff);
+		}
+	}
+
+	/* the row count if a table may hold so many rows */
+	private static int checkRows(long rows) throws DBFException {
+		if (rows > MAX_ROWS) {
+			throw new DBFException("More than " + MAX_ROWS + " rows, the most a table holds in columns");
+		}
+		return (int) rows;
+	}
+
+	/**
+		Maps a snapshot file written by write() into memory. The values are
+		not read until they are queried, so a query touches the pages of the
+		columns it looks at only. The dictionaries of the character columns
+		are read into the heap. The file may be closed and replaced once
+		mapped; it is unmapped when the table is garbage collected.
+
+		@throws DBFException if the file is not a snapshot or its footer does
+		not match the regions before it.
+	*/
+	public static DBFColumnTable map(File snapshot) throws DBFException {
+		try {
+			RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				long size = channel.size();
+
+				ByteBuffer start = read(channel, 0, Math.min(size, SIGNATURE.length));
+				ByteBuffer end = read(channel, Math.max(0, size - 8), (int) Math.min(size, 8));
+				if (size < 16 || !hasSignature(start, 0) || !hasSignature(end, 4)) {
+					throw new DBFException(snapshot + " is not a snapshot");
+				}
+
+				int footerLength = end.getInt(0);
+				if (footerLength < 32 || footerLength > size - 16) {
+					throw new DBFException("Invalid snapshot " + snapshot + ": footer of " + footerLength + " bytes");
+				}
+
+				ByteBuffer footer = read(channel, size - 8 - footerLength, footerLength);
+				DBFHeader header = new DBFHeader();
+				header.read(footer);
+				footer.position(header.getHeaderLength());
+
+				byte[] charsetName = new byte[footer.getShort()];
+				footer.get(charsetName);
+				DBFColumnTable table = new DBFColumnTable(header, Charset.forName(new String(charsetName, "US-ASCII")));
+				table.rows = header.getNumberOfRecords();
+				if (table.rows < 0 || table.rows > MAX_ROWS) {
+					throw new DBFException("Invalid snapshot " + snapshot + ": " + table.rows + " rows");
+				}
+
+				if (footer.getInt() != table.columns.length) {
+					throw new DBFException("Invalid snapshot " + snapshot + ": columns do not match the fields");
+				}
+
+				/* offset and length of the values, the nulls and the dictionary of each column */
+				long[] regions = new long[table.columns.length * 6];
+				for (int i = 0; i < regions.length; i++) {
+					regions[i] = footer.getLong();
+				}
+
+				/* the regions follow each other as write() lays them out, then the footer */
+				long next = SIGNATURE.length;
+				for (int i = 0; i < table.columns.length; i++) {
+					Column c = table.columns[i];
+
+					if (regions[i * 6 + 1] != c.dataLength(table.rows) || regions[i * 6 + 3] != c.nullsLength(table.rows) || regions[i * 6] != aligned(next)
+							|| regions[i * 6 + 2] != aligned(regions[i * 6] + regions[i * 6 + 1])) {
+						throw new DBFException("Invalid snapshot " + snapshot + ": wrong size of column " + c.field.getName());
+					}
+					next = regions[i * 6 + 2] + regions[i * 6 + 3];
+
+					long dictionaryCount = regions[i * 6 + 5];
+					if (c.dictionary == null ? regions[i * 6 + 4] != 0 || dictionaryCount != 0 : regions[i * 6 + 4] != aligned(next) || dictionaryCount < 0
+							|| dictionaryCount > table.rows) {
+						throw new DBFException("Invalid snapshot " + snapshot + ": wrong dictionary of column " + c.field.getName());
+					}
+					if (c.dictionary != null) {
+						next = regions[i * 6 + 4] + dictionaryCount * c.field.getFieldLength();
+					}
+				}
+
+				if (aligned(next) != size - 8 - footerLength) {
+					throw new DBFException("Invalid snapshot " + snapshot + ": regions do not end at the footer");
+				}
+
+				for (int i = 0; i < table.columns.length; i++) {
+					Column c = table.columns[i];
+
+					c.capacity = table.rows;
+					c.data = channel.map(FileChannel.MapMode.READ_ONLY, regions[i * 6], regions[i * 6 + 1]).order(ByteOrder.LITTLE_ENDIAN);
+					c.nulls = channel.map(FileChannel.MapMode.READ_ONLY, regions[i * 6 + 2], regions[i * 6 + 3]).order(ByteOrder.LITTLE_ENDIAN);
+
+					if (c.dictionary != null) {
+						int length = c.field.getFieldLength();
+						int count = (int) regions[i * 6 + 5];
+						ByteBuffer values = read(channel, regions[i * 6 + 4], (long) count * length);
+						for (int code = 0; code < count; code++) {
+							c.dictionary.code(values, code * length);
+						}
+						if (c.dictionary.size() != count) {
+							throw new DBFException("Invalid snapshot " + snapshot + ": repeated values in the dictionary of column " + c.field.getName());
+						}
+					}
+				}
+
+				return table;
+			} finally {
+				file.close();
+			}
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException("Failed to map snapshot " + snapshot + ": " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			/* BufferUnderflowException, IllegalArgumentException on a damaged footer */
+			throw new DBFException("Invalid snapshot " + snapshot + ": " + e, e);
+		}
+	}
+
+	private static long aligned(long position) {
+		return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	private static boolean hasSignature(ByteBuffer buff, int position) {
+		for (int i = 0; i < SIGNATURE.length; i++) {
+			if (buff.get(position + i) != SIGNATURE[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new DBFException("Region of " + length + " bytes at " + position + " too long to read");
+		}
+		ByteBuffer buff = ByteBuffer.allocate((int) length);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buff.hasRemaining()) {
+			if (channel.read(buff, position + buff.position()) < 0) {
+				throw new DBFException("Unexpected end of snapshot at " + (position + buff.position()));
+			}
+		}
+
+		buff.flip();
+		return buff;
+	}
+
+	/* appends the record starting at the deleted flag at start */
+	private void add(ByteBuffer buff, int start) throws DBFException {
+		if (rows == columns[0].capacity) {
+			int capacity = (int) Math.min(2L * checkRows(rows + 1L), MAX_ROWS);
+			for (Column column : columns) {
+				column.allocate(capacity);
+			}
+		}
+
+		for (Column column : columns) {
+			column.set(rows, buff, start + column.offset);
+		}
+		rows++;
+	}
+
+	public List<DBFField> getFields() {
+		return fields;
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+		Returns the index of the named field.
+
+		@throws IllegalArgumentException if the table has no such field.
+	*/
+	public int getFieldIndex(String name) {
+		for (int i = 0; i < fields.size(); i++) {
+			if (fields.get(i).getName().equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("No field " + name);
+	}
+
+	/**
+		Tells whether the value is blank. Character and integer values never
+		are, as DBFReader does not return null for them either.
+	*/
+	public boolean isNull(int row, int column) {
+		return columns[checkRow(row, column)].isNull(row);
+	}
+
+	/**
+		Returns a NUMBER value in units of 10^-decimal count, or an INTEGER
+		value. Blank values are 0.
+	*/
+	public long getLong(int row, int column) {
+		Column c = columns[checkRow(row, column)];
+		switch (c.field.getDataType()) {
+			case NUMBER:
+				return c.data.getLong(row * 8);
+			case INTEGER:
+				return c.data.getInt(row * 4);
+			default:
+				throw c.mismatch("long");
+		}
+	}
+
+	/**
+		Returns a NUMBER, FLOAT or INTEGER value as a double. Blank values are
+		0.
+	*/
+	public double getDouble(int row, int column) {
+		Column c = columns[checkRow(row, column)];
+		switch (c.field.getDataType()) {
+			case NUMBER:
+				return c.data.getLong(row * 8) / Math.pow(10, c.field.getDecimalCount());
+			case FLOAT:
+				return c.data.getDouble(row * 8);
+			case INTEGER:
+				return c.data.getInt(row * 4);
+			default:
+				throw c.mismatch("double");
+		}
+	}
+
+	/**
+		Returns an INTEGER value.
+	*/
+	public int getInt(int row, int column) {
+		Column c = columns[checkRow(row, column)];
+		if (c.field.getDataType() != DBFField.DataType.INTEGER) {
+			throw c.mismatch("int");
+		}
+		return c.data.getInt(row * 4);
+	}
+
+	/**
+		Returns a DATE value as the number of days since 1970-01-01. Blank
+		values are 0.
+	*/
+	public int getEpochDay(int row, int column) {
+		Column c = columns[checkRow(row, column)];
+		if (c.field.getDataType() != DBFField.DataType.DATE) {
+			throw c.mismatch("epoch day");
+		}
+		return c.data.getInt(row * 4);
+	}
+
+	/**
+		Returns a LOGICAL value, false if it is blank.
+	*/
+	public boolean getBoolean(int row, int column) {
+		Column c = columns[checkRow(row, column)];
+		if (c.field.getDataType() != DBFField.DataType.LOGICAL) {
+			throw c.mismatch("boolean");
+		}
+		return getBit(c.data, row);
+	}
+
+	/**
+		Returns a CHARACTER value, padded as DBFReader returns it. Equal
+		values of a column are the same String.
+	*/
+	public String getString(int row, int column) {
+		Column c = columns[checkRow(row, column)];
+		return c.dictionary.get(getCode(c, row));
+	}
+
+	/**
+		Returns the dictionary code of a CHARACTER value, see getDictionary().
+		Equal values of a column have the same code.
+	*/
+	public int getCode(int row, int column) {
+		return getCode(columns[checkRow(row, column)], row);
+	}
+
+	private static int getCode(Column c, int row) {
+		if (c.field.getDataType() != DBFField.DataType.CHARACTER) {
+			throw c.mismatch("String");
+		}
+		return c.data.getInt(row * 4);
+	}
+
+	/**
+		Returns the distinct values of a CHARACTER column by code.
+	*/
+	public List<String> getDictionary(int column) {
+		Column c = columns[checkColumn(column)];
+		if (c.field.getDataType() != DBFField.DataType.CHARACTER) {
+			throw c.mismatch("String");
+		}
+		return c.dictionary.values();
+	}
+
+	/**
+		Returns the value as DBFReader.nextRecord() would.
+	*/
+	public Object getValue(int row, int column) {
+		Column c = columns[checkRow(row, column)];
+
+		switch (c.field.getDataType()) {
+			case CHARACTER:
+				return getString(row, column);
+			case INTEGER:
+				return Integer.valueOf(getInt(row, column));
+			case LOGICAL:
+				return Boolean.valueOf(getBoolean(row, column));
+			case MEMO:
+				return null;
+			default:
+				break;
+		}
+
+		if (c.isNull(row)) {
+			return null;
+		}
+
+		switch (c.field.getDataType()) {
+			case NUMBER:
+				return BigDecimal.valueOf(getLong(row, column), c.field.getDecimalCount());
+			case FLOAT:
+				return Double.valueOf(getDouble(row, column));
+			default:
+				return EPOCH.plusDays(getEpochDay(row, column));
+		}
+	}
+
+	/**
+		Returns the row as DBFReader.nextRecord() would.
+	*/
+	public Object[] getRecord(int row) {
+		Object[] values = new Object[columns.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = getValue(row, i);
+		}
+		return values;
+	}
+
+	/**
+		Returns the rows, in order, whose value of the field lies between from
+		and to, both included. The bounds are those of DBFReader.setFilter(
+		String, Object, Object); blank values never match.
+	*/
+	public int[] find(String field, Object from, Object to) {
+		return find(null, field, from, to);
+	}
+
+	/**
+		Returns the rows whose value of the field equals the value.
+	*/
+	public int[] find(String field, Object value) {
+		return find(null, field, value, value);
+	}
+
+	/**
+		Returns those of the given rows, in their order, whose value of the
+		field lies between from and to. Use it to narrow down the result of
+		another find().
+
+		@param rows the rows to test, or null for all of them.
+	*/
+	public int[] find(int[] rows, String field, Object from, Object to) {
+		DBFFilter filter = DBFFilter.range(fields, charset, field, from, to);
+		Column c = columns[getFieldIndex(field)];
+
+		int count = rows != null ? rows.length : this.rows;
+		int[] found = new int[count];
+		int n = 0;
+
+		boolean[] codes = c.field.getDataType() == DBFField.DataType.CHARACTER ? c.matchingCodes(filter) : null;
+
+		/* the bounds of a date range in days since 1970-01-01 */
+		long fromDay = c.field.getDataType() == DBFField.DataType.DATE ? epochDay(filter.from) : 0;
+		long toDay = c.field.getDataType() == DBFField.DataType.DATE ? epochDay(filter.to) : 0;
+
+		double scale = Math.pow(10, c.field.getDecimalCount());
+		double fromDouble = filter.from == DBFFilter.LOWEST ? Double.NEGATIVE_INFINITY : filter.from / scale;
+		double toDouble = filter.to == DBFFilter.HIGHEST ? Double.POSITIVE_INFINITY : filter.to / scale;
+
+		for (int i = 0; i < count; i++) {
+			int row = rows != null ? rows[i] : i;
+			checkRow(row, 0);
+
+			boolean matches;
+			switch (c.field.getDataType()) {
+				case CHARACTER:
+					matches = codes[c.data.getInt(row * 4)];
+					break;
+				case NUMBER:
+					matches = !c.isNull(row) && filter.matches(c.data.getLong(row * 8));
+					break;
+				case INTEGER:
+					matches = filter.matches(c.data.getInt(row * 4));
+					break;
+				case FLOAT:
+					double value = c.data.getDouble(row * 8);
+					matches = !c.isNull(row) && value >= fromDouble && value <= toDouble;
+					break;
+				case DATE:
+					int day = c.data.getInt(row * 4);
+					matches = !c.isNull(row) && day >= fromDay && day <= toDay;
+					break;
+				default:
+					matches = !c.isNull(row) && filter.matches(getBit(c.data, row) ? 1 : 0);
+					break;
+			}
+
+			if (matches) {
+				found[n++] = row;
+			}
+		}
+
+		return Arrays.copyOf(found, n);
+	}
+
+	private int checkRow(int row, int column) {
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("No row " + row + ", the table has " + rows + " rows");
+		}
+		return checkColumn(column);
+	}
+
+	private int checkColumn(int column) {
+		if (column < 0 || column >= columns.length) {
+			throw new IndexOutOfBoundsException("No column " + column + ", the table has " + columns.length + " columns");
+		}
+		return column;
+	}
+
+	/* days since 1970-01-01 of a valid yyyymmdd date, or the bound of an open range */
+	private static long epochDay(long yyyymmdd) {
+		if (yyyymmdd == DBFFilter.LOWEST) {
+			return Long.MIN_VALUE;
+		}
+		if (yyyymmdd == DBFFilter.HIGHEST) {
+			return Long.MAX_VALUE;
+		}
+		return epochDay((int) (yyyymmdd / 10000), (int) (yyyymmdd / 100 % 100), (int) (yyyymmdd % 100));
+	}
+
+	/* days since 1970-01-01 of a date of the proleptic Gregorian calendar */
+	static int epochDay(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/* tells whether the yyyymmdd date exists, which DBFAggregate.value() does not check fully */
+	private static boolean isValidDate(long yyyymmdd) {
+		int year = (int) (yyyymmdd / 10000);
+		int month = (int) (yyyymmdd / 100 % 100);
+		int day = (int) (yyyymmdd % 100);
+
+		if (month == 2 && day == 29) {
+			return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+		}
+		return day <= DAYS_IN_MONTH[month - 1];
+	}
+
+	private static void zero(ByteBuffer buff) {
+		int i = 0;
+		for (; i + 8 <= buff.capacity(); i += 8) {
+			buff.putLong(i, 0);
+		}
+		for (; i < buff.capacity(); i++) {
+			buff.put(i, (byte) 0);
+		}
+	}
+
+	private static boolean getBit(ByteBuffer bits, int index) {
+		return (bits.getLong((index >>> 6) * 8) & (1L << index)) != 0;
+	}
+
+	private static void setBit(ByteBuffer bits, int index) {
+		int at = (index >>> 6) * 8;
+		bits.putLong(at, bits.getLong(at) | (1L << index));
+	}
+
+	/* the values of one field */
+	private final class Column {
+		final DBFField field;
+		final int offset;
+		final int width;
+
+		int capacity;
+		ByteBuffer data;
+		ByteBuffer nulls;
+
+		/* the distinct values of a character column */
+		DBFStringDictionary dictionary;
+
+		Column(DBFField field, int offset) {
+			this.field = field;
+			this.offset = offset;
+
+			switch (field.getDataType()) {
+				case NUMBER:
+				case FLOAT:
+					width = 8;
+					break;
+				case INTEGER:
+				case DATE:
+				case CHARACTER:
+					width = 4;
+					break;
+				default:
+					/* logicals are kept in bits, memos not at all */
+					width = 0;
+					break;
+			}
+
+			if (field.getDataType() == DBFField.DataType.CHARACTER) {
+				dictionary = new DBFStringDictionary(charset, field.getFieldLength(), Integer.MAX_VALUE, false);
+			}
+		}
+
+		/* at most MAX_ROWS, so that lengths and offsets fit in an int */
+		void allocate(int capacity) {
+			ByteBuffer oldData = data;
+			ByteBuffer oldNulls = nulls;
+
+			this.capacity = capacity;
+			data = ByteBuffer.allocateDirect((int) dataLength(capacity)).order(ByteOrder.LITTLE_ENDIAN);
+			nulls = ByteBuffer.allocateDirect(nullsLength(capacity)).order(ByteOrder.LITTLE_ENDIAN);
+
+			if (oldData != null) {
+				oldData.clear();
+				data.put(oldData).clear();
+				oldNulls.clear();
+				nulls.put(oldNulls).clear();
+			}
+		}
+
+		/* sets the values and the nulls of every row back to 0 */
+		void clear() {
+			zero(data);
+			zero(nulls);
+		}
+
+		/* bytes taken by the values of so many rows */
+		long dataLength(int rows) {
+			return field.getDataType() == DBFField.DataType.LOGICAL ? nullsLength(rows) : (long) rows * width;
+		}
+
+		int nullsLength(int rows) {
+			return (rows + 63) / 64 * 8;
+		}
+
+		boolean isNull(int row) {
+			return getBit(nulls, row);
+		}
+
+		/* stores the value of the field at position as the value of row */
+		void set(int row, ByteBuffer buff, int position) throws DBFException {
+			long value;
+
+			switch (field.getDataType()) {
+				case CHARACTER:
+					data.putInt(row * 4, dictionary.code(buff, position));
+					return;
+
+				case INTEGER:
+					data.putInt(row * 4, buff.getInt(position));
+					return;
+
+				case NUMBER:
+					value = DBFAggregate.value(field, buff, position);
+					if (value == DBFAggregate.NULL) {
+						setBit(nulls, row);
+					} else {
+						data.putLong(row * 8, value);
+					}
+					return;
+
+				case FLOAT:
+					set(row, DBFAggregate.value(field, buff, position) == DBFAggregate.NULL ? null : parseDouble(buff, position));
+					return;
+
+				case DATE:
+					value = DBFAggregate.value(field, buff, position);
+					if (value == DBFAggregate.NULL || !isValidDate(value)) {
+						setBit(nulls, row);
+					} else {
+						data.putInt(row * 4, (int) epochDay(value));
+					}
+					return;
+
+				case LOGICAL:
+					/* true as DBFReader reads it, blank as DBFAggregate does */
+					byte b = buff.get(position);
+					if (b == 'Y' || b == 'T' || b == 't') {
+						setBit(data, row);
+					}
+					if (DBFAggregate.value(field, buff, position) == DBFAggregate.NULL) {
+						setBit(nulls, row);
+					}
+					return;
+
+				default:
+					setBit(nulls, row);
+			}
+		}
+
+		private void set(int row, Double value) {
+			if (value == null) {
+				setBit(nulls, row);
+			} else {
+				data.putDouble(row * 8, value.doubleValue());
+			}
+		}
+
+		private Double parseDouble(ByteBuffer buff, int position) throws DBFException {
+			byte[] text = new byte[field.getFieldLength()];
+			for (int i = 0; i < text.length; i++) {
+				text[i] = buff.get(position + i);
+			}
+
+			try {
+				return Double.valueOf(new String(text, "US-ASCII").trim());
+			} catch (NumberFormatException e) {
+				throw new DBFException("Failed to parse Float: " + e.getMessage(), e);
+			} catch (IOException e) {
+				throw new DBFException(e.getMessage(), e);
+			}
+		}
+
+		/* tells for every code of a character column whether its value matches */
+		boolean[] matchingCodes(DBFFilter filter) {
+			boolean[] matches = new boolean[dictionary.size()];
+			for (int i = 0; i < matches.length; i++) {
+				byte[] value = dictionary.bytes(i);
+				matches[i] = filter.matches(ByteBuffer.wrap(value), 0, value.length);
+			}
+			return matches;
+		}
+
+		IllegalArgumentException mismatch(String type) {
+			return new IllegalArgumentException("Field " + field.getName() + " of type " + field.getDataType() + " is not read as " + type);
+		}
+	}
+}
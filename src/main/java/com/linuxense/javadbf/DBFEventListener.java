@@ -0,0 +1,108 @@
+/*
+  DBFEventListener
+	Class for receiving events about table opens, scans, memo fetches and writes.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+
+/**
+	Receives events from every reader, writer and memo file in the JVM.
+
+	Events are off until a listener is installed with install(). While no
+	listener is installed the library only reads a static field at each
+	event point. Override the methods of the events of interest; the others
+	do nothing.
+
+	The listener is called on the thread doing the work, so it should be
+	quick. It is meant to forward the events to a profiler, for example as
+	Java Flight Recorder events on JDK 11 and later:
+
+	<pre>
+	class MemoFetchEvent extends jdk.jfr.Event {
+		int address;
+		int length;
+		long nanos;
+	}
+
+	DBFEventListener.install(new DBFEventListener() {
+		public void memoFetched(int address, int length, long nanos) {
+			MemoFetchEvent event = new MemoFetchEvent();
+			if (event.isEnabled()) {
+				event.address = address;
+				event.length = length;
+				event.nanos = nanos;
+				event.commit();
+			}
+		}
+	});
+	</pre>
+*/
+public abstract class DBFEventListener {
+
+	/* records a reader reads between two scanned() events */
+	public static final int SCAN_CHUNK_RECORDS = 4096;
+
+	private static volatile DBFEventListener listener;
+
+	/**
+		Installs the listener all events go to, replacing the current one.
+		Pass null to turn events off.
+	*/
+	public static void install(DBFEventListener listener) {
+		DBFEventListener.listener = listener;
+	}
+
+	/**
+		Returns the installed listener, or null if events are off.
+	*/
+	public static DBFEventListener installed() {
+		return listener;
+	}
+
+	/**
+		A DBFReader has read the header of a table.
+
+		@param file the table, or null if it was not opened from a file.
+		@param headerNanos time taken to read and parse the header.
+		@param fieldCount number of fields in the table.
+		@param fileSize size of the table in bytes, or -1 if unknown.
+	*/
+	public void tableOpened(File file, long headerNanos, int fieldCount, long fileSize) {
+	}
+
+	/**
+		A DBFReader has read another chunk of records, at most
+		SCAN_CHUNK_RECORDS of them. Deleted records are included.
+
+		@param records records read in the chunk.
+		@param bytes bytes read in the chunk.
+		@param nanos time from the first to the last record of the chunk.
+	*/
+	public void scanned(int records, long bytes, long nanos) {
+	}
+
+	/**
+		A memo has been read from a memo file.
+
+		@param address block address of the memo.
+		@param length length of the memo in bytes.
+		@param nanos time taken to read it.
+	*/
+	public void memoFetched(int address, int length, long nanos) {
+	}
+
+	/**
+		A DBFWriter has written out its records and header.
+
+		@param records records written by this writer.
+		@param bytes bytes written by this writer.
+		@param nanos time taken by write().
+	*/
+	public void writerFlushed(int records, long bytes, long nanos) {
+	}
+}
@@ -0,0 +1,551 @@
+/*
+  DBFExporter
+	Class for exporting the records of a table as CSV or JSON Lines.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+	Writes the records of a table as CSV (RFC 4180) or as JSON Lines, one
+	object per line.
+
+	Records are copied from the bytes read straight into the output bytes;
+	the Object array of DBFReader.nextRecord() is never built. CHARACTER
+	fields are trimmed on the right and only decoded and encoded again if
+	they hold bytes outside ASCII and the table and output character sets
+	differ. NUMBER and FLOAT digits are written as found, INTEGER fields as
+	decimal digits, DATE fields as ISO 8601 dates (yyyy-MM-dd) and LOGICAL
+	fields as true or false. Blank values are empty in CSV and null in JSON.
+	In JSON, numbers written in a form it does not allow, like +1, .5, 1.
+	or 007, go through BigDecimal, and values that are not numbers at all
+	are null. Deleted records are skipped.
+
+	The output character set has to be a superset of ASCII, like the
+	default UTF-8.
+*/
+public class DBFExporter {
+
+	public enum Format {
+		CSV, JSON_LINES
+	}
+
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+	private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+	private static final String ASCII_SAMPLE;
+
+	static {
+		StringBuilder sb = new StringBuilder();
+		for (char c = 0; c < 0x80; c++) {
+			sb.append(c);
+		}
+		ASCII_SAMPLE = sb.toString();
+	}
+
+	private final Format format;
+	private byte delimiter = ',';
+	private boolean headerLine = true;
+	private Charset charset = Charset.forName("UTF-8");
+
+	/* output of the running export */
+	private OutputStream out;
+	private final byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+	private int outputLength = 0;
+	private final byte[] digits = new byte[10];
+
+	public DBFExporter(Format format) {
+		if (format == null) {
+			throw new NullPointerException();
+		}
+		this.format = format;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public char getDelimiter() {
+		return (char) delimiter;
+	}
+
+	/**
+		Sets the CSV field separator, a comma by default.
+	*/
+	public void setDelimiter(char delimiter) {
+		if (delimiter >= 0x80 || delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			throw new IllegalArgumentException("Delimiter should be an ASCII character other than a quote or a line break");
+		}
+		this.delimiter = (byte) delimiter;
+	}
+
+	public boolean isHeaderLine() {
+		return headerLine;
+	}
+
+	/**
+		Sets whether CSV output starts with a line of field names, which it does
+		by default.
+	*/
+	public void setHeaderLine(boolean headerLine) {
+		this.headerLine = headerLine;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+		Sets the character set of the output, UTF-8 by default.
+	*/
+	public void setCharset(Charset charset) {
+		if (!isAsciiCompatible(charset)) {
+			throw new IllegalArgumentException(charset + " is not a superset of ASCII");
+		}
+		this.charset = charset;
+	}
+
+	/**
+		Exports a table to a file.
+
+		@return the number of records written.
+	*/
+	public long export(File table, File file) throws IOException {
+		DBFReader reader = new DBFReader(table);
+		try {
+			OutputStream t_out = new BufferedOutputStream(new FileOutputStream(file), OUTPUT_BUFFER_SIZE);
+			try {
+				return export(reader, t_out);
+			} finally {
+				t_out.close();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+		Writes the remaining records of the reader to the stream, which is
+		flushed but not closed.
+
+		@return the number of records written.
+	*/
+	public long export(DBFReader reader, OutputStream out) throws IOException {
+		this.out = out;
+		this.outputLength = 0;
+
+		try {
+			List<DBFField> fields = reader.header.getFieldList();
+			boolean copyText = reader.characterSet.equals(charset);
+			boolean asciiText = isAsciiCompatible(reader.characterSet);
+
+			byte[][] names = new byte[fields.size()][];
+			int[] offsets = new int[fields.size()];
+			int offset = 0;
+
+			for (int i = 0; i < names.length; i++) {
+				names[i] = fields.get(i).getName().getBytes(charset);
+				offsets[i] = offset;
+				offset += fields.get(i).getFieldLength();
+			}
+
+			if (format == Format.CSV && headerLine) {
+				for (int i = 0; i < names.length; i++) {
+					if (i > 0) {
+						put(delimiter);
+					}
+					putText(ByteBuffer.wrap(names[i]), 0, names[i].length);
+				}
+				putLineEnd();
+			}
+
+			long records = 0;
+			ByteBuffer buff;
+
+			while ((buff = reader.nextRecordBuffer()) != null) {
+				int start = buff.position();
+
+				if (format == Format.JSON_LINES) {
+					put((byte) '{');
+				}
+
+				for (int i = 0; i < names.length; i++) {
+					if (format == Format.JSON_LINES) {
+						if (i > 0) {
+							put((byte) ',');
+						}
+						putText(ByteBuffer.wrap(names[i]), 0, names[i].length);
+						put((byte) ':');
+					} else if (i > 0) {
+						put(delimiter);
+					}
+
+					DBFField field = fields.get(i);
+					putField(reader, field, buff, start + offsets[i], field.getFieldLength(), copyText, asciiText);
+				}
+
+				if (format == Format.JSON_LINES) {
+					put((byte) '}');
+				}
+				putLineEnd();
+
+				records++;
+				if (reader.statistics != null) {
+					reader.statistics.recordRead();
+				}
+			}
+
+			flushOutput();
+			out.flush();
+
+			return records;
+		} finally {
+			this.out = null;
+		}
+	}
+
+	private void putField(DBFReader reader, DBFField field, ByteBuffer buff, int position, int length, boolean copyText, boolean asciiText)
+			throws IOException {
+		switch (field.getDataType()) {
+
+			case CHARACTER:
+				int end = position + length;
+				while (end > position && (buff.get(end - 1) == ' ' || buff.get(end - 1) == 0)) {
+					end--;
+				}
+
+				if (copyText || asciiText && isAscii(buff, position, end)) {
+					putText(buff, position, end);
+				} else {
+					byte[] bytes = new byte[end - position];
+					for (int i = 0; i < bytes.length; i++) {
+						bytes[i] = buff.get(position + i);
+					}
+					putString(new String(bytes, reader.characterSet));
+				}
+				break;
+
+			case NUMBER:
+			case FLOAT:
+				putNumber(buff, position, length);
+				break;
+
+			case INTEGER:
+				putInt(buff.getInt(position));
+				break;
+
+			case DATE:
+				putDate(buff, position);
+				break;
+
+			case LOGICAL:
+				byte b = buff.get(position);
+				if (b == 'T' || b == 't' || b == 'Y' || b == 'y') {
+					putLiteral(TRUE);
+				} else if (b == 'F' || b == 'f' || b == 'N' || b == 'n') {
+					putLiteral(FALSE);
+				} else {
+					putNull();
+				}
+				break;
+
+			case MEMO:
+				String memo = null;
+				if (reader.header.getSignature() == DBFHeader.SIG_VISUAL_FOX_PRO && reader.memoSource != null) {
+					int address = buff.getInt(position);
+					memo = address > 0 ? reader.memoSource.getMemo(address) : null;
+				}
+
+				if (memo != null) {
+					putString(memo);
+				} else {
+					putNull();
+				}
+				break;
+
+			default:
+				putNull();
+		}
+	}
+
+	/* writes the digits of a number, or null if it is blank or holds the '?' or '*' of a missing value */
+	private void putNumber(ByteBuffer buff, int position, int length) throws IOException {
+		int start = position;
+		int end = position + length;
+
+		while (start < end && (buff.get(start) == ' ' || buff.get(start) == 0)) {
+			start++;
+		}
+		while (end > start && (buff.get(end - 1) == ' ' || buff.get(end - 1) == 0)) {
+			end--;
+		}
+
+		for (int i = start; i < end; i++) {
+			byte b = buff.get(i);
+			if (b == '?' || b == '*') {
+				start = end;
+				break;
+			}
+		}
+
+		if (start == end) {
+			putNull();
+			return;
+		}
+
+		if (format == Format.CSV || isJsonNumber(buff, start, end)) {
+			for (int i = start; i < end; i++) {
+				put(buff.get(i));
+			}
+			return;
+		}
+
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buff.get(start + i);
+		}
+
+		String text;
+		try {
+			text = new BigDecimal(new String(bytes, "US-ASCII")).toString();
+		} catch (NumberFormatException e) {
+			putNull();
+			return;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			put((byte) text.charAt(i));
+		}
+	}
+
+	/* tells whether the bytes are a JSON number: -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)? */
+	private static boolean isJsonNumber(ByteBuffer buff, int start, int end) {
+		int i = start;
+		if (i < end && buff.get(i) == '-') {
+			i++;
+		}
+
+		if (i < end && buff.get(i) == '0') {
+			i++;
+		} else if (i < end && buff.get(i) >= '1' && buff.get(i) <= '9') {
+			i = digitsEnd(buff, i, end);
+		} else {
+			return false;
+		}
+
+		if (i < end && buff.get(i) == '.') {
+			int digits = i + 1;
+			i = digitsEnd(buff, digits, end);
+			if (i == digits) {
+				return false;
+			}
+		}
+
+		if (i < end && (buff.get(i) == 'e' || buff.get(i) == 'E')) {
+			i++;
+			if (i < end && (buff.get(i) == '+' || buff.get(i) == '-')) {
+				i++;
+			}
+			int digits = i;
+			i = digitsEnd(buff, digits, end);
+			if (i == digits) {
+				return false;
+			}
+		}
+
+		return i == end;
+	}
+
+	private static int digitsEnd(ByteBuffer buff, int start, int end) {
+		while (start < end && buff.get(start) >= '0' && buff.get(start) <= '9') {
+			start++;
+		}
+		return start;
+	}
+
+	private void putInt(int value) throws IOException {
+		long t_value = value;
+
+		if (t_value < 0) {
+			put((byte) '-');
+			t_value = -t_value;
+		}
+
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + t_value % 10);
+			t_value /= 10;
+		} while (t_value > 0);
+
+		while (count > 0) {
+			put(digits[--count]);
+		}
+	}
+
+	/* writes yyyyMMdd as yyyy-MM-dd, or null if the field is blank or invalid */
+	private void putDate(ByteBuffer buff, int position) throws IOException {
+		for (int i = position; i < position + 8; i++) {
+			byte b = buff.get(i);
+			if (b < '0' || b > '9') {
+				putNull();
+				return;
+			}
+		}
+
+		int month = (buff.get(position + 4) - '0') * 10 + buff.get(position + 5) - '0';
+		int day = (buff.get(position + 6) - '0') * 10 + buff.get(position + 7) - '0';
+		if (month < 1 || month > 12 || day < 1 || day > 31) {
+			putNull();
+			return;
+		}
+
+		if (format == Format.JSON_LINES) {
+			put((byte) '"');
+		}
+
+		for (int i = position; i < position + 8; i++) {
+			if (i == position + 4 || i == position + 6) {
+				put((byte) '-');
+			}
+			put(buff.get(i));
+		}
+
+		if (format == Format.JSON_LINES) {
+			put((byte) '"');
+		}
+	}
+
+	private void putString(String value) throws IOException {
+		byte[] bytes = value.getBytes(charset);
+		putText(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/* writes ASCII compatible text as a quoted JSON string or a CSV field, quoted where needed */
+	private void putText(ByteBuffer buff, int start, int end) throws IOException {
+		if (format == Format.JSON_LINES) {
+			put((byte) '"');
+
+			for (int i = start; i < end; i++) {
+				byte b = buff.get(i);
+
+				if (b == '"' || b == '\\') {
+					put((byte) '\\');
+					put(b);
+				} else if (b == '\n') {
+					put((byte) '\\');
+					put((byte) 'n');
+				} else if (b == '\r') {
+					put((byte) '\\');
+					put((byte) 'r');
+				} else if (b == '\t') {
+					put((byte) '\\');
+					put((byte) 't');
+				} else if (b >= 0 && b < 0x20) {
+					put((byte) '\\');
+					put((byte) 'u');
+					put((byte) '0');
+					put((byte) '0');
+					put(HEX[b >> 4]);
+					put(HEX[b & 0xF]);
+				} else {
+					put(b);
+				}
+			}
+
+			put((byte) '"');
+			return;
+		}
+
+		boolean quoted = false;
+		for (int i = start; i < end && !quoted; i++) {
+			byte b = buff.get(i);
+			quoted = b == delimiter || b == '"' || b == '\r' || b == '\n';
+		}
+
+		if (quoted) {
+			put((byte) '"');
+		}
+
+		for (int i = start; i < end; i++) {
+			byte b = buff.get(i);
+			if (b == '"') {
+				put(b);
+			}
+			put(b);
+		}
+
+		if (quoted) {
+			put((byte) '"');
+		}
+	}
+
+	private void putNull() throws IOException {
+		if (format == Format.JSON_LINES) {
+			putLiteral(NULL);
+		}
+	}
+
+	private void putLiteral(byte[] literal) throws IOException {
+		for (byte b : literal) {
+			put(b);
+		}
+	}
+
+	private void putLineEnd() throws IOException {
+		if (format == Format.CSV) {
+			put((byte) '\r');
+		}
+		put((byte) '\n');
+	}
+
+	private void put(byte b) throws IOException {
+		if (outputLength == output.length) {
+			flushOutput();
+		}
+		output[outputLength++] = b;
+	}
+
+	private void flushOutput() throws IOException {
+		out.write(output, 0, outputLength);
+		outputLength = 0;
+	}
+
+	private static boolean isAscii(ByteBuffer buff, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buff.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAsciiCompatible(Charset charset) {
+		if (!charset.canEncode()) {
+			return false;
+		}
+
+		byte[] bytes = ASCII_SAMPLE.getBytes(charset);
+		byte[] ascii = new byte[ASCII_SAMPLE.length()];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) i;
+		}
+
+		return Arrays.equals(bytes, ascii);
+	}
+}
@@ -88,7 +88,7 @@ public class DBFField {
 		ByteBuffer buff = ByteBuffer.allocate(32);	
 		buff.limit(1);
 		
-		channel.read(buff);
+		DBFHeader.readFully( channel, buff);
 		
 		buff.flip();
 		
@@ -97,8 +97,31 @@ public class DBFField {
 		}
 		
 		buff.limit(32);
-		channel.read(buff);
+		DBFHeader.readFully( channel, buff);
 		buff.flip();
+
+		return parse( buff);
+	}
+
+	/**
+	Creates a DBFField object from the buffer, which is positioned at the
+	field descriptor or at the terminator following the last one.
+
+	@param buff ByteBuffer
+	@return Returns the created DBFField object, or null at the terminator.
+	*/
+	protected static DBFField createField( ByteBuffer buff) {
+
+		if( buff.get( buff.position()) == (byte)0x0d) { /* 0 */
+			buff.get();
+			return null;
+		}
+
+		return parse( buff);
+	}
+
+	private static DBFField parse( ByteBuffer buff) {
+
 		buff.order(ByteOrder.LITTLE_ENDIAN);
 				
 		DBFField field = new DBFField();
@@ -136,6 +159,19 @@ public class DBFField {
 	throws IOException {
 		ByteBuffer buff = ByteBuffer.allocate(32);	
 
+		write( buff);
+		
+		buff.flip();
+		
+		byteChannel.write(buff);
+	}
+
+	/**
+		Puts the content of DBFField object into the buffer as per
+		DBF format specifications.
+	*/
+	protected void write( ByteBuffer buff) {
+
 		// Field Name
 		buff.put(fieldName);        /* 0-10 */
 
@@ -150,10 +186,6 @@ public class DBFField {
 		buff.put( (byte)0x00); /* 23 */
 		buff.put( new byte[7]); /* 24-30*/
 		buff.put( (byte)0x00); /* 31 */
-		
-		buff.flip();
-		
-		byteChannel.write(buff);
 	}
 
 	/**
@@ -250,12 +282,17 @@ public class DBFField {
 		Sets the data type of the field.
 
 		@param type of the field. One of the following:<br>
-		C, L, N, F, D, M
+		C, L, N, F, D, M, I
 	*/
 	public void setDataType( byte value) {
 
 		switch( value) {
 
+			case 'I':
+				this.fieldLength = 4;
+				this.dataType = (char)value;
+				break;
+
 			case 'D':
 				this.fieldLength = 8; /* fall through */
 			case 'C':
@@ -289,6 +326,10 @@ public class DBFField {
 			throw new UnsupportedOperationException( "Cannot do this on a Date field");
 		}
 
+		if( this.dataType == DataType.INTEGER.code) {
+			throw new UnsupportedOperationException( "Cannot do this on an Integer field");
+		}
+
 		fieldLength = value;
 	}
 
@@ -0,0 +1,224 @@
+/*
+  DBFFilter
+	Class for matching the records of a table against a range of a field.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+/*
+ Matches the records whose value of a field lies between two bounds, both
+ included, straight from the record bytes. Numbers, dates and logicals are
+ compared as the longs of DBFAggregate.value(), characters byte by byte
+ without the trailing spaces. Blank values never match.
+*/
+final class DBFFilter {
+
+	/* bounds of an open range */
+	static final long LOWEST = Long.MIN_VALUE + 1;
+	static final long HIGHEST = Long.MAX_VALUE;
+
+	final DBFField field;
+	final int offset;
+
+	final long from;
+	final long to;
+	final byte[] fromBytes;
+	final byte[] toBytes;
+
+	private DBFFilter(DBFField field, int offset, long from, long to, byte[] fromBytes, byte[] toBytes) {
+		this.field = field;
+		this.offset = offset;
+		this.from = from;
+		this.to = to;
+		this.fromBytes = fromBytes;
+		this.toBytes = toBytes;
+	}
+
+	/**
+		@param from the lowest value, or null for no lower bound.
+		@param to the highest value, or null for no upper bound.
+	*/
+	static DBFFilter range(List<DBFField> fields, Charset charset, String name, Object from, Object to) {
+		int offset = 1;
+		for (DBFField field : fields) {
+			if (field.getName().equalsIgnoreCase(name)) {
+				return range(field, offset, charset, from, to);
+			}
+			offset += field.getFieldLength();
+		}
+		throw new IllegalArgumentException("No field " + name);
+	}
+
+	private static DBFFilter range(DBFField field, int offset, Charset charset, Object from, Object to) {
+		switch (field.getDataType()) {
+
+			case CHARACTER:
+				return new DBFFilter(field, offset, 0, 0, bytes(field, from, charset), bytes(field, to, charset));
+
+			case NUMBER:
+			case FLOAT:
+			case INTEGER:
+				int scale = field.getDataType() == DBFField.DataType.INTEGER ? 0 : field.getDecimalCount();
+				return new DBFFilter(field, offset, number(field, from, scale, RoundingMode.CEILING, LOWEST), number(field, to, scale, RoundingMode.FLOOR,
+						HIGHEST), null, null);
+
+			case DATE:
+				return new DBFFilter(field, offset, date(field, from, LOWEST), date(field, to, HIGHEST), null, null);
+
+			case LOGICAL:
+				return new DBFFilter(field, offset, logical(field, from, LOWEST), logical(field, to, HIGHEST), null, null);
+
+			default:
+				throw new IllegalArgumentException("Cannot filter on field " + field.getName() + " of type " + field.getDataType());
+		}
+	}
+
+	private static byte[] bytes(DBFField field, Object value, Charset charset) {
+		if (value == null) {
+			return null;
+		}
+		if (!(value instanceof String)) {
+			throw mismatch(field, value);
+		}
+
+		byte[] bytes = ((String) value).getBytes(charset);
+		int length = bytes.length;
+		while (length > 0 && bytes[length - 1] == ' ') {
+			length--;
+		}
+
+		byte[] trimmed = new byte[length];
+		System.arraycopy(bytes, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	private static long number(DBFField field, Object value, int scale, RoundingMode rounding, long open) {
+		if (value == null) {
+			return open;
+		}
+
+		BigDecimal decimal;
+		if (value instanceof BigDecimal) {
+			decimal = (BigDecimal) value;
+		} else if (value instanceof Double || value instanceof Float) {
+			decimal = BigDecimal.valueOf(((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			decimal = new BigDecimal(value.toString());
+		} else {
+			throw mismatch(field, value);
+		}
+
+		BigInteger scaled = decimal.setScale(scale, rounding).unscaledValue();
+		if (scaled.bitLength() > 63) {
+			return scaled.signum() > 0 ? HIGHEST : LOWEST;
+		}
+		return Math.max(LOWEST, scaled.longValue());
+	}
+
+	private static long date(DBFField field, Object value, long open) {
+		if (value == null) {
+			return open;
+		}
+
+		LocalDate date;
+		if (value instanceof LocalDate) {
+			date = (LocalDate) value;
+		} else if (value instanceof Date) {
+			date = LocalDate.fromDateFields((Date) value);
+		} else {
+			throw mismatch(field, value);
+		}
+
+		return date.getYear() * 10000L + date.getMonthOfYear() * 100 + date.getDayOfMonth();
+	}
+
+	private static long logical(DBFField field, Object value, long open) {
+		if (value == null) {
+			return open;
+		}
+		if (!(value instanceof Boolean)) {
+			throw mismatch(field, value);
+		}
+		return ((Boolean) value).booleanValue() ? 1 : 0;
+	}
+
+	private static IllegalArgumentException mismatch(DBFField field, Object value) {
+		return new IllegalArgumentException("Cannot compare field " + field.getName() + " of type " + field.getDataType() + " with "
+				+ value.getClass().getName());
+	}
+
+	/**
+		Tells whether the record starting at the deleted flag at start matches.
+	*/
+	boolean matches(ByteBuffer buff, int start) throws DBFException {
+		int position = start + offset;
+
+		if (field.getDataType() != DBFField.DataType.CHARACTER) {
+			return matches(DBFAggregate.value(field, buff, position));
+		}
+
+		return matches(buff, position, field.getFieldLength());
+	}
+
+	/**
+		Tells whether a value of a field other than a character field, as
+		returned by DBFAggregate.value(), matches.
+	*/
+	boolean matches(long value) {
+		return value != DBFAggregate.NULL && value >= from && value <= to;
+	}
+
+	/**
+		Tells whether the length bytes of a character value from position
+		match. A blank value does not.
+	*/
+	boolean matches(ByteBuffer buff, int position, int length) {
+		while (length > 0 && buff.get(position + length - 1) == ' ') {
+			length--;
+		}
+		if (length == 0) {
+			return false;
+		}
+
+		return (fromBytes == null || compare(buff, position, length, fromBytes) >= 0) && (toBytes == null || compare(buff, position, length, toBytes) <= 0);
+	}
+
+	/* compares the bytes of the buffer with the bound, unsigned */
+	private static int compare(ByteBuffer buff, int position, int length, byte[] bound) {
+		int n = Math.min(length, bound.length);
+		for (int i = 0; i < n; i++) {
+			int c = (buff.get(position + i) & 0xFF) - (bound[i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length - bound.length;
+	}
+
+	/**
+		Tells whether a block of records with values between min and max, as
+		kept by DBFZoneMap, may hold a matching record. A block without any
+		value has a min above its max.
+	*/
+	boolean mayMatch(long min, long max) {
+		if (field.getDataType() != DBFField.DataType.CHARACTER) {
+			return max >= from && min <= to;
+		}
+
+		return (fromBytes == null || max >= DBFZoneMap.prefix(fromBytes, 0, fromBytes.length))
+				&& (toBytes == null || min <= DBFZoneMap.prefix(toBytes, 0, toBytes.length));
+	}
+}
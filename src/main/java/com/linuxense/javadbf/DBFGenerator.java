@@ -0,0 +1,674 @@
+/*
+  DBFGenerator
+	Class for generating synthetic DBF (and FPT) files of any size.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+/**
+	Generates DBF files with random content for scale testing.
+
+	Define the fields with the add*Field() methods, configure the record count,
+	deleted ratio, code page and so on, and call generate(). Records are written
+	through DBFWriter so the output is the library's own format. If memo fields
+	are defined a Visual FoxPro table is written together with an FPT file of the
+	same base name.
+
+	The same seed and settings always produce the same file.
+
+	The class can also be run from the command line, see main().
+*/
+public class DBFGenerator {
+
+	/**
+		How random values are spread over their range.
+	*/
+	public enum Distribution {
+		/* every value equally likely */
+		UNIFORM,
+		/* values at the low end of the range (and the first dictionary entries) dominate */
+		SKEWED
+	}
+
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 ".toCharArray();
+	private static final char[] ACCENTED = "\u00e9\u00fc\u00f1\u00e7\u00e0\u00f6\u00c9\u00d1".toCharArray();
+
+	/* records handed to DBFWriter.addRecords() at once when an executor is set */
+	private static final int BATCH_SIZE = DBFWriter.RECORDS_PER_CHUNK * DBFWriter.CHUNKS_IN_FLIGHT;
+
+	private final List<FieldGenerator> fields = new ArrayList<FieldGenerator>();
+
+	private int recordCount = 1000;
+	private long seed = 0;
+	private double deletedRatio = 0;
+	private double nullRatio = 0;
+	private Distribution distribution = Distribution.UNIFORM;
+	private Charset charset = LanguageDriver.DEFAULT_CHARSET;
+	private ExecutorService executor = null;
+
+	/* state of a single generate() run */
+	private Random random;
+	private char[] alphabet;
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	public void setRecordCount(int recordCount) {
+		if (recordCount < 0) {
+			throw new IllegalArgumentException("Record count should not be negative");
+		}
+		this.recordCount = recordCount;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public double getDeletedRatio() {
+		return deletedRatio;
+	}
+
+	/**
+		Share of the records, between 0 and 1, written with the deleted flag.
+	*/
+	public void setDeletedRatio(double deletedRatio) {
+		this.deletedRatio = checkRatio(deletedRatio);
+	}
+
+	public double getNullRatio() {
+		return nullRatio;
+	}
+
+	/**
+		Share of the values, between 0 and 1, left empty. Integer and logical
+		fields have no empty value and are never null.
+	*/
+	public void setNullRatio(double nullRatio) {
+		this.nullRatio = checkRatio(nullRatio);
+	}
+
+	public Distribution getDistribution() {
+		return distribution;
+	}
+
+	public void setDistribution(Distribution distribution) {
+		if (distribution == null) {
+			throw new NullPointerException();
+		}
+		this.distribution = distribution;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+		Sets the character set text is encoded in. The code page written to the
+		header follows it.
+
+		@throws IllegalArgumentException if there is no code page for the character set
+	*/
+	public void setCharset(Charset charset) {
+		LanguageDriver.fromCharset(charset);
+		this.charset = charset;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+		Encodes records on the given executor, see DBFWriter.addRecords(). Ignored
+		for tables with memo fields. The executor is not shut down.
+	*/
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+		Adds a character field.
+
+		@param cardinality number of distinct values, or 0 for a new random value in every record.
+	*/
+	public void addCharacterField(String name, int length, int cardinality) {
+		if (cardinality < 0) {
+			throw new IllegalArgumentException("Cardinality should not be negative");
+		}
+		fields.add(new CharacterGenerator(field(name, DBFField.DataType.CHARACTER, length, 0), cardinality));
+	}
+
+	/**
+		Adds a numeric field holding values between min and max.
+	*/
+	public void addNumberField(String name, int length, int decimalCount, long min, long max) {
+		fields.add(new NumberGenerator(field(name, DBFField.DataType.NUMBER, length, decimalCount), min, max));
+	}
+
+	/**
+		Adds a numeric field holding any value that fits the field.
+	*/
+	public void addNumberField(String name, int length, int decimalCount) {
+		long max = largestWholePart(length, decimalCount);
+		addNumberField(name, length, decimalCount, -max / 10, max);
+	}
+
+	/**
+		Adds a float field holding values between min and max.
+	*/
+	public void addFloatField(String name, int length, int decimalCount, long min, long max) {
+		fields.add(new NumberGenerator(field(name, DBFField.DataType.FLOAT, length, decimalCount), min, max));
+	}
+
+	/**
+		Adds a float field holding any value that fits the field.
+	*/
+	public void addFloatField(String name, int length, int decimalCount) {
+		long max = largestWholePart(length, decimalCount);
+		addFloatField(name, length, decimalCount, -max / 10, max);
+	}
+
+	public void addIntegerField(String name, int min, int max) {
+		if (min > max) {
+			throw new IllegalArgumentException("Minimum should not be greater than maximum");
+		}
+		fields.add(new IntegerGenerator(field(name, DBFField.DataType.INTEGER, 4, 0), min, max));
+	}
+
+	/**
+		Adds a date field.
+
+		@param sequential if true the dates grow with the record number, like a table appended in date order.
+	*/
+	public void addDateField(String name, LocalDate from, LocalDate to, boolean sequential) {
+		if (from.isAfter(to)) {
+			throw new IllegalArgumentException("Date range should not end before it starts");
+		}
+		fields.add(new DateGenerator(field(name, DBFField.DataType.DATE, 8, 0), from, to, sequential));
+	}
+
+	/**
+		@param trueRatio share of the records, between 0 and 1, holding true.
+	*/
+	public void addLogicalField(String name, double trueRatio) {
+		fields.add(new LogicalGenerator(field(name, DBFField.DataType.LOGICAL, 1, 0), checkRatio(trueRatio)));
+	}
+
+	/**
+		Adds a memo field with memos between minLength and maxLength characters long.
+	*/
+	public void addMemoField(String name, int minLength, int maxLength) {
+		if (minLength < 0 || minLength > maxLength) {
+			throw new IllegalArgumentException("Invalid memo length range");
+		}
+		fields.add(new MemoGenerator(field(name, DBFField.DataType.MEMO, 4, 0), minLength, maxLength));
+	}
+
+	/**
+		Writes the table to the given file, replacing it. If memo fields are
+		defined the memos are written to an FPT file of the same base name.
+
+		@return the memo file, or null if the table has no memo fields.
+	*/
+	public File generate(File dbfFile) throws DBFException {
+		if (fields.isEmpty()) {
+			throw new DBFException("Should have at least one field");
+		}
+
+		File memoFile = hasMemoFields() ? new File(dbfFile.getParentFile(), dbfFile.getName().replaceAll("\\.[^.]+$", "") + ".fpt") : null;
+
+		dbfFile.delete();
+		if (memoFile != null) {
+			memoFile.delete();
+		}
+
+		random = new Random(seed);
+		alphabet = alphabet(charset);
+
+		List<DBFField> fieldList = new ArrayList<DBFField>();
+		for (FieldGenerator generator : fields) {
+			generator.prepare();
+			fieldList.add(generator.field);
+		}
+
+		DBFWriter writer = memoFile == null ? new DBFWriter(dbfFile) : new DBFWriter(dbfFile, memoFile);
+		try {
+			writer.setCharactersetName(charset.name());
+			writer.header.setLanguageDriver(LanguageDriver.fromCharset(charset));
+			writer.setFields(fieldList);
+
+			if (executor != null && memoFile == null) {
+				writeBatches(writer);
+			} else {
+				for (int i = 0; i < recordCount; i++) {
+					Object[] values = nextRecord(i);
+					if (nextDeleted()) {
+						writer.addDeletedRecord(values);
+					} else {
+						writer.addRecord(values);
+					}
+				}
+			}
+
+			writer.write();
+		} finally {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				throw new DBFException(e.getMessage(), e);
+			}
+		}
+
+		return memoFile;
+	}
+
+	private void writeBatches(DBFWriter writer) throws DBFException {
+		List<Object[]> batch = new ArrayList<Object[]>(BATCH_SIZE);
+		BitSet deleted = new BitSet(BATCH_SIZE);
+
+		for (int i = 0; i < recordCount; i++) {
+			Object[] values = nextRecord(i);
+			deleted.set(batch.size(), nextDeleted());
+			batch.add(values);
+
+			if (batch.size() == BATCH_SIZE || i == recordCount - 1) {
+				writer.addRecords(batch, deleted, executor);
+				batch.clear();
+				deleted.clear();
+			}
+		}
+	}
+
+	private Object[] nextRecord(int index) {
+		Object[] values = new Object[fields.size()];
+		for (int i = 0; i < values.length; i++) {
+			FieldGenerator generator = fields.get(i);
+			values[i] = generator.nullable && random.nextDouble() < nullRatio ? null : generator.next(index);
+		}
+		return values;
+	}
+
+	private boolean nextDeleted() {
+		return deletedRatio > 0 && random.nextDouble() < deletedRatio;
+	}
+
+	private boolean hasMemoFields() {
+		for (FieldGenerator generator : fields) {
+			if (generator.field.getDataType() == DBFField.DataType.MEMO) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* a number in [0, 1) following the configured distribution */
+	private double nextFraction() {
+		double fraction = random.nextDouble();
+		return distribution == Distribution.SKEWED ? fraction * fraction * fraction : fraction;
+	}
+
+	private long nextLong(long min, long max) {
+		return min + (long) (nextFraction() * ((double) max - min + 1));
+	}
+
+	private String nextText(int minLength, int maxLength) {
+		int length = minLength + random.nextInt(maxLength - minLength + 1);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = alphabet[random.nextInt(alphabet.length)];
+		}
+		return new String(chars);
+	}
+
+	private static char[] alphabet(Charset charset) {
+		CharsetEncoder encoder = charset.newEncoder();
+		StringBuilder sb = new StringBuilder().append(ALPHABET);
+		for (char c : ACCENTED) {
+			if (encoder.canEncode(c)) {
+				sb.append(c);
+			}
+		}
+		return sb.toString().toCharArray();
+	}
+
+	private static DBFField field(String name, DBFField.DataType type, int length, int decimalCount) {
+		DBFField field = new DBFField();
+		field.setName(name);
+		field.setDataType((byte) type.code());
+		if (type != DBFField.DataType.DATE && type != DBFField.DataType.INTEGER) {
+			field.setFieldLength(length);
+			field.setDecimalCount(decimalCount);
+		}
+		return field;
+	}
+
+	private static long largestWholePart(int length, int decimalCount) {
+		int digits = Math.min(18, length - (decimalCount > 0 ? decimalCount + 1 : 0));
+		if (digits <= 0) {
+			throw new IllegalArgumentException("Field is too short for its decimal count");
+		}
+		long max = 1;
+		for (int i = 0; i < digits; i++) {
+			max *= 10;
+		}
+		return max - 1;
+	}
+
+	private static double checkRatio(double ratio) {
+		if (ratio < 0 || ratio > 1) {
+			throw new IllegalArgumentException("Ratio should be between 0 and 1");
+		}
+		return ratio;
+	}
+
+	private abstract class FieldGenerator {
+		final DBFField field;
+		final boolean nullable;
+
+		FieldGenerator(DBFField field, boolean nullable) {
+			this.field = field;
+			this.nullable = nullable;
+		}
+
+		/* called once at the start of every generate() run */
+		void prepare() {
+		}
+
+		abstract Object next(int index);
+	}
+
+	private class CharacterGenerator extends FieldGenerator {
+		private final int cardinality;
+		private String[] dictionary;
+
+		CharacterGenerator(DBFField field, int cardinality) {
+			super(field, true);
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		void prepare() {
+			dictionary = new String[cardinality];
+			for (int i = 0; i < cardinality; i++) {
+				dictionary[i] = nextText(1, field.getFieldLength());
+			}
+		}
+
+		@Override
+		Object next(int index) {
+			if (cardinality > 0) {
+				return dictionary[(int) (nextFraction() * cardinality)];
+			}
+			return nextText(1, field.getFieldLength());
+		}
+	}
+
+	private class NumberGenerator extends FieldGenerator {
+		private final long min;
+		private final long max;
+
+		NumberGenerator(DBFField field, long min, long max) {
+			super(field, true);
+			if (min > max) {
+				throw new IllegalArgumentException("Minimum should not be greater than maximum");
+			}
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		Object next(int index) {
+			int scale = field.getDecimalCount();
+			BigDecimal value = BigDecimal.valueOf(nextLong(min, max));
+			if (scale > 0) {
+				BigDecimal fraction = new BigDecimal(nextDigits(scale), scale);
+				value = value.signum() < 0 ? value.subtract(fraction) : value.add(fraction);
+				if (value.compareTo(BigDecimal.valueOf(max)) > 0 || value.compareTo(BigDecimal.valueOf(min)) < 0) {
+					value = value.setScale(0, RoundingMode.DOWN).setScale(scale);
+				}
+			}
+			if (field.getDataType() == DBFField.DataType.FLOAT) {
+				return Double.valueOf(value.doubleValue());
+			}
+			return value;
+		}
+	}
+
+	/* a uniform number of the given count of decimal digits, beyond the range of an int or long */
+	private BigInteger nextDigits(int digits) {
+		BigInteger bound = BigInteger.TEN.pow(digits);
+		BigInteger value;
+		do {
+			value = new BigInteger(bound.bitLength(), random);
+		} while (value.compareTo(bound) >= 0);
+		return value;
+	}
+
+	private class IntegerGenerator extends FieldGenerator {
+		private final int min;
+		private final int max;
+
+		IntegerGenerator(DBFField field, int min, int max) {
+			super(field, false);
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		Object next(int index) {
+			return Integer.valueOf((int) nextLong(min, max));
+		}
+	}
+
+	private class DateGenerator extends FieldGenerator {
+		private final LocalDate from;
+		private final int days;
+		private final boolean sequential;
+
+		DateGenerator(DBFField field, LocalDate from, LocalDate to, boolean sequential) {
+			super(field, true);
+			this.from = from;
+			this.days = Days.daysBetween(from, to).getDays();
+			this.sequential = sequential;
+		}
+
+		@Override
+		Object next(int index) {
+			if (sequential) {
+				return from.plusDays((int) ((long) index * (days + 1) / Math.max(1, recordCount)));
+			}
+			return from.plusDays((int) nextLong(0, days));
+		}
+	}
+
+	private class LogicalGenerator extends FieldGenerator {
+		private final double trueRatio;
+
+		LogicalGenerator(DBFField field, double trueRatio) {
+			super(field, false);
+			this.trueRatio = trueRatio;
+		}
+
+		@Override
+		Object next(int index) {
+			return Boolean.valueOf(random.nextDouble() < trueRatio);
+		}
+	}
+
+	private class MemoGenerator extends FieldGenerator {
+		private final int minLength;
+		private final int maxLength;
+
+		MemoGenerator(DBFField field, int minLength, int maxLength) {
+			super(field, true);
+			this.minLength = minLength;
+			this.maxLength = maxLength;
+		}
+
+		@Override
+		Object next(int index) {
+			int length = (int) nextLong(minLength, maxLength);
+			return nextText(length, length);
+		}
+	}
+
+	/**
+		Generates a table from the command line:
+		<pre>
+		java -cp javadbf.jar com.linuxense.javadbf.DBFGenerator [options] file.dbf
+
+		-records n           number of records (default 1000)
+		-fields spec         comma separated NAME:TYPE[:args] definitions, where TYPE and args are
+		                       C:length[:cardinality]
+		                       N:length[:decimals[:min:max]]
+		                       F:length[:decimals[:min:max]]
+		                       I[:min:max]
+		                       D[:from:to[:seq]]     dates as yyyy-MM-dd
+		                       L[:trueRatio]
+		                       M[:minLength:maxLength]
+		-deleted ratio       share of records flagged as deleted
+		-nulls ratio         share of values left empty
+		-distribution name   uniform or skewed
+		-codepage charset    character set of the code page, e.g. cp850
+		-seed n              random seed
+		-threads n           encode records on n threads
+		</pre>
+	*/
+	public static void main(String[] args) throws Exception {
+		DBFGenerator generator = new DBFGenerator();
+		String fieldSpec = "ID:N:10:0,NAME:C:40:1000,AMOUNT:N:12:2,CREATED:D,ACTIVE:L";
+		int threads = 0;
+		File file = null;
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("-")) {
+				file = new File(arg);
+			} else if (i + 1 == args.length) {
+				usage("Missing value for " + arg);
+			} else if (arg.equals("-records")) {
+				generator.setRecordCount(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-fields")) {
+				fieldSpec = args[++i];
+			} else if (arg.equals("-deleted")) {
+				generator.setDeletedRatio(Double.parseDouble(args[++i]));
+			} else if (arg.equals("-nulls")) {
+				generator.setNullRatio(Double.parseDouble(args[++i]));
+			} else if (arg.equals("-distribution")) {
+				generator.setDistribution(Distribution.valueOf(args[++i].toUpperCase()));
+			} else if (arg.equals("-codepage")) {
+				generator.setCharset(Charset.forName(args[++i]));
+			} else if (arg.equals("-seed")) {
+				generator.setSeed(Long.parseLong(args[++i]));
+			} else if (arg.equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else {
+				usage("Unknown option " + arg);
+			}
+		}
+
+		if (file == null) {
+			usage("Missing output file");
+		}
+
+		for (String spec : fieldSpec.split(",")) {
+			generator.addField(spec.trim());
+		}
+
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			generator.setExecutor(executor);
+
+			long start = System.currentTimeMillis();
+			File memoFile = generator.generate(file);
+			long millis = System.currentTimeMillis() - start;
+
+			System.out.println("Wrote " + generator.getRecordCount() + " records (" + file.length() + " bytes) to " + file + " in " + millis + " ms");
+			if (memoFile != null) {
+				System.out.println("Wrote memos (" + memoFile.length() + " bytes) to " + memoFile);
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/* adds a field from its command line definition */
+	private void addField(String spec) {
+		String[] parts = spec.split(":");
+		if (parts.length < 2 || parts[1].length() != 1) {
+			throw new IllegalArgumentException("Invalid field definition " + spec);
+		}
+
+		String name = parts[0];
+		switch (DBFField.DataType.fromCode(parts[1].toUpperCase().charAt(0))) {
+			case CHARACTER:
+				addCharacterField(name, intArg(parts, 2, 20), intArg(parts, 3, 0));
+				break;
+			case NUMBER:
+				if (parts.length > 5) {
+					addNumberField(name, intArg(parts, 2, 10), intArg(parts, 3, 0), Long.parseLong(parts[4]), Long.parseLong(parts[5]));
+				} else {
+					addNumberField(name, intArg(parts, 2, 10), intArg(parts, 3, 0));
+				}
+				break;
+			case FLOAT:
+				if (parts.length > 5) {
+					addFloatField(name, intArg(parts, 2, 10), intArg(parts, 3, 0), Long.parseLong(parts[4]), Long.parseLong(parts[5]));
+				} else {
+					addFloatField(name, intArg(parts, 2, 10), intArg(parts, 3, 0));
+				}
+				break;
+			case INTEGER:
+				addIntegerField(name, intArg(parts, 2, 0), intArg(parts, 3, Integer.MAX_VALUE));
+				break;
+			case DATE:
+				LocalDate from = parts.length > 2 ? new LocalDate(parts[2]) : new LocalDate(2000, 1, 1);
+				LocalDate to = parts.length > 3 ? new LocalDate(parts[3]) : new LocalDate(2020, 12, 31);
+				addDateField(name, from, to, parts.length > 4 && parts[4].equalsIgnoreCase("seq"));
+				break;
+			case LOGICAL:
+				addLogicalField(name, parts.length > 2 ? Double.parseDouble(parts[2]) : 0.5);
+				break;
+			case MEMO:
+				addMemoField(name, intArg(parts, 2, 0), intArg(parts, 3, 1000));
+				break;
+		}
+	}
+
+	private static int intArg(String[] parts, int index, int defaultValue) {
+		return parts.length > index ? Integer.parseInt(parts[index]) : defaultValue;
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("usage: DBFGenerator [-records n] [-fields spec] [-deleted ratio] [-nulls ratio]"
+				+ " [-distribution uniform|skewed] [-codepage charset] [-seed n] [-threads n] file.dbf");
+		System.exit(1);
+	}
+}
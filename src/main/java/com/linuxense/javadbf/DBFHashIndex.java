@@ -0,0 +1,590 @@
+/*
+  DBFHashIndex
+	Class for the .dbh side file hashing the keys of a table to its records.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+	Hash index of some fields of a table, for tables without an index of
+	their own. It is built with one scan of the table and kept in a side
+	file next to it, named after the table and the fields, like
+	clients.CLIENTID.dbh.
+
+	<pre>
+	DBFHashIndex index = DBFHashIndex.open(new File("clients.dbf"), "CLIENTID");
+	for (int record : index.find("C-1042")) {
+		...
+	}
+	</pre>
+
+	The side file is an open addressing hash table of two int arrays, the
+	hash of each key and its record number, memory mapped when opened, so a
+	lookup reads a few slots and the records they point at. Keys are not
+	stored: the records are read to check them, which also leaves out hash
+	collisions and deleted records. Tables of more than 2^26 records cannot
+	be indexed.
+
+	open() picks up records appended to the table since the index was built
+	by hashing only those, and rebuilds the index if the table was replaced
+	or packed. The side file is mapped only once it is up to date, as a
+	mapped file cannot be replaced on Windows; for the same reason another
+	index of the same fields mapped in the process keeps it from being
+	updated there. Records updated in place are not noticed; build() the index
+	again after updating key fields. Keys are given as for
+	DBFReader.setFilter(). find() may be called from several threads.
+*/
+public final class DBFHashIndex implements Closeable {
+
+	/* "DBH1" */
+	private static final int SIGNATURE = 0x31484244;
+
+	private static final int HEADER_LENGTH = 32;
+
+	/* slots are at most half full */
+	private static final int MIN_CAPACITY = 1024;
+
+	/* the slots are mapped as one buffer, of at most 2GB, and their offsets are ints */
+	private static final int MAX_CAPACITY = 1 << 27;
+
+	private final File table;
+	private final DBFReader reader;
+	private final DBFField[] fields;
+	private final int[] offsets;
+
+	private int recordCount;
+	private int lastRecordChecksum;
+	private int capacity;
+
+	/* slots while building, mapped from the side file once saved */
+	private int[] hashes;
+	private int[] records;
+	private ByteBuffer mapped;
+
+	private DBFHashIndex(File table, String[] names) throws DBFException {
+		if (names.length == 0) {
+			throw new IllegalArgumentException("No fields to index");
+		}
+
+		this.table = table.getAbsoluteFile();
+		this.reader = new DBFReader(this.table);
+
+		List<DBFField> tableFields = reader.header.getFieldList();
+		fields = new DBFField[names.length];
+		offsets = new int[names.length];
+
+		for (int k = 0; k < names.length; k++) {
+			int offset = 1;
+			for (DBFField field : tableFields) {
+				if (field.getName().equalsIgnoreCase(names[k])) {
+					fields[k] = field;
+					offsets[k] = offset;
+				}
+				offset += field.getFieldLength();
+			}
+
+			if (fields[k] == null) {
+				close(reader);
+				throw new IllegalArgumentException("No field " + names[k]);
+			}
+			if (fields[k].getDataType() == DBFField.DataType.MEMO) {
+				close(reader);
+				throw new IllegalArgumentException("Cannot index memo field " + names[k]);
+			}
+		}
+	}
+
+	/**
+		Returns the side file of the index of the fields of the table.
+	*/
+	public static File sideFile(File table, String... fields) {
+		StringBuilder sb = new StringBuilder(table.getName().replaceAll("\\.[^.]+$", ""));
+		for (String field : fields) {
+			sb.append('.').append(field.toUpperCase());
+		}
+		return new File(table.getAbsoluteFile().getParentFile(), sb.append(".dbh").toString());
+	}
+
+	/**
+		Builds the index of the fields with one scan of the table and saves it
+		next to the table, replacing any earlier one.
+	*/
+	public static DBFHashIndex build(File table, String... fields) throws DBFException {
+		DBFHashIndex index = new DBFHashIndex(table, fields);
+		try {
+			index.capacity = capacity(index.tableRecords());
+			index.hashes = new int[index.capacity];
+			index.records = new int[index.capacity];
+			index.addRecords(0);
+			index.save();
+			return index;
+		} catch (IOException e) {
+			close(index.reader);
+			throw e instanceof DBFException ? (DBFException) e : new DBFException(e.getMessage(), e);
+		}
+	}
+
+	/**
+		Opens the index of the fields of the table, hashing the records
+		appended since it was saved. Builds it if there is none yet or the
+		table has been replaced.
+	*/
+	public static DBFHashIndex open(File table, String... fields) throws DBFException {
+		File file = sideFile(table, fields);
+		if (!file.isFile()) {
+			return build(table, fields);
+		}
+
+		DBFHashIndex index = new DBFHashIndex(table, fields);
+		try {
+			if (!index.load(file)) {
+				close(index.reader);
+				return build(table, fields);
+			}
+
+			if (index.hashes != null) {
+				int tableRecords = index.tableRecords();
+				if ((long) tableRecords * 2 > index.capacity) {
+					index.rehash(capacity(tableRecords));
+				}
+				index.addRecords(index.recordCount);
+				index.save();
+			} else {
+				index.map(file);
+			}
+
+			return index;
+		} catch (IOException e) {
+			close(index.reader);
+			throw e instanceof DBFException ? (DBFException) e : new DBFException(e.getMessage(), e);
+		}
+	}
+
+	private static int capacity(int records) throws DBFException {
+		if (records > MAX_CAPACITY / 2) {
+			throw new DBFException("Table of " + records + " records is too large for a hash index, which holds " + MAX_CAPACITY / 2);
+		}
+
+		int capacity = MIN_CAPACITY;
+		while (capacity < (long) records * 2) {
+			capacity *= 2;
+		}
+		return capacity;
+	}
+
+	private int tableRecords() throws IOException {
+		long fileRecords = (reader.dataChannel.size() - reader.header.getHeaderLength()) / reader.header.getRecordLength();
+		return (int) Math.max(0, Math.min(reader.header.getNumberOfRecords(), fileRecords));
+	}
+
+	/* hashes the records from the first one to the end of the table */
+	private void addRecords(int first) throws IOException {
+		int recordLength = reader.header.getRecordLength();
+		int end = tableRecords();
+		ByteBuffer buff = ByteBuffer.allocate(Math.max(DBFReader.READ_BUFFER_SIZE / recordLength, 1) * recordLength);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		int record = first;
+		while (record < end) {
+			int count = Math.min(buff.capacity() / recordLength, end - record);
+			readFully(buff, record, count);
+
+			for (int r = 0; r < count; r++, record++) {
+				insert(hash(buff, r * recordLength), record);
+			}
+		}
+
+		recordCount = end;
+		lastRecordChecksum = end > 0 ? checksum(end - 1) : 0;
+	}
+
+	private void insert(int hash, int record) {
+		int mask = capacity - 1;
+		int slot = hash & mask;
+		while (records[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		hashes[slot] = hash;
+		records[slot] = record + 1;
+	}
+
+	private void rehash(int newCapacity) {
+		int[] oldHashes = hashes;
+		int[] oldRecords = records;
+
+		capacity = newCapacity;
+		hashes = new int[capacity];
+		records = new int[capacity];
+
+		for (int slot = 0; slot < oldRecords.length; slot++) {
+			if (oldRecords[slot] != 0) {
+				insert(oldHashes[slot], oldRecords[slot] - 1);
+			}
+		}
+	}
+
+	/* hashes the key fields of the record starting at the deleted flag at start */
+	private int hash(ByteBuffer buff, int start) throws DBFException {
+		int hash = 0;
+
+		for (int k = 0; k < fields.length; k++) {
+			int position = start + offsets[k];
+
+			if (fields[k].getDataType() == DBFField.DataType.CHARACTER) {
+				hash = hash * 0x9E3779B1 + hashText(buff, position, fields[k].getFieldLength());
+			} else {
+				long value = DBFAggregate.value(fields[k], buff, position);
+				hash = hash * 0x9E3779B1 + (int) (value ^ (value >>> 32));
+			}
+		}
+
+		return mix(hash);
+	}
+
+	/*
+	 FNV-1a of a character value without its trailing blanks. Kept out of
+	 hash(), whose nested loops the C2 compiler of JDK 17.0.9 crashed on
+	 when compiling it on stack replacement.
+	*/
+	private static int hashText(ByteBuffer buff, int position, int length) {
+		while (length > 0 && buff.get(position + length - 1) == ' ') {
+			length--;
+		}
+
+		int h = 0x811C9DC5;
+		for (int i = 0; i < length; i++) {
+			h = (h ^ (buff.get(position + i) & 0xFF)) * 0x01000193;
+		}
+		return h;
+	}
+
+	/* hashes a key the way hash() hashes the record holding it */
+	private static int hash(DBFFilter[] key) {
+		int hash = 0;
+
+		for (DBFFilter filter : key) {
+			if (filter.field.getDataType() == DBFField.DataType.CHARACTER) {
+				int h = 0x811C9DC5;
+				for (byte b : filter.fromBytes) {
+					h = (h ^ (b & 0xFF)) * 0x01000193;
+				}
+				hash = hash * 0x9E3779B1 + h;
+			} else {
+				hash = hash * 0x9E3779B1 + (int) (filter.from ^ (filter.from >>> 32));
+			}
+		}
+
+		return mix(hash);
+	}
+
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		hash ^= hash >>> 13;
+		hash *= 0xC2B2AE35;
+		return hash ^ hash >>> 16;
+	}
+
+	/**
+		Returns the indexes of the live records with the key, the first record
+		being 0, in table order. Give a value for each field of the index.
+	*/
+	public int[] find(Object... key) throws DBFException {
+		if (key.length != fields.length) {
+			throw new IllegalArgumentException("The index has " + fields.length + " fields, got " + key.length + " values");
+		}
+
+		DBFFilter[] filters = new DBFFilter[fields.length];
+		for (int k = 0; k < fields.length; k++) {
+			if (key[k] == null) {
+				throw new IllegalArgumentException("Key values should not be null");
+			}
+
+			filters[k] = DBFFilter.range(reader.header.getFieldList(), reader.characterSet, fields[k].getName(), key[k], key[k]);
+
+			if (filters[k].field.getDataType() != DBFField.DataType.CHARACTER && filters[k].from > filters[k].to) {
+				/* a number with more decimals than the field */
+				return new int[0];
+			}
+		}
+
+		int hash = hash(filters);
+		int mask = capacity - 1;
+		int recordLength = reader.header.getRecordLength();
+		ByteBuffer buff = ByteBuffer.allocate(recordLength);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		int[] found = new int[4];
+		int size = 0;
+
+		try {
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				int record = mapped.getInt(HEADER_LENGTH + capacity * 4 + slot * 4);
+				if (record == 0) {
+					break;
+				}
+				if (mapped.getInt(HEADER_LENGTH + slot * 4) != hash) {
+					continue;
+				}
+
+				readFully(buff, record - 1, 1);
+				if (buff.get(0) == '*' || !matches(filters, buff)) {
+					continue;
+				}
+
+				if (size == found.length) {
+					found = Arrays.copyOf(found, size * 2);
+				}
+				found[size++] = record - 1;
+			}
+		} catch (IOException e) {
+			throw e instanceof DBFException ? (DBFException) e : new DBFException(e.getMessage(), e);
+		}
+
+		found = Arrays.copyOf(found, size);
+		Arrays.sort(found);
+		return found;
+	}
+
+	private static boolean matches(DBFFilter[] filters, ByteBuffer buff) throws DBFException {
+		for (DBFFilter filter : filters) {
+			if (!filter.matches(buff, 0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+		Returns the number of records indexed.
+	*/
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+		Returns the names of the fields of the index.
+	*/
+	public List<String> getFields() {
+		List<String> names = new ArrayList<String>(fields.length);
+		for (DBFField field : fields) {
+			names.add(field.getName());
+		}
+		return names;
+	}
+
+	private void readFully(ByteBuffer buff, int record, int count) throws IOException {
+		long position = reader.header.getHeaderLength() + (long) record * reader.header.getRecordLength();
+
+		buff.clear();
+		buff.limit(count * reader.header.getRecordLength());
+		while (buff.hasRemaining()) {
+			int read = reader.dataChannel.read(buff, position + buff.position());
+			if (read < 0) {
+				throw new DBFException("Unexpected end of file at " + (position + buff.position()));
+			}
+		}
+	}
+
+	private int checksum(int record) throws IOException {
+		ByteBuffer buff = ByteBuffer.allocate(reader.header.getRecordLength());
+		readFully(buff, record, 1);
+
+		CRC32 crc = new CRC32();
+		crc.update(buff.array(), 0, buff.limit());
+		return (int) crc.getValue();
+	}
+
+	/* describes the table and fields, to tell whether a side file belongs to them */
+	private int fingerprint() {
+		Charset utf8 = Charset.forName("UTF-8");
+
+		CRC32 crc = new CRC32();
+		for (DBFField field : reader.header.getFieldList()) {
+			crc.update(field.getName().getBytes(utf8));
+			crc.update(new byte[] { (byte) field.getDataType().code(), (byte) field.getFieldLength(), (byte) field.getDecimalCount() });
+		}
+		for (DBFField field : fields) {
+			crc.update(field.getName().toUpperCase(Locale.ROOT).getBytes(utf8));
+		}
+		return (int) crc.getValue();
+	}
+
+	/*
+	 Writes the side file: the header, then the hashes and the record numbers
+	 of the slots, record numbers counting from 1 so that 0 is a free slot.
+	*/
+	private void save() throws IOException {
+		File file = sideFile(table, getFields().toArray(new String[fields.length]));
+		File tmp = new File(file.getPath() + ".tmp");
+
+		ByteBuffer buff = ByteBuffer.allocate(DBFReader.READ_BUFFER_SIZE);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+		buff.putInt(SIGNATURE);
+		buff.putInt(fingerprint());
+		buff.putInt(reader.header.getHeaderLength());
+		buff.putInt(reader.header.getRecordLength());
+		buff.putInt(recordCount);
+		buff.putInt(lastRecordChecksum);
+		buff.putInt(capacity);
+		buff.putInt(0);
+
+		FileChannel channel = new FileOutputStream(tmp).getChannel();
+		try {
+			for (int[] array : new int[][] { hashes, records }) {
+				for (int value : array) {
+					if (!buff.hasRemaining()) {
+						write(channel, buff);
+					}
+					buff.putInt(value);
+				}
+			}
+			write(channel, buff);
+		} finally {
+			channel.close();
+		}
+
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		hashes = null;
+		records = null;
+		map(file);
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buff) throws IOException {
+		buff.flip();
+		while (buff.hasRemaining()) {
+			channel.write(buff);
+		}
+		buff.clear();
+	}
+
+	/*
+	 Reads the header of the side file, and its slots if records were
+	 appended to the table since. Returns false if it does not match the
+	 table.
+	*/
+	private boolean load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (channel.size() < HEADER_LENGTH) {
+				return false;
+			}
+			read(channel, header, 0);
+
+			if (header.getInt(0) != SIGNATURE || header.getInt(4) != fingerprint() || header.getInt(8) != reader.header.getHeaderLength()
+					|| header.getInt(12) != reader.header.getRecordLength()) {
+				return false;
+			}
+
+			recordCount = header.getInt(16);
+			lastRecordChecksum = header.getInt(20);
+			capacity = header.getInt(24);
+
+			if (Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY || channel.size() != HEADER_LENGTH + capacity * 8L) {
+				return false;
+			}
+
+			/* a table that shrank or whose last indexed record changed has been replaced */
+			int tableRecords = tableRecords();
+			if (recordCount > tableRecords || (recordCount > 0 && checksum(recordCount - 1) != lastRecordChecksum)) {
+				return false;
+			}
+
+			if (tableRecords > recordCount) {
+				readSlots(channel);
+			}
+			return true;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/* reads the slots of the side file to the heap to add records */
+	private void readSlots(FileChannel channel) throws IOException {
+		hashes = new int[capacity];
+		records = new int[capacity];
+
+		ByteBuffer buff = ByteBuffer.allocate(DBFReader.READ_BUFFER_SIZE);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+		long position = HEADER_LENGTH;
+
+		for (int[] array : new int[][] { hashes, records }) {
+			for (int slot = 0; slot < capacity;) {
+				int count = Math.min(buff.capacity() / 4, capacity - slot);
+
+				buff.clear();
+				buff.limit(count * 4);
+				read(channel, buff, position);
+				buff.flip();
+				buff.asIntBuffer().get(array, slot, count);
+
+				slot += count;
+				position += count * 4L;
+			}
+		}
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buff, long position) throws IOException {
+		while (buff.hasRemaining()) {
+			int read = channel.read(buff, position + buff.position());
+			if (read < 0) {
+				throw new DBFException("Unexpected end of file at " + (position + buff.position()));
+			}
+		}
+	}
+
+	private void map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			mapped = buffer;
+		} finally {
+			/* the mapping stays valid after the channel is closed */
+			raf.close();
+		}
+	}
+
+	private static void close(DBFReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			/* opened for reading only */
+		}
+	}
+
+	public void close() throws IOException {
+		mapped = null;
+		reader.close();
+	}
+}
@@ -13,9 +13,11 @@
 
 package com.linuxense.javadbf;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
@@ -28,6 +30,12 @@ class DBFHeader {
 	static final byte SIG_DBASE_III = (byte) 0x03;
 	static final byte SIG_VISUAL_FOX_PRO = (byte) 0x30;
 
+	/* table flag (byte 28) set on Visual FoxPro tables with a memo file */
+	static final byte FLAG_HAS_MEMO = (byte) 0x02;
+
+	/* Visual FoxPro tables carry a database container backlink after the field list */
+	static final int DATABASE_CONTAINER_LENGTH = 263;
+
 	/* DBF structure start here */
 
 	private byte signature; /* 0 */
@@ -58,12 +66,74 @@ class DBFHeader {
 		this.languageDriver = new LanguageDriver(LanguageDriver.CodePage.WINDOWS_ANSI.getCode());
 	}
 
+	/**
+	 * Returns a copy of the header, so it can be written without touching
+	 * the one of an open table. The fields are shared.
+	 */
+	DBFHeader copy() {
+		DBFHeader copy = new DBFHeader();
+
+		copy.signature = signature;
+		copy.year = year;
+		copy.month = month;
+		copy.day = day;
+		copy.numberOfRecords = numberOfRecords;
+		copy.headerLength = headerLength;
+		copy.recordLength = recordLength;
+		copy.reserv1 = reserv1;
+		copy.incompleteTransaction = incompleteTransaction;
+		copy.encryptionFlag = encryptionFlag;
+		copy.freeRecordThread = freeRecordThread;
+		copy.reserv2 = reserv2;
+		copy.reserv3 = reserv3;
+		copy.mdxFlag = mdxFlag;
+		copy.languageDriver = languageDriver;
+		copy.reserv4 = reserv4;
+		copy.fieldList = fieldList == null ? null : new ArrayList<DBFField>(fieldList);
+		copy.terminator1 = terminator1;
+
+		return copy;
+	}
+
 	void read(ReadableByteChannel byteChannel) throws IOException {
 		ByteBuffer buff = ByteBuffer.allocate(32);
 		
-		byteChannel.read(buff);
+		readFully(byteChannel, buff);
 		
 		buff.flip();
+
+		readMain(buff);
+
+		fieldList = new ArrayList<DBFField>();
+
+		DBFField field = DBFField.createField(byteChannel); /* 32 each */
+		while (field != null) {
+
+			fieldList.add(field);
+			field = DBFField.createField(byteChannel);
+		}
+	}
+
+	/**
+	 * Reads the header from the buffer, which is positioned at its start. The
+	 * buffer is left positioned after the field terminator and in little
+	 * endian byte order.
+	 */
+	void read(ByteBuffer buff) {
+		readMain(buff);
+
+		fieldList = new ArrayList<DBFField>();
+
+		DBFField field = DBFField.createField(buff); /* 32 each */
+		while (field != null) {
+
+			fieldList.add(field);
+			field = DBFField.createField(buff);
+		}
+	}
+
+	/* reads the first 32 bytes */
+	private void readMain(ByteBuffer buff) {
 		buff.order(ByteOrder.LITTLE_ENDIAN);
 		
 		signature = buff.get(); /* 0 */
@@ -84,19 +154,84 @@ class DBFHeader {
 		mdxFlag = buff.get(); /* 28 */
 		languageDriver = new LanguageDriver(buff.get()); /* 29 */
 		reserv4 = buff.getShort(); /* 30-31 */
+	}
 
-		fieldList = new ArrayList<DBFField>();
+	/**
+	 * Returns the number of bytes read() consumes, the header length up to and
+	 * including the field terminator.
+	 */
+	int getReadLength() {
+		return 32 + 32 * fieldList.size() + 1;
+	}
+
+	/**
+	 * Fills the remaining space of the buffer from the channel. Streams may
+	 * return fewer bytes than asked for on every read.
+	 *
+	 * @throws EOFException if the channel ends first.
+	 */
+	static void readFully(ReadableByteChannel byteChannel, ByteBuffer buff) throws IOException {
+		while (buff.hasRemaining()) {
+			if (byteChannel.read(buff) < 0) {
+				throw new EOFException("Unexpected end of DBF header");
+			}
+		}
+	}
 
-		DBFField field = DBFField.createField(byteChannel); /* 32 each */
-		while (field != null) {
+	/**
+	 * Writes the date of last update, today, and the record count into the
+	 * header of a table, leaving the rest of it alone.
+	 */
+	static void writeRecordCount(FileChannel channel, int numberOfRecords) throws IOException {
+		GregorianCalendar calendar = new GregorianCalendar();
+		ByteBuffer buff = ByteBuffer.allocate(7);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
 
-			fieldList.add(field);
-			field = DBFField.createField(byteChannel);
+		buff.put((byte) (calendar.get(Calendar.YEAR) - 1900)); /* 1 */
+		buff.put((byte) (calendar.get(Calendar.MONTH) + 1)); /* 2 */
+		buff.put((byte) calendar.get(Calendar.DAY_OF_MONTH)); /* 3 */
+		buff.putInt(numberOfRecords); /* 4-7 */
+		buff.flip();
+
+		while (buff.hasRemaining()) {
+			channel.write(buff, 1 + buff.position());
 		}
 	}
 
+	/**
+	 * Reads the record count from the header of a table with a positional
+	 * read.
+	 */
+	static int readRecordCount(FileChannel channel) throws IOException {
+		ByteBuffer buff = ByteBuffer.allocate(4);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buff.hasRemaining()) {
+			if (channel.read(buff, 4 + buff.position()) < 0) {
+				throw new EOFException("Unexpected end of DBF header");
+			}
+		}
+
+		return buff.getInt(0);
+	}
+
 	void write(WritableByteChannel byteChannel) throws IOException {
-		ByteBuffer buff = ByteBuffer.allocate(32);
+		ByteBuffer buff = ByteBuffer.allocate(findHeaderLength());
+
+		write(buff);
+
+		buff.flip();
+
+		while (buff.hasRemaining()) {
+			byteChannel.write(buff);
+		}
+	}
+
+	/**
+	 * Puts the header at the position of the buffer, which must have room for
+	 * the whole header. The buffer is left in little endian byte order.
+	 */
+	void write(ByteBuffer buff) {
 		buff.order(ByteOrder.LITTLE_ENDIAN);
 		
 		buff.put(signature); /* 0 */
@@ -129,23 +264,22 @@ class DBFHeader {
 		buff.put(languageDriver == null ? 0 : languageDriver.getCode()); /* 29 */
 		buff.putShort(reserv4); /* 30-31 */
 
-		buff.flip();
-		
-		byteChannel.write(buff);
-		
 		for (DBFField field : fieldList) {
-			field.write(byteChannel);
+			field.write(buff);
 		}
 
-		buff.reset();
-		buff.put(terminator1).flip();
-		
-		byteChannel.write(buff); /* n+1 */ 
+		buff.put(terminator1); /* n+1 */ 
+
+		if (signature == SIG_VISUAL_FOX_PRO) {
+			buff.put(new byte[DATABASE_CONTAINER_LENGTH]);
+		}
 	}
 
-	private short findHeaderLength() {
+	short findHeaderLength() {
+
+		int containerLength = signature == SIG_VISUAL_FOX_PRO ? DATABASE_CONTAINER_LENGTH : 0;
 
-		return (short) (1 + 3 + 4 + 2 + 2 + 2 + 1 + 1 + 4 + 4 + 4 + 1 + 1 + 2 + (32 * fieldList.size()) + 1);
+		return (short) (1 + 3 + 4 + 2 + 2 + 2 + 1 + 1 + 4 + 4 + 4 + 1 + 1 + 2 + (32 * fieldList.size()) + 1 + containerLength);
 	}
 
 	private short findRecordLength() {
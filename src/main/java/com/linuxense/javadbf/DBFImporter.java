@@ -0,0 +1,874 @@
+/*
+  DBFImporter
+	Class for creating DBF tables from CSV files.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+	Reads CSV (RFC 4180) and writes its rows as DBF records.
+
+	The CSV is parsed in large blocks as bytes, and every value is encoded
+	from those bytes straight into record bytes, which go to the writer in
+	chunks. No Object array is built per row, and memory use does not
+	depend on the size of the input. The writer has to write to a file or
+	a buffer; see DBFWriter( File) and DBFWriter( ByteBuffer).
+
+	Columns are matched to the fields of the table by position. Values are
+	read as follows, by field type:
+
+	<table>
+	<tr><th>xBase Type</th><th>CSV value</th></tr>
+	<tr><td>C</td><td>any text, cut to the field length between two characters</td></tr>
+	<tr><td>N</td><td>a decimal number, rounded half up to the decimal count</td></tr>
+	<tr><td>F</td><td>a decimal number, formatted as DBFWriter formats a Double</td></tr>
+	<tr><td>I</td><td>an integer</td></tr>
+	<tr><td>L</td><td>true, false, t, f, yes, no, y or n, in any case</td></tr>
+	<tr><td>D</td><td>yyyy-MM-dd or yyyyMMdd</td></tr>
+	<tr><td>M</td><td>any text, written to the memo file of the writer</td></tr>
+	</table>
+
+	Empty values are blank. A number that does not fit its field, or a
+	value that cannot be read as the type of its field, stops the import
+	with a DBFException naming the row and the field.
+
+	inferFields() works out the fields from the CSV instead: it reads the
+	names from the header line and picks the narrowest type, length and
+	decimal count that holds every value of the first getSampleRows() rows,
+	or of all rows.
+*/
+public class DBFImporter {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	/* longest CHARACTER and NUMBER fields */
+	private static final int MAX_CHARACTER_LENGTH = 254;
+	private static final int MAX_NUMBER_LENGTH = 20;
+
+	private Charset charset = Charset.forName("UTF-8");
+	private byte delimiter = ',';
+	private boolean headerLine = true;
+	private int sampleRows = 0;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+		Sets the character set of the CSV, UTF-8 by default. It has to be a
+		superset of ASCII.
+	*/
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	public char getDelimiter() {
+		return (char) delimiter;
+	}
+
+	/**
+		Sets the field separator, a comma by default.
+	*/
+	public void setDelimiter(char delimiter) {
+		if (delimiter >= 0x80 || delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			throw new IllegalArgumentException("Delimiter should be an ASCII character other than a quote or a line break");
+		}
+		this.delimiter = (byte) delimiter;
+	}
+
+	public boolean isHeaderLine() {
+		return headerLine;
+	}
+
+	/**
+		Sets whether the CSV starts with a line of column names, which it does
+		by default. The line is skipped when importing.
+	*/
+	public void setHeaderLine(boolean headerLine) {
+		this.headerLine = headerLine;
+	}
+
+	public int getSampleRows() {
+		return sampleRows;
+	}
+
+	/**
+		Sets the number of rows inferFields() looks at, 0 for all rows.
+	*/
+	public void setSampleRows(int sampleRows) {
+		if (sampleRows < 0) {
+			throw new IllegalArgumentException("Sample rows should not be negative");
+		}
+		this.sampleRows = sampleRows;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+		Sets the size of the blocks the CSV is read in. A block grows if a
+		single row does not fit into it.
+	*/
+	public void setBlockSize(int blockSize) {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size should be a positive number");
+		}
+		this.blockSize = blockSize;
+	}
+
+	/**
+		Creates a table from a CSV file, with the fields inferFields() finds.
+		An existing table is replaced.
+
+		@return the number of records written.
+	*/
+	public long importFile(File csv, File table) throws IOException {
+		List<DBFField> fields = inferFields(csv);
+
+		if (table.exists() && !table.delete()) {
+			throw new DBFException("Cannot replace " + table);
+		}
+
+		DBFWriter writer = new DBFWriter(table);
+		boolean written = false;
+		try {
+			writer.setFields(fields);
+
+			long records;
+			InputStream in = new FileInputStream(csv);
+			try {
+				records = importRecords(in, writer);
+			} finally {
+				in.close();
+			}
+
+			writer.write();
+			written = true;
+
+			return records;
+		} finally {
+			if (!written) {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+		Adds the rows of the CSV to the writer as records. The fields of the
+		writer have to be set already. The stream is not closed, and the
+		writer is not written.
+
+		@return the number of records added.
+	*/
+	public long importRecords(InputStream csv, DBFWriter writer) throws IOException {
+		List<DBFField> fields = writer.header.getFieldList();
+		if (fields == null) {
+			throw new DBFException("Fields of the writer are not set");
+		}
+
+		int recordLength = 1;
+		for (DBFField field : fields) {
+			recordLength += field.getFieldLength();
+		}
+
+		int chunkRecords = Math.max(1, DBFWriter.RECORDS_PER_CHUNK);
+		ByteBuffer chunk = ByteBuffer.allocate(chunkRecords * recordLength);
+		chunk.order(ByteOrder.LITTLE_ENDIAN);
+
+		boolean copyText = charset.equals(writer.characterSet);
+		CsvParser parser = new CsvParser(csv, delimiter, blockSize);
+
+		if (headerLine) {
+			parser.next();
+		}
+
+		long records = 0;
+		int buffered = 0;
+
+		while (parser.next()) {
+			chunk.put((byte) ' ');
+
+			for (int i = 0; i < fields.size(); i++) {
+				DBFField field = fields.get(i);
+				int start = chunk.position();
+
+				try {
+					if (i < parser.fieldCount) {
+						encode(writer, field, parser.buf, parser.starts[i], parser.ends[i], chunk, copyText);
+					} else {
+						encode(writer, field, parser.buf, 0, 0, chunk, copyText);
+					}
+				} catch (NumberFormatException e) {
+					throw invalid(parser, field, i, "is not a number");
+				} catch (DBFException e) {
+					throw invalid(parser, field, i, e.getMessage());
+				}
+
+				if (chunk.position() != start + field.getFieldLength()) {
+					throw invalid(parser, field, i, "does not fit into " + field.getFieldLength() + " bytes");
+				}
+			}
+
+			records++;
+			if (++buffered == chunkRecords) {
+				chunk.flip();
+				writer.addEncodedRecords(chunk, buffered);
+				chunk.clear();
+				buffered = 0;
+			}
+		}
+
+		if (buffered > 0) {
+			chunk.flip();
+			writer.addEncodedRecords(chunk, buffered);
+		}
+
+		return records;
+	}
+
+	private DBFException invalid(CsvParser parser, DBFField field, int column, String message) {
+		String value = column < parser.fieldCount ? new String(parser.buf, parser.starts[column], parser.ends[column] - parser.starts[column], charset)
+				: "";
+		return new DBFException("Row " + parser.rows + ", field " + field.getName() + ": \"" + value + "\" " + message);
+	}
+
+	/* encodes the value from start to end of buf into the record chunk */
+	private void encode(DBFWriter writer, DBFField field, byte[] buf, int start, int end, ByteBuffer chunk, boolean copyText) throws IOException {
+		int length = field.getFieldLength();
+
+		switch (field.getDataType()) {
+
+			case CHARACTER:
+				if (isAscii(buf, start, end) || copyText && end - start <= length) {
+					putPadded(chunk, buf, start, Math.min(end - start, length), length);
+				} else {
+					byte[] bytes = encode(new String(buf, start, end - start, charset), writer.characterSet, length);
+					putPadded(chunk, bytes, 0, bytes.length, length);
+				}
+				return;
+
+			case MEMO:
+				int t_start = chunk.position();
+				if (end > start) {
+					chunk.putInt(writer.writeMemo(new String(buf, start, end - start, charset)));
+				}
+				while (chunk.position() < t_start + length) {
+					chunk.put((byte) 0);
+				}
+				return;
+		}
+
+		/* the other types ignore surrounding blanks */
+		while (start < end && buf[start] == ' ') {
+			start++;
+		}
+		while (end > start && buf[end - 1] == ' ') {
+			end--;
+		}
+
+		switch (field.getDataType()) {
+
+			case NUMBER:
+				putNumber(chunk, buf, start, end, length, field.getDecimalCount());
+				return;
+
+			case FLOAT:
+				putFloat(chunk, buf, start, end, length, field.getDecimalCount(), writer.characterSet);
+				return;
+
+			case INTEGER:
+				chunk.putInt(end == start ? 0 : Integer.parseInt(new String(buf, start, end - start, "US-ASCII")));
+				return;
+
+			case DATE:
+				putDate(chunk, buf, start, end);
+				return;
+
+			case LOGICAL:
+				int t_logical = logical(buf, start, end);
+				if (t_logical < 0 && end > start) {
+					throw new DBFException("is not a logical value");
+				}
+				chunk.put(t_logical < 0 ? (byte) '?' : t_logical == 1 ? (byte) 'T' : (byte) 'F');
+				return;
+
+			default:
+				throw new DBFException("Unknown field type " + field.getDataType());
+		}
+	}
+
+	/* the text in the character set, cut to at most length bytes where a character ends */
+	private static byte[] encode(String text, Charset characterSet, int length) {
+		CharsetEncoder encoder = characterSet.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		encoder.encode(CharBuffer.wrap(text), bytes, true);
+		return Arrays.copyOf(bytes.array(), bytes.position());
+	}
+
+	/* puts length bytes of the value, padded with spaces to the field length */
+	private static void putPadded(ByteBuffer chunk, byte[] bytes, int start, int length, int fieldLength) {
+		chunk.put(bytes, start, length);
+		for (int i = length; i < fieldLength; i++) {
+			chunk.put((byte) ' ');
+		}
+	}
+
+	/*
+	 Writes a number right aligned, as DBFWriter does for a BigDecimal. Plain
+	 numbers with no more decimals than the field are copied digit by digit,
+	 anything else goes through BigDecimal.
+	*/
+	private static void putNumber(ByteBuffer chunk, byte[] buf, int start, int end, int length, int decimalCount) throws IOException {
+		if (start == end) {
+			for (int i = 0; i < length; i++) {
+				chunk.put((byte) ' ');
+			}
+			return;
+		}
+
+		int i = start;
+		boolean negative = false;
+		if (buf[i] == '-' || buf[i] == '+') {
+			negative = buf[i] == '-';
+			i++;
+		}
+
+		/* leading zeros are dropped, as BigDecimal.toPlainString() drops them */
+		int intStart = i;
+		while (intStart < end - 1 && buf[intStart] == '0' && buf[intStart + 1] >= '0' && buf[intStart + 1] <= '9') {
+			intStart++;
+		}
+
+		int intEnd = digitsEnd(buf, intStart, end);
+		int fracStart = intEnd;
+		int fracEnd = intEnd;
+
+		if (intEnd < end && buf[intEnd] == '.') {
+			fracStart = intEnd + 1;
+			fracEnd = digitsEnd(buf, fracStart, end);
+		}
+
+		boolean plain = fracEnd == end && (intEnd > intStart || fracEnd > fracStart) && fracEnd - fracStart <= decimalCount;
+
+		if (!plain) {
+			String text = new BigDecimal(new String(buf, start, end - start, "US-ASCII")).setScale(decimalCount, RoundingMode.HALF_UP).toPlainString();
+			byte[] bytes = text.getBytes("US-ASCII");
+			if (bytes.length <= length) {
+				putRightAligned(chunk, bytes, length);
+			}
+			return;
+		}
+
+		boolean zero = true;
+		for (int j = intStart; j < fracEnd; j++) {
+			if (buf[j] >= '1' && buf[j] <= '9') {
+				zero = false;
+			}
+		}
+
+		int intLength = Math.max(1, intEnd - intStart);
+		int textLength = (negative && !zero ? 1 : 0) + intLength + (decimalCount > 0 ? decimalCount + 1 : 0);
+		if (textLength > length) {
+			/* leave the field short, reported by the caller */
+			return;
+		}
+
+		for (int j = textLength; j < length; j++) {
+			chunk.put((byte) ' ');
+		}
+		if (negative && !zero) {
+			chunk.put((byte) '-');
+		}
+		if (intEnd == intStart) {
+			chunk.put((byte) '0');
+		} else {
+			chunk.put(buf, intStart, intEnd - intStart);
+		}
+		if (decimalCount > 0) {
+			chunk.put((byte) '.');
+			chunk.put(buf, fracStart, fracEnd - fracStart);
+			for (int j = fracEnd - fracStart; j < decimalCount; j++) {
+				chunk.put((byte) '0');
+			}
+		}
+	}
+
+	/*
+	 Writes a number as DBFWriter writes a Double. It is formatted one byte
+	 wider than the field, so that one which fits starts with a space.
+	*/
+	private static void putFloat(ByteBuffer chunk, byte[] buf, int start, int end, int length, int decimalCount, Charset characterSet) throws IOException {
+		if (start == end) {
+			putPadded(chunk, buf, start, 0, length);
+			return;
+		}
+
+		/* a decimal number, not NaN, Infinity or hexadecimal, read as Double reads it, -0 included */
+		String text = new String(buf, start, end - start, "US-ASCII");
+		new BigDecimal(text);
+		double value = Double.parseDouble(text);
+		if (Double.isInfinite(value)) {
+			/* leave the field short, reported by the caller */
+			return;
+		}
+
+		byte[] bytes = Utils.doubleFormating(value, characterSet, length + 1, decimalCount);
+		if (bytes[0] == ' ') {
+			chunk.put(bytes, 1, length);
+		}
+	}
+
+	private static void putRightAligned(ByteBuffer chunk, byte[] bytes, int length) {
+		for (int i = bytes.length; i < length; i++) {
+			chunk.put((byte) ' ');
+		}
+		chunk.put(bytes);
+	}
+
+	private static int digitsEnd(byte[] buf, int start, int end) {
+		while (start < end && buf[start] >= '0' && buf[start] <= '9') {
+			start++;
+		}
+		return start;
+	}
+
+	private static void putDate(ByteBuffer chunk, byte[] buf, int start, int end) throws DBFException {
+		if (start == end) {
+			for (int i = 0; i < 8; i++) {
+				chunk.put((byte) ' ');
+			}
+			return;
+		}
+
+		if (!isDate(buf, start, end)) {
+			throw new DBFException("is not a date");
+		}
+
+		for (int i = start; i < end; i++) {
+			if (buf[i] != '-') {
+				chunk.put(buf[i]);
+			}
+		}
+	}
+
+	/* true for yyyy-MM-dd or yyyyMMdd with a valid month and day */
+	private static boolean isDate(byte[] buf, int start, int end) {
+		int[] positions;
+
+		if (end - start == 10 && buf[start + 4] == '-' && buf[start + 7] == '-') {
+			positions = new int[] { 0, 1, 2, 3, 5, 6, 8, 9 };
+		} else if (end - start == 8) {
+			positions = new int[] { 0, 1, 2, 3, 4, 5, 6, 7 };
+		} else {
+			return false;
+		}
+
+		int[] digits = new int[8];
+		for (int i = 0; i < 8; i++) {
+			byte b = buf[start + positions[i]];
+			if (b < '0' || b > '9') {
+				return false;
+			}
+			digits[i] = b - '0';
+		}
+
+		int month = digits[4] * 10 + digits[5];
+		int day = digits[6] * 10 + digits[7];
+
+		return month >= 1 && month <= 12 && day >= 1 && day <= 31;
+	}
+
+	/* 1 for true, 0 for false, -1 for anything else */
+	private static int logical(byte[] buf, int start, int end) {
+		String value = new String(buf, start, end - start, Charset.forName("ISO-8859-1")).toLowerCase(Locale.ROOT);
+
+		if (value.equals("true") || value.equals("t") || value.equals("yes") || value.equals("y")) {
+			return 1;
+		} else if (value.equals("false") || value.equals("f") || value.equals("no") || value.equals("n")) {
+			return 0;
+		}
+		return -1;
+	}
+
+	private static boolean isAscii(byte[] buf, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buf[i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+		Reads the CSV file and returns fields which hold its values: for every
+		column the first of LOGICAL, DATE (yyyy-MM-dd only), NUMBER or
+		CHARACTER which holds all its values. Names are taken from the
+		header line, made upper case and cut to 10 characters, or are
+		FIELD1, FIELD2 and so on.
+	*/
+	public List<DBFField> inferFields(File csv) throws IOException {
+		InputStream in = new FileInputStream(csv);
+		try {
+			return inferFields(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+		Reads the CSV from the stream, which is not closed, and returns fields
+		which hold its values. See inferFields( File).
+	*/
+	public List<DBFField> inferFields(InputStream csv) throws IOException {
+		CsvParser parser = new CsvParser(csv, delimiter, blockSize);
+		List<String> names = new ArrayList<String>();
+		List<ColumnStatistics> columns = new ArrayList<ColumnStatistics>();
+
+		if (headerLine && parser.next()) {
+			for (int i = 0; i < parser.fieldCount; i++) {
+				names.add(new String(parser.buf, parser.starts[i], parser.ends[i] - parser.starts[i], charset));
+			}
+		}
+
+		boolean utf8 = charset.name().equals("UTF-8");
+		long rows = 0;
+
+		while ((sampleRows == 0 || rows < sampleRows) && parser.next()) {
+			rows++;
+
+			for (int i = 0; i < parser.fieldCount; i++) {
+				while (columns.size() <= i) {
+					columns.add(new ColumnStatistics());
+				}
+				columns.get(i).add(parser.buf, parser.starts[i], parser.ends[i], utf8);
+			}
+		}
+
+		while (columns.size() < names.size()) {
+			columns.add(new ColumnStatistics());
+		}
+
+		List<DBFField> fields = new ArrayList<DBFField>(columns.size());
+		Set<String> used = new HashSet<String>();
+
+		for (int i = 0; i < columns.size(); i++) {
+			DBFField field = columns.get(i).toField();
+			field.setName(fieldName(i < names.size() ? names.get(i) : "", i, used));
+			fields.add(field);
+		}
+
+		return fields;
+	}
+
+	/* a valid and unique field name for the column name */
+	private static String fieldName(String name, int column, Set<String> used) {
+		StringBuilder sb = new StringBuilder();
+		for (char c : name.trim().toUpperCase(Locale.ROOT).toCharArray()) {
+			sb.append(c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' ? c : '_');
+		}
+
+		String t_name = sb.length() == 0 ? "FIELD" + (column + 1) : sb.toString();
+		if (t_name.length() > 10) {
+			t_name = t_name.substring(0, 10);
+		}
+
+		String unique = t_name;
+		for (int n = 2; !used.add(unique); n++) {
+			String suffix = "_" + n;
+			unique = t_name.substring(0, Math.min(t_name.length(), 10 - suffix.length())) + suffix;
+		}
+
+		return unique;
+	}
+
+	/* what the values of a column seen so far have in common */
+	private static final class ColumnStatistics {
+		boolean any = false;
+		boolean logical = true;
+		boolean date = true;
+		boolean number = true;
+		boolean negative = false;
+		int integerDigits = 0;
+		int decimals = 0;
+		int length = 0;
+
+		void add(byte[] buf, int start, int end, boolean utf8) {
+			int characters = 0;
+			for (int i = start; i < end; i++) {
+				/* UTF-8 continuation bytes do not start a character */
+				if (!utf8 || (buf[i] & 0xC0) != 0x80) {
+					characters++;
+				}
+			}
+			length = Math.max(length, characters);
+
+			while (start < end && buf[start] == ' ') {
+				start++;
+			}
+			while (end > start && buf[end - 1] == ' ') {
+				end--;
+			}
+
+			if (start == end) {
+				return;
+			}
+			any = true;
+
+			logical = logical && DBFImporter.logical(buf, start, end) >= 0;
+			date = date && end - start == 10 && isDate(buf, start, end);
+
+			if (number) {
+				int i = start;
+				if (buf[i] == '-' || buf[i] == '+') {
+					negative = negative || buf[i] == '-';
+					i++;
+				}
+				while (i < end - 1 && buf[i] == '0' && buf[i + 1] != '.') {
+					i++;
+				}
+
+				int intEnd = digitsEnd(buf, i, end);
+				int fracEnd = intEnd;
+				if (intEnd < end && buf[intEnd] == '.') {
+					fracEnd = digitsEnd(buf, intEnd + 1, end);
+				}
+
+				if (fracEnd != end || fracEnd == i || intEnd == i && fracEnd == intEnd + 1) {
+					number = false;
+				} else {
+					integerDigits = Math.max(integerDigits, intEnd - i);
+					decimals = Math.max(decimals, fracEnd > intEnd ? fracEnd - intEnd - 1 : 0);
+				}
+			}
+		}
+
+		DBFField toField() {
+			DBFField field = new DBFField();
+
+			if (any && logical) {
+				field.setDataType((byte) 'L');
+				field.setFieldLength(1);
+			} else if (any && date) {
+				field.setDataType((byte) 'D');
+			} else if (any && number
+					&& (negative ? 1 : 0) + Math.max(1, integerDigits) + (decimals > 0 ? decimals + 1 : 0) <= MAX_NUMBER_LENGTH) {
+				field.setDataType((byte) 'N');
+				field.setFieldLength((negative ? 1 : 0) + Math.max(1, integerDigits) + (decimals > 0 ? decimals + 1 : 0));
+				field.setDecimalCount(decimals);
+			} else {
+				field.setDataType((byte) 'C');
+				field.setFieldLength(Math.max(1, Math.min(MAX_CHARACTER_LENGTH, length)));
+			}
+
+			return field;
+		}
+	}
+
+	/*
+	 Splits CSV into rows and values, working on the bytes of a block. The
+	 values of the current row are buf[starts[i]] to buf[ends[i]], with the
+	 quotes of quoted values removed.
+	*/
+	private static final class CsvParser {
+		private final InputStream in;
+		private final byte delimiter;
+
+		byte[] buf;
+		int[] starts = new int[16];
+		int[] ends = new int[16];
+		boolean[] quoted = new boolean[16];
+		int fieldCount = 0;
+		long rows = 0;
+
+		private int position = 0;
+		private int limit = 0;
+		private boolean eof = false;
+
+		CsvParser(InputStream in, byte delimiter, int blockSize) {
+			this.in = in;
+			this.delimiter = delimiter;
+			this.buf = new byte[blockSize];
+		}
+
+		/* moves to the next row, skipping empty lines; false at the end */
+		boolean next() throws IOException {
+			while (true) {
+				if (position >= limit && eof) {
+					return false;
+				}
+
+				int end = scan(position);
+
+				if (end < 0) {
+					fill();
+					continue;
+				}
+
+				position = end;
+
+				if (fieldCount == 1 && starts[0] == ends[0] && !quoted[0]) {
+					continue;
+				}
+
+				for (int i = 0; i < fieldCount; i++) {
+					if (quoted[i]) {
+						unescape(i);
+					}
+				}
+
+				rows++;
+				return true;
+			}
+		}
+
+		/* finds the values of the row at p and returns where the next row starts, or -1 if the row is not complete */
+		private int scan(int p) throws DBFException {
+			fieldCount = 0;
+			int i = p;
+
+			while (true) {
+				int start;
+				int end;
+				boolean t_quoted = i < limit && buf[i] == '"';
+
+				if (t_quoted) {
+					i++;
+					start = i;
+					while (true) {
+						if (i >= limit) {
+							if (eof) {
+								throw new DBFException("Row " + (rows + 1) + " has an unterminated quote");
+							}
+							return -1;
+						}
+						if (buf[i] == '"') {
+							if (i + 1 >= limit && !eof) {
+								return -1;
+							}
+							if (i + 1 < limit && buf[i + 1] == '"') {
+								i += 2;
+								continue;
+							}
+							end = i;
+							i++;
+							break;
+						}
+						i++;
+					}
+
+					/* anything between the closing quote and the delimiter is dropped */
+					while (i < limit && buf[i] != delimiter && buf[i] != '\n' && buf[i] != '\r') {
+						i++;
+					}
+				} else {
+					start = i;
+					while (i < limit && buf[i] != delimiter && buf[i] != '\n' && buf[i] != '\r') {
+						i++;
+					}
+					end = i;
+				}
+
+				if (i >= limit && !eof) {
+					return -1;
+				}
+
+				addField(start, end, t_quoted);
+
+				if (i >= limit) {
+					return limit;
+				}
+
+				byte b = buf[i];
+				if (b == delimiter) {
+					i++;
+					continue;
+				}
+
+				if (b == '\r') {
+					if (i + 1 >= limit && !eof) {
+						return -1;
+					}
+					i++;
+					if (i < limit && buf[i] == '\n') {
+						i++;
+					}
+					return i;
+				}
+
+				return i + 1;
+			}
+		}
+
+		private void addField(int start, int end, boolean t_quoted) {
+			if (fieldCount == starts.length) {
+				starts = Arrays.copyOf(starts, fieldCount * 2);
+				ends = Arrays.copyOf(ends, fieldCount * 2);
+				quoted = Arrays.copyOf(quoted, fieldCount * 2);
+			}
+
+			starts[fieldCount] = start;
+			ends[fieldCount] = end;
+			quoted[fieldCount] = t_quoted;
+			fieldCount++;
+		}
+
+		/* turns the doubled quotes of a quoted value into single ones */
+		private void unescape(int field) {
+			int w = starts[field];
+			for (int r = starts[field]; r < ends[field]; r++) {
+				buf[w++] = buf[r];
+				if (buf[r] == '"') {
+					r++;
+				}
+			}
+			ends[field] = w;
+		}
+
+		/* keeps the incomplete row and reads more behind it, growing the block if the row fills it */
+		private void fill() throws IOException {
+			int remaining = limit - position;
+
+			if (remaining == buf.length) {
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			} else if (position > 0) {
+				System.arraycopy(buf, position, buf, 0, remaining);
+			}
+
+			position = 0;
+			limit = remaining;
+
+			while (limit < buf.length) {
+				int read = in.read(buf, limit, buf.length - limit);
+				if (read < 0) {
+					eof = true;
+					break;
+				}
+				limit += read;
+			}
+		}
+	}
+}
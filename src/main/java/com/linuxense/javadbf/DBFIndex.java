@@ -0,0 +1,665 @@
+/*
+  DBFIndex
+	Class for looking up keys in FoxPro .cdx and .idx and dBase .ndx index files.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+
+/**
+	Reads the B-tree of an existing index to find the records with a key or
+	a range of keys, without scanning the table. Indexes are read only; keep
+	them up to date with the program that writes the table.
+
+	<pre>
+	DBFIndex index = DBFIndex.open(new File("clients.cdx"), "CLIENTID");
+	DBFReader reader = new DBFReader(new File("clients.dbf"));
+
+	for (int record : index.find("C-1042")) {
+		Object[] values = reader.getRecord(record);
+		...
+	}
+	</pre>
+
+	Supported are FoxPro compound (.cdx) and single (.idx, compact or not)
+	indexes and dBase III (.ndx) indexes. Only the nodes on the way to the
+	keys are read, with positional reads. Keys are given as a String for
+	character keys, as a Number for numeric keys and as a LocalDate or Date
+	for date keys; the key expression itself is not evaluated, so a key like
+	UPPER(NAME) has to be given upper case. Character keys are compared byte
+	by byte, as with the MACHINE collation, and ignoring trailing spaces.
+
+	Character keys are encoded with the code page of the table, taken from
+	the language driver of the .dbf file next to the index with the same
+	name, as a structural .cdx has. For other indexes set the code page of
+	the table with setCharactersetName( reader.getCharactersetName()).
+
+	Lookups return record indexes, the first record being 0, in the order
+	of the index. Deleted records are found as well, DBFReader.getRecord()
+	returns null for them. Descending tags are scanned from leaf to leaf.
+*/
+public final class DBFIndex extends DBFBase {
+
+	private static final int PAGE_SIZE = 512;
+
+	/* index options of .cdx and .idx headers */
+	private static final int OPTION_UNIQUE = 0x01;
+	private static final int OPTION_COMPACT = 0x20;
+
+	/* node attributes of .cdx and .idx nodes */
+	private static final int NODE_LEAF = 0x02;
+
+	private enum Format {
+		NDX, IDX, COMPACT
+	}
+
+	private final File file;
+	private final FileChannel channel;
+	private final Format format;
+
+	private final long root;
+	private final int keyLength;
+	private final boolean unique;
+	private final boolean descending;
+	private final boolean numericNdx;
+	private final String keyExpression;
+
+	private DBFIndex(File file, FileChannel channel, long header, boolean ndx) throws IOException {
+		this.file = file;
+		this.channel = channel;
+
+		ByteBuffer buff = read(header, ndx ? PAGE_SIZE : 2 * PAGE_SIZE);
+
+		if (ndx) {
+			format = Format.NDX;
+			root = (buff.getInt(0) & 0xFFFFFFFFL) * PAGE_SIZE;
+			keyLength = buff.getShort(12) & 0xFFFF;
+			numericNdx = buff.getShort(16) != 0;
+			unique = buff.get(21) != 0;
+			descending = false;
+			keyExpression = string(buff, 24, PAGE_SIZE - 24);
+		} else {
+			int options = buff.get(14) & 0xFF;
+
+			format = (options & OPTION_COMPACT) != 0 ? Format.COMPACT : Format.IDX;
+			root = buff.getInt(0) & 0xFFFFFFFFL;
+			keyLength = buff.getShort(12) & 0xFFFF;
+			numericNdx = false;
+			unique = (options & OPTION_UNIQUE) != 0;
+
+			if (format == Format.COMPACT) {
+				descending = buff.getShort(502) != 0;
+				keyExpression = string(buff, PAGE_SIZE, buff.getShort(510) & 0xFFFF);
+			} else {
+				descending = false;
+				keyExpression = string(buff, 16, 220);
+			}
+		}
+
+		if (keyLength <= 0 || keyLength > PAGE_SIZE - 24) {
+			throw new DBFException("Invalid key length " + keyLength + " in index " + file);
+		}
+
+		characterSet = tableCharset(file);
+	}
+
+	/**
+		Opens a .ndx or .idx index, or the only tag of a .cdx index.
+	*/
+	public static DBFIndex open(File file) throws DBFException {
+		if (file.getName().toLowerCase().endsWith(".cdx")) {
+			List<String> tags = getTags(file);
+			if (tags.size() != 1) {
+				throw new DBFException("Index " + file + " has the tags " + tags + ", open one of them by name");
+			}
+			return open(file, tags.get(0));
+		}
+
+		FileChannel channel = openChannel(file);
+		try {
+			return new DBFIndex(file, channel, 0, file.getName().toLowerCase().endsWith(".ndx"));
+		} catch (IOException e) {
+			closeQuietly(channel);
+			throw e instanceof DBFException ? (DBFException) e : new DBFException("Failed to read index " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+		Opens a tag of a .cdx index, by name ignoring case.
+	*/
+	public static DBFIndex open(File cdx, String tag) throws DBFException {
+		FileChannel channel = openChannel(cdx);
+		try {
+			Map<String, Long> tags = readTags(cdx, channel);
+
+			for (Map.Entry<String, Long> entry : tags.entrySet()) {
+				if (entry.getKey().equalsIgnoreCase(tag)) {
+					return new DBFIndex(cdx, channel, entry.getValue().longValue(), false);
+				}
+			}
+			throw new DBFException("No tag " + tag + " in index " + cdx + ", it has " + tags.keySet());
+		} catch (IOException e) {
+			closeQuietly(channel);
+			throw e instanceof DBFException ? (DBFException) e : new DBFException("Failed to read index " + cdx + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+		Returns the names of the tags of a .cdx index.
+	*/
+	public static List<String> getTags(File cdx) throws DBFException {
+		FileChannel channel = openChannel(cdx);
+		try {
+			return new ArrayList<String>(readTags(cdx, channel).keySet());
+		} catch (IOException e) {
+			throw e instanceof DBFException ? (DBFException) e : new DBFException("Failed to read index " + cdx + ": " + e.getMessage(), e);
+		} finally {
+			closeQuietly(channel);
+		}
+	}
+
+	/* the tags of a .cdx are the keys of the index at its start, pointing at their headers */
+	private static Map<String, Long> readTags(File cdx, FileChannel channel) throws IOException {
+		DBFIndex tagIndex = new DBFIndex(cdx, channel, 0, false);
+		Map<String, Long> tags = new LinkedHashMap<String, Long>();
+
+		Node node = tagIndex.node(tagIndex.root, false);
+		while (!node.leaf) {
+			node = tagIndex.node(node.children[0], false);
+		}
+
+		while (true) {
+			for (int i = 0; i < node.count; i++) {
+				String name = new String(node.keys[i], "US-ASCII").replaceAll("[\\s\\x00]+$", "");
+				/* the record number of a tag is the position of its header */
+				tags.put(name, Long.valueOf((node.records[i] + 1) & 0xFFFFFFFFL));
+			}
+			if (node.right < 0) {
+				break;
+			}
+			node = tagIndex.node(node.right, false);
+		}
+
+		return tags;
+	}
+
+	/* the code page of the table with the name of the index, or the default if there is none */
+	private static Charset tableCharset(File index) {
+		File dir = index.getAbsoluteFile().getParentFile();
+		final String tableName = index.getName().replaceAll("\\.[^.]+$", "") + ".dbf";
+
+		String[] list = dir.list(new FilenameFilter() {
+
+			public boolean accept(File dir, String name) {
+				return tableName.equalsIgnoreCase(name);
+			}
+		});
+
+		if (list != null && list.length > 0) {
+			try {
+				FileChannel channel = new FileInputStream(new File(dir, list[0])).getChannel();
+				try {
+					DBFHeader header = new DBFHeader();
+					header.read(channel);
+
+					Charset charset = header.getLanguageDriver().getCharset();
+					if (charset != null) {
+						return charset;
+					}
+				} finally {
+					closeQuietly(channel);
+				}
+			} catch (IOException e) {
+				/* not a table, keys are encoded with the default code page */
+			}
+		}
+
+		return LanguageDriver.DEFAULT_CHARSET;
+	}
+
+	private static FileChannel openChannel(File file) throws DBFException {
+		try {
+			return new FileInputStream(file).getChannel();
+		} catch (IOException e) {
+			throw new DBFException("Failed to open index " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			/* opened for reading only */
+		}
+	}
+
+	private static String string(ByteBuffer buff, int offset, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = offset; i < Math.min(offset + length, buff.limit()) && buff.get(i) != 0; i++) {
+			sb.append((char) (buff.get(i) & 0xFF));
+		}
+		return sb.toString().trim();
+	}
+
+	/**
+		Returns the key expression, like CLIENTID or UPPER(NAME).
+	*/
+	public String getKeyExpression() {
+		return keyExpression;
+	}
+
+	public int getKeyLength() {
+		return keyLength;
+	}
+
+	public boolean isUnique() {
+		return unique;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	/**
+		Returns the indexes of the records with the key.
+	*/
+	public int[] find(Object key) throws DBFException {
+		if (key == null) {
+			throw new IllegalArgumentException("Key should not be null");
+		}
+		return find(key, key);
+	}
+
+	/**
+		Returns the indexes of the records with keys between from and to, both
+		included, in the order of the index. Either bound may be null for an
+		open range.
+	*/
+	public int[] find(Object from, Object to) throws DBFException {
+		Object sample = from != null ? from : to;
+		boolean character = sample == null || sample instanceof String;
+
+		if (to != null && from != null && (to instanceof String) != character) {
+			throw new IllegalArgumentException("Bounds should be of the same type");
+		}
+
+		try {
+			byte[] low = from == null ? null : encode(from);
+			byte[] high = to == null ? null : encode(to);
+			Records records = new Records();
+
+			if (descending) {
+				scanLeaves(low, high, character, records);
+			} else {
+				search(root, low, high, character, records);
+			}
+
+			return Arrays.copyOf(records.indexes, records.size);
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException("Failed to read index " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/*
+	 Visits the keys of the subtree in order, skipping the children whose
+	 keys are all below low. The key of a branch entry is the highest of its
+	 child, so nothing is left once a child's key is above high. Returns
+	 false once a key above high is found.
+	*/
+	private boolean search(long page, byte[] low, byte[] high, boolean character, Records records) throws IOException {
+		Node node = node(page, character);
+
+		for (int i = 0; i < node.count; i++) {
+			if (low != null && compare(node.keys[i], low) < 0) {
+				continue;
+			}
+
+			if (node.leaf) {
+				if (high != null && compare(node.keys[i], high) > 0) {
+					return false;
+				}
+				records.add(node.records[i]);
+			} else {
+				if (!search(node.children[i], low, high, character, records)) {
+					return false;
+				}
+				if (high != null && compare(node.keys[i], high) > 0) {
+					return false;
+				}
+			}
+		}
+
+		/* a dBase branch has one child more than keys, holding the highest keys */
+		if (!node.leaf && node.children.length > node.count) {
+			return search(node.children[node.count], low, high, character, records);
+		}
+
+		return true;
+	}
+
+	/* visits every leaf from the leftmost one, for tags whose order is reversed */
+	private void scanLeaves(byte[] low, byte[] high, boolean character, Records records) throws IOException {
+		Node node = node(root, character);
+		while (!node.leaf) {
+			node = node(node.children[0], character);
+		}
+
+		while (true) {
+			for (int i = 0; i < node.count; i++) {
+				if ((low == null || compare(node.keys[i], low) >= 0) && (high == null || compare(node.keys[i], high) <= 0)) {
+					records.add(node.records[i]);
+				}
+			}
+			if (node.right < 0) {
+				return;
+			}
+			node = node(node.right, character);
+		}
+	}
+
+	/* encodes a key the way the index stores it */
+	private byte[] encode(Object key) {
+		byte[] bytes = new byte[keyLength];
+
+		if (key instanceof String) {
+			byte[] value = ((String) key).getBytes(characterSet);
+			int length = value.length;
+			while (length > 0 && value[length - 1] == ' ') {
+				length--;
+			}
+			if (length > keyLength) {
+				throw new IllegalArgumentException("Key \"" + key + "\" is longer than the " + keyLength + " bytes of the index keys");
+			}
+			Arrays.fill(bytes, (byte) ' ');
+			System.arraycopy(value, 0, bytes, 0, length);
+			return bytes;
+		}
+
+		double value;
+		if (key instanceof LocalDate) {
+			value = julianDay((LocalDate) key);
+		} else if (key instanceof Date) {
+			value = julianDay(LocalDate.fromDateFields((Date) key));
+		} else if (key instanceof Number) {
+			value = key instanceof BigDecimal ? ((BigDecimal) key).doubleValue() : ((Number) key).doubleValue();
+		} else {
+			throw new IllegalArgumentException("Cannot look up keys of " + key.getClass().getName());
+		}
+
+		ByteBuffer buff = ByteBuffer.wrap(bytes);
+
+		if (format == Format.NDX) {
+			if (!numericNdx) {
+				throw new IllegalArgumentException("Index " + file + " has character keys");
+			}
+			buff.order(ByteOrder.LITTLE_ENDIAN).putDouble(0, value);
+		} else if (keyLength == 4) {
+			/* integer fields, big endian with the sign bit flipped */
+			buff.putInt(0, (int) value ^ Integer.MIN_VALUE);
+		} else if (keyLength == 8) {
+			/* big endian IEEE, flipped so that the bytes sort like the numbers */
+			long bits = Double.doubleToLongBits(value == 0 ? 0.0 : value);
+			buff.putLong(0, bits >= 0 ? bits ^ Long.MIN_VALUE : ~bits);
+		} else {
+			throw new IllegalArgumentException("Index " + file + " has keys of " + keyLength + " bytes, not numbers");
+		}
+
+		return bytes;
+	}
+
+	private static double julianDay(LocalDate date) {
+		int a = (14 - date.getMonthOfYear()) / 12;
+		int y = date.getYear() + 4800 - a;
+		int m = date.getMonthOfYear() + 12 * a - 3;
+
+		return date.getDayOfMonth() + (153 * m + 2) / 5 + 365 * y + y / 4 - y / 100 + y / 400 - 32045;
+	}
+
+	private int compare(byte[] key, byte[] bound) {
+		if (numericNdx) {
+			ByteBuffer k = ByteBuffer.wrap(key).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer b = ByteBuffer.wrap(bound).order(ByteOrder.LITTLE_ENDIAN);
+			return Double.compare(k.getDouble(0), b.getDouble(0));
+		}
+
+		for (int i = 0; i < keyLength; i++) {
+			int c = (key[i] & 0xFF) - (bound[i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buff = ByteBuffer.allocate(length);
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buff.hasRemaining()) {
+			int read = channel.read(buff, position + buff.position());
+			if (read < 0) {
+				if (buff.position() >= PAGE_SIZE) {
+					/* a header at the end of a small file */
+					break;
+				}
+				throw new DBFException("Unexpected end of index " + file + " at " + (position + buff.position()));
+			}
+			if (statistics != null) {
+				statistics.channelRead(read);
+			}
+		}
+
+		buff.clear();
+		return buff;
+	}
+
+	/* reads the node at the file position */
+	private Node node(long position, boolean character) throws IOException {
+		ByteBuffer buff = read(position, PAGE_SIZE);
+
+		switch (format) {
+
+			case NDX:
+				return ndxNode(buff);
+
+			case IDX:
+				return idxNode(buff);
+
+			default:
+				return compactNode(buff, character);
+		}
+	}
+
+	/*
+	 dBase: the number of keys, then entries of the child block, the record
+	 number and the key. A branch has an extra entry with the child only.
+	*/
+	private Node ndxNode(ByteBuffer buff) throws DBFException {
+		int count = buff.getInt(0);
+		int entryLength = (keyLength + 8 + 3) & ~3;
+
+		if (count < 0 || 4 + count * entryLength > PAGE_SIZE) {
+			throw new DBFException("Invalid node in index " + file);
+		}
+
+		boolean leaf = buff.getInt(4) == 0;
+		Node node = new Node(leaf, count, leaf ? 0 : count + 1);
+
+		for (int i = 0; i < count; i++) {
+			int offset = 4 + i * entryLength;
+			node.records[i] = buff.getInt(offset + 4) - 1;
+			node.keys[i] = new byte[keyLength];
+			buff.position(offset + 8);
+			buff.get(node.keys[i]);
+		}
+
+		if (!leaf) {
+			for (int i = 0; i <= count; i++) {
+				node.children[i] = (buff.getInt(4 + i * entryLength) & 0xFFFFFFFFL) * PAGE_SIZE;
+			}
+		}
+
+		return node;
+	}
+
+	/* FoxBase .idx: entries of the key and a big endian record number or child position */
+	private Node idxNode(ByteBuffer buff) throws DBFException {
+		boolean leaf = (buff.getShort(0) & NODE_LEAF) != 0;
+		int count = buff.getShort(2) & 0xFFFF;
+
+		if (12 + count * (keyLength + 4) > PAGE_SIZE) {
+			throw new DBFException("Invalid node in index " + file);
+		}
+
+		Node node = new Node(leaf, count, leaf ? 0 : count);
+		node.right = buff.getInt(8);
+		buff.order(ByteOrder.BIG_ENDIAN);
+
+		for (int i = 0; i < count; i++) {
+			int offset = 12 + i * (keyLength + 4);
+			node.keys[i] = new byte[keyLength];
+			buff.position(offset);
+			buff.get(node.keys[i]);
+
+			int pointer = buff.getInt(offset + keyLength);
+			if (leaf) {
+				node.records[i] = pointer - 1;
+			} else {
+				node.children[i] = pointer & 0xFFFFFFFFL;
+			}
+		}
+
+		return node;
+	}
+
+	/*
+	 FoxPro compact nodes. A branch holds the key, the big endian record
+	 number and child position of each entry. A leaf packs the record number
+	 and the counts of bytes shared with the previous key and of trailing
+	 blanks of each entry into a few bytes, and keeps the rest of the keys at
+	 the end of the node, last to first.
+	*/
+	private Node compactNode(ByteBuffer buff, boolean character) throws DBFException {
+		boolean leaf = (buff.getShort(0) & NODE_LEAF) != 0;
+		int count = buff.getShort(2) & 0xFFFF;
+		Node node = new Node(leaf, count, leaf ? 0 : count);
+		node.right = buff.getInt(8);
+
+		if (!leaf) {
+			if (12 + count * (keyLength + 8) > PAGE_SIZE) {
+				throw new DBFException("Invalid node in index " + file);
+			}
+
+			buff.order(ByteOrder.BIG_ENDIAN);
+			for (int i = 0; i < count; i++) {
+				int offset = 12 + i * (keyLength + 8);
+				node.keys[i] = new byte[keyLength];
+				buff.position(offset);
+				buff.get(node.keys[i]);
+				node.records[i] = buff.getInt(offset + keyLength) - 1;
+				node.children[i] = buff.getInt(offset + keyLength + 4) & 0xFFFFFFFFL;
+			}
+			return node;
+		}
+
+		long recordMask = buff.getInt(14) & 0xFFFFFFFFL;
+		int duplicateMask = buff.get(18) & 0xFF;
+		int trailMask = buff.get(19) & 0xFF;
+		int recordBits = buff.get(20) & 0xFF;
+		int duplicateBits = buff.get(21) & 0xFF;
+		int entryLength = buff.get(23) & 0xFF;
+
+		if (entryLength == 0 || entryLength > 8 || 24 + count * entryLength > PAGE_SIZE) {
+			throw new DBFException("Invalid node in index " + file);
+		}
+
+		byte trail = character ? (byte) ' ' : 0;
+		byte[] previous = new byte[keyLength];
+		int end = PAGE_SIZE;
+
+		for (int i = 0; i < count; i++) {
+			long entry = 0;
+			for (int j = entryLength - 1; j >= 0; j--) {
+				entry = entry << 8 | (buff.get(24 + i * entryLength + j) & 0xFF);
+			}
+
+			int duplicates = (int) (entry >>> recordBits) & duplicateMask;
+			int trailing = (int) (entry >>> (recordBits + duplicateBits)) & trailMask;
+			int length = keyLength - duplicates - trailing;
+
+			end -= length;
+			if (length < 0 || end < 24 + count * entryLength) {
+				throw new DBFException("Invalid node in index " + file);
+			}
+
+			byte[] key = new byte[keyLength];
+			System.arraycopy(previous, 0, key, 0, duplicates);
+			buff.position(end);
+			buff.get(key, duplicates, length);
+			Arrays.fill(key, keyLength - trailing, keyLength, trail);
+
+			node.keys[i] = key;
+			node.records[i] = (int) (entry & recordMask) - 1;
+			previous = key;
+		}
+
+		return node;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/* keys, record indexes and child positions of a node */
+	private static final class Node {
+		final boolean leaf;
+		final int count;
+		final byte[][] keys;
+		final int[] records;
+		final long[] children;
+		long right = -1;
+
+		Node(boolean leaf, int count, int children) {
+			this.leaf = leaf;
+			this.count = count;
+			this.keys = new byte[count][];
+			this.records = new int[count];
+			this.children = new long[children];
+		}
+	}
+
+	/* growing list of record indexes */
+	private static final class Records {
+		int[] indexes = new int[16];
+		int size = 0;
+
+		void add(int index) {
+			if (size == indexes.length) {
+				indexes = Arrays.copyOf(indexes, size * 2);
+			}
+			indexes[size++] = index;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+  DBFLocking
+	Record locking conventions of the programs sharing DBF files.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/**
+	Where dBase compatible programs lock the records and the header of a
+	table. They do not lock the bytes of a record but a single byte at an
+	offset far past the end of any table, worked out from the record number,
+	so locks never get in the way of plain reads. Programs sharing a table
+	have to use the same convention.
+
+	Locks are taken with FileChannel.lock(), which holds them for the whole
+	Java virtual machine: two readers or writers of the same file in one
+	process cannot hold overlapping locks, and lock() throws an
+	OverlappingFileLockException instead of waiting. Use the locks to
+	coordinate with other processes.
+*/
+public enum DBFLocking {
+
+	/**
+		Clipper, dBase III and Harbour: record n is locked at 1000000000 + n,
+		the header at 1000000000.
+	*/
+	CLIPPER(1000000000L, 1),
+
+	/**
+		FoxPro and Visual FoxPro: record n is locked at 0x7FFFFFFE - n, the
+		header at 0x7FFFFFFE.
+	*/
+	FOXPRO(0x7FFFFFFEL, -1);
+
+	private final long headerOffset;
+	private final int direction;
+
+	private DBFLocking(long headerOffset, int direction) {
+		this.headerOffset = headerOffset;
+		this.direction = direction;
+	}
+
+	/**
+		Returns the offset of the byte locked while the record count is
+		updated and records are appended.
+	*/
+	public long getHeaderOffset() {
+		return headerOffset;
+	}
+
+	/**
+		Returns the offset of the byte locked for the record at the given
+		index, the first record being 0.
+	*/
+	public long getRecordOffset(int index) {
+		return headerOffset + direction * (index + 1L);
+	}
+
+	/* waits for the lock of the header */
+	FileLock lockHeader(FileChannel channel, boolean shared) throws IOException {
+		return channel.lock(getHeaderOffset(), 1, shared);
+	}
+
+	/* waits for the lock of the record at index */
+	FileLock lockRecord(FileChannel channel, int index, boolean shared) throws IOException {
+		return channel.lock(getRecordOffset(index), 1, shared);
+	}
+}
@@ -0,0 +1,27 @@
+/*
+  DBFMemoSource
+	Interface for anything memo field values can be read from.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+	Resolves the block addresses stored in memo fields to the memo text.
+
+	DBFReader finds the FPT file next to a DBF file by itself. A reader over a
+	stream has no file to look next to, so the memo source is passed to its
+	constructor instead. It is closed together with the reader.
+*/
+public interface DBFMemoSource extends Closeable {
+
+	/**
+		Returns the memo stored at the given block address.
+	*/
+	String getMemo(int address) throws IOException;
+}
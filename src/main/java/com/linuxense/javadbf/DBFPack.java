@@ -0,0 +1,249 @@
+/*
+  DBFPack
+	Class for removing the deleted records of a table.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/**
+	Removes the records marked deleted from a table, like the PACK command
+	of dBase and FoxPro.
+
+	<pre>
+	if (DBFPack.countDeleted(file) > 0) {
+		DBFPack.pack(file);
+	}
+	</pre>
+
+	Records are moved in blocks of raw bytes and never decoded. pack( File,
+	File) writes the live records to a new table and copies the memo file,
+	leaving the table alone. pack( File) moves the live records down within
+	the table, truncates it and updates the record count. It locks the table
+	for the time, but no other program may have it open: a crash during the
+	pack leaves the table damaged, so keep a copy or pack into a new file
+	when in doubt. Memo files are not packed; the memos of deleted records
+	stay in them.
+*/
+public final class DBFPack {
+
+	/* bytes of records moved at a time */
+	static final int BLOCK_SIZE = 1024 * 1024;
+
+	private DBFPack() {
+	}
+
+	/**
+		Returns the number of deleted records of the table, reading only the
+		deleted flags.
+	*/
+	public static int countDeleted(File table) throws DBFException {
+		DBFReader reader = new DBFReader(table.getAbsoluteFile());
+		try {
+			int recordLength = reader.header.getRecordLength();
+			int records = records(reader.dataChannel, reader.header);
+			ByteBuffer buff = ByteBuffer.allocate(blockRecords(recordLength) * recordLength);
+			int deleted = 0;
+
+			for (int first = 0; first < records;) {
+				int count = read(reader.dataChannel, buff, reader.header, first, records);
+				for (int r = 0; r < count; r++) {
+					if (buff.get(r * recordLength) == '*') {
+						deleted++;
+					}
+				}
+				first += count;
+			}
+
+			return deleted;
+		} catch (IOException e) {
+			throw e instanceof DBFException ? (DBFException) e : new DBFException(e.getMessage(), e);
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+		Writes the live records of the table to a new table, replacing the
+		output file, and copies the .fpt memo file next to it.
+
+		@return the number of deleted records left out.
+	*/
+	public static int pack(File table, File output) throws DBFException {
+		table = table.getAbsoluteFile();
+		output = output.getAbsoluteFile();
+		if (table.equals(output)) {
+			throw new IllegalArgumentException("Use pack( File) to pack " + table + " in place");
+		}
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			FileChannel out = new FileOutputStream(output).getChannel();
+			try {
+				ByteBuffer header = ByteBuffer.allocate(reader.header.getHeaderLength());
+				read(reader.dataChannel, header, 0);
+				header.flip();
+				write(out, header, 0);
+
+				int records = records(reader.dataChannel, reader.header);
+				int live = moveLive(reader.dataChannel, out, reader.header, records);
+
+				DBFHeader.writeRecordCount(out, live);
+				DBFSort.copyMemoFile(table, output);
+
+				return records - live;
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw e instanceof DBFException ? (DBFException) e : new DBFException("Failed to pack " + table + ": " + e.getMessage(), e);
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+		Removes the deleted records from the table itself. Does not write to
+		the table if there are none.
+
+		@return the number of deleted records removed.
+	*/
+	public static int pack(File table) throws DBFException {
+		table = table.getAbsoluteFile();
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			RandomAccessFile file = new RandomAccessFile(table, "rw");
+			try {
+				FileChannel channel = file.getChannel();
+				FileLock lock = channel.tryLock();
+				if (lock == null) {
+					throw new DBFException("Table " + table + " is locked by another program");
+				}
+
+				try {
+					int records = records(channel, reader.header);
+					int live = moveLive(channel, channel, reader.header, records);
+					int removed = records - live;
+
+					if (removed > 0) {
+						long end = reader.header.getHeaderLength() + (long) live * reader.header.getRecordLength();
+						write(channel, ByteBuffer.wrap(new byte[] { DBFBase.END_OF_DATA }), end);
+						channel.truncate(end + 1);
+						DBFHeader.writeRecordCount(channel, live);
+						channel.force(false);
+					}
+
+					return removed;
+				} finally {
+					lock.release();
+				}
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			throw e instanceof DBFException ? (DBFException) e : new DBFException("Failed to pack " + table + ": " + e.getMessage(), e);
+		} finally {
+			close(reader);
+		}
+	}
+
+	/*
+	 Copies the live records of the given number after the header of the
+	 input to the output, in blocks, and returns their number. The output may be the input: records
+	 are only ever moved down, behind the block being read, and nothing is
+	 written before the first deleted record. The END_OF_DATA mark is
+	 written after the records of a new table.
+	*/
+	private static int moveLive(FileChannel in, FileChannel out, DBFHeader header, int records) throws IOException {
+		int recordLength = header.getRecordLength();
+		long start = header.getHeaderLength();
+		ByteBuffer buff = ByteBuffer.allocate(blockRecords(recordLength) * recordLength);
+		byte[] bytes = buff.array();
+
+		int live = 0;
+		for (int first = 0; first < records;) {
+			int count = read(in, buff, header, first, records);
+
+			int kept = 0;
+			for (int r = 0; r < count; r++) {
+				if (bytes[r * recordLength] != '*') {
+					if (kept != r) {
+						System.arraycopy(bytes, r * recordLength, bytes, kept * recordLength, recordLength);
+					}
+					kept++;
+				}
+			}
+
+			if (in != out || live != first || kept != count) {
+				buff.clear();
+				buff.limit(kept * recordLength);
+				write(out, buff, start + (long) live * recordLength);
+			}
+
+			live += kept;
+			first += count;
+		}
+
+		if (in != out) {
+			write(out, ByteBuffer.wrap(new byte[] { DBFBase.END_OF_DATA }), start + (long) live * recordLength);
+		}
+
+		return live;
+	}
+
+	/* the record count of the header, but no more than the file holds */
+	private static int records(FileChannel channel, DBFHeader header) throws IOException {
+		long fileRecords = Math.max(0, (channel.size() - header.getHeaderLength()) / header.getRecordLength());
+		return (int) Math.min(header.getNumberOfRecords(), fileRecords);
+	}
+
+	private static int blockRecords(int recordLength) {
+		return Math.max(BLOCK_SIZE / recordLength, 1);
+	}
+
+	/* reads the block of records from the first one, returns their number */
+	private static int read(FileChannel channel, ByteBuffer buff, DBFHeader header, int first, int records) throws IOException {
+		int count = Math.min(buff.capacity() / header.getRecordLength(), records - first);
+
+		buff.clear();
+		buff.limit(count * header.getRecordLength());
+		read(channel, buff, header.getHeaderLength() + (long) first * header.getRecordLength());
+
+		return count;
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buff, long position) throws IOException {
+		while (buff.hasRemaining()) {
+			int read = channel.read(buff, position + buff.position());
+			if (read < 0) {
+				throw new DBFException("Unexpected end of file at " + (position + buff.position()));
+			}
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buff, long position) throws IOException {
+		int start = buff.position();
+		while (buff.hasRemaining()) {
+			channel.write(buff, position + buff.position() - start);
+		}
+	}
+
+	private static void close(DBFReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			/* opened for reading only */
+		}
+	}
+}
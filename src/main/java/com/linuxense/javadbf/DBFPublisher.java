@@ -0,0 +1,273 @@
+/*
+  DBFPublisher
+	Class for publishing the records of a DBFReader to a reactive subscriber.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+	Publishes the records of a table as a Reactive Streams Publisher.
+
+	Records are read only as fast as the subscriber requests them: the reader
+	reads ahead at most the outstanding demand, so a slow subscriber holds
+	back the reads from the file. Reads run on the given executor, one task
+	at a time, and never on the thread calling request(). The reader is
+	closed once the table has been read, on an error and on cancel.
+
+	A table can be read once, so a publisher accepts one subscriber only.
+	On Java 9 and later the publisher can be passed on as a
+	java.util.concurrent.Flow.Publisher with
+	org.reactivestreams.FlowAdapters.toFlowPublisher().
+
+	<pre>
+	DBFReader reader = new DBFReader(new File("bookings.dbf"));
+	DBFPublisher.records(reader, Booking.class, executor).subscribe(subscriber);
+	</pre>
+*/
+public abstract class DBFPublisher<T> implements Publisher<T> {
+
+	private final DBFReader reader;
+	private final Executor executor;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	protected DBFPublisher(DBFReader reader, Executor executor) {
+		if (reader == null || executor == null) {
+			throw new NullPointerException();
+		}
+		this.reader = reader;
+		this.executor = executor;
+	}
+
+	/**
+		Publishes the records as returned by DBFReader.nextRecord().
+	*/
+	public static DBFPublisher<Object[]> records(final DBFReader reader, Executor executor) {
+		return new DBFPublisher<Object[]>(reader, executor) {
+
+			protected Object[] read() throws DBFException {
+				return reader.nextRecord();
+			}
+		};
+	}
+
+	/**
+		Publishes the records as objects of the given class, see DBFRecordMapper.
+	*/
+	public static <T> DBFPublisher<T> records(final DBFReader reader, final Class<T> type, Executor executor) {
+		return new DBFPublisher<T>(reader, executor) {
+
+			protected T read() throws DBFException {
+				return reader.nextRecord(type);
+			}
+		};
+	}
+
+	/**
+		Publishes the records in lists of batchSize records, the last one
+		possibly shorter. Each list counts as one element of demand.
+	*/
+	public static DBFPublisher<List<Object[]>> batches(final DBFReader reader, final int batchSize, Executor executor) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size should be a positive number");
+		}
+
+		return new DBFPublisher<List<Object[]>>(reader, executor) {
+
+			protected List<Object[]> read() throws DBFException {
+				List<Object[]> batch = new ArrayList<Object[]>(batchSize);
+				Object[] record;
+
+				while (batch.size() < batchSize && (record = reader.nextRecord()) != null) {
+					batch.add(record);
+				}
+
+				return batch.isEmpty() ? null : batch;
+			}
+		};
+	}
+
+	/**
+		Reads the next element, or returns null at the end of the table.
+	*/
+	protected abstract T read() throws DBFException;
+
+	public void subscribe(Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Subscription() {
+
+				public void request(long n) {
+				}
+
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("The records of a DBFReader can be published to one subscriber only"));
+			return;
+		}
+
+		ReadSubscription subscription = new ReadSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/*
+	 Delivers the records on the executor. Every request() and cancel()
+	 counts in pending; the task that brings it up from zero runs until it
+	 has seen all of them, so one task at a time touches the reader.
+	*/
+	private final class ReadSubscription implements Subscription, Runnable {
+
+		private final Subscriber<? super T> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger pending = new AtomicInteger();
+
+		private volatile boolean cancelled = false;
+		private volatile Throwable invalidRequest;
+
+		/* only touched by the running task */
+		private boolean done = false;
+
+		ReadSubscription(Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("Requested " + n + " records, the number should be positive");
+			} else {
+				long current;
+				long next;
+				do {
+					current = demand.get();
+					next = current + n < 0 ? Long.MAX_VALUE : current + n;
+				} while (!demand.compareAndSet(current, next));
+			}
+
+			schedule();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (pending.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RuntimeException e) {
+					/* the executor is shut down */
+					cancelled = true;
+					closeReader();
+					subscriber.onError(e);
+				}
+			}
+		}
+
+		public void run() {
+			int missed = 1;
+
+			do {
+				if (!done) {
+					deliver();
+				}
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliver() {
+			if (cancelled) {
+				finish(null, false);
+				return;
+			}
+
+			if (invalidRequest != null) {
+				finish(invalidRequest, true);
+				return;
+			}
+
+			long requested = demand.get();
+			long emitted = 0;
+
+			while (emitted != requested) {
+				if (cancelled) {
+					finish(null, false);
+					return;
+				}
+
+				T element;
+				try {
+					element = read();
+				} catch (DBFException e) {
+					finish(e, true);
+					return;
+				}
+
+				if (element == null) {
+					finish(null, true);
+					return;
+				}
+
+				try {
+					subscriber.onNext(element);
+				} catch (RuntimeException e) {
+					/* a subscriber throwing from onNext has cancelled */
+					finish(null, false);
+					return;
+				}
+				emitted++;
+			}
+
+			if (requested != Long.MAX_VALUE) {
+				demand.addAndGet(-emitted);
+			}
+		}
+
+		/* closes the reader and sends the terminal signal, if any */
+		private void finish(Throwable error, boolean signal) {
+			done = true;
+
+			IOException closeError = closeReader();
+			if (error == null) {
+				error = closeError;
+			}
+
+			if (!signal || cancelled) {
+				return;
+			}
+
+			if (error != null) {
+				subscriber.onError(error);
+			} else {
+				subscriber.onComplete();
+			}
+		}
+
+		private IOException closeReader() {
+			try {
+				reader.close();
+				return null;
+			} catch (IOException e) {
+				return e;
+			}
+		}
+	}
+}
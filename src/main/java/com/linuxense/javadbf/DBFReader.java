@@ -20,10 +20,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
 
 /**
@@ -68,11 +72,44 @@ import java.util.Arrays;
  */
 public class DBFReader extends DBFBase {
 
-    FileChannel dataChannel;
+    /* records are read from the channel in blocks of this size */
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    File file; /* set when reading a file */
+    FileChannel dataChannel; /* set when reading a file */
+    ReadableByteChannel inputChannel; /* the channel records are read from */
+    ByteBuffer readBuffer;
     MemoFile memoFile;
+    DBFMemoSource memoSource;
+    DBFRecordMapper<?> recordMapper; /* last mapper used, checked against the fields */
+
+    /* record handed out by nextRecordBuffer(), recordEnd is -1 if there is none */
+    int recordEnd = -1;
+    int recordLimit;
+
+    /* records passed by nextRecordBuffer() so far, deleted ones included */
+    int recordIndex = 0;
+
+    /* dictionaries of setDictionary() by field index, null if there are none */
+    DBFStringDictionary[] dictionaries;
+
+    /* convention of the locks taken on a file, or null for none */
+    DBFLocking locking;
+
+    /* filter of setFilter(), and the zone map of the table if it has an up to date one */
+    DBFFilter filter;
+    DBFZoneMap zoneMap;
+    boolean zoneMapLoaded = false;
+    int checkedBlock = -1;
 
     /* Class specific variables */
     boolean isClosed = true;
+    int recordsSinceSample = 0;
+
+    /* scan chunk reported to the event listener */
+    int chunkRecords = 0;
+    long chunkBytes = 0;
+    long chunkStartNanos = 0;
 
     /**
      * Initializes a DBFReader object.
@@ -85,12 +122,19 @@ public class DBFReader extends DBFBase {
      * @param InputStream where the data is read from.
      */
     public DBFReader(File file) throws DBFException {
+        this(file, (ByteBuffer) null);
+    }
+
+    /**
+     * Initializes a DBFReader reading records through the given buffer,
+     * which is used instead of a new one if it holds at least one record.
+     * The buffer must not be used elsewhere until the reader is closed.
+     */
+    DBFReader(File file, ByteBuffer buffer) throws DBFException {
         try {
+            this.file = file;
             dataChannel = new FileInputStream(file).getChannel();
-            isClosed = false;
-            header = new DBFHeader();
-            header.read(dataChannel);
-            characterSet = header.getLanguageDriver().getCharset();
+            readHeader(dataChannel, file, file.length(), buffer);
 
             if (header.getSignature() == DBFHeader.SIG_VISUAL_FOX_PRO) {
                 if ((header.getMdxFlag() & 0x2) > 0) {
@@ -105,6 +149,7 @@ public class DBFReader extends DBFBase {
 
                     if (list.length > 0) {
                         memoFile = new FPTMemoFile(new File(file.getParentFile(), list[0]), "r", characterSet);
+                        memoSource = memoFile;
                     }
                 }
             }
@@ -118,6 +163,163 @@ public class DBFReader extends DBFBase {
         }
     }
 
+    /**
+     * Initializes a DBFReader over a stream, for example an upload or an
+     * entry of a ZipInputStream or GZIPInputStream. Records are read strictly
+     * forward in blocks, nothing is spilled to disk. Memo fields are read as
+     * null. The stream is closed with the reader.
+     *
+     * @param in where the data is read from.
+     */
+    public DBFReader(InputStream in) throws DBFException {
+        this(Channels.newChannel(in), (DBFMemoSource) null);
+    }
+
+    /**
+     * Initializes a DBFReader over a stream, reading memo fields from the
+     * given memo source. Both are closed with the reader.
+     *
+     * @param in where the data is read from.
+     * @param memoSource where memo fields are read from, or null.
+     */
+    public DBFReader(InputStream in, DBFMemoSource memoSource) throws DBFException {
+        this(Channels.newChannel(in), memoSource);
+    }
+
+    /**
+     * Initializes a DBFReader over a stream, reading memo fields from the
+     * given FPT file. Both are closed with the reader.
+     *
+     * @param in where the data is read from.
+     * @param memoFile the FPT file of the table, or null.
+     */
+    public DBFReader(InputStream in, File memoFile) throws DBFException {
+        this(Channels.newChannel(in), (DBFMemoSource) null);
+
+        if (memoFile != null) {
+            try {
+                this.memoFile = new FPTMemoFile(memoFile, "r", characterSet);
+                this.memoSource = this.memoFile;
+            } catch (IOException e) {
+                throw new DBFException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Initializes a DBFReader over a channel. See DBFReader( InputStream).
+     *
+     * @param channel where the data is read from.
+     */
+    public DBFReader(ReadableByteChannel channel) throws DBFException {
+        this(channel, (DBFMemoSource) null);
+    }
+
+    /**
+     * Initializes a DBFReader over a channel, reading memo fields from the
+     * given memo source. Both are closed with the reader.
+     *
+     * @param channel where the data is read from.
+     * @param memoSource where memo fields are read from, or null.
+     */
+    public DBFReader(ReadableByteChannel channel, DBFMemoSource memoSource) throws DBFException {
+        try {
+            this.memoSource = memoSource;
+            if (memoSource instanceof MemoFile) {
+                memoFile = (MemoFile) memoSource;
+            }
+
+            readHeader(channel, null, -1, null);
+
+            /* skip whatever follows the field list, like the database container */
+            ByteBuffer skip = ByteBuffer.allocate(Math.max(0, header.getHeaderLength() - header.getReadLength()));
+            DBFHeader.readFully(channel, skip);
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Initializes a DBFReader over a table held in memory, from the position
+     * to the limit of the buffer. Records are decoded straight from the
+     * buffer, heap or direct, without copying it. The buffer itself is not
+     * modified. Memo fields are read as null.
+     *
+     * @param data the table.
+     */
+    public DBFReader(ByteBuffer data) throws DBFException {
+        this(data, null);
+    }
+
+    /**
+     * Initializes a DBFReader over a table held in memory, reading memo
+     * fields from the given memo source. See DBFReader( ByteBuffer).
+     *
+     * @param data the table.
+     * @param memoSource where memo fields are read from, or null.
+     */
+    public DBFReader(ByteBuffer data, DBFMemoSource memoSource) throws DBFException {
+        this.memoSource = memoSource;
+        if (memoSource instanceof MemoFile) {
+            memoFile = (MemoFile) memoSource;
+        }
+
+        DBFEventListener listener = DBFEventListener.installed();
+        long t_start = listener != null ? System.nanoTime() : 0;
+
+        ByteBuffer buff = data.duplicate();
+        try {
+            header = new DBFHeader();
+            header.read(buff);
+            buff.position(data.position() + header.getHeaderLength());
+        } catch (RuntimeException e) {
+            /* BufferUnderflowException, IllegalArgumentException on a truncated table */
+            throw new DBFException("Invalid DBF header: " + e, e);
+        }
+        characterSet = header.getLanguageDriver().getCharset();
+        isClosed = false;
+
+        if (listener != null) {
+            listener.tableOpened(null, System.nanoTime() - t_start, header.getFieldList().size(), data.remaining());
+        }
+
+        readBuffer = buff;
+    }
+
+    private void readHeader(ReadableByteChannel channel, File file, long fileSize, ByteBuffer buffer) throws IOException {
+        inputChannel = channel;
+        isClosed = false;
+
+        DBFEventListener listener = DBFEventListener.installed();
+        long t_start = listener != null ? System.nanoTime() : 0;
+
+        header = new DBFHeader();
+        header.read(channel);
+        characterSet = header.getLanguageDriver().getCharset();
+
+        if (listener != null) {
+            listener.tableOpened(file, System.nanoTime() - t_start, header.getFieldList().size(), fileSize);
+        }
+
+        if (buffer != null && buffer.capacity() >= header.getRecordLength()) {
+            readBuffer = buffer;
+            readBuffer.clear();
+        } else {
+            readBuffer = ByteBuffer.allocate(Math.max(READ_BUFFER_SIZE, header.getRecordLength()));
+        }
+        readBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        readBuffer.flip();
+    }
+
+
+    @Override
+    public void setStatistics(DBFStatistics statistics) {
+        super.setStatistics(statistics);
+
+        if (memoFile != null) {
+            memoFile.setStatistics(statistics);
+        }
+    }
 
     public String toString() {
         StringBuffer sb = new StringBuffer().append(header.getYear()).append("/").append(header.getMonth()).append("/").append(header.getDay()).append("\n").append("Total records: ")
@@ -133,12 +335,109 @@ public class DBFReader extends DBFBase {
 
     /**
      * Returns the number of records in the DBF.
+     * <p/>
+     * A reader of a file takes the count in the header as a snapshot of the
+     * table: records appended after it are not read, even if they are in the
+     * file already, until refreshRecordCount() takes a new snapshot. Writers
+     * publish the records they append by updating the count, see
+     * DBFWriter.checkpoint().
      */
     public int getRecordCount() {
 
         return header.getNumberOfRecords();
     }
 
+    /**
+     * Re-reads the record count from the header of the file and returns it.
+     * The records appended since the last snapshot are read once the scan
+     * reaches them. If a locking convention is set the count is read under
+     * a shared lock of the header. Only readers of a file can refresh.
+     *
+     * @throws DBFException if the table has fewer records than the
+     *                      snapshot, which happens when it has been packed
+     *                      or replaced.
+     */
+    public int refreshRecordCount()
+            throws DBFException {
+
+        checkIfClosed();
+
+        if (dataChannel == null) {
+            throw new DBFException("Only readers of a file can refresh the record count");
+        }
+
+        try {
+            int count = readPublishedCount();
+            if (count < header.getNumberOfRecords()) {
+                throw new DBFException("Table has " + count + " records but had " + header.getNumberOfRecords() + ". It has been replaced or packed.");
+            }
+
+            if (count > header.getNumberOfRecords() && inputChannel == dataChannel) {
+                /* bytes buffered past the old snapshot may have been read before they were written */
+                releaseRecord();
+                dataChannel.position(dataChannel.position() - readBuffer.remaining());
+                readBuffer.clear();
+                readBuffer.flip();
+            }
+
+            header.setNumberOfRecords(count);
+            return count;
+        } catch (DBFException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+    }
+
+    /* reads the record count from the header of the file, under a shared lock of the header if locking is set */
+    int readPublishedCount() throws IOException {
+        if (locking == null) {
+            return DBFHeader.readRecordCount(dataChannel);
+        }
+
+        FileLock lock = locking.lockHeader(dataChannel, true);
+        try {
+            return DBFHeader.readRecordCount(dataChannel);
+        } finally {
+            lock.release();
+        }
+    }
+
+    public DBFLocking getLocking() {
+        return locking;
+    }
+
+    /**
+     * Sets the convention of the locks taken on the file, so that writers
+     * in other programs cannot publish a record count while it is read.
+     * Null, the default, takes no locks.
+     */
+    public void setLocking(DBFLocking locking) {
+        this.locking = locking;
+    }
+
+    /**
+     * Waits for a shared lock of the record at the given index, the first
+     * record being 0, under the locking convention set. Programs following
+     * the convention cannot change the record until the lock is released.
+     * Only readers of a file can lock records.
+     */
+    public FileLock lockRecord(int index)
+            throws DBFException {
+
+        checkIfClosed();
+
+        if (dataChannel == null || locking == null) {
+            throw new DBFException("Records can be locked in files with a locking convention only");
+        }
+
+        try {
+            return locking.lockRecord(dataChannel, index, true);
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Returns the asked Field. In case of an invalid index,
      * it returns a ArrayIndexOutofboundsException.
@@ -170,6 +469,95 @@ public class DBFReader extends DBFBase {
         return -1;
     }
 
+    /**
+     * Makes the reader return only the records whose value of the field lies
+     * between from and to, both included. Either bound may be null for an
+     * open range. The bounds are a Number for NUMBER, FLOAT and INTEGER
+     * fields, a LocalDate or Date for DATE fields, a Boolean for LOGICAL
+     * fields and a String for CHARACTER fields, compared byte by byte without
+     * trailing spaces. Blank values never match.
+     * <p/>
+     * Records are matched on their bytes before they are decoded. If the
+     * table was opened from a file that has an up to date zone map of the
+     * field, see DBFZoneMap, blocks of records that cannot match are skipped
+     * without being read.
+     *
+     * @param fieldName the field to filter on, or null for no filter.
+     */
+    public void setFilter(String fieldName, Object from, Object to)
+            throws DBFException {
+
+        checkIfClosed();
+
+        if (fieldName == null) {
+            filter = null;
+            return;
+        }
+
+        filter = DBFFilter.range(header.getFieldList(), characterSet, fieldName, from, to);
+        checkedBlock = -1;
+
+        if (!zoneMapLoaded && file != null) {
+            zoneMapLoaded = true;
+            zoneMap = DBFZoneMap.load(file);
+        }
+    }
+
+    /**
+     * Makes nextRecord() read the values of a character field through a
+     * dictionary of the distinct values met so far, see DBFStringDictionary.
+     * Equal values then come as the same String, and values seen before are
+     * returned without creating anything. Use it for fields with few
+     * distinct values, like codes and statuses; the dictionary gives up by
+     * itself on fields with too many.
+     *
+     * @param fieldName  a CHARACTER field.
+     * @param maxEntries the most distinct values kept, 0 to read the field
+     *                   without a dictionary again.
+     */
+    public void setDictionary(String fieldName, int maxEntries)
+            throws DBFException {
+
+        checkIfClosed();
+
+        int index = fieldIndex(fieldName);
+        DBFField field = header.getFieldList().get(index);
+        if (field.getDataType() != DBFField.DataType.CHARACTER) {
+            throw new IllegalArgumentException("Field " + field.getName() + " of type " + field.getDataType() + " has no dictionary");
+        }
+
+        if (dictionaries == null) {
+            dictionaries = new DBFStringDictionary[header.getFieldList().size()];
+        }
+        dictionaries[index] = maxEntries > 0 ? new DBFStringDictionary(characterSet, field.getFieldLength(), maxEntries, true) : null;
+    }
+
+    /**
+     * Returns the dictionary of a field set with setDictionary(), or null.
+     */
+    public DBFStringDictionary getDictionary(String fieldName) {
+        return dictionaries != null ? dictionaries[fieldIndex(fieldName)] : null;
+    }
+
+    private int fieldIndex(String fieldName) {
+        for (int i = 0; i < header.getFieldList().size(); i++) {
+            if (header.getFieldList().get(i).getName().equalsIgnoreCase(fieldName)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No field " + fieldName);
+    }
+
+    /**
+     * Makes the reader return only the records whose value of the field
+     * equals the value. See setFilter( String, Object, Object).
+     */
+    public void setFilter(String fieldName, Object value)
+            throws DBFException {
+
+        setFilter(fieldName, value, value);
+    }
+
     /**
      * Reads the returns the next row in the DBF stream.
      *
@@ -181,139 +569,453 @@ public class DBFReader extends DBFBase {
 
         checkIfClosed();
 
-        ByteBuffer buff = ByteBuffer.allocate(header.getRecordLength());
+        return (Object[]) readRecord(null);
+    }
+
+    /**
+     * Reads the next row as an object of the given class. The fields of the
+     * table are bound to the fields of the class on the first call, see
+     * DBFRecordMapper.
+     *
+     * @returns The next row, or null at the end of the table.
+     */
+    public <T> T nextRecord(Class<T> type)
+            throws DBFException {
+
+        checkIfClosed();
+
+        if (recordMapper == null || recordMapper.getType() != type) {
+            recordMapper = DBFRecordMapper.bind(type, header.getFieldList());
+        }
+
+        return type.cast(readRecord(recordMapper));
+    }
+
+    /**
+     * Reads the next row with a mapper bound beforehand, which may be shared
+     * by the readers of tables with the same fields.
+     *
+     * @returns The next row, or null at the end of the table.
+     */
+    public <T> T nextRecord(DBFRecordMapper<T> mapper)
+            throws DBFException {
+
+        checkIfClosed();
+
+        if (mapper != recordMapper) {
+            if (!mapper.isBoundTo(header.getFieldList())) {
+                throw new DBFException("Mapper for " + mapper.getType().getName() + " was bound to different fields");
+            }
+            recordMapper = mapper;
+        }
+
+        return mapper.getType().cast(readRecord(mapper));
+    }
+
+    /**
+     * Reads the record at the given index, the first record being 0, with a
+     * positional read that leaves the position of nextRecord() alone. Use it
+     * to fetch the records found with a DBFIndex. Only readers of a file can
+     * read records by index.
+     *
+     * @returns The record, or null if it is deleted.
+     */
+    public Object[] getRecord(int index)
+            throws DBFException {
+
+        checkIfClosed();
+
+        if (dataChannel == null) {
+            throw new DBFException("Records can be read by index from files only");
+        }
+        if (index < 0 || index >= getRecordCount()) {
+            throw new DBFException("No record " + index + ", the table has " + getRecordCount() + " records");
+        }
+
+        int recordLength = header.getRecordLength();
+        long position = header.getHeaderLength() + (long) index * recordLength;
+        ByteBuffer buff = ByteBuffer.allocate(recordLength);
         buff.order(ByteOrder.LITTLE_ENDIAN);
 
-        Object recordObjects[] = new Object[header.getFieldList().size()];
+        try {
+            while (buff.hasRemaining()) {
+                int read = dataChannel.read(buff, position + buff.position());
+                if (read < 0) {
+                    throw new DBFException("Unexpected end of file at " + (position + buff.position()));
+                }
+                if (statistics != null) {
+                    statistics.channelRead(read);
+                }
+            }
+
+            if (buff.get(0) == '*') {
+                if (statistics != null) {
+                    statistics.recordSkippedDeleted();
+                }
+                return null;
+            }
+
+            buff.position(1);
+            return decodeRecord(buff);
+        } catch (DBFException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+    }
+
+    /* reads the next live record, decoded with the mapper if there is one */
+    private Object readRecord(DBFRecordMapper<?> mapper)
+            throws DBFException {
+
+        ByteBuffer buff = nextRecordBuffer();
+        if (buff == null) {
+            return null;
+        }
 
         try {
-            boolean isDeleted = false;
-            do {
-                buff.clear();
+            if (mapper == null) {
+                return decodeRecord(buff);
+            }
+
+            Object record = mapper.map(buff, this);
+            if (statistics != null) {
+                statistics.recordRead();
+            }
+            return record;
+        } catch (DBFException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        } finally {
+            releaseRecord();
+        }
+    }
+
+    /**
+     * Returns the read buffer positioned on the next live record, just after
+     * the deleted flag, with its limit at the end of the record, or null at
+     * the end of the table. The record is valid until the next read.
+     */
+    ByteBuffer nextRecordBuffer()
+            throws DBFException {
+
+        checkIfClosed();
+        releaseRecord();
+
+        DBFEventListener listener = DBFEventListener.installed();
 
-                dataChannel.read(buff);
-                buff.flip();
+        int recordLength = header.getRecordLength();
 
-                if (buff.limit() < 1) {
+        try {
+            while (true) {
+                if (filter != null && zoneMap != null && recordIndex / zoneMap.getBlockRecords() != checkedBlock) {
+                    int block = recordIndex / zoneMap.getBlockRecords();
+                    checkedBlock = block;
+
+                    if (zoneMap.covers(filter.field, recordLength) && !zoneMap.mayMatch(filter, block)) {
+                        skipRecords((block + 1) * zoneMap.getBlockRecords() - recordIndex);
+                        continue;
+                    }
+                }
+
+                if (dataChannel != null && recordIndex >= header.getNumberOfRecords()) {
+                    /* records past the snapshot may still be being written */
+                    endOfScan(listener);
+                    return null;
+                }
+
+                if (readBuffer.remaining() < recordLength && !fillReadBuffer()) {
+                    /* at most a partial record and the END_OF_DATA mark are left */
+                    endOfScan(listener);
                     return null;
                 }
-                int t_byte = buff.get();
+
+                int start = readBuffer.position();
+                int end = start + recordLength;
+                byte t_byte = readBuffer.get(start);
 
                 if (t_byte == END_OF_DATA) {
+                    endOfScan(listener);
                     return null;
                 }
 
-                isDeleted = (t_byte == '*');
-            } while (isDeleted);
+                if (listener != null) {
+                    scanned(listener, recordLength);
+                }
 
-            for (int i = 0; i < header.getFieldList().size(); i++) {
+                recordIndex++;
 
-                DBFField field = header.getFieldList().get(i);
+                if (t_byte == '*') {
+                    if (statistics != null) {
+                        statistics.recordSkippedDeleted();
+                    }
+                    readBuffer.position(end);
+                    continue;
+                }
 
-                switch (field.getDataType()) {
+                if (filter != null && !filter.matches(readBuffer, start)) {
+                    readBuffer.position(end);
+                    continue;
+                }
 
-                    case CHARACTER:
+                recordLimit = readBuffer.limit();
+                recordEnd = end;
+                readBuffer.limit(end);
+                readBuffer.position(start + 1);
 
-                        byte b_array[] = new byte[field.getFieldLength()];
-                        buff.get(b_array);
-                        recordObjects[i] = new String(b_array, characterSet);
-                        break;
+                return readBuffer;
+            }
+        } catch (EOFException e) {
 
-                    case DATE:
-
-                        StringBuilder sb = new StringBuilder();
-
-                        sb.append((char) buff.get());
-                        sb.append((char) buff.get());
-                        sb.append((char) buff.get());
-                        sb.append((char) buff.get());
-                        sb.append("-");
-                        sb.append((char) buff.get());
-                        sb.append((char) buff.get());
-                        sb.append("-");
-                        sb.append((char) buff.get());
-                        sb.append((char) buff.get());
-
-                        try {
-                            recordObjects[i] = new LocalDate(sb.toString());
-                        } catch (IllegalArgumentException e) {
-                            /* this field may be empty or may have improper value set */
-                            recordObjects[i] = null;
-                        }
+            endOfScan(listener);
+            return null;
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+    }
 
-                        break;
+    /* moves past the records up to the record count, which were read with positional reads */
+    void skipToEnd()
+            throws DBFException {
 
-                    case FLOAT:
+        releaseRecord();
 
-                        try {
+        try {
+            skipRecords(header.getNumberOfRecords() - recordIndex);
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+    }
 
-                            byte t_float[] = new byte[field.getFieldLength()];
-                            buff.get(t_float);
-                            t_float = Utils.trimLeftSpaces(t_float);
-                            if (t_float.length > 0 && !Utils.contains(t_float, (byte) '?')) {
-                                recordObjects[i] = new Double(new String(t_float));
-                            } else {
-                                recordObjects[i] = null;
-                            }
-                        } catch (NumberFormatException e) {
-                            throw new DBFException("Failed to parse Float: " + e.getMessage(), e);
-                        }
+    /* true if the records can be scanned in ranges of the file with positional reads */
+    boolean scansInRanges() {
+        return dataChannel != null && inputChannel == dataChannel;
+    }
 
-                        break;
+    /*
+     Moves past the next records without looking at them. A file is
+     repositioned rather than read if they are not all buffered.
+    */
+    private void skipRecords(int records) throws IOException {
+        int recordLength = header.getRecordLength();
+
+        if (dataChannel != null && inputChannel == dataChannel && readBuffer.remaining() < records * recordLength) {
+            dataChannel.position(dataChannel.position() - readBuffer.remaining() + (long) records * recordLength);
+            readBuffer.clear();
+            readBuffer.flip();
+            recordIndex += records;
+            return;
+        }
 
-                    case NUMBER:
-                        recordObjects[i] = readNumber(buff, field);
-                        break;
+        while (records > 0) {
+            if (readBuffer.remaining() < recordLength && !fillReadBuffer()) {
+                return;
+            }
+
+            int skipped = Math.min(records, readBuffer.remaining() / recordLength);
+            readBuffer.position(readBuffer.position() + skipped * recordLength);
+            recordIndex += skipped;
+            records -= skipped;
+        }
+    }
 
-                    case INTEGER:
+    /* moves the read buffer past the record returned by nextRecordBuffer() */
+    void releaseRecord() {
+        if (recordEnd >= 0) {
+            readBuffer.limit(recordLimit);
+            readBuffer.position(recordEnd);
+            recordEnd = -1;
+        }
+    }
 
-                        recordObjects[i] = Integer.valueOf(buff.getInt());
-                        break;
+    /**
+     * Decodes the fields of the record in the buffer, which is positioned
+     * just after the deleted flag.
+     */
+    Object[] decodeRecord(ByteBuffer buff) throws IOException {
 
-                    case LOGICAL:
+        Object recordObjects[] = new Object[header.getFieldList().size()];
 
-                        byte t_logical = buff.get();
-                        if (t_logical == 'Y' || t_logical == 't' || t_logical == 'T' || t_logical == 't') {
+        /* parse time is measured on one record out of every sample interval */
+        boolean sampled = false;
+        if (statistics != null && ++recordsSinceSample >= statistics.getSampleInterval()) {
+            recordsSinceSample = 0;
+            sampled = true;
+        }
 
-                            recordObjects[i] = Boolean.TRUE;
-                        } else {
+        for (int i = 0; i < header.getFieldList().size(); i++) {
 
-                            recordObjects[i] = Boolean.FALSE;
-                        }
+            DBFField field = header.getFieldList().get(i);
+            long t_start = sampled ? System.nanoTime() : 0;
+
+            switch (field.getDataType()) {
+
+                case CHARACTER:
+
+                    DBFStringDictionary dictionary = dictionaries != null ? dictionaries[i] : null;
+                    if (dictionary != null && dictionary.isEnabled()) {
+                        recordObjects[i] = dictionary.lookup(buff, buff.position());
+                        buff.position(buff.position() + field.getFieldLength());
                         break;
+                    }
 
-                    case MEMO:
-                        if (header.getSignature() == DBFHeader.SIG_VISUAL_FOX_PRO && memoFile != null) {
-                            int address = buff.getInt();
+                    byte b_array[] = new byte[field.getFieldLength()];
+                    buff.get(b_array);
+                    recordObjects[i] = new String(b_array, characterSet);
+                    break;
+
+                case DATE:
+
+                    StringBuilder sb = new StringBuilder();
+
+                    sb.append((char) buff.get());
+                    sb.append((char) buff.get());
+                    sb.append((char) buff.get());
+                    sb.append((char) buff.get());
+                    sb.append("-");
+                    sb.append((char) buff.get());
+                    sb.append((char) buff.get());
+                    sb.append("-");
+                    sb.append((char) buff.get());
+                    sb.append((char) buff.get());
+
+                    try {
+                        recordObjects[i] = new LocalDate(sb.toString());
+                    } catch (IllegalArgumentException e) {
+                        /* this field may be empty or may have improper value set */
+                        recordObjects[i] = null;
+                    }
 
-                            recordObjects[i] = address > 0 ? memoFile.getMemo(address) : null;
-                        } else {
-                            byte t_numeric[] = new byte[field.getFieldLength()];
-                            buff.get(t_numeric);
+                    break;
+
+                case FLOAT:
 
-                            //
+                    try {
+
+                        byte t_float[] = new byte[field.getFieldLength()];
+                        buff.get(t_float);
+                        t_float = Utils.trimLeftSpaces(t_float);
+                        if (t_float.length > 0 && !Utils.contains(t_float, (byte) '?')) {
+                            recordObjects[i] = new Double(new String(t_float));
+                        } else {
                             recordObjects[i] = null;
                         }
+                    } catch (NumberFormatException e) {
+                        throw new DBFException("Failed to parse Float: " + e.getMessage(), e);
+                    }
 
-                        break;
+                    break;
+
+                case NUMBER:
+                    recordObjects[i] = readNumber(buff, field);
+                    break;
+
+                case INTEGER:
+
+                    recordObjects[i] = Integer.valueOf(buff.getInt());
+                    break;
 
-                    default:
-                        byte bytes[] = new byte[field.getFieldLength()];
-                        buff.get(bytes);
+                case LOGICAL:
 
+                    byte t_logical = buff.get();
+                    if (t_logical == 'Y' || t_logical == 't' || t_logical == 'T' || t_logical == 't') {
+
+                        recordObjects[i] = Boolean.TRUE;
+                    } else {
+
+                        recordObjects[i] = Boolean.FALSE;
+                    }
+                    break;
+
+                case MEMO:
+                    if (header.getSignature() == DBFHeader.SIG_VISUAL_FOX_PRO && memoSource != null) {
+                        int address = buff.getInt();
+
+                        recordObjects[i] = address > 0 ? memoSource.getMemo(address) : null;
+                    } else {
+                        byte t_numeric[] = new byte[field.getFieldLength()];
+                        buff.get(t_numeric);
+
+                        //
                         recordObjects[i] = null;
-                }
+                    }
+
+                    break;
+
+                default:
+                    byte bytes[] = new byte[field.getFieldLength()];
+                    buff.get(bytes);
+
+                    recordObjects[i] = null;
             }
-        } catch (EOFException e) {
 
-            return null;
-        } catch (IOException e) {
-            throw new DBFException(e.getMessage(), e);
+            if (sampled) {
+                statistics.parsed(field.getDataType(), System.nanoTime() - t_start);
+            }
+        }
+
+        if (statistics != null) {
+            statistics.recordRead();
+            if (sampled) {
+                statistics.recordSampled();
+            }
         }
 
         return recordObjects;
     }
 
+    /*
+     Reads the next block of records behind the bytes left in the read buffer.
+     Returns false if the channel ends before a whole record is buffered.
+    */
+    private boolean fillReadBuffer() throws IOException {
+        if (inputChannel == null) {
+            /* reading from memory, everything is in the buffer already */
+            return false;
+        }
+
+        readBuffer.compact();
+        try {
+            while (readBuffer.hasRemaining()) {
+                int read = inputChannel.read(readBuffer);
+                if (read <= 0) {
+                    break;
+                }
+                if (statistics != null) {
+                    statistics.channelRead(read);
+                }
+            }
+        } finally {
+            readBuffer.flip();
+        }
+
+        return readBuffer.remaining() >= header.getRecordLength();
+    }
+
+    private void scanned(DBFEventListener listener, int bytes) {
+        if (chunkRecords == 0) {
+            chunkStartNanos = System.nanoTime();
+        }
+
+        chunkRecords++;
+        chunkBytes += bytes;
+
+        if (chunkRecords == DBFEventListener.SCAN_CHUNK_RECORDS) {
+            endOfScan(listener);
+        }
+    }
+
+    /* reports the records read since the last scan chunk, if any */
+    private void endOfScan(DBFEventListener listener) {
+        if (listener != null && chunkRecords > 0) {
+            listener.scanned(chunkRecords, chunkBytes, System.nanoTime() - chunkStartNanos);
+        }
+
+        chunkRecords = 0;
+        chunkBytes = 0;
+    }
+
     private Object readNumber(ByteBuffer buffer, DBFField field) throws DBFException {
         byte t_numeric[] = new byte[field.getFieldLength()];
         try {
@@ -334,12 +1036,16 @@ public class DBFReader extends DBFBase {
     public void close() throws IOException {
         isClosed = true;
 
-        if (dataChannel != null) {
-            dataChannel.close();
+        if (inputChannel != null) {
+            inputChannel.close();
+        }
+
+        if (memoSource != null) {
+            memoSource.close();
         }
     }
 
-    private void checkIfClosed() throws DBFException {
+    void checkIfClosed() throws DBFException {
         if (isClosed) {
             throw new DBFException("Source is not open");
         }
@@ -0,0 +1,700 @@
+/*
+  DBFRecordMapper
+	Class for reading records straight into objects of a user class.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+
+/**
+	Binds the fields of a table to the fields of a class by name, so records
+	can be read as objects instead of Object arrays:
+
+	<pre>
+	DBFReader reader = new DBFReader(new File("bookings.dbf"));
+	Booking booking;
+	while ((booking = reader.nextRecord(Booking.class)) != null) {
+		...
+	}
+	</pre>
+
+	Names are matched ignoring case and underscores, so the table field
+	BOOKING_ID fills the Java field bookingId. The class needs a constructor
+	without arguments; every field that is not static, final or transient
+	may be filled, whatever its access. On Java 16 and later records are
+	supported as well, through their canonical constructor. Table fields no
+	Java field matches are skipped, and Java fields no table field matches
+	keep their default value.
+
+	The setters and constructor are looked up once, when the mapper is bound,
+	as method handles. Each record is then decoded straight from the bytes
+	read: int, long, double and boolean fields are parsed without creating a
+	String, a BigDecimal or a boxed value. Java types supported, by table
+	field type:
+
+	<table>
+	<tr><th>xBase Type</th><th>Java Type</th></tr>
+	<tr><td>C</td><td>String, right trimmed</td></tr>
+	<tr><td>N, F</td><td>int, long, double, Integer, Long, Double, BigDecimal, String</td></tr>
+	<tr><td>I</td><td>int, long, double, Integer, Long, Double, BigDecimal</td></tr>
+	<tr><td>L</td><td>boolean, Boolean</td></tr>
+	<tr><td>D</td><td>org.joda.time.LocalDate, java.util.Date</td></tr>
+	<tr><td>M</td><td>String</td></tr>
+	</table>
+
+	Blank numbers and dates are null, or 0 in primitive fields. A mapper may
+	be shared between readers of tables with the same fields, on any number
+	of threads.
+*/
+public final class DBFRecordMapper<T> {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	/* powers of ten which are exact as a double */
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private static final int KIND_INTEGER = 0;
+	private static final int KIND_LONG = 1;
+	private static final int KIND_DOUBLE = 2;
+	private static final int KIND_BOOLEAN = 3;
+	private static final int KIND_BIG_DECIMAL = 4;
+	private static final int KIND_STRING = 5;
+	private static final int KIND_LOCAL_DATE = 6;
+	private static final int KIND_DATE = 7;
+
+	private final Class<T> type;
+	private final List<DBFField> fields;
+	private final Column[] columns;
+
+	/* ()Object for classes, (Object[])Object for records */
+	private final MethodHandle constructor;
+
+	/* constructor arguments of a record with nothing bound to them, null for classes */
+	private final Object[] defaultArguments;
+
+	private DBFRecordMapper(Class<T> type, List<DBFField> fields, Column[] columns, MethodHandle constructor, Object[] defaultArguments) {
+		this.type = type;
+		this.fields = new ArrayList<DBFField>(fields);
+		this.columns = columns;
+		this.constructor = constructor;
+		this.defaultArguments = defaultArguments;
+	}
+
+	/**
+		Binds the fields of the table to the fields of the class.
+
+		@param type the class records are read as.
+		@param fields the fields of the table, as returned by DBFHeader.getFieldList().
+		@throws DBFException if the class cannot be instantiated, no field
+		matches or a matching field has a type the table field cannot be
+		read as.
+	*/
+	public static <T> DBFRecordMapper<T> bind(Class<T> type, List<DBFField> fields) throws DBFException {
+		try {
+			Object[] components = recordComponents(type);
+
+			if (components != null) {
+				return bindRecord(type, fields, components);
+			}
+
+			return bindClass(type, fields);
+		} catch (IllegalAccessException e) {
+			throw new DBFException("Cannot access " + type.getName() + ": " + e.getMessage(), e);
+		} catch (NoSuchMethodException e) {
+			throw new DBFException(type.getName() + " has no constructor without arguments", e);
+		}
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+		Returns true if the mapper was bound to fields of the same names, types
+		and lengths, in the same order.
+	*/
+	public boolean isBoundTo(List<DBFField> fields) {
+		if (this.fields.size() != fields.size()) {
+			return false;
+		}
+
+		for (int i = 0; i < fields.size(); i++) {
+			DBFField a = this.fields.get(i);
+			DBFField b = fields.get(i);
+
+			if (!a.getName().equals(b.getName()) || a.getDataType() != b.getDataType() || a.getFieldLength() != b.getFieldLength()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+		Creates an object from the record at the buffer position, which is
+		just after the deleted flag. The position is left unchanged.
+	*/
+	T map(ByteBuffer buff, DBFReader reader) throws DBFException {
+		int start = buff.position();
+
+		try {
+			if (defaultArguments == null) {
+				Object target = (Object) constructor.invokeExact();
+
+				for (Column column : columns) {
+					column.set(target, buff, start, reader);
+				}
+
+				return type.cast(target);
+			}
+
+			Object[] arguments = defaultArguments.clone();
+
+			for (Column column : columns) {
+				arguments[column.argument] = column.get(buff, start, reader);
+			}
+
+			return type.cast((Object) constructor.invokeExact(arguments));
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		} catch (NumberFormatException e) {
+			throw new DBFException("Failed to parse Number: " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new DBFException("Failed to create " + type.getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static <T> DBFRecordMapper<T> bindClass(Class<T> type, List<DBFField> fields) throws DBFException, IllegalAccessException,
+			NoSuchMethodException {
+		Map<String, Field> javaFields = new HashMap<String, Field>();
+
+		for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+
+				if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+					continue;
+				}
+
+				/* fields of a subclass hide those of its superclasses */
+				String key = normalize(field.getName());
+				if (!javaFields.containsKey(key)) {
+					javaFields.put(key, field);
+				}
+			}
+		}
+
+		List<Column> columns = new ArrayList<Column>();
+		int offset = 0;
+
+		for (DBFField field : fields) {
+			Field javaField = javaFields.get(normalize(field.getName()));
+
+			if (javaField != null) {
+				javaField.setAccessible(true);
+				MethodHandle setter = LOOKUP.unreflectSetter(javaField);
+				columns.add(column(type, javaField.getName(), javaField.getType(), field, offset, setter, -1));
+			}
+
+			offset += field.getFieldLength();
+		}
+
+		checkBound(type, columns);
+
+		Constructor<T> constructor = type.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		MethodHandle handle = LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+
+		return new DBFRecordMapper<T>(type, fields, columns.toArray(new Column[columns.size()]), handle, null);
+	}
+
+	private static <T> DBFRecordMapper<T> bindRecord(Class<T> type, List<DBFField> fields, Object[] components) throws DBFException,
+			IllegalAccessException, NoSuchMethodException {
+		String[] names = new String[components.length];
+		Class<?>[] types = new Class<?>[components.length];
+		Map<String, Integer> arguments = new HashMap<String, Integer>();
+
+		for (int i = 0; i < components.length; i++) {
+			names[i] = (String) invoke(components[i], "getName");
+			types[i] = (Class<?>) invoke(components[i], "getType");
+			arguments.put(normalize(names[i]), Integer.valueOf(i));
+		}
+
+		List<Column> columns = new ArrayList<Column>();
+		int offset = 0;
+
+		for (DBFField field : fields) {
+			Integer argument = arguments.get(normalize(field.getName()));
+
+			if (argument != null) {
+				int i = argument.intValue();
+				columns.add(column(type, names[i], types[i], field, offset, null, i));
+			}
+
+			offset += field.getFieldLength();
+		}
+
+		checkBound(type, columns);
+
+		Object[] defaultArguments = new Object[components.length];
+		for (int i = 0; i < types.length; i++) {
+			defaultArguments[i] = defaultValue(types[i]);
+		}
+
+		Constructor<T> constructor = type.getDeclaredConstructor(types);
+		constructor.setAccessible(true);
+		MethodHandle handle = LOOKUP.unreflectConstructor(constructor).asSpreader(Object[].class, components.length)
+				.asType(MethodType.methodType(Object.class, Object[].class));
+
+		return new DBFRecordMapper<T>(type, fields, columns.toArray(new Column[columns.size()]), handle, defaultArguments);
+	}
+
+	private static void checkBound(Class<?> type, List<Column> columns) throws DBFException {
+		if (columns.isEmpty()) {
+			throw new DBFException("No field of " + type.getName() + " matches a field of the table");
+		}
+	}
+
+	/* returns the components of a record class, or null if it is not one or records are not supported */
+	private static Object[] recordComponents(Class<?> type) throws DBFException {
+		Method method;
+		try {
+			method = Class.class.getMethod("getRecordComponents");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+
+		try {
+			return (Object[]) method.invoke(type);
+		} catch (Exception e) {
+			throw new DBFException("Cannot read the components of " + type.getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static Object invoke(Object target, String method) throws DBFException {
+		try {
+			return target.getClass().getMethod(method).invoke(target);
+		} catch (Exception e) {
+			throw new DBFException("Cannot read record component: " + e.getMessage(), e);
+		}
+	}
+
+	private static String normalize(String name) {
+		return name.replace("_", "").toLowerCase(Locale.ROOT);
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == int.class) {
+			return Integer.valueOf(0);
+		} else if (type == long.class) {
+			return Long.valueOf(0);
+		} else if (type == double.class) {
+			return Double.valueOf(0);
+		} else if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type.isPrimitive()) {
+			/* rejected when bound, but needs a value if it is not */
+			return type == float.class ? Float.valueOf(0) : type == char.class ? Character.valueOf((char) 0)
+					: type == byte.class ? Byte.valueOf((byte) 0) : Short.valueOf((short) 0);
+		}
+		return null;
+	}
+
+	private static Column column(Class<?> owner, String name, Class<?> javaType, DBFField field, int offset, MethodHandle setter, int argument)
+			throws DBFException {
+		DBFField.DataType dataType = field.getDataType();
+		boolean numeric = dataType == DBFField.DataType.NUMBER || dataType == DBFField.DataType.FLOAT || dataType == DBFField.DataType.INTEGER;
+
+		if (numeric && javaType == int.class) {
+			return new IntColumn(field, offset, setter, argument);
+		} else if (numeric && javaType == long.class) {
+			return new LongColumn(field, offset, setter, argument);
+		} else if (numeric && javaType == double.class) {
+			return new DoubleColumn(field, offset, setter, argument);
+		} else if (dataType == DBFField.DataType.LOGICAL && javaType == boolean.class) {
+			return new BooleanColumn(field, offset, setter, argument);
+		} else if (numeric && javaType == Integer.class) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_INTEGER);
+		} else if (numeric && javaType == Long.class) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_LONG);
+		} else if (numeric && javaType == Double.class) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_DOUBLE);
+		} else if (numeric && javaType == BigDecimal.class) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_BIG_DECIMAL);
+		} else if (dataType == DBFField.DataType.LOGICAL && javaType == Boolean.class) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_BOOLEAN);
+		} else if (dataType == DBFField.DataType.DATE && javaType == LocalDate.class) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_LOCAL_DATE);
+		} else if (dataType == DBFField.DataType.DATE && javaType == Date.class) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_DATE);
+		} else if (javaType == String.class && dataType != DBFField.DataType.INTEGER && dataType != DBFField.DataType.LOGICAL
+				&& dataType != DBFField.DataType.DATE) {
+			return new ObjectColumn(field, offset, setter, argument, KIND_STRING);
+		}
+
+		throw new DBFException("Field " + field.getName() + " of type " + dataType + " cannot be read as " + javaType.getName() + " into "
+				+ owner.getName() + "." + name);
+	}
+
+	/* decoders, reading a field at the given offset from the byte after the deleted flag */
+
+	private abstract static class Column {
+		final DBFField.DataType dataType;
+		final int offset;
+		final int length;
+		final MethodHandle setter;
+		final int argument;
+
+		Column(DBFField field, int offset, MethodHandle setter, int argument, Class<?> setterType) {
+			this.dataType = field.getDataType();
+			this.offset = offset;
+			this.length = field.getFieldLength();
+			this.setter = setter == null ? null : setter.asType(MethodType.methodType(void.class, Object.class, setterType));
+			this.argument = argument;
+		}
+
+		/* decodes the field into the object */
+		abstract void set(Object target, ByteBuffer buff, int start, DBFReader reader) throws Throwable;
+
+		/* decodes the field as a constructor argument */
+		abstract Object get(ByteBuffer buff, int start, DBFReader reader) throws IOException;
+	}
+
+	private static final class IntColumn extends Column {
+
+		IntColumn(DBFField field, int offset, MethodHandle setter, int argument) {
+			super(field, offset, setter, argument, int.class);
+		}
+
+		void set(Object target, ByteBuffer buff, int start, DBFReader reader) throws Throwable {
+			setter.invokeExact(target, (int) readLong(dataType, buff, start + offset, length));
+		}
+
+		Object get(ByteBuffer buff, int start, DBFReader reader) throws IOException {
+			return Integer.valueOf((int) readLong(dataType, buff, start + offset, length));
+		}
+	}
+
+	private static final class LongColumn extends Column {
+
+		LongColumn(DBFField field, int offset, MethodHandle setter, int argument) {
+			super(field, offset, setter, argument, long.class);
+		}
+
+		void set(Object target, ByteBuffer buff, int start, DBFReader reader) throws Throwable {
+			setter.invokeExact(target, readLong(dataType, buff, start + offset, length));
+		}
+
+		Object get(ByteBuffer buff, int start, DBFReader reader) throws IOException {
+			return Long.valueOf(readLong(dataType, buff, start + offset, length));
+		}
+	}
+
+	private static final class DoubleColumn extends Column {
+
+		DoubleColumn(DBFField field, int offset, MethodHandle setter, int argument) {
+			super(field, offset, setter, argument, double.class);
+		}
+
+		void set(Object target, ByteBuffer buff, int start, DBFReader reader) throws Throwable {
+			setter.invokeExact(target, readDouble(dataType, buff, start + offset, length));
+		}
+
+		Object get(ByteBuffer buff, int start, DBFReader reader) throws IOException {
+			return Double.valueOf(readDouble(dataType, buff, start + offset, length));
+		}
+	}
+
+	private static final class BooleanColumn extends Column {
+
+		BooleanColumn(DBFField field, int offset, MethodHandle setter, int argument) {
+			super(field, offset, setter, argument, boolean.class);
+		}
+
+		void set(Object target, ByteBuffer buff, int start, DBFReader reader) throws Throwable {
+			setter.invokeExact(target, readBoolean(buff, start + offset));
+		}
+
+		Object get(ByteBuffer buff, int start, DBFReader reader) {
+			return Boolean.valueOf(readBoolean(buff, start + offset));
+		}
+	}
+
+	private static final class ObjectColumn extends Column {
+		private final int kind;
+
+		ObjectColumn(DBFField field, int offset, MethodHandle setter, int argument, int kind) {
+			super(field, offset, setter, argument, Object.class);
+			this.kind = kind;
+		}
+
+		void set(Object target, ByteBuffer buff, int start, DBFReader reader) throws Throwable {
+			setter.invokeExact(target, get(buff, start, reader));
+		}
+
+		Object get(ByteBuffer buff, int start, DBFReader reader) throws IOException {
+			int position = start + offset;
+
+			switch (kind) {
+				case KIND_BOOLEAN:
+					return Boolean.valueOf(readBoolean(buff, position));
+
+				case KIND_STRING:
+					return readString(dataType, buff, position, length, reader);
+
+				case KIND_LOCAL_DATE:
+					return readDate(buff, position);
+
+				case KIND_DATE:
+					LocalDate date = readDate(buff, position);
+					return date == null ? null : date.toDate();
+			}
+
+			if (dataType != DBFField.DataType.INTEGER && isNullNumber(buff, position, length)) {
+				return null;
+			}
+
+			switch (kind) {
+				case KIND_INTEGER:
+					return Integer.valueOf((int) readLong(dataType, buff, position, length));
+
+				case KIND_LONG:
+					return Long.valueOf(readLong(dataType, buff, position, length));
+
+				case KIND_DOUBLE:
+					return Double.valueOf(readDouble(dataType, buff, position, length));
+
+				default:
+					if (dataType == DBFField.DataType.INTEGER) {
+						return BigDecimal.valueOf(buff.getInt(position));
+					}
+					return new BigDecimal(ascii(buff, position, length));
+			}
+		}
+	}
+
+	/* true if a number is blank or holds the '?' or '*' of a missing value */
+	private static boolean isNullNumber(ByteBuffer buff, int position, int length) {
+		boolean blank = true;
+
+		for (int i = position; i < position + length; i++) {
+			byte b = buff.get(i);
+
+			if (b == '?' || b == '*') {
+				return true;
+			}
+			if (b != ' ' && b != 0) {
+				blank = false;
+			}
+		}
+
+		return blank;
+	}
+
+	/* reads a number, truncating any fraction */
+	private static long readLong(DBFField.DataType dataType, ByteBuffer buff, int position, int length) {
+		if (dataType == DBFField.DataType.INTEGER) {
+			return buff.getInt(position);
+		}
+
+		int end = position + length;
+		int i = skipBlanks(buff, position, end);
+		boolean negative = false;
+
+		if (i < end && (buff.get(i) == '-' || buff.get(i) == '+')) {
+			negative = buff.get(i) == '-';
+			i++;
+		}
+
+		long value = 0;
+		int digits = 0;
+
+		for (; i < end; i++) {
+			byte b = buff.get(i);
+			if (b < '0' || b > '9') {
+				break;
+			}
+			value = value * 10 + (b - '0');
+			digits++;
+		}
+
+		if (i < end && buff.get(i) == '.') {
+			i++;
+			while (i < end && buff.get(i) >= '0' && buff.get(i) <= '9') {
+				i++;
+			}
+		}
+
+		if (skipBlanks(buff, i, end) < end || digits > 18) {
+			/* exponents, missing values and anything else unusual */
+			return isNullNumber(buff, position, length) ? 0 : new BigDecimal(ascii(buff, position, length)).longValue();
+		}
+
+		return negative ? -value : value;
+	}
+
+	private static double readDouble(DBFField.DataType dataType, ByteBuffer buff, int position, int length) {
+		if (dataType == DBFField.DataType.INTEGER) {
+			return buff.getInt(position);
+		}
+
+		int end = position + length;
+		int i = skipBlanks(buff, position, end);
+		boolean negative = false;
+
+		if (i < end && (buff.get(i) == '-' || buff.get(i) == '+')) {
+			negative = buff.get(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = -1;
+
+		for (; i < end; i++) {
+			byte b = buff.get(i);
+
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (scale >= 0) {
+					scale++;
+				}
+			} else if (b == '.' && scale < 0) {
+				scale = 0;
+			} else {
+				break;
+			}
+		}
+
+		/* both parts are exact as a double, so the one division rounds like Double.parseDouble() */
+		if (skipBlanks(buff, i, end) < end || digits > 15) {
+			return isNullNumber(buff, position, length) ? 0 : Double.parseDouble(ascii(buff, position, length));
+		}
+
+		double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+		return negative ? -value : value;
+	}
+
+	private static boolean readBoolean(ByteBuffer buff, int position) {
+		byte b = buff.get(position);
+		return b == 'Y' || b == 'y' || b == 'T' || b == 't';
+	}
+
+	private static LocalDate readDate(ByteBuffer buff, int position) {
+		int year = digits(buff, position, 4);
+		int month = digits(buff, position + 4, 2);
+		int day = digits(buff, position + 6, 2);
+
+		if (year < 0 || month < 0 || day < 0) {
+			return null;
+		}
+
+		try {
+			return new LocalDate(year, month, day);
+		} catch (IllegalArgumentException e) {
+			/* this field may be empty or may have improper value set */
+			return null;
+		}
+	}
+
+	/* returns the value of the digits, or -1 if there is anything else */
+	private static int digits(ByteBuffer buff, int position, int count) {
+		int value = 0;
+
+		for (int i = position; i < position + count; i++) {
+			byte b = buff.get(i);
+			if (b < '0' || b > '9') {
+				return -1;
+			}
+			value = value * 10 + (b - '0');
+		}
+
+		return value;
+	}
+
+	private static String readString(DBFField.DataType dataType, ByteBuffer buff, int position, int length, DBFReader reader)
+			throws IOException {
+		if (dataType == DBFField.DataType.MEMO) {
+			if (reader.header.getSignature() == DBFHeader.SIG_VISUAL_FOX_PRO && reader.memoSource != null) {
+				int address = buff.getInt(position);
+				return address > 0 ? reader.memoSource.getMemo(address) : null;
+			}
+			return null;
+		}
+
+		if (dataType != DBFField.DataType.CHARACTER) {
+			return isNullNumber(buff, position, length) ? null : ascii(buff, position, length);
+		}
+
+		int end = position + length;
+		while (end > position && (buff.get(end - 1) == ' ' || buff.get(end - 1) == 0)) {
+			end--;
+		}
+
+		if (buff.hasArray()) {
+			return new String(buff.array(), buff.arrayOffset() + position, end - position, reader.characterSet);
+		}
+
+		byte[] bytes = new byte[end - position];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buff.get(position + i);
+		}
+		return new String(bytes, reader.characterSet);
+	}
+
+	/* the field without leading and trailing blanks, for the slow paths */
+	private static String ascii(ByteBuffer buff, int position, int length) {
+		StringBuilder sb = new StringBuilder(length);
+
+		for (int i = position; i < position + length; i++) {
+			byte b = buff.get(i);
+			if (b != ' ' && b != 0) {
+				sb.append((char) b);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static int skipBlanks(ByteBuffer buff, int position, int end) {
+		while (position < end && (buff.get(position) == ' ' || buff.get(position) == 0)) {
+			position++;
+		}
+		return position;
+	}
+}
@@ -0,0 +1,822 @@
+/*
+  DBFSort
+	Class for sorting the records of a table into a new table, with bounded memory.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+	Sorts a table by some fields into a new table, holding at most about
+	getMemoryLimit() bytes of records at a time:
+
+	<pre>
+	DBFSort sort = new DBFSort();
+	sort.by("STAFF").by("DATE", true);
+	sort.sort(new File("bookings.dbf"), new File("bookings-sorted.dbf"));
+	</pre>
+
+	Records are never decoded. The sort fields of each record are turned
+	into a key of bytes that compare like the values: characters as they
+	are stored, numbers, dates and logicals as the longs of
+	DBFAggregate.value(), big endian with the sign flipped, and descending
+	fields with their bytes inverted. Blank values come first, or last for
+	descending fields.
+
+	The table is read in chunks that getParallelism() threads sort at the
+	same time, each into a run file of keys and raw records in the
+	temporary directory. The runs are then merged with large sequential
+	reads and writes, in several passes if there are more runs than fit in
+	memory at once. A table that fits in one chunk is sorted in memory.
+
+	The sort is stable. Deleted records are left out. The new table has
+	the header of the old one, and a copy of its .fpt memo file if it has
+	one, the memo blocks staying where they were.
+*/
+public class DBFSort {
+
+	public static final long DEFAULT_MEMORY_LIMIT = 64L * 1024 * 1024;
+
+	/* read and write buffer of a run being merged or written */
+	private static final int RUN_BUFFER_SIZE = 256 * 1024;
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private final List<String> fields = new ArrayList<String>();
+	private final List<Boolean> descending = new ArrayList<Boolean>();
+
+	private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor;
+	private File tempDirectory;
+
+	/**
+		Adds a field to sort by, in ascending order.
+	*/
+	public DBFSort by(String field) {
+		return by(field, false);
+	}
+
+	/**
+		Adds a field to sort by. Records with the same values of the earlier
+		fields are sorted by this one.
+	*/
+	public DBFSort by(String field, boolean descending) {
+		this.fields.add(field);
+		this.descending.add(Boolean.valueOf(descending));
+		return this;
+	}
+
+	public long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	/**
+		Sets the number of bytes of records sorted in memory at once, across
+		all threads.
+	*/
+	public void setMemoryLimit(long memoryLimit) {
+		if (memoryLimit <= 0) {
+			throw new IllegalArgumentException("Memory limit should be a positive number");
+		}
+		this.memoryLimit = memoryLimit;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+		Sets the number of chunks sorted at the same time, the number of
+		processors by default.
+	*/
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism should be a positive number");
+		}
+		this.parallelism = parallelism;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+		Sets the executor chunks are sorted on. It is not shut down. Pass null
+		to use a thread pool of getParallelism() threads for each sort.
+	*/
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/**
+		Sets the directory of the run files, the default temporary directory
+		if null.
+	*/
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+		Sorts the table into the output file, replacing it.
+	*/
+	public void sort(File table, File output) throws DBFException {
+		if (fields.isEmpty()) {
+			throw new IllegalArgumentException("No fields to sort by");
+		}
+
+		table = table.getAbsoluteFile();
+		output = output.getAbsoluteFile();
+		if (table.equals(output)) {
+			throw new IllegalArgumentException("Cannot sort " + table + " into itself");
+		}
+
+		DBFReader reader = new DBFReader(table);
+		List<File> runs = new ArrayList<File>();
+
+		try {
+			Keys keys = new Keys(reader.header.getFieldList());
+			int recordLength = reader.header.getRecordLength();
+			long fileRecords = Math.max(0, (reader.dataChannel.size() - reader.header.getHeaderLength()) / recordLength);
+			int records = (int) Math.min(reader.header.getNumberOfRecords(), fileRecords);
+
+			int chunkRecords = (int) Math.max(1024, Math.min(Integer.MAX_VALUE / (recordLength + keys.length),
+					memoryLimit / parallelism / (recordLength + keys.length + 20)));
+
+			ByteBuffer header = ByteBuffer.allocate(reader.header.getHeaderLength());
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			readFully(reader.dataChannel, header, 0);
+
+			if (records <= chunkRecords) {
+				Chunk chunk = new Chunk(Math.max(records, 1), recordLength, keys.length);
+				chunk.read(reader, 0, records, keys);
+				chunk.sort();
+				writeTable(output, header, chunk.source());
+			} else {
+				sortRuns(reader, keys, records, chunkRecords, runs);
+				mergeRuns(runs, keys.length, recordLength);
+				writeTable(output, header, new RunSource(runs.get(0), keys.length, recordLength, RUN_BUFFER_SIZE));
+			}
+
+			copyMemoFile(table, output);
+		} catch (IOException e) {
+			throw e instanceof DBFException ? (DBFException) e : new DBFException("Failed to sort " + table + ": " + e.getMessage(), e);
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+			try {
+				reader.close();
+			} catch (IOException e) {
+				/* opened for reading only */
+			}
+		}
+	}
+
+	/* reads the table in chunks and sorts them into runs, parallelism chunks at a time */
+	private void sortRuns(DBFReader reader, final Keys keys, int records, int chunkRecords, List<File> runs) throws IOException {
+		int recordLength = reader.header.getRecordLength();
+		final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(parallelism);
+		for (int i = 0; i < parallelism; i++) {
+			free.add(new Chunk(chunkRecords, recordLength, keys.length));
+		}
+
+		final RunFiles runFiles = new RunFiles();
+		ExecutorService t_executor = executor != null ? executor : Executors.newFixedThreadPool(parallelism);
+		List<Future<File>> futures = new ArrayList<Future<File>>();
+		boolean done = false;
+
+		try {
+			for (int first = 0; first < records; first += chunkRecords) {
+				final Chunk chunk = free.take();
+				chunk.read(reader, first, Math.min(chunkRecords, records - first), keys);
+
+				futures.add(t_executor.submit(new Callable<File>() {
+
+					public File call() throws IOException {
+						try {
+							chunk.sort();
+							File run = runFiles.create();
+							if (run != null) {
+								boolean written = false;
+								try {
+									chunk.source().writeRun(run);
+									written = true;
+								} finally {
+									runFiles.finished(run, written);
+								}
+							}
+							return run;
+						} finally {
+							free.add(chunk);
+						}
+					}
+				}));
+			}
+
+			for (Future<File> future : futures) {
+				runs.add(future.get());
+			}
+			done = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBFException("Interrupted while sorting", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new DBFException("Failed to sort: " + e.getCause(), e.getCause());
+		} finally {
+			if (!done) {
+				for (Future<File> future : futures) {
+					future.cancel(true);
+				}
+				runFiles.abandon();
+			}
+			if (executor == null) {
+				t_executor.shutdown();
+			}
+		}
+	}
+
+	/*
+	 The run files the tasks of sortRuns() create. Once the sort has failed
+	 they are deleted, including those of tasks that were cancelled but
+	 still running, which delete theirs when they finish.
+	*/
+	private final class RunFiles {
+		private final List<File> files = new ArrayList<File>();
+		private boolean abandoned = false;
+
+		/* creates a run file, or returns null if the sort has failed */
+		synchronized File create() throws IOException {
+			if (abandoned) {
+				return null;
+			}
+
+			File run = File.createTempFile("dbfsort", ".run", tempDirectory);
+			files.add(run);
+			return run;
+		}
+
+		/* deletes the run file if it could not be written or the sort has failed */
+		synchronized void finished(File run, boolean written) {
+			if (!written || abandoned) {
+				run.delete();
+			}
+		}
+
+		synchronized void abandon() {
+			abandoned = true;
+			for (File run : files) {
+				run.delete();
+			}
+		}
+	}
+
+	/* merges the runs until one is left, as many at a time as their buffers fit in memory */
+	private void mergeRuns(List<File> runs, int keyLength, int recordLength) throws IOException {
+		int fanIn = (int) Math.max(2, Math.min(1024, memoryLimit / RUN_BUFFER_SIZE - 1));
+
+		while (runs.size() > 1) {
+			List<File> merged = new ArrayList<File>();
+			boolean done = false;
+
+			try {
+				for (int i = 0; i < runs.size(); i += fanIn) {
+					List<File> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+
+					if (group.size() == 1 && runs.size() - i == 1 && i > 0) {
+						merged.add(group.get(0));
+						continue;
+					}
+
+					File run = File.createTempFile("dbfsort", ".run", tempDirectory);
+					merged.add(run);
+					new MergeSource(group, keyLength, recordLength).writeRun(run);
+				}
+				done = true;
+			} finally {
+				/* the runs of the pass that failed are deleted by sort() */
+				List<File> obsolete = done ? runs : merged;
+				List<File> kept = done ? merged : runs;
+				for (File run : obsolete) {
+					if (!kept.contains(run)) {
+						run.delete();
+					}
+				}
+			}
+
+			runs.clear();
+			runs.addAll(merged);
+		}
+	}
+
+	/* writes the header of the table, the sorted records and the END_OF_DATA mark */
+	private static void writeTable(File output, ByteBuffer header, Source source) throws IOException {
+		FileChannel channel = new FileOutputStream(output).getChannel();
+		try {
+			header.clear();
+			writeFully(channel, header);
+
+			ByteBuffer buff = ByteBuffer.allocate(1024 * 1024);
+			int records = 0;
+
+			while (source.next()) {
+				if (buff.remaining() < source.recordLength) {
+					buff.flip();
+					writeFully(channel, buff);
+					buff.clear();
+				}
+				source.putRecord(buff);
+				records++;
+			}
+
+			if (!buff.hasRemaining()) {
+				buff.flip();
+				writeFully(channel, buff);
+				buff.clear();
+			}
+			buff.put(DBFBase.END_OF_DATA);
+			buff.flip();
+			writeFully(channel, buff);
+
+			ByteBuffer count = ByteBuffer.allocate(4);
+			count.order(ByteOrder.LITTLE_ENDIAN);
+			count.putInt(0, records);
+			channel.write(count, 4);
+		} finally {
+			source.close();
+			channel.close();
+		}
+	}
+
+	/* copies the memo file of the table next to the output, named after it */
+	static void copyMemoFile(File table, File output) throws IOException {
+		final String memoName = table.getName().replaceAll("\\.[^.]+$", "") + ".fpt";
+		String[] list = table.getParentFile().list(new FilenameFilter() {
+
+			public boolean accept(File dir, String name) {
+				return memoName.equalsIgnoreCase(name);
+			}
+		});
+
+		if (list != null && list.length > 0) {
+			File memo = new File(table.getParentFile(), list[0]);
+			Files.copy(memo.toPath(), new File(output.getParentFile(), output.getName().replaceAll("\\.[^.]+$", "") + ".fpt").toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buff, long position) throws IOException {
+		while (buff.hasRemaining()) {
+			int read = channel.read(buff, position + buff.position());
+			if (read < 0) {
+				throw new DBFException("Unexpected end of file at " + (position + buff.position()));
+			}
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buff) throws IOException {
+		while (buff.hasRemaining()) {
+			channel.write(buff);
+		}
+	}
+
+	private static int compare(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+		for (int i = 0; i < length; i++) {
+			int c = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	/* turns the sort fields of records into keys of bytes */
+	private final class Keys {
+		final DBFField[] sortFields;
+		final int[] offsets;
+		final int[] keyOffsets;
+		final boolean[] inverted;
+		final int length;
+
+		Keys(List<DBFField> tableFields) {
+			sortFields = new DBFField[fields.size()];
+			offsets = new int[fields.size()];
+			keyOffsets = new int[fields.size()];
+			inverted = new boolean[fields.size()];
+
+			int keyLength = 0;
+			for (int k = 0; k < fields.size(); k++) {
+				int offset = 1;
+				for (DBFField field : tableFields) {
+					if (field.getName().equalsIgnoreCase(fields.get(k))) {
+						sortFields[k] = field;
+						offsets[k] = offset;
+					}
+					offset += field.getFieldLength();
+				}
+
+				if (sortFields[k] == null) {
+					throw new IllegalArgumentException("No field " + fields.get(k));
+				}
+				if (sortFields[k].getDataType() == DBFField.DataType.MEMO) {
+					throw new IllegalArgumentException("Cannot sort by memo field " + fields.get(k));
+				}
+
+				keyOffsets[k] = keyLength;
+				inverted[k] = descending.get(k).booleanValue();
+				keyLength += sortFields[k].getDataType() == DBFField.DataType.CHARACTER ? sortFields[k].getFieldLength() : 8;
+			}
+
+			length = keyLength;
+		}
+
+		/* writes the key of the record starting at the deleted flag at start */
+		void key(ByteBuffer records, int start, byte[] keys, int keyStart) throws DBFException {
+			for (int k = 0; k < sortFields.length; k++) {
+				int position = keyStart + keyOffsets[k];
+				int end;
+
+				if (sortFields[k].getDataType() == DBFField.DataType.CHARACTER) {
+					end = position + sortFields[k].getFieldLength();
+					for (int i = position, j = start + offsets[k]; i < end; i++, j++) {
+						keys[i] = records.get(j);
+					}
+				} else {
+					long value = DBFAggregate.value(sortFields[k], records, start + offsets[k]) ^ Long.MIN_VALUE;
+					end = position + 8;
+					for (int i = end - 1; i >= position; i--) {
+						keys[i] = (byte) value;
+						value >>>= 8;
+					}
+				}
+
+				if (inverted[k]) {
+					for (int i = position; i < end; i++) {
+						keys[i] = (byte) ~keys[i];
+					}
+				}
+			}
+		}
+	}
+
+	/* records sorted one after the other */
+	private abstract static class Source {
+		final int keyLength;
+		final int recordLength;
+
+		Source(int keyLength, int recordLength) {
+			this.keyLength = keyLength;
+			this.recordLength = recordLength;
+		}
+
+		/* moves to the next record, returns false at the end */
+		abstract boolean next() throws IOException;
+
+		abstract byte[] keys();
+
+		abstract int keyOffset();
+
+		abstract void putKey(ByteBuffer buff);
+
+		abstract void putRecord(ByteBuffer buff);
+
+		void close() throws IOException {
+		}
+
+		/* writes the keys and records to a run file */
+		void writeRun(File run) throws IOException {
+			FileChannel channel = new FileOutputStream(run).getChannel();
+			try {
+				ByteBuffer buff = ByteBuffer.allocate(Math.max(RUN_BUFFER_SIZE, keyLength + recordLength));
+				while (next()) {
+					if (buff.remaining() < keyLength + recordLength) {
+						buff.flip();
+						writeFully(channel, buff);
+						buff.clear();
+					}
+					putKey(buff);
+					putRecord(buff);
+				}
+				buff.flip();
+				writeFully(channel, buff);
+			} finally {
+				close();
+				channel.close();
+			}
+		}
+	}
+
+	/* a chunk of records read from the table, with their keys, sorted in memory */
+	private static final class Chunk {
+		final int recordLength;
+		final int keyLength;
+		final ByteBuffer records;
+		final byte[] keys;
+		final long[] prefixes;
+		int[] order;
+		int[] work;
+		int count;
+
+		Chunk(int capacity, int recordLength, int keyLength) {
+			this.recordLength = recordLength;
+			this.keyLength = keyLength;
+			this.records = ByteBuffer.allocate(capacity * recordLength);
+			this.records.order(ByteOrder.LITTLE_ENDIAN);
+			this.keys = new byte[capacity * keyLength];
+			this.prefixes = new long[capacity];
+			this.order = new int[capacity];
+			this.work = new int[capacity];
+		}
+
+		/* reads the records from the first one and keys the live ones */
+		void read(DBFReader reader, int first, int records, Keys t_keys) throws IOException {
+			this.records.clear();
+			this.records.limit(records * recordLength);
+			readFully(reader.dataChannel, this.records, reader.header.getHeaderLength() + (long) first * recordLength);
+
+			count = 0;
+			for (int r = 0; r < records; r++) {
+				int start = r * recordLength;
+				if (this.records.get(start) == '*') {
+					continue;
+				}
+
+				int keyStart = r * keyLength;
+				t_keys.key(this.records, start, keys, keyStart);
+
+				long prefix = 0;
+				for (int i = 0; i < 8; i++) {
+					prefix = prefix << 8 | (i < keyLength ? keys[keyStart + i] & 0xFF : 0);
+				}
+				prefixes[r] = prefix ^ Long.MIN_VALUE;
+				order[count++] = r;
+			}
+		}
+
+		void sort() {
+			System.arraycopy(order, 0, work, 0, count);
+			mergeSort(work, order, 0, count);
+		}
+
+		/* sorts to[from, to) stably, from[] holding the same indexes */
+		private void mergeSort(int[] src, int[] dest, int low, int high) {
+			if (high - low < INSERTION_SORT_THRESHOLD) {
+				for (int i = low; i < high; i++) {
+					int index = dest[i];
+					int j = i;
+					while (j > low && compare(dest[j - 1], index) > 0) {
+						dest[j] = dest[j - 1];
+						j--;
+					}
+					dest[j] = index;
+				}
+				return;
+			}
+
+			int middle = (low + high) >>> 1;
+			mergeSort(dest, src, low, middle);
+			mergeSort(dest, src, middle, high);
+
+			if (compare(src[middle - 1], src[middle]) <= 0) {
+				System.arraycopy(src, low, dest, low, high - low);
+				return;
+			}
+
+			for (int i = low, p = low, q = middle; i < high; i++) {
+				if (q >= high || (p < middle && compare(src[p], src[q]) <= 0)) {
+					dest[i] = src[p++];
+				} else {
+					dest[i] = src[q++];
+				}
+			}
+		}
+
+		private int compare(int a, int b) {
+			if (prefixes[a] != prefixes[b]) {
+				return prefixes[a] < prefixes[b] ? -1 : 1;
+			}
+			return keyLength <= 8 ? 0 : DBFSort.compare(keys, a * keyLength + 8, keys, b * keyLength + 8, keyLength - 8);
+		}
+
+		Source source() {
+			return new Source(keyLength, recordLength) {
+				int i = -1;
+
+				boolean next() {
+					return ++i < count;
+				}
+
+				byte[] keys() {
+					return keys;
+				}
+
+				int keyOffset() {
+					return order[i] * keyLength;
+				}
+
+				void putKey(ByteBuffer buff) {
+					buff.put(keys, order[i] * keyLength, keyLength);
+				}
+
+				void putRecord(ByteBuffer buff) {
+					buff.put(records.array(), order[i] * recordLength, recordLength);
+				}
+			};
+		}
+	}
+
+	/* the keys and records of a run file */
+	private static final class RunSource extends Source {
+		private final FileChannel channel;
+		private final ByteBuffer buff;
+		private final int entryLength;
+		private int entry = -1;
+		private long position = 0;
+
+		RunSource(File run, int keyLength, int recordLength, int bufferSize) throws IOException {
+			super(keyLength, recordLength);
+			this.channel = new FileInputStream(run).getChannel();
+			this.entryLength = keyLength + recordLength;
+			this.buff = ByteBuffer.allocate(Math.max(bufferSize / entryLength, 1) * entryLength);
+			this.buff.flip();
+		}
+
+		boolean next() throws IOException {
+			if (entry >= 0) {
+				buff.position(entry + entryLength);
+			}
+
+			if (buff.remaining() < entryLength) {
+				buff.compact();
+				while (buff.hasRemaining()) {
+					int read = channel.read(buff, position);
+					if (read < 0) {
+						break;
+					}
+					position += read;
+				}
+				buff.flip();
+
+				if (buff.remaining() < entryLength) {
+					entry = -1;
+					return false;
+				}
+			}
+
+			entry = buff.position();
+			return true;
+		}
+
+		byte[] keys() {
+			return buff.array();
+		}
+
+		int keyOffset() {
+			return entry;
+		}
+
+		void putKey(ByteBuffer out) {
+			out.put(buff.array(), entry, keyLength);
+		}
+
+		void putRecord(ByteBuffer out) {
+			out.put(buff.array(), entry + keyLength, recordLength);
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/* merges runs, keeping the order of the runs for equal keys */
+	private static final class MergeSource extends Source {
+		private final RunSource[] runs;
+		private final int[] heap;
+		private int size;
+		private boolean started = false;
+
+		MergeSource(List<File> files, int keyLength, int recordLength) throws IOException {
+			super(keyLength, recordLength);
+			int bufferSize = RUN_BUFFER_SIZE;
+
+			runs = new RunSource[files.size()];
+			heap = new int[files.size()];
+			try {
+				for (int i = 0; i < runs.length; i++) {
+					runs[i] = new RunSource(files.get(i), keyLength, recordLength, bufferSize);
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		boolean next() throws IOException {
+			if (!started) {
+				started = true;
+				for (int i = 0; i < runs.length; i++) {
+					if (runs[i].next()) {
+						heap[size++] = i;
+					}
+				}
+				for (int i = size / 2 - 1; i >= 0; i--) {
+					siftDown(i);
+				}
+				return size > 0;
+			}
+
+			if (size == 0) {
+				return false;
+			}
+
+			if (!runs[heap[0]].next()) {
+				heap[0] = heap[--size];
+			}
+			if (size > 0) {
+				siftDown(0);
+			}
+			return size > 0;
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int smallest = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+
+				if (left < size && less(heap[left], heap[smallest])) {
+					smallest = left;
+				}
+				if (right < size && less(heap[right], heap[smallest])) {
+					smallest = right;
+				}
+				if (smallest == i) {
+					return;
+				}
+
+				int t = heap[i];
+				heap[i] = heap[smallest];
+				heap[smallest] = t;
+				i = smallest;
+			}
+		}
+
+		private boolean less(int a, int b) {
+			int c = compare(runs[a].keys(), runs[a].keyOffset(), runs[b].keys(), runs[b].keyOffset(), keyLength);
+			return c < 0 || (c == 0 && a < b);
+		}
+
+		byte[] keys() {
+			return runs[heap[0]].keys();
+		}
+
+		int keyOffset() {
+			return runs[heap[0]].keyOffset();
+		}
+
+		void putKey(ByteBuffer buff) {
+			runs[heap[0]].putKey(buff);
+		}
+
+		void putRecord(ByteBuffer buff) {
+			runs[heap[0]].putRecord(buff);
+		}
+
+		void close() throws IOException {
+			for (RunSource run : runs) {
+				if (run != null) {
+					run.close();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/*
+  DBFStatistics
+	Class for collecting I/O and parsing statistics from readers and writers.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+	Counts what DBFReader, DBFWriter and the memo files do.
+
+	Statistics are off unless an object of this class is set with
+	setStatistics(). One object may be shared by any number of readers and
+	writers, on any number of threads, to get totals for a whole job.
+
+	Parse time is measured on one record out of every sampleInterval records
+	only, so timing costs close to nothing. getParseNanos() scales the sampled
+	time up to all records read.
+
+	Use snapshot() for a copy of the counters, or register() to
+	publish them as a JMX MXBean.
+*/
+public class DBFStatistics implements DBFStatisticsMXBean {
+
+	public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+	private static final DBFField.DataType[] TYPES = DBFField.DataType.values();
+
+	private final int sampleInterval;
+
+	private final AtomicLong recordsRead = new AtomicLong();
+	private final AtomicLong recordsWritten = new AtomicLong();
+	private final AtomicLong recordsSkippedDeleted = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong readCalls = new AtomicLong();
+	private final AtomicLong writeCalls = new AtomicLong();
+	private final AtomicLong memoFetches = new AtomicLong();
+	private final AtomicLong memoBytes = new AtomicLong();
+	private final AtomicLong sampledRecords = new AtomicLong();
+	private final AtomicLongArray sampledParseNanos = new AtomicLongArray(TYPES.length);
+
+	private ObjectName objectName;
+
+	public DBFStatistics() {
+		this(DEFAULT_SAMPLE_INTERVAL);
+	}
+
+	/**
+		@param sampleInterval parse time is measured on one record out of this many.
+	*/
+	public DBFStatistics(int sampleInterval) {
+		if (sampleInterval <= 0) {
+			throw new IllegalArgumentException("Sample interval should be a positive number");
+		}
+		this.sampleInterval = sampleInterval;
+	}
+
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/* counters updated by the readers, writers and memo files */
+
+	void recordRead() {
+		recordsRead.incrementAndGet();
+	}
+
+	void recordWritten(int records) {
+		recordsWritten.addAndGet(records);
+	}
+
+	void recordSkippedDeleted() {
+		recordsSkippedDeleted.incrementAndGet();
+	}
+
+	void channelRead(int bytes) {
+		readCalls.incrementAndGet();
+		if (bytes > 0) {
+			bytesRead.addAndGet(bytes);
+		}
+	}
+
+	void channelWrite(int bytes) {
+		writeCalls.incrementAndGet();
+		bytesWritten.addAndGet(bytes);
+	}
+
+	void memoFetched(int bytes) {
+		memoFetches.incrementAndGet();
+		memoBytes.addAndGet(bytes);
+	}
+
+	void recordSampled() {
+		sampledRecords.incrementAndGet();
+	}
+
+	void parsed(DBFField.DataType type, long nanos) {
+		sampledParseNanos.addAndGet(type.ordinal(), nanos);
+	}
+
+	/* MXBean attributes */
+
+	public long getRecordsRead() {
+		return recordsRead.get();
+	}
+
+	public long getRecordsWritten() {
+		return recordsWritten.get();
+	}
+
+	public long getRecordsSkippedDeleted() {
+		return recordsSkippedDeleted.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public long getReadCalls() {
+		return readCalls.get();
+	}
+
+	public long getWriteCalls() {
+		return writeCalls.get();
+	}
+
+	public long getMemoFetches() {
+		return memoFetches.get();
+	}
+
+	public long getMemoBytes() {
+		return memoBytes.get();
+	}
+
+	public long getSampledRecords() {
+		return sampledRecords.get();
+	}
+
+	/**
+		Estimated time spent parsing each field type, in nanoseconds.
+	*/
+	public Map<DBFField.DataType, Long> getParseNanos() {
+		return snapshot().getParseNanos();
+	}
+
+	/**
+		Returns a copy of all counters. Counters keep changing while the copy
+		is taken, so values may be off by the records in flight.
+	*/
+	public Snapshot snapshot() {
+		long[] parseNanos = new long[TYPES.length];
+		for (int i = 0; i < parseNanos.length; i++) {
+			parseNanos[i] = sampledParseNanos.get(i);
+		}
+
+		return new Snapshot(recordsRead.get(), recordsWritten.get(), recordsSkippedDeleted.get(), bytesRead.get(), bytesWritten.get(), readCalls.get(),
+				writeCalls.get(), memoFetches.get(), memoBytes.get(), sampledRecords.get(), parseNanos);
+	}
+
+	/**
+		Sets all counters to zero.
+	*/
+	public void reset() {
+		recordsRead.set(0);
+		recordsWritten.set(0);
+		recordsSkippedDeleted.set(0);
+		bytesRead.set(0);
+		bytesWritten.set(0);
+		readCalls.set(0);
+		writeCalls.set(0);
+		memoFetches.set(0);
+		memoBytes.set(0);
+		sampledRecords.set(0);
+		for (int i = 0; i < TYPES.length; i++) {
+			sampledParseNanos.set(i, 0);
+		}
+	}
+
+	/**
+		Registers the statistics with the platform MBean server as
+		com.linuxense.javadbf:type=DBFStatistics,name=<name>.
+	*/
+	public synchronized void register(String name) throws DBFException {
+		if (objectName != null) {
+			throw new DBFException("Statistics are already registered as " + objectName);
+		}
+
+		try {
+			ObjectName t_objectName = new ObjectName("com.linuxense.javadbf:type=DBFStatistics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, t_objectName);
+			objectName = t_objectName;
+		} catch (JMException e) {
+			throw new DBFException("Failed to register statistics: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+		Removes the statistics from the platform MBean server, if registered.
+	*/
+	public synchronized void unregister() throws DBFException {
+		if (objectName == null) {
+			return;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			objectName = null;
+		} catch (JMException e) {
+			throw new DBFException("Failed to unregister statistics: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+		An immutable copy of the counters.
+	*/
+	public static final class Snapshot {
+		private final long recordsRead;
+		private final long recordsWritten;
+		private final long recordsSkippedDeleted;
+		private final long bytesRead;
+		private final long bytesWritten;
+		private final long readCalls;
+		private final long writeCalls;
+		private final long memoFetches;
+		private final long memoBytes;
+		private final long sampledRecords;
+		private final long[] sampledParseNanos;
+
+		private Snapshot(long recordsRead, long recordsWritten, long recordsSkippedDeleted, long bytesRead, long bytesWritten, long readCalls,
+				long writeCalls, long memoFetches, long memoBytes, long sampledRecords, long[] sampledParseNanos) {
+			this.recordsRead = recordsRead;
+			this.recordsWritten = recordsWritten;
+			this.recordsSkippedDeleted = recordsSkippedDeleted;
+			this.bytesRead = bytesRead;
+			this.bytesWritten = bytesWritten;
+			this.readCalls = readCalls;
+			this.writeCalls = writeCalls;
+			this.memoFetches = memoFetches;
+			this.memoBytes = memoBytes;
+			this.sampledRecords = sampledRecords;
+			this.sampledParseNanos = sampledParseNanos;
+		}
+
+		public long getRecordsRead() {
+			return recordsRead;
+		}
+
+		public long getRecordsWritten() {
+			return recordsWritten;
+		}
+
+		public long getRecordsSkippedDeleted() {
+			return recordsSkippedDeleted;
+		}
+
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		public long getBytesWritten() {
+			return bytesWritten;
+		}
+
+		public long getReadCalls() {
+			return readCalls;
+		}
+
+		public long getWriteCalls() {
+			return writeCalls;
+		}
+
+		public long getMemoFetches() {
+			return memoFetches;
+		}
+
+		public long getMemoBytes() {
+			return memoBytes;
+		}
+
+		public long getSampledRecords() {
+			return sampledRecords;
+		}
+
+		/**
+			Time measured parsing fields of the given type in the sampled records.
+		*/
+		public long getSampledParseNanos(DBFField.DataType type) {
+			return sampledParseNanos[type.ordinal()];
+		}
+
+		/**
+			Estimated time spent parsing fields of the given type in all records
+			read, in nanoseconds.
+		*/
+		public long getParseNanos(DBFField.DataType type) {
+			if (sampledRecords == 0) {
+				return 0;
+			}
+			return (long) (sampledParseNanos[type.ordinal()] * ((double) recordsRead / sampledRecords));
+		}
+
+		/**
+			Estimated parse time of every field type, see getParseNanos( DataType).
+		*/
+		public Map<DBFField.DataType, Long> getParseNanos() {
+			Map<DBFField.DataType, Long> result = new EnumMap<DBFField.DataType, Long>(DBFField.DataType.class);
+			for (DBFField.DataType type : TYPES) {
+				result.put(type, Long.valueOf(getParseNanos(type)));
+			}
+			return Collections.unmodifiableMap(result);
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder().append("records read: ").append(recordsRead).append(", skipped deleted: ").append(recordsSkippedDeleted)
+					.append(", written: ").append(recordsWritten).append("\nbytes read: ").append(bytesRead).append(" in ").append(readCalls)
+					.append(" calls, written: ").append(bytesWritten).append(" in ").append(writeCalls).append(" calls\nmemos fetched: ")
+					.append(memoFetches).append(", ").append(memoBytes).append(" bytes\nparse nanos: ").append(getParseNanos()).toString();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.linuxense.javadbf;
+
+import java.util.Map;
+
+/**
+	Management interface of DBFStatistics, see DBFStatistics.register().
+*/
+public interface DBFStatisticsMXBean {
+
+	int getSampleInterval();
+
+	long getRecordsRead();
+
+	long getRecordsWritten();
+
+	long getRecordsSkippedDeleted();
+
+	long getBytesRead();
+
+	long getBytesWritten();
+
+	long getReadCalls();
+
+	long getWriteCalls();
+
+	long getMemoFetches();
+
+	long getMemoBytes();
+
+	long getSampledRecords();
+
+	/**
+		Keyed by field type, which JMX clients see as the type name.
+	*/
+	Map<DBFField.DataType, Long> getParseNanos();
+
+	void reset();
+}
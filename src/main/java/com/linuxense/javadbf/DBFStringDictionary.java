@@ -0,0 +1,286 @@
+/*
+  DBFStringDictionary
+	Class for sharing one String among the equal values of a character field.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+	The distinct values of a character field met so far, keyed by their
+	bytes in the record. A value is looked up by hashing and comparing the
+	bytes where they lie, so a value seen before costs neither a byte array
+	nor a String, and every record gets the same String for it. Each value
+	also has a code, its position in the dictionary.
+
+	A dictionary holds at most getMaxEntries() values; values past that are
+	decoded as usual. The hit rate is checked every WINDOW lookups, and if
+	fewer than a quarter of them found their value the field is taken for
+	one with too many distinct values: the dictionary gives up, frees its
+	values and isEnabled() turns false.
+
+	See DBFReader.setDictionary(). A dictionary is used by one reader and
+	is not safe for use by several threads.
+*/
+public final class DBFStringDictionary {
+
+	/** Distinct values kept by default. */
+	public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+	/** Lookups between two checks of the hit rate. */
+	public static final int WINDOW = 4096;
+
+	private final Charset charset;
+	private final int length;
+	private final int maxEntries;
+	private final boolean adaptive;
+
+	/* code + 1 of the value hashed to each slot, 0 for an empty slot */
+	private int[] slots;
+	private int[] hashes;
+	private byte[][] keys;
+	private String[] values;
+	private int size;
+
+	private boolean enabled = true;
+	private long lookups;
+	private long hits;
+	private int windowLookups;
+	private int windowHits;
+
+	/**
+		@param length the length of the field, which every value has.
+		@param adaptive whether the dictionary gives up on a low hit rate.
+	*/
+	DBFStringDictionary(Charset charset, int length, int maxEntries, boolean adaptive) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("A dictionary holds at least one value: " + maxEntries);
+		}
+
+		this.charset = charset;
+		this.length = length;
+		this.maxEntries = maxEntries;
+		this.adaptive = adaptive;
+
+		int capacity = Math.min(maxEntries, 64);
+		slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+		hashes = new int[capacity];
+		keys = new byte[capacity][];
+		values = new String[capacity];
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+		Returns false once the dictionary has given up on the field.
+	*/
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+		Returns the number of values in the dictionary.
+	*/
+	public int size() {
+		return size;
+	}
+
+	public long getLookups() {
+		return lookups;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+		Returns the value of a code, padded as DBFReader returns it.
+	*/
+	public String get(int code) {
+		if (code < 0 || code >= size) {
+			throw new IndexOutOfBoundsException("No code " + code + ", the dictionary has " + size + " values");
+		}
+		return values[code];
+	}
+
+	/**
+		Returns the code of a value, which is padded to the length of the
+		field, or -1 if the dictionary does not hold it.
+	*/
+	public int getCode(String value) {
+		if (!enabled) {
+			return -1;
+		}
+
+		ByteBuffer bytes = ByteBuffer.wrap(Utils.textPadding(value, charset, length));
+		int hash = hash(bytes, 0, length);
+		return slots[slot(bytes, 0, hash)] - 1;
+	}
+
+	/* the values by code */
+	List<String> values() {
+		return Collections.unmodifiableList(Arrays.asList(values).subList(0, size));
+	}
+
+	/* the bytes of the value of a code */
+	byte[] bytes(int code) {
+		return keys[code];
+	}
+
+	/**
+		Returns the String of the value at position, the one of the dictionary
+		if it holds the value.
+	*/
+	String lookup(ByteBuffer buff, int position) {
+		if (!enabled) {
+			return new String(copy(buff, position), charset);
+		}
+
+		int added = size;
+		int code = find(buff, position);
+		String value = code >= 0 ? values[code] : new String(copy(buff, position), charset);
+
+		count(code >= 0 && size == added);
+		return value;
+	}
+
+	/**
+		Returns the code of the value at position, adding the value to the
+		dictionary if there is room, or -1.
+	*/
+	int code(ByteBuffer buff, int position) {
+		if (!enabled) {
+			return -1;
+		}
+
+		int added = size;
+		int code = find(buff, position);
+
+		count(code >= 0 && size == added);
+		return enabled ? code : -1;
+	}
+
+	/* the code of the value at position, which is added if it is new and there is room, or -1 */
+	private int find(ByteBuffer buff, int position) {
+		int hash = hash(buff, position, length);
+		int slot = slot(buff, position, hash);
+
+		if (slots[slot] != 0) {
+			return slots[slot] - 1;
+		}
+
+		if (size == maxEntries) {
+			return -1;
+		}
+
+		return add(copy(buff, position), hash);
+	}
+
+	/* the slot holding the value at position, or the empty slot it would go to */
+	private int slot(ByteBuffer buff, int position, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+
+		while (slots[slot] != 0) {
+			int code = slots[slot] - 1;
+			if (hashes[code] == hash && equals(keys[code], buff, position)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	private int add(byte[] key, int hash) {
+		if (size == keys.length) {
+			int capacity = (int) Math.min((long) size * 2, maxEntries);
+			hashes = Arrays.copyOf(hashes, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		int code = size++;
+		hashes[code] = hash;
+		keys[code] = key;
+		values[code] = new String(key, charset);
+
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		} else {
+			slots[slot(ByteBuffer.wrap(key), 0, hash)] = code + 1;
+		}
+
+		return code;
+	}
+
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		int mask = capacity - 1;
+
+		for (int code = 0; code < size; code++) {
+			int slot = hashes[code] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = code + 1;
+		}
+	}
+
+	private void count(boolean hit) {
+		lookups++;
+		if (hit) {
+			hits++;
+			windowHits++;
+		}
+
+		if (adaptive && ++windowLookups == WINDOW) {
+			if (windowHits < WINDOW / 4) {
+				/* too many distinct values to be worth it */
+				enabled = false;
+				slots = null;
+				hashes = null;
+				keys = null;
+				values = null;
+				size = 0;
+			}
+			windowLookups = 0;
+			windowHits = 0;
+		}
+	}
+
+	private boolean equals(byte[] key, ByteBuffer buff, int position) {
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != buff.get(position + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte[] copy(ByteBuffer buff, int position) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buff.get(position + i);
+		}
+		return bytes;
+	}
+
+	private static int hash(ByteBuffer buff, int position, int length) {
+		int hash = 1;
+		for (int i = position; i < position + length; i++) {
+			hash = 31 * hash + buff.get(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
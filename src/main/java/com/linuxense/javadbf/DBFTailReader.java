@@ -0,0 +1,339 @@
+/*
+  DBFTailReader
+	Class for following a DBF file other programs keep appending records to.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+	Reads the records appended to a DBF file since the last poll.
+
+	The reader remembers the index of the next record to consume. Each poll
+	re-reads the record count from the 32 byte header (and, if enabled, works
+	it out from the file size) and reads only the records added since, with
+	positional reads. Deleted records, and records not matching the filter
+	of setFilter(), are skipped but still consumed.
+
+	With a checkpoint file the index survives restarts: poll( RecordHandler)
+	saves it after the handler has taken every record, and checkpoint() saves
+	it on demand. Records are therefore delivered at least once; after a crash
+	the records since the last checkpoint are delivered again.
+
+	Every nextRecord() method returns the next appended record, or null if
+	there is none yet. Once more records are appended later calls return
+	them. getRecordCount() is the count found at the last poll, so anything
+	scanning the reader, like DBFExporter or DBFAggregate, reads from the
+	next record to consume to the end of the table and moves it forward.
+*/
+public class DBFTailReader extends DBFReader {
+
+	/**
+		Callback for poll( RecordHandler).
+	*/
+	public interface RecordHandler {
+
+		/**
+			@param recordIndex index of the record in the table, the first record being 0.
+			@param values the record, typed as for DBFReader.nextRecord().
+		*/
+		void handleRecord(int recordIndex, Object[] values) throws IOException;
+	}
+
+	private static final String CHECKPOINT_INDEX = "recordIndex";
+
+	private final File checkpointFile;
+
+	private boolean useFileSize = false;
+
+	/**
+		Opens the table and starts at its first record.
+	*/
+	public DBFTailReader(File file) throws DBFException {
+		this(file, null);
+	}
+
+	/**
+		Opens the table and resumes at the record index saved in the
+		checkpoint file, or at the first record if there is no checkpoint yet.
+
+		@param checkpointFile file the record index is saved to, or null.
+	*/
+	public DBFTailReader(File file, File checkpointFile) throws DBFException {
+		super(file);
+
+		this.checkpointFile = checkpointFile;
+
+		if (checkpointFile != null && checkpointFile.exists()) {
+			recordIndex = loadCheckpoint(checkpointFile);
+		}
+	}
+
+	public boolean isUseFileSize() {
+		return useFileSize;
+	}
+
+	/**
+		If set, the record count is also worked out from the file size. Use
+		it with writers that append records but update the header only when
+		they finish. Only complete records are counted.
+	*/
+	public void setUseFileSize(boolean useFileSize) {
+		this.useFileSize = useFileSize;
+	}
+
+	/**
+		Returns the index of the next record to consume.
+	*/
+	public int getNextIndex() {
+		return recordIndex;
+	}
+
+	/**
+		Re-reads the record count and returns the number of records not
+		consumed yet. If a locking convention is set the count is read under
+		a shared lock of the header.
+	*/
+	public int refresh() throws DBFException {
+		checkIfClosed();
+
+		try {
+			int count = readPublishedCount();
+
+			if (useFileSize) {
+				long fromSize = (dataChannel.size() - header.getHeaderLength()) / header.getRecordLength();
+				count = (int) Math.max(count, fromSize);
+			}
+
+			int known = Math.max(recordIndex, header.getNumberOfRecords());
+			if (count < known) {
+				throw new DBFException("Table has " + count + " records but had " + known + ". It has been replaced or packed.");
+			}
+
+			header.setNumberOfRecords(count);
+			return count - recordIndex;
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
+
+	/**
+		Same as refresh(), returning the record count.
+	*/
+	@Override
+	public int refreshRecordCount() throws DBFException {
+		refresh();
+		return header.getNumberOfRecords();
+	}
+
+	/**
+		Returns the records appended since the last poll, at most maxRecords of
+		them. The checkpoint is not saved; call checkpoint() once the records
+		are processed.
+	*/
+	public List<Object[]> poll(int maxRecords) throws DBFException {
+		final List<Object[]> records = new ArrayList<Object[]>();
+
+		poll(maxRecords, new RecordHandler() {
+
+			public void handleRecord(int recordIndex, Object[] values) {
+				records.add(values);
+			}
+		});
+
+		return records;
+	}
+
+	/**
+		Passes every record appended since the last poll to the handler, then
+		saves the checkpoint.
+
+		@return the number of records consumed, including deleted ones.
+	*/
+	public int poll(RecordHandler handler) throws DBFException {
+		int consumed = poll(Integer.MAX_VALUE, handler);
+
+		if (consumed > 0) {
+			checkpoint();
+		}
+
+		return consumed;
+	}
+
+	private int poll(int maxRecords, RecordHandler handler) throws DBFException {
+		int first = recordIndex;
+		int end = first + Math.min(refresh(), maxRecords);
+
+		try {
+			ByteBuffer buff;
+			while ((buff = nextRecordBuffer(end)) != null) {
+				Object[] values;
+				try {
+					values = decodeRecord(buff);
+				} finally {
+					releaseRecord();
+				}
+
+				handler.handleRecord(recordIndex - 1, values);
+			}
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+
+		return recordIndex - first;
+	}
+
+	/**
+		Returns the read buffer on the next live record appended, refreshing
+		the record count once the records found so far are consumed. All the
+		nextRecord() methods read through it.
+	*/
+	@Override
+	ByteBuffer nextRecordBuffer() throws DBFException {
+		return nextRecordBuffer(Integer.MAX_VALUE);
+	}
+
+	/* records come from the cursor, which follows the table as it grows */
+	@Override
+	boolean scansInRanges() {
+		return false;
+	}
+
+	/* as nextRecordBuffer(), but stops before the record at index end */
+	private ByteBuffer nextRecordBuffer(int end) throws DBFException {
+		checkIfClosed();
+		releaseRecord();
+
+		int recordLength = header.getRecordLength();
+
+		try {
+			while (recordIndex < end) {
+				if (!readBuffer.hasRemaining()) {
+					if (recordIndex >= header.getNumberOfRecords() && refresh() == 0) {
+						return null;
+					}
+					readRecords(Math.min(readBuffer.capacity() / recordLength, header.getNumberOfRecords() - recordIndex));
+				}
+
+				int start = readBuffer.position();
+				recordIndex++;
+
+				if (readBuffer.get(start) == '*') {
+					if (statistics != null) {
+						statistics.recordSkippedDeleted();
+					}
+					readBuffer.position(start + recordLength);
+					continue;
+				}
+
+				if (filter != null && !filter.matches(readBuffer, start)) {
+					readBuffer.position(start + recordLength);
+					continue;
+				}
+
+				recordLimit = readBuffer.limit();
+				recordEnd = start + recordLength;
+				readBuffer.limit(recordEnd);
+				readBuffer.position(start + 1);
+
+				return readBuffer;
+			}
+
+			return null;
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
+
+	/**
+		Saves the index of the next record to the checkpoint file. The file is
+		replaced atomically where the file system supports it.
+	*/
+	public void checkpoint() throws DBFException {
+		if (checkpointFile == null) {
+			return;
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty(CHECKPOINT_INDEX, String.valueOf(recordIndex));
+
+		File tmp = new File(checkpointFile.getPath() + ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				properties.store(out, "DBFTailReader checkpoint");
+			} finally {
+				out.close();
+			}
+
+			try {
+				Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new DBFException("Failed to save checkpoint: " + e.getMessage(), e);
+		}
+	}
+
+	private static int loadCheckpoint(File checkpointFile) throws DBFException {
+		Properties properties = new Properties();
+		try {
+			InputStream in = new FileInputStream(checkpointFile);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+
+			return Integer.parseInt(properties.getProperty(CHECKPOINT_INDEX, "0"));
+		} catch (NumberFormatException e) {
+			throw new DBFException("Invalid checkpoint " + checkpointFile, e);
+		} catch (IOException e) {
+			throw new DBFException("Failed to load checkpoint: " + e.getMessage(), e);
+		}
+	}
+
+	/* reads the records from the next one to consume into the read buffer, which is empty */
+	private void readRecords(int records) throws IOException {
+		readBuffer.clear();
+		readBuffer.limit(records * header.getRecordLength());
+
+		readFully(readBuffer, header.getHeaderLength() + (long) recordIndex * header.getRecordLength());
+		readBuffer.flip();
+	}
+
+	private void readFully(ByteBuffer buff, long position) throws IOException {
+		while (buff.hasRemaining()) {
+			int read = dataChannel.read(buff, position);
+			if (read < 0) {
+				throw new DBFException("Unexpected end of file at " + position);
+			}
+			if (statistics != null) {
+				statistics.channelRead(read);
+			}
+			position += read;
+		}
+	}
+}
@@ -21,9 +21,18 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.joda.time.LocalDate;
 
@@ -38,11 +47,28 @@ import org.joda.time.LocalDate;
 */
 public class DBFWriter extends DBFBase {
 
+	/* records per encoded chunk when writing in parallel */
+	static final int RECORDS_PER_CHUNK = 4096;
+	static final int CHUNKS_IN_FLIGHT = 16;
+
+	/* bytes of records read at a time by updateWhere() */
+	static final int UPDATE_BLOCK_SIZE = 1024 * 1024;
+
 	/* other class variables */
 	Vector<Object[]> v_records = new Vector<Object[]>();
+	BitSet v_deleted = new BitSet(); /* positions in v_records flagged as deleted */
 	int recordCount = 0;
+	int openRecordCount = 0; /* records in the file when it was opened */
 	FileChannel dataChannel = null; /* Open and append records to an existing DBF */
 	boolean appendMode = false;
+	File memoFileName = null; /* FPT file memo fields are written to */
+	MemoFile memoFile = null; /* opened on the first memo written */
+	ByteBuffer outputBuffer = null; /* Encode records into memory as they are added */
+	int bufferStart = 0;
+	boolean bufferFinished = false;
+	int publishedRecordCount = 0; /* record count in the header of the file */
+	int checkpointInterval = 0; /* records appended between automatic checkpoints, 0 for none */
+	DBFLocking locking = null; /* convention of the locks taken on the file */
 
 	/**
 		Creates an empty Object.
@@ -87,6 +113,68 @@ public class DBFWriter extends DBFBase {
 		}
 
 		this.recordCount = header.getNumberOfRecords();
+		this.openRecordCount = this.recordCount;
+		this.publishedRecordCount = this.recordCount;
+	}
+
+	/**
+		Creates a DBFWriter which appends records to a DBF file and writes the
+		values of memo fields to the given FPT file. A new DBF file is created
+		as a Visual FoxPro table, in which memo fields are 4 bytes long;
+		setFields() rejects memo fields of any other length.
+		@param dbfFile. The file passed in shouls be a valid DBF file.
+		@param memoFile. The FPT file, created if it does not exist.
+		@exception Throws DBFException if the passed in file does exist but not a valid DBF file, or if an IO error occurs.
+	 */
+	public DBFWriter( File dbfFile, File memoFile)
+	throws DBFException {
+
+		this( dbfFile);
+
+		this.memoFileName = memoFile;
+
+		if( header.getFieldList() == null) {
+
+			header.setSignature( DBFHeader.SIG_VISUAL_FOX_PRO);
+			header.setMdxFlag( (byte)(header.getMdxFlag() | DBFHeader.FLAG_HAS_MEMO));
+		}
+	}
+
+	/**
+		Creates a DBFWriter which encodes the table into memory. Every record is
+		encoded into the buffer as it is added, so unlike DBFWriter() no rows
+		are kept. The table starts at the position of the given buffer, heap or
+		direct; when it is full a buffer of the same kind and twice the size
+		takes its place. Call write() and then getBuffer() for the result.
+		@param buffer. The buffer to start with. Its byte order is set to little endian.
+	 */
+	public DBFWriter( ByteBuffer buffer) {
+
+		header = new DBFHeader();
+
+		outputBuffer = buffer;
+		outputBuffer.order( ByteOrder.LITTLE_ENDIAN);
+		bufferStart = buffer.position();
+	}
+
+	/**
+		Returns the table encoded by a writer created with DBFWriter( ByteBuffer),
+		from its first to its last byte. It is complete once write() has been
+		called. The returned buffer shares its content with the writer's buffer.
+	*/
+	public ByteBuffer getBuffer() {
+
+		if( outputBuffer == null) {
+
+			throw new IllegalStateException( "Not writing to a buffer");
+		}
+
+		ByteBuffer buff = outputBuffer.duplicate();
+		buff.order( ByteOrder.LITTLE_ENDIAN);
+		buff.flip();
+		buff.position( bufferStart);
+
+		return buff;
 	}
 
 	/**
@@ -111,10 +199,23 @@ public class DBFWriter extends DBFBase {
 
 				throw new DBFException( "Field " + (i+1) + " is null");
 			}
+
+			if( header.getSignature() == DBFHeader.SIG_VISUAL_FOX_PRO && fields.get(i).getDataType() == DBFField.DataType.MEMO && fields.get(i).getFieldLength() != 4) {
+
+				/* readers of a Visual FoxPro table take the first 4 bytes for the block address */
+				throw new DBFException( "Memo field " + (i+1) + " of a Visual FoxPro table should be 4 bytes long");
+			}
 		}
 
 		header.setFieldList(fields);
 
+		if( outputBuffer != null) {
+
+			ensureCapacity( header.findHeaderLength());
+			header.write( outputBuffer);
+			return;
+		}
+
 		try {
 
 			if( dataChannel != null && dataChannel.size() == 0) {
@@ -137,254 +238,1137 @@ public class DBFWriter extends DBFBase {
 	public void addRecord( Object[] values)
 	throws DBFException {
 
-		if( header.getFieldList() == null) {
+		addRecord( values, false);
+	}
 
-			throw new DBFException( "Fields should be set before adding records");
-		}
+	/**
+		Add a record flagged as deleted. Readers skip the record but it
+		is counted in the header and keeps its place in the file.
+	*/
+	public void addDeletedRecord( Object[] values)
+	throws DBFException {
 
-		if( values == null) {
+		addRecord( values, true);
+	}
 
-			throw new DBFException( "Null cannot be added as row");
-		}
+	private void addRecord( Object[] values, boolean deleted)
+	throws DBFException {
 
-		if( values.length != header.getFieldList().size()) {
+		checkRecord( values);
 
-			throw new DBFException( "Invalid record. Invalid number of fields in row");
+		if( outputBuffer != null) {
+
+			try {
+
+				ensureCapacity( header.getRecordLength());
+				encodeRecord( outputBuffer, values, deleted);
+				this.recordCount++;
+			}
+			catch( IOException e) {
+
+				throw new DBFException( "Error occured while encoding record. " + e.getMessage(), e);
+			}
+
+			if( statistics != null) {
+
+				statistics.recordWritten( 1);
+			}
 		}
+		else if( dataChannel == null) {
 
-		for( int i=0; i<header.getFieldList().size(); i++) {
+			v_deleted.set( v_records.size(), deleted);
+			v_records.addElement( values);
+		}
+		else {
 
+			try {
 			
-			if( values[i] == null) {
+				writeRecord( dataChannel, values, deleted);
+				this.recordCount++;
+				checkpointIfDue();
+			}
+			catch( IOException e) {
 
-				continue;
+				throw new DBFException( "Error occured while writing record. " + e.getMessage(), e);
 			}
+		}
+	}
 
-			DBFField field = header.getFieldList().get(i);
-			
-			switch( field.getDataType()) {
+	/**
+		Add a batch of records, encoding them in parallel.
 
-				case CHARACTER:
-					if( !(values[i] instanceof String)) {
-						throw new DBFException( "Invalid value for field " + i);
-					}
-					break;
+		Records are encoded in chunks of RECORDS_PER_CHUNK on the given executor
+		and the encoded chunks are written in input order, so the result is the
+		same as calling addRecord() for every element of the list. If this
+		writer is not backed by a file the records are only buffered; use
+		write( OutputStream, ExecutorService) to encode them in parallel.
 
-				case LOGICAL:
-					if( !( values[i] instanceof Boolean)) {
-					  throw new DBFException( "Invalid value for field " + i);
-					}
-					break;
+		@param records rows to add, in order.
+		@param executor executor the chunks are encoded on. It is not shut down.
+	*/
+	public void addRecords( List<Object[]> records, ExecutorService executor)
+	throws DBFException {
 
-				case NUMBER:
-					if( !( values[i] instanceof BigDecimal)) {
-						throw new DBFException( "Invalid value for field " + i);
-					}
-					break;
+		addRecords( records, null, executor);
+	}
 
-				case INTEGER:
-					if( !( values[i] instanceof Integer)) {
-						throw new DBFException( "Invalid value for field " + i);
-					}
-					break;
+	/*
+	 Same as addRecords( List, ExecutorService) but flags the records set in
+	 deleted, which may be null, as deleted.
+	*/
+	void addRecords( List<Object[]> records, BitSet deleted, ExecutorService executor)
+	throws DBFException {
 
-				case DATE:
-					if( !( values[i] instanceof LocalDate)) {
-						throw new DBFException( "Invalid value for field " + i);
-					}
-					break;
+		if( records == null) {
+
+			throw new DBFException( "Null cannot be added as rows");
+		}
 
-				case FLOAT:
-					if( !(values[i] instanceof Double)) {
+		for( Object[] values : records) {
 
-						throw new DBFException( "Invalid value for field " + i);
-					}
-					break;
+			checkRecord( values);
+		}
+
+		if( outputBuffer != null) {
+
+			try {
+
+				writeRecords( new BufferChannel(), records, deleted, executor);
+				this.recordCount += records.size();
+			}
+			catch( IOException e) {
+
+				throw new DBFException( "Error occured while encoding records. " + e.getMessage(), e);
 			}
 		}
+		else if( dataChannel == null) {
 
-		if( dataChannel == null) {
+			for( int i=0; i<records.size(); i++) {
 
-			v_records.addElement( values);
+				v_deleted.set( v_records.size(), deleted != null && deleted.get( i));
+				v_records.addElement( records.get( i));
+			}
 		}
 		else {
 
 			try {
-			
-				writeRecord( dataChannel, values);
-				this.recordCount++;
+
+				writeRecords( dataChannel, records, deleted, executor);
+				this.recordCount += records.size();
+				checkpointIfDue();
 			}
 			catch( IOException e) {
 
-				throw new DBFException( "Error occured while writing record. " + e.getMessage(), e);
+				throw new DBFException( "Error occured while writing records. " + e.getMessage(), e);
 			}
 		}
 	}
 
 	/**
-		Writes the set data to the OutputStream.
+		Adds records encoded elsewhere, from the position to the limit of the
+		buffer, each starting with its deleted flag. The target has to be a
+		file or a buffer.
 	*/
-	public void write( OutputStream out)
+	void addEncodedRecords( ByteBuffer records, int count)
 	throws DBFException {
 
-		try {
+		if( bufferFinished) {
 
-			if( dataChannel == null) {
-				WritableByteChannel dataChannel = Channels.newChannel(out);
-							
-				header.setNumberOfRecords(v_records.size());
-				header.write( dataChannel);
+			throw new DBFException( "Records cannot be added after write()");
+		}
 
-				/* Now write all the records */
-				int t_recCount = v_records.size();
-				for( int i=0; i<t_recCount; i++) { /* iterate through records */
+		try {
 
-					Object[] t_values = (Object[])v_records.elementAt( i);
+			if( outputBuffer != null) {
 
-					writeRecord( dataChannel, t_values);
-				}
+				new BufferChannel().write( records);
+			}
+			else if( dataChannel != null) {
 
-				ByteBuffer buff = ByteBuffer.allocate(1);
-				buff.put(END_OF_DATA).flip();
-				dataChannel.write(buff);
-				// flush
-//				dataChannel.;
+				writeFully( dataChannel, records);
 			}
 			else {
 
-				/* everything is written already. just update the header for record count and the END_OF_DATA mark */
-				header.setNumberOfRecords(this.recordCount);
-				dataChannel.position(0);
-				header.write( dataChannel);
-				dataChannel.position(dataChannel.size());
-				
-				ByteBuffer buff = ByteBuffer.allocate(1);
-				buff.put(END_OF_DATA).flip();
-				dataChannel.write(buff);
-				
-				dataChannel.close();
+				throw new DBFException( "Encoded records can only be added to a file or a buffer");
 			}
+
+			this.recordCount += count;
+			checkpointIfDue();
+		}
+		catch( DBFException e) {
+
+			throw e;
 		}
 		catch( IOException e) {
 
-			throw new DBFException( e.getMessage(), e);
+			throw new DBFException( "Error occured while writing records. " + e.getMessage(), e);
+		}
+
+		if( statistics != null) {
+
+			statistics.recordWritten( count);
 		}
 	}
 
-	public void write()
+	/**
+		Replaces the values of the record at the given index, the first record
+		being 0, in place. Every field is encoded again, as by addRecord(), and
+		written over the old one with a positional write, so the position new
+		records are appended at is left alone. The deleted flag is kept. Only
+		writers of a file can update records.
+	*/
+	public void updateRecord( int index, Object[] values)
 	throws DBFException {
 
-		this.write( null);
+		checkRecord( values);
+		long t_position = recordPosition( index);
+
+		try {
+
+			ByteBuffer buff = ByteBuffer.allocate( header.getRecordLength() - 1);
+			buff.order( ByteOrder.LITTLE_ENDIAN);
+
+			for( int j=0; j<header.getFieldList().size(); j++) {
+
+				encodeField( buff, header.getFieldList().get(j), values[j]);
+			}
+
+			buff.flip();
+			writeAt( buff, t_position + 1);
+		}
+		catch( IOException e) {
+
+			throw new DBFException( "Error occured while updating record " + index + ". " + e.getMessage(), e);
+		}
 	}
 
-	private void writeRecord( WritableByteChannel dataOutput, Object []objectArray) 
-	throws IOException {
+	/**
+		Replaces the value of one field of the record at the given index in
+		place. Only the bytes of that field are encoded and written.
+	*/
+	public void updateField( int index, String fieldName, Object value)
+	throws DBFException {
 
-		ByteBuffer buff = ByteBuffer.allocate(header.getRecordLength());
-		buff.order(ByteOrder.LITTLE_ENDIAN);
-		
-		buff.put( (byte)' ');
-		for( int j=0; j<header.getFieldList().size(); j++) { /* iterate throught fields */
+		if( header.getFieldList() == null) {
 
-			DBFField field = header.getFieldList().get(j);
-			
-			switch( field.getDataType()) {
+			throw new DBFException( "Fields should be set before updating records");
+		}
 
-				case CHARACTER:
-					if( objectArray[j] != null) {
+		int t_offset = 1; /* past the deleted flag */
+		int i = 0;
+		for( ; i<header.getFieldList().size(); i++) {
 
-						String str_value = objectArray[j].toString();	
-						buff.put( Utils.textPadding( str_value, characterSet, field.getFieldLength()));
-					}
-					else {
+			if( header.getFieldList().get(i).getName().equalsIgnoreCase( fieldName)) {
 
-						buff.put( Utils.textPadding( "", characterSet, field.getFieldLength()));
-					}
+				break;
+			}
 
-					break;
+			t_offset += header.getFieldList().get(i).getFieldLength();
+		}
 
-				case DATE:
-					if( objectArray[j] != null) {
-												
-						buff.put(((LocalDate)objectArray[j]).toString("YYYYMMdd").getBytes());
-					}
-					else {
-						buff.put( "        ".getBytes());
-					}
+		if( i == header.getFieldList().size()) {
 
-					break;
+			throw new DBFException( "No field " + fieldName);
+		}
 
-				case FLOAT:
+		checkValue( i, value);
+		long t_position = recordPosition( index);
 
-					if( objectArray[j] != null) {
+		try {
 
-						buff.put( Utils.doubleFormating( (Double)objectArray[j], characterSet, field.getFieldLength(), field.getDecimalCount()));
-					}
-					else {
+			DBFField field = header.getFieldList().get(i);
+			ByteBuffer buff = ByteBuffer.allocate( field.getFieldLength());
+			buff.order( ByteOrder.LITTLE_ENDIAN);
 
-						buff.put( Utils.textPadding( " ", characterSet, field.getFieldLength(), Utils.ALIGN_RIGHT));
-					}
+			encodeField( buff, field, value);
 
-					break;
+			buff.flip();
+			writeAt( buff, t_position + t_offset);
+		}
+		catch( IOException e) {
+
+			throw new DBFException( "Error occured while updating record " + index + ". " + e.getMessage(), e);
+		}
+	}
+
+	/**
+		Flags the record at the given index as deleted by writing its deleted
+		flag only. Readers skip the record; DBFPack removes it for good.
+	*/
+	public void deleteRecord( int index)
+	throws DBFException {
 
-				case NUMBER:
+		if( header.getFieldList() == null) {
 
-					if( objectArray[j] != null) {
+			throw new DBFException( "Fields should be set before deleting records");
+		}
 
-						buff.put(
-							Utils.decimalFormating( (BigDecimal)objectArray[j], characterSet, field.getFieldLength(), field.getDecimalCount()));
-					}
-					else {
+		long t_position = recordPosition( index);
 
-						buff.put( 
-							Utils.textPadding( " ", characterSet, field.getFieldLength(), Utils.ALIGN_RIGHT));
-					}
+		try {
 
-					break;
-					
-				case INTEGER:
+			ByteBuffer buff = ByteBuffer.allocate( 1);
+			buff.put( (byte)'*').flip();
+			writeAt( buff, t_position);
+		}
+		catch( IOException e) {
 
-					if( objectArray[j] != null) {
-						buff.putInt(((Integer)objectArray[j]).intValue());
-					}
-					else {
-						buff.putInt(0);
-					}
+			throw new DBFException( "Error occured while deleting record " + index + ". " + e.getMessage(), e);
+		}
+	}
 
-					break;
-				case LOGICAL:
+	/**
+		Sets the given fields of every record whose value of a field lies
+		between from and to, both included, and returns the number of records
+		matched. The bounds are those of DBFReader.setFilter( String, Object,
+		Object); deleted records are left alone.
+
+		The table is read in blocks of UPDATE_BLOCK_SIZE bytes and the range
+		is checked on the record bytes. The assigned values are encoded once
+		and copied into the matching records of the block, and only the span
+		of a block between its first and last changed byte is written back,
+		so blocks without a change cost a read only. Memo fields cannot be
+		assigned this way.
+
+		@param assignments values by field name, null for a blank value.
+	*/
+	public int updateWhere( String fieldName, Object from, Object to, Map<String, Object> assignments)
+	throws DBFException {
 
-					if( objectArray[j] != null) {
+		if( header.getFieldList() == null) {
 
-						if( (Boolean)objectArray[j] == Boolean.TRUE) {
+			throw new DBFException( "Fields should be set before updating records");
+		}
 
-							buff.put( (byte)'T');
-						}
-						else {
+		if( dataChannel == null) {
 
-							buff.put((byte)'F');
-						}
-					}
-					else {
+			throw new DBFException( "Records can be updated in files only");
+		}
 
-						buff.put( (byte)'?');
-					}
+		DBFFilter t_filter = DBFFilter.range( header.getFieldList(), characterSet, fieldName, from, to);
 
-					break;
+		/* the encoded value of every assigned field and where it starts in a record */
+		int[] t_offsets = new int[ assignments.size()];
+		byte[][] t_values = new byte[ assignments.size()][];
+		int t_assigned = 0;
+
+		for( Map.Entry<String, Object> assignment : assignments.entrySet()) {
 
-				case MEMO:
+			int t_offset = 1;
+			int i = 0;
+			for( ; i<header.getFieldList().size(); i++) {
+
+				if( header.getFieldList().get(i).getName().equalsIgnoreCase( assignment.getKey())) {
 
 					break;
+				}
 
-				default:	
-					throw new DBFException( "Unknown field type " + field.getDataType());
+				t_offset += header.getFieldList().get(i).getFieldLength();
 			}
-		}	/* iterating through the fields */
-	}
 
-	public void close() throws IOException {
-		if (dataChannel != null) {
-			dataChannel.close();
+			if( i == header.getFieldList().size()) {
+
+				throw new DBFException( "No field " + assignment.getKey());
+			}
+
+			DBFField field = header.getFieldList().get(i);
+			if( field.getDataType() == DBFField.DataType.MEMO) {
+
+				throw new DBFException( "Memo field " + field.getName() + " cannot be assigned by updateWhere()");
+			}
+
+			checkValue( i, assignment.getValue());
+
+			ByteBuffer buff = ByteBuffer.allocate( field.getFieldLength());
+			buff.order( ByteOrder.LITTLE_ENDIAN);
+			try {
+
+				encodeField( buff, field, assignment.getValue());
+			}
+			catch( IOException e) {
+
+				throw new DBFException( "Error occured while encoding field " + field.getName() + ". " + e.getMessage(), e);
+			}
+
+			t_offsets[ t_assigned] = t_offset;
+			t_values[ t_assigned] = buff.array();
+			t_assigned++;
+		}
+
+		int t_recordLength = header.getRecordLength();
+		int t_blockRecords = Math.max( UPDATE_BLOCK_SIZE / t_recordLength, 1);
+		ByteBuffer buff = ByteBuffer.allocate( t_blockRecords * t_recordLength);
+		buff.order( ByteOrder.LITTLE_ENDIAN);
+		byte[] t_block = buff.array();
+
+		int t_matched = 0;
+
+		try {
+
+			for( int first=0; first<this.recordCount; first+=t_blockRecords) {
+
+				int t_count = Math.min( t_blockRecords, this.recordCount - first);
+				long t_position = header.getHeaderLength() + (long)first * t_recordLength;
+
+				buff.clear();
+				buff.limit( t_count * t_recordLength);
+				readAt( buff, t_position);
+
+				int t_dirtyFrom = Integer.MAX_VALUE;
+				int t_dirtyTo = 0;
+
+				for( int r=0; r<t_count; r++) {
+
+					int t_start = r * t_recordLength;
+					if( t_block[ t_start] == '*' || !t_filter.matches( buff, t_start)) {
+
+						continue;
+					}
+
+					t_matched++;
+
+					for( int k=0; k<t_assigned; k++) {
+
+						int t_at = t_start + t_offsets[ k];
+						byte[] t_value = t_values[ k];
+
+						for( int b=0; b<t_value.length; b++) {
+
+							if( t_block[ t_at + b] != t_value[ b]) {
+
+								t_block[ t_at + b] = t_value[ b];
+								t_dirtyFrom = Math.min( t_dirtyFrom, t_at + b);
+								t_dirtyTo = Math.max( t_dirtyTo, t_at + b + 1);
+							}
+						}
+					}
+				}
+
+				if( t_dirtyFrom < t_dirtyTo) {
+
+					buff.limit( t_dirtyTo);
+					buff.position( t_dirtyFrom);
+					writeAt( buff, t_position + t_dirtyFrom);
+				}
+			}
+		}
+		catch( DBFException e) {
+
+			throw e;
+		}
+		catch( IOException e) {
+
+			throw new DBFException( "Error occured while updating records. " + e.getMessage(), e);
+		}
+
+		return t_matched;
+	}
+
+	/**
+		Sets the given fields of every record whose value of a field equals
+		the value. See updateWhere( String, Object, Object, Map).
+	*/
+	public int updateWhere( String fieldName, Object value, Map<String, Object> assignments)
+	throws DBFException {
+
+		return updateWhere( fieldName, value, value, assignments);
+	}
+
+	/* position of the deleted flag of the record at index in the file */
+	private long recordPosition( int index)
+	throws DBFException {
+
+		if( dataChannel == null) {
+
+			throw new DBFException( "Records can be updated in files only");
+		}
+
+		if( index < 0 || index >= this.recordCount) {
+
+			throw new DBFException( "No record " + index + ", the table has " + this.recordCount + " records");
+		}
+
+		return header.getHeaderLength() + (long)index * header.getRecordLength();
+	}
+
+	/* reads the file into the buffer up to its limit from the given position without moving the channel */
+	private void readAt( ByteBuffer buff, long position)
+	throws IOException {
+
+		while( buff.hasRemaining()) {
+
+			int read = dataChannel.read( buff, position + buff.position());
+
+			if( read < 0) {
+
+				throw new DBFException( "Unexpected end of file at " + (position + buff.position()));
+			}
+
+			if( statistics != null) {
+
+				statistics.channelRead( read);
+			}
+		}
+	}
+
+	/* writes the buffer at the given position of the file without moving the channel */
+	private void writeAt( ByteBuffer buff, long position)
+	throws IOException {
+
+		while( buff.hasRemaining()) {
+
+			int written = dataChannel.write( buff, position);
+			position += written;
+
+			if( statistics != null) {
+
+				statistics.channelWrite( written);
+			}
+		}
+	}
+
+	/**
+		Publishes the records appended so far to the readers of the file. The
+		records are forced to the disk and followed by the END_OF_DATA mark,
+		along with their memos and the header of the memo file, then the
+		record count and the date of last update are written to the
+		header with a single positional write. A reader taking its snapshot of
+		the count afterwards, see DBFReader.refreshRecordCount(), reads every
+		record up to it and never one that is still being written. If a
+		locking convention is set the header is locked while the count is
+		written. Only writers of a file have checkpoints.
+	*/
+	public void checkpoint()
+	throws DBFException {
+
+		if( dataChannel == null) {
+
+			throw new DBFException( "Only writers of a file have checkpoints");
+		}
+
+		if( header.getFieldList() == null) {
+
+			throw new DBFException( "Fields should be set before a checkpoint");
+		}
+
+		try {
+
+			ByteBuffer buff = ByteBuffer.allocate( 1);
+			buff.put( END_OF_DATA).flip();
+			writeAt( buff, dataChannel.position());
+			dataChannel.force( false);
+
+			if( memoFile != null) {
+
+				/* the published records must not point at blocks the memo file still lists as free */
+				memoFile.flush();
+			}
+
+			FileLock t_lock = locking != null ? locking.lockHeader( dataChannel, false) : null;
+			try {
+
+				DBFHeader.writeRecordCount( dataChannel, this.recordCount);
+			}
+			finally {
+
+				if( t_lock != null) {
+
+					t_lock.release();
+				}
+			}
+
+			this.publishedRecordCount = this.recordCount;
+		}
+		catch( IOException e) {
+
+			throw new DBFException( "Error occured while publishing the record count. " + e.getMessage(), e);
+		}
+	}
+
+	/* publishes the appended records once checkpointInterval of them are not yet */
+	private void checkpointIfDue()
+	throws DBFException {
+
+		if( dataChannel != null && checkpointInterval > 0 && this.recordCount - this.publishedRecordCount >= checkpointInterval) {
+
+			checkpoint();
+		}
+	}
+
+	public int getCheckpointInterval() {
+
+		return checkpointInterval;
+	}
+
+	/**
+		Makes the writer of a file call checkpoint() whenever the given number
+		of records have been appended since the last one. 0, the default,
+		publishes the records at write() and explicit checkpoints only.
+	*/
+	public void setCheckpointInterval( int records) {
+
+		if( records < 0) {
+
+			throw new IllegalArgumentException( "Checkpoint interval must not be negative: " + records);
+		}
+
+		this.checkpointInterval = records;
+	}
+
+	public DBFLocking getLocking() {
+
+		return locking;
+	}
+
+	/**
+		Sets the convention of the locks taken on the file. With one set,
+		checkpoint() locks the header while it writes the record count and
+		lockRecord() can be used before updating a record. Null, the
+		default, takes no locks.
+	*/
+	public void setLocking( DBFLocking locking) {
+
+		this.locking = locking;
+	}
+
+	/**
+		Waits for an exclusive lock of the record at the given index, the
+		first record being 0, under the locking convention set. Programs
+		following the convention keep off the record until the lock is
+		released, so take it around updateRecord() and updateField().
+	*/
+	public FileLock lockRecord( int index)
+	throws DBFException {
+
+		if( dataChannel == null || locking == null) {
+
+			throw new DBFException( "Records can be locked in files with a locking convention only");
+		}
+
+		try {
+
+			return locking.lockRecord( dataChannel, index, false);
+		}
+		catch( IOException e) {
+
+			throw new DBFException( "Error occured while locking record " + index + ". " + e.getMessage(), e);
+		}
+	}
+
+	/**
+		Writes a memo to the memo file and returns its block address, or 0
+		if the writer has no memo file.
+	*/
+	int writeMemo( String value)
+	throws IOException {
+
+		if( memoFileName == null) {
+
+			return 0;
+		}
+
+		return getMemoFile().writeMemo( value);
+	}
+
+	private void checkRecord( Object[] values)
+	throws DBFException {
+
+		if( bufferFinished) {
+
+			throw new DBFException( "Records cannot be added after write()");
+		}
+
+		if( header.getFieldList() == null) {
+
+			throw new DBFException( "Fields should be set before adding records");
+		}
+
+		if( values == null) {
+
+			throw new DBFException( "Null cannot be added as row");
+		}
+
+		if( values.length != header.getFieldList().size()) {
+
+			throw new DBFException( "Invalid record. Invalid number of fields in row");
+		}
+
+		for( int i=0; i<header.getFieldList().size(); i++) {
+
+			checkValue( i, values[i]);
+		}
+	}
+
+	/* checks that a value, if not null, is of the Java type of the field at index i */
+	private void checkValue( int i, Object value)
+	throws DBFException {
+
+		if( value == null) {
+
+			return;
+		}
+
+		DBFField field = header.getFieldList().get(i);
+
+		switch( field.getDataType()) {
+
+			case CHARACTER:
+				if( !(value instanceof String)) {
+					throw new DBFException( "Invalid value for field " + i);
+				}
+				break;
+
+			case LOGICAL:
+				if( !( value instanceof Boolean)) {
+				  throw new DBFException( "Invalid value for field " + i);
+				}
+				break;
+
+			case NUMBER:
+				if( !( value instanceof BigDecimal)) {
+					throw new DBFException( "Invalid value for field " + i);
+				}
+				break;
+
+			case INTEGER:
+				if( !( value instanceof Integer)) {
+					throw new DBFException( "Invalid value for field " + i);
+				}
+				break;
+
+			case DATE:
+				if( !( value instanceof LocalDate)) {
+					throw new DBFException( "Invalid value for field " + i);
+				}
+				break;
+
+			case FLOAT:
+				if( !(value instanceof Double)) {
+
+					throw new DBFException( "Invalid value for field " + i);
+				}
+				break;
+		}
+	}
+
+	/**
+		Writes the set data to the OutputStream.
+	*/
+	public void write( OutputStream out)
+	throws DBFException {
+
+		this.write( out, null);
+	}
+
+	/**
+		Writes the set data to the OutputStream, encoding the buffered
+		records in parallel on the given executor. The output is identical
+		to write( OutputStream).
+
+		@param executor executor the records are encoded on, or null to
+		encode them on the calling thread.
+	*/
+	public void write( OutputStream out, ExecutorService executor)
+	throws DBFException {
+
+		DBFEventListener listener = DBFEventListener.installed();
+		long t_start = listener != null ? System.nanoTime() : 0;
+
+		try {
+
+			if( outputBuffer != null) {
+
+				finishBuffer();
+
+				if( out != null) {
+
+					writeFully( Channels.newChannel( out), getBuffer());
+				}
+			}
+			else if( dataChannel == null) {
+				WritableByteChannel dataChannel = Channels.newChannel(out);
+							
+				header.setNumberOfRecords(v_records.size());
+				header.write( dataChannel);
+
+				/* Now write all the records */
+				if( executor != null) {
+
+					writeRecords( dataChannel, v_records, v_deleted, executor);
+				}
+				else {
+
+					int t_recCount = v_records.size();
+					for( int i=0; i<t_recCount; i++) { /* iterate through records */
+
+						Object[] t_values = (Object[])v_records.elementAt( i);
+
+						writeRecord( dataChannel, t_values, v_deleted.get( i));
+					}
+				}
+
+				ByteBuffer buff = ByteBuffer.allocate(1);
+				buff.put(END_OF_DATA).flip();
+				dataChannel.write(buff);
+				// flush
+//				dataChannel.;
+			}
+			else {
+
+				/* everything is written already. just update the header for record count and the END_OF_DATA mark */
+				long t_end = dataChannel.position(); /* a checkpoint may have put the END_OF_DATA mark past it */
+				header.setNumberOfRecords(this.recordCount);
+				dataChannel.position(0);
+				header.write( dataChannel);
+				dataChannel.position(t_end);
+				
+				ByteBuffer buff = ByteBuffer.allocate(1);
+				buff.put(END_OF_DATA).flip();
+				dataChannel.write(buff);
+				
+				dataChannel.close();
+
+				if( memoFile != null) {
+
+					memoFile.close();
+				}
+			}
+		}
+		catch( IOException e) {
+
+			throw new DBFException( e.getMessage(), e);
+		}
+
+		if( listener != null) {
+
+			int t_records = dataChannel == null && outputBuffer == null ? v_records.size() : this.recordCount - this.openRecordCount;
+			long t_bytes = header.getHeaderLength() + (long)t_records * header.getRecordLength() + 1;
+			listener.writerFlushed( t_records, t_bytes, System.nanoTime() - t_start);
+		}
+	}
+
+	public void write()
+	throws DBFException {
+
+		this.write( null);
+	}
+
+	/* updates the record count in the header and appends the END_OF_DATA mark */
+	private void finishBuffer() {
+
+		if( bufferFinished) {
+
+			return;
+		}
+
+		header.setNumberOfRecords( this.recordCount);
+		ByteBuffer t_header = outputBuffer.duplicate();
+		t_header.position( bufferStart);
+		header.write( t_header);
+
+		ensureCapacity( 1);
+		outputBuffer.put( END_OF_DATA);
+
+		bufferFinished = true;
+	}
+
+	/* replaces the output buffer with a larger one if it has less than the given room left */
+	private void ensureCapacity( int length) {
+
+		if( outputBuffer.remaining() >= length) {
+
+			return;
+		}
+
+		int t_capacity = Math.max( outputBuffer.capacity() * 2, outputBuffer.position() + length);
+		ByteBuffer t_buffer = outputBuffer.isDirect() ? ByteBuffer.allocateDirect( t_capacity) : ByteBuffer.allocate( t_capacity);
+		t_buffer.order( ByteOrder.LITTLE_ENDIAN);
+
+		outputBuffer.flip();
+		t_buffer.put( outputBuffer);
+		outputBuffer = t_buffer;
+	}
+
+	/* appends what is written to it to the output buffer */
+	private class BufferChannel implements WritableByteChannel {
+
+		public int write( ByteBuffer src) {
+
+			int t_length = src.remaining();
+			ensureCapacity( t_length);
+			outputBuffer.put( src);
+			return t_length;
+		}
+
+		public boolean isOpen() {
+
+			return true;
+		}
+
+		public void close() {
+		}
+	}
+
+	private void writeRecord( WritableByteChannel dataOutput, Object []objectArray, boolean deleted) 
+	throws IOException {
+
+		ByteBuffer buff = ByteBuffer.allocate(header.getRecordLength());
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		encodeRecord( buff, objectArray, deleted);
+
+		buff.flip();
+		writeFully( dataOutput, buff);
+
+		if( statistics != null) {
+
+			statistics.recordWritten( 1);
+		}
+	}
+
+	/*
+	 Encodes the records in chunks on the executor and writes the chunks to the
+	 channel in input order. At most CHUNKS_IN_FLIGHT chunks are pending at any
+	 time so memory stays bounded however many records are passed in.
+	 deleted flags records by position and may be null.
+	*/
+	private void writeRecords( WritableByteChannel dataOutput, final List<Object[]> records, final BitSet deleted, ExecutorService executor)
+	throws IOException {
+
+		final int recordLength = header.getRecordLength();
+		int t_recCount = records.size();
+
+		if( memoFileName != null) {
+
+			/* memo blocks are allocated in record order, so encode on this thread */
+			for( int i=0; i<t_recCount; i++) {
+
+				writeRecord( dataOutput, records.get( i), deleted != null && deleted.get( i));
+			}
+
+			return;
+		}
+
+		Deque<Future<ByteBuffer>> pending = new ArrayDeque<Future<ByteBuffer>>();
+		int nextChunk = 0;
+
+		while( nextChunk < t_recCount || !pending.isEmpty()) {
+
+			while( nextChunk < t_recCount && pending.size() < CHUNKS_IN_FLIGHT) {
+
+				final int from = nextChunk;
+				final int to = Math.min( t_recCount, from + RECORDS_PER_CHUNK);
+				nextChunk = to;
+
+				pending.addLast( executor.submit( new Callable<ByteBuffer>() {
+
+					public ByteBuffer call() throws IOException {
+
+						ByteBuffer buff = ByteBuffer.allocate( recordLength * (to - from));
+						buff.order(ByteOrder.LITTLE_ENDIAN);
+
+						for( int i=from; i<to; i++) {
+
+							buff.limit( buff.position() + recordLength);
+							encodeRecord( buff, records.get( i), deleted != null && deleted.get( i));
+							buff.position( buff.limit());
+						}
+
+						buff.flip();
+						return buff;
+					}
+				}));
+			}
+
+			Future<ByteBuffer> chunk = pending.removeFirst();
+			try {
+
+				ByteBuffer buff = chunk.get();
+				writeFully( dataOutput, buff);
+
+				if( statistics != null) {
+
+					statistics.recordWritten( buff.limit() / recordLength);
+				}
+			}
+			catch( InterruptedException e) {
+
+				cancelAll( pending);
+				Thread.currentThread().interrupt();
+				throw new DBFException( "Interrupted while encoding records", e);
+			}
+			catch( ExecutionException e) {
+
+				cancelAll( pending);
+				throw new DBFException( "Error occured while encoding records. " + e.getCause().getMessage(), e.getCause());
+			}
+		}
+	}
+
+	private static void cancelAll( Deque<Future<ByteBuffer>> pending) {
+
+		for( Future<ByteBuffer> future : pending) {
+
+			future.cancel( true);
+		}
+	}
+
+	private void writeFully( WritableByteChannel dataOutput, ByteBuffer buff)
+	throws IOException {
+
+		while( buff.hasRemaining()) {
+
+			int written = dataOutput.write( buff);
+
+			if( statistics != null) {
+
+				statistics.channelWrite( written);
+			}
+		}
+	}
+
+	/*
+	 Encodes one record at the buffer's position. Unless memo fields are written
+	 to a memo file it only reads the header and the character set, so it is safe
+	 to call from several threads at once.
+	*/
+	private void encodeRecord( ByteBuffer buff, Object []objectArray, boolean deleted)
+	throws IOException {
+
+		buff.put( deleted ? (byte)'*' : (byte)' ');
+		for( int j=0; j<header.getFieldList().size(); j++) { /* iterate throught fields */
+
+			encodeField( buff, header.getFieldList().get(j), objectArray[j]);
+		}	/* iterating through the fields */
+	}
+
+	/* encodes the value of one field, or a blank one for null, at the buffer's position */
+	private void encodeField( ByteBuffer buff, DBFField field, Object value)
+	throws IOException {
+
+		switch( field.getDataType()) {
+
+			case CHARACTER:
+				if( value != null) {
+
+					String str_value = value.toString();	
+					buff.put( Utils.textPadding( str_value, characterSet, field.getFieldLength()));
+				}
+				else {
+
+					buff.put( Utils.textPadding( "", characterSet, field.getFieldLength()));
+				}
+
+				break;
+
+			case DATE:
+				if( value != null) {
+											
+					buff.put(((LocalDate)value).toString("YYYYMMdd").getBytes());
+				}
+				else {
+					buff.put( "        ".getBytes());
+				}
+
+				break;
+
+			case FLOAT:
+
+				if( value != null) {
+
+					buff.put( Utils.doubleFormating( (Double)value, characterSet, field.getFieldLength(), field.getDecimalCount()));
+				}
+				else {
+
+					buff.put( Utils.textPadding( " ", characterSet, field.getFieldLength(), Utils.ALIGN_RIGHT));
+				}
+
+				break;
+
+			case NUMBER:
+
+				if( value != null) {
+
+					buff.put(
+						Utils.decimalFormating( (BigDecimal)value, characterSet, field.getFieldLength(), field.getDecimalCount()));
+				}
+				else {
+
+					buff.put( 
+						Utils.textPadding( " ", characterSet, field.getFieldLength(), Utils.ALIGN_RIGHT));
+				}
+
+				break;
+				
+			case INTEGER:
+
+				if( value != null) {
+					buff.putInt(((Integer)value).intValue());
+				}
+				else {
+					buff.putInt(0);
+				}
+
+				break;
+			case LOGICAL:
+
+				if( value != null) {
+
+					if( (Boolean)value == Boolean.TRUE) {
+
+						buff.put( (byte)'T');
+					}
+					else {
+
+						buff.put((byte)'F');
+					}
+				}
+				else {
+
+					buff.put( (byte)'?');
+				}
+
+				break;
+
+			case MEMO:
+
+				int t_start = buff.position();
+				if( memoFileName != null && value != null) {
+
+					buff.putInt( getMemoFile().writeMemo( value.toString()));
+				}
+
+				/* without a memo file leave an empty reference */
+				while( buff.position() < t_start + field.getFieldLength()) {
+
+					buff.put( (byte)0);
+				}
+				break;
+
+			default:	
+				throw new DBFException( "Unknown field type " + field.getDataType());
+		}
+	}
+
+	private MemoFile getMemoFile()
+	throws IOException {
+
+		if( memoFile == null) {
+
+			memoFile = new FPTMemoFile( memoFileName, "rw", characterSet);
+			memoFile.setStatistics( statistics);
+		}
+
+		return memoFile;
+	}
+
+	public void close() throws IOException {
+		if (dataChannel != null) {
+			dataChannel.close();
+		}
+
+		if (memoFile != null) {
+			memoFile.close();
 		}
     }
 }
@@ -0,0 +1,433 @@
+/*
+  DBFZoneMap
+	Class for the .dbz side file holding the range of values of each block of records.
+
+  This file is part of JavaDBF packege.
+
+  license: LGPL (http://www.gnu.org/copyleft/lesser.html)
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+	Zone map of a table: the smallest and largest value and the number of
+	blank values of some fields, for each block of records. It is kept in a
+	side file next to the table, with the extension .dbz.
+
+	<pre>
+	DBFZoneMap.build(new File("bookings.dbf"), "DATE", "STAFF");
+
+	DBFReader reader = new DBFReader(new File("bookings.dbf"));
+	reader.setFilter("DATE", new LocalDate().minusDays(7), null);
+	</pre>
+
+	A filtered DBFReader loads the zone map of its table and skips the
+	blocks whose range of the filtered field leaves out the filter, without
+	reading them. Tables appended in the order of a field, like a date, skip
+	all but their last blocks on a filter for recent values.
+
+	The map records the size and modification time of the table it was
+	built from; load() ignores a map once the table changes, and it has to
+	be built again. NUMBER, FLOAT, INTEGER, DATE and LOGICAL fields keep
+	exact ranges, CHARACTER fields the range of their first 8 bytes.
+*/
+public final class DBFZoneMap {
+
+	public static final int DEFAULT_BLOCK_RECORDS = 4096;
+
+	/* "DBZ1" */
+	private static final int SIGNATURE = 0x315A4244;
+
+	private final long tableSize;
+	private final long tableModified;
+	private final int recordCount;
+	private final int recordLength;
+	private final int blockRecords;
+
+	private final List<String> fields;
+	private final DBFField.DataType[] types;
+	private final long[][] mins;
+	private final long[][] maxs;
+	private final int[][] nullCounts;
+
+	private DBFZoneMap(long tableSize, long tableModified, int recordCount, int recordLength, int blockRecords, List<String> fields,
+			DBFField.DataType[] types) {
+		this.tableSize = tableSize;
+		this.tableModified = tableModified;
+		this.recordCount = recordCount;
+		this.recordLength = recordLength;
+		this.blockRecords = blockRecords;
+		this.fields = fields;
+		this.types = types;
+
+		int blocks = (recordCount + blockRecords - 1) / blockRecords;
+		mins = new long[fields.size()][blocks];
+		maxs = new long[fields.size()][blocks];
+		nullCounts = new int[fields.size()][blocks];
+
+		for (int c = 0; c < fields.size(); c++) {
+			Arrays.fill(mins[c], Long.MAX_VALUE);
+			Arrays.fill(maxs[c], Long.MIN_VALUE);
+		}
+	}
+
+	/**
+		Returns the side file of the table: the same name with the extension .dbz.
+	*/
+	public static File sideFile(File table) {
+		return new File(table.getParentFile(), table.getName().replaceAll("\\.[^.]+$", "") + ".dbz");
+	}
+
+	/**
+		Builds the zone map of the fields with blocks of DEFAULT_BLOCK_RECORDS
+		records and saves it next to the table.
+	*/
+	public static DBFZoneMap build(File table, String... fields) throws DBFException {
+		return build(table, DEFAULT_BLOCK_RECORDS, fields);
+	}
+
+	/**
+		Builds the zone map of the fields in one pass over the table and saves
+		it next to the table, replacing any earlier one. Deleted records are
+		left out.
+
+		@param blockRecords number of records of a block.
+	*/
+	public static DBFZoneMap build(File table, int blockRecords, String... fields) throws DBFException {
+		if (blockRecords <= 0) {
+			throw new IllegalArgumentException("Block records should be a positive number");
+		}
+
+		table = table.getAbsoluteFile();
+		long size = table.length();
+		long modified = table.lastModified();
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			List<DBFField> tableFields = reader.header.getFieldList();
+			int[] columns = new int[fields.length];
+			int[] offsets = new int[fields.length];
+			DBFField.DataType[] types = new DBFField.DataType[fields.length];
+			List<String> names = new ArrayList<String>(fields.length);
+
+			for (int c = 0; c < fields.length; c++) {
+				int offset = 1;
+				columns[c] = -1;
+				for (int i = 0; i < tableFields.size(); i++) {
+					if (tableFields.get(i).getName().equalsIgnoreCase(fields[c])) {
+						columns[c] = i;
+						offsets[c] = offset;
+					}
+					offset += tableFields.get(i).getFieldLength();
+				}
+
+				if (columns[c] < 0) {
+					throw new IllegalArgumentException("No field " + fields[c]);
+				}
+
+				types[c] = tableFields.get(columns[c]).getDataType();
+				if (types[c] == DBFField.DataType.MEMO) {
+					throw new IllegalArgumentException("Cannot build a zone map of memo field " + fields[c]);
+				}
+				names.add(tableFields.get(columns[c]).getName());
+			}
+
+			int recordLength = reader.header.getRecordLength();
+			long fileRecords = Math.max(0, (size - reader.header.getHeaderLength()) / recordLength);
+			int recordCount = (int) Math.min(reader.header.getNumberOfRecords(), fileRecords);
+
+			DBFZoneMap map = new DBFZoneMap(size, modified, recordCount, recordLength, blockRecords, Collections.unmodifiableList(names), types);
+
+			ByteBuffer buff = ByteBuffer.allocate(Math.max(DBFReader.READ_BUFFER_SIZE / recordLength, 1) * recordLength);
+			buff.order(ByteOrder.LITTLE_ENDIAN);
+
+			int record = 0;
+			while (record < recordCount) {
+				int count = Math.min(buff.capacity() / recordLength, recordCount - record);
+				long position = reader.header.getHeaderLength() + (long) record * recordLength;
+
+				buff.clear();
+				buff.limit(count * recordLength);
+				while (buff.hasRemaining()) {
+					int read = reader.dataChannel.read(buff, position + buff.position());
+					if (read < 0) {
+						throw new DBFException("Unexpected end of file at " + (position + buff.position()));
+					}
+				}
+
+				for (int r = 0; r < count; r++, record++) {
+					int start = r * recordLength;
+					if (buff.get(start) == '*') {
+						continue;
+					}
+
+					int block = record / blockRecords;
+					for (int c = 0; c < columns.length; c++) {
+						map.add(c, block, value(tableFields.get(columns[c]), buff, start + offsets[c]));
+					}
+				}
+			}
+
+			map.save(sideFile(table));
+			return map;
+		} catch (IOException e) {
+			throw e instanceof DBFException ? (DBFException) e : new DBFException(e.getMessage(), e);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				/* nothing was written to the table */
+			}
+		}
+	}
+
+	/* the value of a field as a long; characters by the prefix of their bytes without trailing spaces */
+	static long value(DBFField field, ByteBuffer buff, int position) throws DBFException {
+		if (field.getDataType() != DBFField.DataType.CHARACTER) {
+			return DBFAggregate.value(field, buff, position);
+		}
+
+		int length = field.getFieldLength();
+		while (length > 0 && buff.get(position + length - 1) == ' ') {
+			length--;
+		}
+
+		byte[] bytes = new byte[Math.min(length, 8)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buff.get(position + i);
+		}
+		return prefix(bytes, 0, bytes.length);
+	}
+
+	/*
+	 The first 8 bytes, padded with zeros, as an unsigned big endian number
+	 halved so that it is never negative. Strings in byte order have prefixes
+	 in the same order, equal prefixes for different strings included.
+	*/
+	static long prefix(byte[] bytes, int offset, int length) {
+		long prefix = 0;
+		for (int i = 0; i < 8; i++) {
+			prefix = prefix << 8 | (i < length ? bytes[offset + i] & 0xFF : 0);
+		}
+		return prefix >>> 1;
+	}
+
+	private void add(int column, int block, long value) {
+		if (value == DBFAggregate.NULL) {
+			nullCounts[column][block]++;
+			return;
+		}
+
+		if (value < mins[column][block]) {
+			mins[column][block] = value;
+		}
+		if (value > maxs[column][block]) {
+			maxs[column][block] = value;
+		}
+	}
+
+	/**
+		Loads the zone map of the table, or returns null if there is none or
+		the table has changed since it was built.
+	*/
+	public static DBFZoneMap load(File table) throws DBFException {
+		table = table.getAbsoluteFile();
+		File file = sideFile(table);
+
+		if (!file.isFile()) {
+			return null;
+		}
+
+		DBFZoneMap map = read(file);
+		return map.isValidFor(table) ? map : null;
+	}
+
+	/**
+		Tells whether the table still has the size and modification time it
+		had when the map was built.
+	*/
+	public boolean isValidFor(File table) {
+		return table.length() == tableSize && table.lastModified() == tableModified;
+	}
+
+	public int getBlockRecords() {
+		return blockRecords;
+	}
+
+	public int getBlockCount() {
+		return mins.length == 0 ? (recordCount + blockRecords - 1) / blockRecords : mins[0].length;
+	}
+
+	/**
+		Returns the number of records the map covers.
+	*/
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+		Returns the names of the fields of the map.
+	*/
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+		Returns the number of blank values of the field in the block.
+	*/
+	public int getNullCount(String field, int block) {
+		int column = column(field);
+		if (column < 0) {
+			throw new IllegalArgumentException("No field " + field + " in the zone map");
+		}
+		return nullCounts[column][block];
+	}
+
+	/* returns the column of the field, or -1 */
+	int column(String field) {
+		for (int c = 0; c < fields.size(); c++) {
+			if (fields.get(c).equalsIgnoreCase(field)) {
+				return c;
+			}
+		}
+		return -1;
+	}
+
+	/**
+		Tells whether the map was built from a table with the given field and
+		record length.
+	*/
+	boolean covers(DBFField field, int recordLength) {
+		int column = column(field.getName());
+		return column >= 0 && types[column] == field.getDataType() && this.recordLength == recordLength;
+	}
+
+	/**
+		Tells whether the block may hold a record matching the filter. Blocks
+		past the map may hold anything.
+	*/
+	boolean mayMatch(DBFFilter filter, int block) {
+		int column = column(filter.field.getName());
+		if (column < 0 || block >= getBlockCount()) {
+			return true;
+		}
+		return filter.mayMatch(mins[column][block], maxs[column][block]);
+	}
+
+	private void save(File file) throws IOException {
+		int blocks = getBlockCount();
+		ByteBuffer buff = ByteBuffer.allocate(36 + fields.size() * (12 + blocks * 20));
+		buff.order(ByteOrder.LITTLE_ENDIAN);
+
+		buff.putInt(SIGNATURE);
+		buff.putLong(tableSize);
+		buff.putLong(tableModified);
+		buff.putInt(recordCount);
+		buff.putInt(recordLength);
+		buff.putInt(blockRecords);
+		buff.putInt(fields.size());
+
+		Charset ascii = Charset.forName("US-ASCII");
+		for (int c = 0; c < fields.size(); c++) {
+			byte[] name = Arrays.copyOf(fields.get(c).getBytes(ascii), 11);
+			buff.put(name);
+			buff.put((byte) types[c].code());
+		}
+
+		for (int c = 0; c < fields.size(); c++) {
+			for (int b = 0; b < blocks; b++) {
+				buff.putLong(mins[c][b]);
+				buff.putLong(maxs[c][b]);
+				buff.putInt(nullCounts[c][b]);
+			}
+		}
+		buff.flip();
+
+		File tmp = new File(file.getPath() + ".tmp");
+		FileChannel channel = new FileOutputStream(tmp).getChannel();
+		try {
+			while (buff.hasRemaining()) {
+				channel.write(buff);
+			}
+		} finally {
+			channel.close();
+		}
+
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static DBFZoneMap read(File file) throws DBFException {
+		try {
+			FileChannel channel = new FileInputStream(file).getChannel();
+			ByteBuffer buff;
+			try {
+				buff = ByteBuffer.allocate((int) channel.size());
+				DBFHeader.readFully(channel, buff);
+			} finally {
+				channel.close();
+			}
+			buff.flip();
+			buff.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buff.getInt() != SIGNATURE) {
+				throw new DBFException("Not a zone map: " + file);
+			}
+
+			long tableSize = buff.getLong();
+			long tableModified = buff.getLong();
+			int recordCount = buff.getInt();
+			int recordLength = buff.getInt();
+			int blockRecords = buff.getInt();
+			int count = buff.getInt();
+
+			List<String> fields = new ArrayList<String>(count);
+			DBFField.DataType[] types = new DBFField.DataType[count];
+			for (int c = 0; c < count; c++) {
+				byte[] name = new byte[11];
+				buff.get(name);
+				int length = 0;
+				while (length < name.length && name[length] != 0) {
+					length++;
+				}
+				fields.add(new String(name, 0, length, "US-ASCII"));
+				types[c] = DBFField.DataType.fromCode((char) buff.get());
+			}
+
+			DBFZoneMap map = new DBFZoneMap(tableSize, tableModified, recordCount, recordLength, blockRecords, Collections.unmodifiableList(fields), types);
+			for (int c = 0; c < count; c++) {
+				for (int b = 0; b < map.getBlockCount(); b++) {
+					map.mins[c][b] = buff.getLong();
+					map.maxs[c][b] = buff.getLong();
+					map.nullCounts[c][b] = buff.getInt();
+				}
+			}
+
+			return map;
+		} catch (DBFException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBFException("Failed to read zone map " + file + ": " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			/* BufferUnderflowException on a truncated file */
+			throw new DBFException("Invalid zone map " + file + ": " + e, e);
+		}
+	}
+}
@@ -13,10 +13,22 @@ class FPTMemoFile extends MemoFile {
 	private final static int MEMO = 0x1; // Memo
 	private final static int OBJECT = 0x2; // Object
 
+	private final static int HEADER_LENGTH = 512;
+	private final static int DEFAULT_BLOCK_SIZE = 64;
+
+	private boolean headerChanged = false;
+
 	public FPTMemoFile(File file, String mode, Charset charset) throws IOException {
 		super(file, mode, charset);
 
-		ByteBuffer buff = ByteBuffer.allocate(512);
+		if (channel.size() == 0 && mode.contains("w")) {
+			sizeOfBlocks = DEFAULT_BLOCK_SIZE;
+			nextAvailableBlockNumber = HEADER_LENGTH / DEFAULT_BLOCK_SIZE;
+			writeHeader();
+			return;
+		}
+
+		ByteBuffer buff = ByteBuffer.allocate(HEADER_LENGTH);
 
 		channel.read(buff);
 
@@ -33,7 +45,10 @@ class FPTMemoFile extends MemoFile {
 
 	@Override
 	public String getMemo(int address) throws IOException {
-		channel.position(address * sizeOfBlocks);
+		DBFEventListener listener = DBFEventListener.installed();
+		long t_start = listener != null ? System.nanoTime() : 0;
+
+		channel.position((long) address * sizeOfBlocks);
 
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
@@ -67,6 +82,75 @@ class FPTMemoFile extends MemoFile {
 
 		String result = new String(baos.toByteArray(), 0, len, charset);
 
+		if (statistics != null) {
+			statistics.memoFetched(len);
+		}
+
+		if (listener != null) {
+			listener.memoFetched(address, len, System.nanoTime() - t_start);
+		}
+
 		return result;
 	}
+
+	@Override
+	public int writeMemo(String memo) throws IOException {
+		byte data[] = memo.getBytes(charset);
+
+		/* memos always fill whole blocks, getMemo() reads block by block */
+		int blocks = (8 + data.length + sizeOfBlocks - 1) / sizeOfBlocks;
+
+		ByteBuffer buff = ByteBuffer.allocate(blocks * sizeOfBlocks);
+		buff.order(ByteOrder.BIG_ENDIAN);
+		buff.putInt(MEMO);
+		buff.putInt(data.length);
+		buff.put(data);
+		buff.clear();
+
+		int address = nextAvailableBlockNumber;
+		long position = (long) address * sizeOfBlocks;
+		while (buff.hasRemaining()) {
+			position += channel.write(buff, position);
+		}
+
+		nextAvailableBlockNumber += blocks;
+		headerChanged = true;
+
+		return address;
+	}
+
+	@Override
+	void flush() throws IOException {
+		if (headerChanged) {
+			writeHeader();
+		}
+
+		super.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (headerChanged) {
+			writeHeader();
+		}
+
+		super.close();
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer buff = ByteBuffer.allocate(HEADER_LENGTH);
+		buff.order(ByteOrder.BIG_ENDIAN);
+
+		buff.putInt(nextAvailableBlockNumber); /* 0-3 */
+		buff.putShort((short) 0); /* 4-5 */
+		buff.putShort((short) sizeOfBlocks); /* 6-7 */
+		buff.clear();
+
+		long position = 0;
+		while (buff.hasRemaining()) {
+			position += channel.write(buff, position);
+		}
+
+		headerChanged = false;
+	}
 }
@@ -1,19 +1,20 @@
 package com.linuxense.javadbf;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
-abstract class MemoFile implements Closeable {
+abstract class MemoFile implements DBFMemoSource {
 	protected final FileChannel channel;	
 	protected final Charset charset;
 	
 	protected int nextAvailableBlockNumber = 0;
 	protected int sizeOfBlocks = 512;
 
+	protected DBFStatistics statistics;
+
 
 	public MemoFile(File file, String mode, Charset charset) throws IOException {
 		this.charset = charset;		
@@ -21,6 +22,25 @@ abstract class MemoFile implements Closeable {
 	}
 
 	public abstract String getMemo(int address) throws IOException;
+
+	public void setStatistics(DBFStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Appends a memo to the file.
+	 *
+	 * @return the block address to store in the record
+	 */
+	public abstract int writeMemo(String memo) throws IOException;
+
+	/**
+	 * Forces the memos written so far, and the header telling where the
+	 * next one goes, to the disk.
+	 */
+	void flush() throws IOException {
+		channel.force(false);
+	}
 	
 	public void close() throws IOException {
 		if (channel != null) {
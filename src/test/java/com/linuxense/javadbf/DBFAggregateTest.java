@@ -0,0 +1,166 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFAggregateTest {
+
+	/* several ranges of DBFAggregate.RECORDS_PER_RANGE records for each thread */
+	private static final int RECORDS = 8 * DBFAggregate.RECORDS_PER_RANGE + 123;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parallelScansMatchSequentialScans() throws Exception {
+		File table = table();
+
+		List<DBFAggregate.Row> sequential = aggregate(table, 1, 0, null);
+		assertEquals(sequential.toString(), aggregate(table, 4, 0, null).toString());
+
+		/* a row per name, the blank one first */
+		assertEquals(98, sequential.size());
+		assertEquals("", ((String) sequential.get(0).getKey(0)).trim());
+
+		long count = 0;
+		for (DBFAggregate.Row row : sequential) {
+			count += (Long) row.get("COUNT(*)");
+		}
+		assertEquals(live(0), count);
+	}
+
+	@Test
+	public void parallelScansStartAtTheCurrentRecord() throws Exception {
+		File table = table();
+		int start = 3 * DBFAggregate.RECORDS_PER_RANGE + 77;
+
+		List<DBFAggregate.Row> sequential = aggregate(table, 1, start, null);
+		assertEquals(sequential.toString(), aggregate(table, 4, start, null).toString());
+
+		long count = 0;
+		for (DBFAggregate.Row row : sequential) {
+			count += (Long) row.get("COUNT(*)");
+		}
+		assertEquals(live(start), count);
+	}
+
+	@Test
+	public void parallelScansApplyTheFilter() throws Exception {
+		File table = table();
+
+		List<DBFAggregate.Row> sequential = aggregate(table, 1, 1000, new Object[] { "ID", 5000, 100000 });
+		assertEquals(sequential.toString(), aggregate(table, 4, 1000, new Object[] { "ID", 5000, 100000 }).toString());
+	}
+
+	@Test
+	public void blankValuesAreLeftOut() throws Exception {
+		File table = table();
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			DBFAggregate.Row row = DBFAggregate.on(reader).count().sum("AMT").min("DAY").execute().get(0);
+
+			BitSet deleted = DBFTestTables.deleted(RECORDS);
+			BigDecimal sum = BigDecimal.ZERO.setScale(2);
+			LocalDate min = null;
+			for (int i = 0; i < RECORDS; i++) {
+				if (deleted.get(i)) {
+					continue;
+				}
+				Object[] record = DBFTestTables.record(i);
+				if (!blankAmount(i)) {
+					sum = sum.add((BigDecimal) record[2]);
+				}
+				if (!blankDay(i) && (min == null || min.isAfter((LocalDate) record[3]))) {
+					min = (LocalDate) record[3];
+				}
+			}
+
+			assertEquals(live(0), row.get("COUNT(*)"));
+			assertEquals(sum, row.get("SUM(AMT)"));
+			assertEquals(min, row.get("MIN(DAY)"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/*
+	 Aggregates by name from the record at start, with the filter {field,
+	 from, to} if not null, and expects the reader at the end afterwards.
+	*/
+	private static List<DBFAggregate.Row> aggregate(File table, int parallelism, int start, Object[] filter) throws Exception {
+		DBFReader reader = new DBFReader(table);
+		try {
+			/* the record before start is live */
+			while (reader.recordIndex < start) {
+				reader.nextRecordBuffer();
+			}
+			assertEquals(start, reader.recordIndex);
+			if (filter != null) {
+				reader.setFilter((String) filter[0], filter[1], filter[2]);
+			}
+
+			DBFAggregate aggregate = DBFAggregate.on(reader).groupBy("NAME").count().sum("AMT").avg("AMT").min("DAY").max("ID");
+			aggregate.setParallelism(parallelism);
+			List<DBFAggregate.Row> rows = aggregate.execute();
+
+			assertNull(reader.nextRecord());
+			return rows;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/* the records of DBFTestTables, with blank names, amounts and dates among them */
+	private File table() throws Exception {
+		File table = folder.newFile("table.dbf");
+		BitSet deleted = DBFTestTables.deleted(RECORDS);
+
+		DBFWriter writer = new DBFWriter(table);
+		writer.setFields(DBFTestTables.fields());
+		for (int i = 0; i < RECORDS; i++) {
+			Object[] record = DBFTestTables.record(i);
+			if (i % 13 == 0) {
+				record[1] = null;
+			}
+			if (blankAmount(i)) {
+				record[2] = null;
+			}
+			if (blankDay(i)) {
+				record[3] = null;
+			}
+
+			if (deleted.get(i)) {
+				writer.addDeletedRecord(record);
+			} else {
+				writer.addRecord(record);
+			}
+		}
+		writer.write();
+		return table;
+	}
+
+	private static boolean blankAmount(int i) {
+		return i % 11 == 0;
+	}
+
+	private static boolean blankDay(int i) {
+		return i % 17 == 0;
+	}
+
+	/* the live records from the record at start */
+	private static long live(int start) {
+		BitSet deleted = DBFTestTables.deleted(RECORDS);
+		return RECORDS - start - deleted.get(start, RECORDS).cardinality();
+	}
+}
@@ -0,0 +1,282 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFColumnTableTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void mappedSnapshotsReadLikeTheTable() throws Exception {
+		File table = folder.newFile("table.dbf");
+		File snapshot = new File(folder.getRoot(), "table.dbc");
+		writeWithBlanks(table, 5000, DBFTestTables.deleted(5000));
+
+		DBFColumnTable.convert(table, snapshot);
+
+		List<Object[]> expected = DBFTestTables.read(table);
+		DBFColumnTable mapped = DBFColumnTable.map(snapshot);
+		assertEquals(expected.size(), mapped.getRowCount());
+		assertEquals(DBFTestTables.fields().size(), mapped.getFields().size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals("record " + i, expected.get(i), mapped.getRecord(i));
+		}
+
+		DBFColumnReader reader = new DBFColumnReader(snapshot);
+		try {
+			assertEquals(expected.size(), reader.getRecordCount());
+			for (int i = 0; i < reader.getFieldCount(); i++) {
+				assertEquals(DBFTestTables.fields().get(i).getName(), reader.getField(i).getName());
+			}
+			for (Object[] record : expected) {
+				assertArrayEquals(record, reader.nextRecord());
+			}
+			assertNull(reader.nextRecord());
+			assertArrayEquals(expected.get(expected.size() - 1), reader.getRecord(expected.size() - 1));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void convertsRowGroupsLikeALoadedTable() throws Exception {
+		int records = 2 * DBFColumnTable.ROW_GROUP + 321;
+		File table = folder.newFile("table.dbf");
+		writeWithBlanks(table, records, DBFTestTables.deleted(records));
+
+		File converted = new File(folder.getRoot(), "converted.dbc");
+		DBFColumnTable.convert(table, converted);
+		File written = new File(folder.getRoot(), "written.dbc");
+		DBFColumnTable.load(table).write(written);
+
+		assertArrayEquals(Files.readAllBytes(written.toPath()), Files.readAllBytes(converted.toPath()));
+		assertEquals(Arrays.asList("converted.dbc", "table.dbf", "written.dbc"), sorted(folder.getRoot().list()));
+
+		/* a last group of whole words of bits */
+		File exact = folder.newFile("exact.dbf");
+		writeWithBlanks(exact, DBFColumnTable.ROW_GROUP, new BitSet());
+		DBFColumnTable.convert(exact, converted);
+		DBFColumnTable.load(exact).write(written);
+		assertArrayEquals(Files.readAllBytes(written.toPath()), Files.readAllBytes(converted.toPath()));
+
+		DBFColumnTable mapped = DBFColumnTable.map(converted);
+		assertEquals(DBFColumnTable.ROW_GROUP, mapped.getRowCount());
+		assertArrayEquals(DBFTestTables.record(DBFColumnTable.ROW_GROUP - 1), mapped.getRecord(DBFColumnTable.ROW_GROUP - 1));
+	}
+
+	@Test
+	public void rejectsSnapshotsOfTooManyRows() throws Exception {
+		File snapshot = snapshot(300);
+		byte[] bytes = Files.readAllBytes(snapshot.toPath());
+		int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+
+		/* the record count of the DBF header in the footer */
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length - 8 - footerLength + 4, DBFColumnTable.MAX_ROWS + 1);
+		File corrupt = new File(folder.getRoot(), "corrupt.dbc");
+		Files.write(corrupt.toPath(), bytes);
+
+		try {
+			DBFColumnTable.map(corrupt);
+			fail("mapped " + (DBFColumnTable.MAX_ROWS + 1) + " rows");
+		} catch (DBFException e) {
+			assertEquals("Invalid snapshot " + corrupt + ": " + (DBFColumnTable.MAX_ROWS + 1) + " rows", e.getMessage());
+		}
+	}
+
+	@Test
+	public void filtersLikeDBFReader() throws Exception {
+		File table = folder.newFile("table.dbf");
+		File snapshot = new File(folder.getRoot(), "table.dbc");
+		writeWithBlanks(table, 5000, DBFTestTables.deleted(5000));
+		DBFColumnTable.convert(table, snapshot);
+
+		assertFilter(table, snapshot, "ID", new BigDecimal(100), new BigDecimal(4200));
+		assertFilter(table, snapshot, "NAME", "NAME10", "NAME19");
+		assertFilter(table, snapshot, "AMT", new BigDecimal("10.00"), new BigDecimal("99.99"));
+		assertFilter(table, snapshot, "DAY", new LocalDate(2001, 1, 1), new LocalDate(2003, 12, 31));
+		assertFilter(table, snapshot, "FLAG", Boolean.TRUE, Boolean.TRUE);
+	}
+
+	@Test
+	public void snapshotsEmptyTables() throws Exception {
+		File empty = folder.newFile("empty.dbf");
+		DBFTestTables.write(empty, 0, new BitSet());
+		assertEmptySnapshot(empty);
+
+		BitSet deleted = new BitSet();
+		deleted.set(0, 50);
+		File allDeleted = folder.newFile("deleted.dbf");
+		DBFTestTables.write(allDeleted, 50, deleted);
+		assertEmptySnapshot(allDeleted);
+	}
+
+	@Test
+	public void rejectsFilesOtherThanSnapshots() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+		assertRejected(table);
+
+		File empty = folder.newFile("empty.dbc");
+		assertRejected(empty);
+	}
+
+	@Test
+	public void rejectsTruncatedSnapshots() throws Exception {
+		File snapshot = snapshot(300);
+		byte[] bytes = Files.readAllBytes(snapshot.toPath());
+
+		File truncated = new File(folder.getRoot(), "truncated.dbc");
+		for (int length = 0; length < bytes.length; length += Math.max(1, length / 4)) {
+			Files.write(truncated.toPath(), Arrays.copyOf(bytes, length));
+			assertRejected(truncated);
+		}
+		/* the footer cut off at its end, the length and signature put back after it */
+		byte[] cut = Arrays.copyOf(bytes, bytes.length - 20);
+		System.arraycopy(bytes, bytes.length - 8, cut, cut.length - 8, 8);
+		Files.write(truncated.toPath(), cut);
+		assertRejected(truncated);
+	}
+
+	@Test
+	public void rejectsCorruptFooters() throws Exception {
+		File snapshot = snapshot(300);
+		byte[] bytes = Files.readAllBytes(snapshot.toPath());
+		int footerLength = ByteBuffer.wrap(bytes, bytes.length - 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+		int footer = bytes.length - 8 - footerLength;
+
+		File corrupt = new File(folder.getRoot(), "corrupt.dbc");
+
+		/* the footer length */
+		for (int value : new int[] { -1, 0, footerLength - 1, footerLength + 1, Integer.MAX_VALUE }) {
+			byte[] damaged = bytes.clone();
+			ByteBuffer.wrap(damaged).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length - 8, value);
+			Files.write(corrupt.toPath(), damaged);
+			assertRejected(corrupt);
+		}
+
+		/* every byte of the region table and the column count */
+		int regions = footerLength - DBFTestTables.fields().size() * 6 * 8 - 4;
+		for (int i = footer + regions; i < bytes.length - 8; i++) {
+			for (int value : new int[] { 0x7F, 0xFF }) {
+				byte[] damaged = bytes.clone();
+				damaged[i] ^= value;
+				Files.write(corrupt.toPath(), damaged);
+				assertRejected(corrupt);
+			}
+		}
+
+		/* the length of the DBF header in the footer */
+		byte[] damaged = bytes.clone();
+		damaged[footer + 8] ^= 0x20;
+		Files.write(corrupt.toPath(), damaged);
+		assertRejected(corrupt);
+	}
+
+	/* a snapshot of records 0 to count - 1 */
+	private File snapshot(int count) throws Exception {
+		File table = folder.newFile("table.dbf");
+		File snapshot = new File(folder.getRoot(), "table.dbc");
+		writeWithBlanks(table, count, new BitSet());
+		DBFColumnTable.convert(table, snapshot);
+		return snapshot;
+	}
+
+	/* writes the records with blank numbers and dates in every eleventh of them */
+	private static void writeWithBlanks(File file, int count, BitSet deleted) throws DBFException {
+		DBFWriter writer = new DBFWriter(file);
+		writer.setFields(DBFTestTables.fields());
+		for (int i = 0; i < count; i++) {
+			Object[] record = DBFTestTables.record(i);
+			if (i % 11 == 0) {
+				record[2] = null;
+				record[3] = null;
+			}
+			if (deleted.get(i)) {
+				writer.addDeletedRecord(record);
+			} else {
+				writer.addRecord(record);
+			}
+		}
+		writer.write();
+	}
+
+	private static void assertFilter(File table, File snapshot, String field, Object from, Object to) throws Exception {
+		List<Object[]> expected = new ArrayList<Object[]>();
+		DBFReader reader = new DBFReader(table);
+		try {
+			reader.setFilter(field, from, to);
+			Object[] record;
+			while ((record = reader.nextRecord()) != null) {
+				expected.add(record);
+			}
+		} finally {
+			reader.close();
+		}
+
+		DBFColumnReader columns = new DBFColumnReader(snapshot);
+		try {
+			columns.setFilter(field, from, to);
+			for (int i = 0; i < expected.size(); i++) {
+				assertArrayEquals(field + " record " + i, expected.get(i), columns.nextRecord());
+			}
+			assertNull(columns.nextRecord());
+		} finally {
+			columns.close();
+		}
+	}
+
+	private void assertEmptySnapshot(File table) throws Exception {
+		File snapshot = new File(folder.getRoot(), table.getName() + ".dbc");
+		DBFColumnTable.convert(table, snapshot);
+
+		DBFColumnTable mapped = DBFColumnTable.map(snapshot);
+		assertEquals(0, mapped.getRowCount());
+		assertEquals(DBFTestTables.fields().size(), mapped.getFields().size());
+		assertEquals(0, mapped.find("ID", BigDecimal.ZERO, null).length);
+
+		DBFColumnReader reader = new DBFColumnReader(snapshot);
+		try {
+			assertEquals(0, reader.getRecordCount());
+			assertNull(reader.nextRecord());
+			reader.setFilter("NAME", "NAME1");
+			assertNull(reader.nextRecord());
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static List<String> sorted(String[] names) {
+		List<String> list = new ArrayList<String>(Arrays.asList(names));
+		Collections.sort(list);
+		return list;
+	}
+
+	private static void assertRejected(File snapshot) {
+		try {
+			DBFColumnTable.map(snapshot);
+			fail(snapshot.length() + " bytes of " + snapshot + " mapped");
+		} catch (DBFException e) {
+			/* expected */
+		}
+	}
+}
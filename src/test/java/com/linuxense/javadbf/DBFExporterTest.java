@@ -0,0 +1,77 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFExporterTest {
+
+	/* numbers as other programs leave them in a NUMBER field */
+	private static final String[] NUMBERS = { "  .5", "-.5", "1.", "+3", "007", "-00.25", "1.5e3", "-0", "12.50", "***", "?", "1.5.3", "- 5", "1-",
+			"abc", "" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesNumbersAsJson() throws Exception {
+		String expected = "0.5,-0.5,1,3,7,-0.25,1.5e3,-0,12.50,null,null,null,null,null,null,null";
+		assertEquals(Arrays.asList(expected.split(",")), Arrays.asList(export(DBFExporter.Format.JSON_LINES).split(",")));
+	}
+
+	@Test
+	public void writesNumbersAsFoundInCsv() throws Exception {
+		String expected = ".5,-.5,1.,+3,007,-00.25,1.5e3,-0,12.50,,,1.5.3,- 5,1-,abc,";
+		assertEquals(Arrays.asList(expected.split(",", -1)), Arrays.asList(export(DBFExporter.Format.CSV).split(",", -1)));
+	}
+
+	/* the values of NUMBERS exported one per line, joined with commas */
+	private String export(DBFExporter.Format format) throws Exception {
+		File table = new File(folder.getRoot(), "numbers.dbf");
+		DBFWriter writer = new DBFWriter(table);
+		writer.setFields(Arrays.asList(DBFTestTables.field("N", 'C', 8, 0)));
+		for (String number : NUMBERS) {
+			writer.addRecord(new Object[] { number });
+		}
+		writer.write();
+
+		/* the type of the field, made NUMBER once the text is written */
+		RandomAccessFile file = new RandomAccessFile(table, "rw");
+		try {
+			file.seek(32 + 11);
+			file.write('N');
+		} finally {
+			file.close();
+		}
+
+		DBFExporter exporter = new DBFExporter(format);
+		exporter.setHeaderLine(false);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DBFReader reader = new DBFReader(table);
+		try {
+			assertEquals(NUMBERS.length, exporter.export(reader, out));
+		} finally {
+			reader.close();
+		}
+
+		/* every line ends with a line break, so the last one is empty */
+		String[] lines = out.toString("UTF-8").split("\r?\n", -1);
+		assertEquals("", lines[NUMBERS.length]);
+
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < NUMBERS.length; i++) {
+			if (i > 0) {
+				values.append(',');
+			}
+			values.append(format == DBFExporter.Format.JSON_LINES ? lines[i].substring("{\"N\":".length(), lines[i].length() - 1) : lines[i]);
+		}
+		return values.toString();
+	}
+}
@@ -0,0 +1,78 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFFilterTest {
+
+	private static final String[] NAMES = { "ALPHA", "", "BETA", "   ", "CAROL", "" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void blankCharacterValuesNeverMatch() {
+		List<DBFField> fields = Arrays.asList(DBFTestTables.field("NAME", 'C', 12, 0));
+		ByteBuffer blank = ByteBuffer.wrap(DBFTestTables.pad("", 12).getBytes());
+
+		assertFalse(DBFFilter.range(fields, LanguageDriver.DEFAULT_CHARSET, "NAME", null, "B").matches(blank, 0, 12));
+		assertFalse(DBFFilter.range(fields, LanguageDriver.DEFAULT_CHARSET, "NAME", null, null).matches(blank, 0, 12));
+		assertFalse(DBFFilter.range(fields, LanguageDriver.DEFAULT_CHARSET, "NAME", "", "").matches(blank, 0, 12));
+		assertTrue(DBFFilter.range(fields, LanguageDriver.DEFAULT_CHARSET, "NAME", null, "B").matches(ByteBuffer.wrap("A".getBytes()), 0, 1));
+	}
+
+	@Test
+	public void readersSkipBlankValuesOfOpenRanges() throws Exception {
+		File table = folder.newFile("names.dbf");
+		DBFWriter writer = new DBFWriter(table);
+		writer.setFields(Arrays.asList(DBFTestTables.field("NAME", 'C', 12, 0)));
+		for (String name : NAMES) {
+			writer.addRecord(new Object[] { name });
+		}
+		writer.write();
+
+		assertEquals(Arrays.asList("ALPHA", "BETA"), names(new DBFReader(table), null, "BZ"));
+		assertEquals(Arrays.asList("ALPHA", "BETA", "CAROL"), names(new DBFReader(table), null, null));
+
+		File snapshot = new File(folder.getRoot(), "names.dbc");
+		DBFColumnTable.convert(table, snapshot);
+		DBFColumnReader columns = new DBFColumnReader(snapshot);
+		try {
+			columns.setFilter("NAME", null, "BZ");
+			assertEquals("ALPHA", ((String) columns.nextRecord()[0]).trim());
+			assertEquals("BETA", ((String) columns.nextRecord()[0]).trim());
+			assertNull(columns.nextRecord());
+		} finally {
+			columns.close();
+		}
+	}
+
+	/* the trimmed names the reader returns with the filter, closing it */
+	private static List<String> names(DBFReader reader, Object from, Object to) throws Exception {
+		try {
+			reader.setFilter("NAME", from, to);
+
+			List<String> names = new ArrayList<String>();
+			Object[] record;
+			while ((record = reader.nextRecord()) != null) {
+				names.add(((String) record[0]).trim());
+			}
+			assertNull(reader.nextRecord());
+			return names;
+		} finally {
+			reader.close();
+		}
+	}
+}
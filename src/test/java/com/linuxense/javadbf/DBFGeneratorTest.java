@@ -0,0 +1,48 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFGeneratorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void generatesNumbersWithMoreDecimalsThanAnInt() throws Exception {
+		DBFGenerator generator = new DBFGenerator();
+		generator.setRecordCount(500);
+		generator.setNullRatio(0);
+		generator.addNumberField("AMT", 20, 12, -1000, 1000);
+		File table = folder.newFile("numbers.dbf");
+		generator.generate(table);
+
+		List<Object[]> records = DBFTestTables.read(table);
+		assertEquals(500, records.size());
+
+		Set<BigDecimal> fractions = new HashSet<BigDecimal>();
+		for (Object[] record : records) {
+			BigDecimal value = (BigDecimal) record[0];
+			assertEquals(12, value.scale());
+			assertTrue(value + " out of range", value.compareTo(new BigDecimal(-1000)) >= 0 && value.compareTo(new BigDecimal(1000)) <= 0);
+			fractions.add(value.remainder(BigDecimal.ONE).abs());
+		}
+		/* the fractions use all twelve digits, not a few values below 2^31 */
+		assertTrue(fractions.size() > 490);
+		BigDecimal largest = BigDecimal.ZERO;
+		for (BigDecimal fraction : fractions) {
+			largest = largest.max(fraction);
+		}
+		assertTrue(largest.compareTo(new BigDecimal("0.9")) > 0);
+	}
+}
@@ -0,0 +1,209 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFHashIndexTest {
+
+	private static final int RECORDS = 3000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void findsTheLiveRecordsWithAKey() throws Exception {
+		File table = folder.newFile("table.dbf");
+		BitSet deleted = DBFTestTables.deleted(RECORDS);
+		DBFTestTables.write(table, RECORDS, deleted);
+
+		DBFHashIndex index = DBFHashIndex.build(table, "NAME");
+		try {
+			assertTrue(DBFHashIndex.sideFile(table, "NAME").isFile());
+			assertEquals(RECORDS, index.getRecordCount());
+			assertEquals(Arrays.asList("NAME"), index.getFields());
+
+			for (int name = 0; name < 97; name++) {
+				assertArrayEquals(expected(RECORDS, deleted, name), index.find("NAME" + name));
+			}
+			assertArrayEquals(new int[0], index.find("NAME97"));
+			assertArrayEquals(new int[0], index.find("NAME5 X"));
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void findsKeysOfSeveralFields() throws Exception {
+		File table = folder.newFile("table.dbf");
+		BitSet deleted = DBFTestTables.deleted(RECORDS);
+		DBFTestTables.write(table, RECORDS, deleted);
+
+		DBFHashIndex index = DBFHashIndex.build(table, "ID", "NAME");
+		try {
+			assertArrayEquals(new int[] { 1000 }, index.find(1000, "NAME" + 1000 % 97));
+			assertArrayEquals(new int[] { 1000 }, index.find(new BigDecimal("1000.0"), "NAME" + 1000 % 97));
+			assertArrayEquals(new int[0], index.find(1000, "NAME0"));
+			/* deleted */
+			assertArrayEquals(new int[0], index.find(700, "NAME" + 700 % 97));
+			/* more decimals than the field */
+			assertArrayEquals(new int[0], index.find(new BigDecimal("1000.5"), "NAME" + 1000 % 97));
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void openHashesTheRecordsAppendedSince() throws Exception {
+		File table = folder.newFile("table.dbf");
+		BitSet deleted = DBFTestTables.deleted(RECORDS);
+		DBFTestTables.write(table, RECORDS, deleted);
+		DBFHashIndex.build(table, "NAME").close();
+
+		/* to three times as many records, beyond the capacity of the slots */
+		append(table, RECORDS, 3 * RECORDS);
+		DBFHashIndex index = DBFHashIndex.open(table, "NAME");
+		try {
+			assertEquals(3 * RECORDS, index.getRecordCount());
+			for (int name = 0; name < 97; name += 12) {
+				assertArrayEquals(expected(3 * RECORDS, deleted, name), index.find("NAME" + name));
+			}
+		} finally {
+			index.close();
+		}
+
+		append(table, 3 * RECORDS, 3 * RECORDS + 10);
+		index = DBFHashIndex.open(table, "NAME");
+		try {
+			assertEquals(3 * RECORDS + 10, index.getRecordCount());
+			assertArrayEquals(expected(3 * RECORDS + 10, deleted, 60), index.find("NAME60"));
+		} finally {
+			index.close();
+		}
+
+		/* nothing appended, the saved slots are mapped as they are */
+		long modified = DBFHashIndex.sideFile(table, "NAME").lastModified();
+		index = DBFHashIndex.open(table, "NAME");
+		try {
+			assertEquals(3 * RECORDS + 10, index.getRecordCount());
+			assertArrayEquals(expected(3 * RECORDS + 10, deleted, 60), index.find("NAME60"));
+		} finally {
+			index.close();
+		}
+		assertEquals(modified, DBFHashIndex.sideFile(table, "NAME").lastModified());
+	}
+
+	@Test
+	public void openRebuildsTheIndexOfAReplacedTable() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, RECORDS, new BitSet());
+		DBFHashIndex.build(table, "NAME").close();
+
+		/* the last indexed record changes, as if the table had been packed and refilled */
+		table.delete();
+		BitSet deleted = new BitSet();
+		deleted.set(RECORDS - 1);
+		DBFTestTables.write(table, RECORDS, deleted);
+
+		DBFHashIndex index = DBFHashIndex.open(table, "NAME");
+		try {
+			int name = (RECORDS - 1) % 97;
+			assertArrayEquals(expected(RECORDS, deleted, name), index.find("NAME" + name));
+		} finally {
+			index.close();
+		}
+
+		/* a shorter table */
+		table.delete();
+		DBFTestTables.write(table, 100, new BitSet());
+
+		index = DBFHashIndex.open(table, "NAME");
+		try {
+			assertEquals(100, index.getRecordCount());
+			assertArrayEquals(expected(100, new BitSet(), 3), index.find("NAME3"));
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void openRebuildsADamagedSideFile() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, RECORDS, new BitSet());
+		DBFHashIndex.build(table, "NAME").close();
+
+		File side = DBFHashIndex.sideFile(table, "NAME");
+		RandomAccessFile file = new RandomAccessFile(side, "rw");
+		try {
+			file.setLength(side.length() - 4);
+		} finally {
+			file.close();
+		}
+
+		DBFHashIndex index = DBFHashIndex.open(table, "NAME");
+		try {
+			assertArrayEquals(expected(RECORDS, new BitSet(), 8), index.find("NAME8"));
+		} finally {
+			index.close();
+		}
+		assertEquals(32 + 8192 * 8, side.length());
+
+		/* the fingerprint of other fields */
+		file = new RandomAccessFile(side, "rw");
+		try {
+			file.seek(4);
+			file.writeInt(0);
+		} finally {
+			file.close();
+		}
+
+		index = DBFHashIndex.open(table, "NAME");
+		try {
+			assertArrayEquals(expected(RECORDS, new BitSet(), 8), index.find("NAME8"));
+		} finally {
+			index.close();
+		}
+	}
+
+	/* the live records of NAME<name> */
+	private static int[] expected(int records, BitSet deleted, int name) {
+		List<Integer> found = new ArrayList<Integer>();
+		for (int i = 0; i < records; i++) {
+			if (!deleted.get(i) && i % 97 == name) {
+				found.add(i);
+			}
+		}
+
+		int[] indexes = new int[found.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = found.get(i);
+		}
+		return indexes;
+	}
+
+	/* appends record(from) to record(to - 1) and publishes them */
+	private static void append(File table, int from, int to) throws IOException {
+		DBFWriter writer = new DBFWriter(table);
+		try {
+			for (int i = from; i < to; i++) {
+				writer.addRecord(DBFTestTables.record(i));
+			}
+			writer.checkpoint();
+		} finally {
+			writer.close();
+		}
+	}
+}
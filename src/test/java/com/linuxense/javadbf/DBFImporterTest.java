@@ -0,0 +1,119 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFImporterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesFloatsAsTheWriterDoes() throws Exception {
+		String[] values = { "1.5", "-0.25", "0.5", "1234.5678", "0.0005", "0.0015", "-0", "+7", "123456.7", "1e3" };
+		List<DBFField> fields = Arrays.asList(DBFTestTables.field("F", 'F', 10, 3));
+
+		File written = folder.newFile("written.dbf");
+		DBFWriter writer = new DBFWriter(written);
+		writer.setFields(fields);
+		for (String value : values) {
+			writer.addRecord(new Object[] { Double.valueOf(value) });
+		}
+		writer.write();
+
+		File imported = importCsv(fields, UTF8, values);
+		assertArrayEquals(records(written), records(imported));
+	}
+
+	@Test
+	public void rejectsFloatsWiderThanTheField() throws Exception {
+		List<DBFField> fields = Arrays.asList(DBFTestTables.field("F", 'F', 6, 2));
+		importCsv(fields, UTF8, "999.99", "-99.99");
+
+		for (String value : new String[] { "1000", "-100", "1e400" }) {
+			try {
+				importCsv(fields, UTF8, value);
+				fail(value + " imported");
+			} catch (DBFException e) {
+				/* expected */
+			}
+		}
+	}
+
+	@Test
+	public void cutsCharactersBetweenTwoCharacters() throws Exception {
+		/* two bytes each in UTF-8 */
+		String value = "\u00e9\u00e9\u00e9";
+		List<DBFField> fields = Arrays.asList(DBFTestTables.field("NAME", 'C', 5, 0));
+
+		File table = importCsv(fields, UTF8, value, "ab" + value);
+		byte[] records = records(table);
+
+		assertArrayEquals(bytes(" \u00e9\u00e9  ab\u00e9 "), records);
+	}
+
+	@Test
+	public void cutsCharactersOfOtherCharacterSetsBetweenTwoCharacters() throws Exception {
+		List<DBFField> fields = Arrays.asList(DBFTestTables.field("NAME", 'C', 4, 0));
+
+		File table = folder.newFile("table.dbf");
+		DBFWriter writer = new DBFWriter(table);
+		writer.setCharactersetName("UTF-8");
+		writer.setFields(fields);
+		DBFImporter importer = new DBFImporter();
+		importer.setCharset(Charset.forName("ISO-8859-1"));
+		importer.setHeaderLine(false);
+		/* a, two e acute and z in Latin-1, which take five bytes in UTF-8 */
+		importer.importRecords(new ByteArrayInputStream(new byte[] { 'a', (byte) 0xE9, (byte) 0xE9, 'z', '\n' }), writer);
+		writer.write();
+
+		assertArrayEquals(bytes(" a\u00e9 "), records(table));
+	}
+
+	/* imports the values as the rows of a CSV of one column */
+	private File importCsv(List<DBFField> fields, Charset charset, String... values) throws Exception {
+		StringBuilder csv = new StringBuilder();
+		for (String value : values) {
+			csv.append(value).append('\n');
+		}
+
+		File table = new File(folder.getRoot(), "imported.dbf");
+		table.delete();
+		DBFWriter writer = new DBFWriter(table);
+		writer.setCharactersetName(charset.name());
+		writer.setFields(fields);
+
+		DBFImporter importer = new DBFImporter();
+		importer.setCharset(charset);
+		importer.setHeaderLine(false);
+		assertEquals(values.length, importer.importRecords(new ByteArrayInputStream(csv.toString().getBytes(charset)), writer));
+		writer.write();
+		return table;
+	}
+
+	/* the bytes of the records, after the header and before the end of file marker */
+	private static byte[] records(File table) throws Exception {
+		byte[] bytes = Files.readAllBytes(table.toPath());
+		int headerLength = (bytes[8] & 0xFF) | (bytes[9] & 0xFF) << 8;
+		int end = bytes[bytes.length - 1] == 0x1A ? bytes.length - 1 : bytes.length;
+		return Arrays.copyOfRange(bytes, headerLength, end);
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(UTF8);
+	}
+}
@@ -0,0 +1,339 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+	Looks up keys in the indexes of src/test/resources/index, written by
+	src/test/scripts/make_index_fixtures.py, and expects the records a scan
+	of people.dbf finds, in the order of their keys.
+*/
+public class DBFIndexTest {
+
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int BORN = 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<Object[]> records;
+
+	@Before
+	public void readTable() throws Exception {
+		records = new ArrayList<Object[]>();
+		DBFReader reader = new DBFReader(fixture("people.dbf"));
+		try {
+			Object[] record;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+		} finally {
+			reader.close();
+		}
+		assertEquals(700, records.size());
+	}
+
+	@Test
+	public void listsTheTagsOfACompoundIndex() throws Exception {
+		assertEquals(Arrays.asList("BORN", "ID", "NAME", "NAMEDESC"), DBFIndex.getTags(fixture("people.cdx")));
+
+		try {
+			DBFIndex.open(fixture("people.cdx"));
+			fail("opened a compound index with four tags");
+		} catch (DBFException e) {
+			/* expected */
+		}
+		try {
+			DBFIndex.open(fixture("people.cdx"), "NOSUCHTAG");
+			fail("opened a missing tag");
+		} catch (DBFException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void findsCharacterKeys() throws Exception {
+		DBFIndex index = DBFIndex.open(fixture("people.cdx"), "name");
+		try {
+			assertEquals("NAME", index.getKeyExpression());
+			assertEquals(10, index.getKeyLength());
+			assertFalse(index.isDescending());
+			assertCharacterKeys(index);
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void findsNumericKeys() throws Exception {
+		DBFIndex index = DBFIndex.open(fixture("people.cdx"), "ID");
+		try {
+			assertEquals(8, index.getKeyLength());
+
+			assertFind(index, ID, -150, -150);
+			assertFind(index, ID, 0, 0);
+			assertFind(index, ID, 799, 799);
+			assertFind(index, ID, -10, 10);
+			assertFind(index, ID, null, -190);
+			assertFind(index, ID, 790, null);
+			assertFind(index, ID, -1000, 1000);
+			assertEquals(1, index.find(new BigDecimal("-150")).length);
+			assertEquals(1, index.find(Double.valueOf(42)).length);
+			assertEquals(0, index.find(Double.valueOf(42.5)).length);
+			assertEquals(0, index.find(1000).length);
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void findsDateKeys() throws Exception {
+		DBFIndex index = DBFIndex.open(fixture("people.cdx"), "BORN");
+		try {
+			assertDateKeys(index);
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void findsKeysOfDescendingTags() throws Exception {
+		DBFIndex index = DBFIndex.open(fixture("people.cdx"), "NAMEDESC");
+		try {
+			assertTrue(index.isDescending());
+
+			for (String[] range : new String[][] { { "MARTIN", "MARTIN" }, { "MARTIN", "SMITH" }, { null, "CLARK" }, { "WILSON", null }, { null, null } }) {
+				int[] found = index.find(range[0], range[1]);
+				int[] ascending = expected(NAME, range[0], range[1]);
+
+				/* the same records, from the highest key down */
+				int[] sorted = found.clone();
+				Arrays.sort(sorted);
+				int[] expected = ascending.clone();
+				Arrays.sort(expected);
+				assertArrayEquals(expected, sorted);
+
+				for (int i = 1; i < found.length; i++) {
+					assertTrue(key(found[i - 1], NAME).compareTo(key(found[i], NAME)) >= 0);
+				}
+			}
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void findsKeysInSingleIndexes() throws Exception {
+		DBFIndex index = DBFIndex.open(fixture("people_name.idx"));
+		try {
+			assertEquals("NAME", index.getKeyExpression());
+			assertCharacterKeys(index);
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void findsKeysInDBaseIndexes() throws Exception {
+		DBFIndex name = DBFIndex.open(fixture("people_name.ndx"));
+		try {
+			assertEquals("NAME", name.getKeyExpression());
+			assertCharacterKeys(name);
+		} finally {
+			name.close();
+		}
+
+		DBFIndex born = DBFIndex.open(fixture("people_born.ndx"));
+		try {
+			assertEquals("BORN", born.getKeyExpression());
+			assertDateKeys(born);
+		} finally {
+			born.close();
+		}
+	}
+
+	@Test
+	public void readsOnlyTheNodesOnTheWayToAKey() throws Exception {
+		DBFIndex index = DBFIndex.open(fixture("people.cdx"), "NAME");
+		try {
+			DBFStatistics statistics = new DBFStatistics();
+			index.setStatistics(statistics);
+
+			assertFind(index, NAME, "ZHANG", "ZHANG");
+			/* the root, a branch and the leaves of the key, out of 35 leaves */
+			assertTrue(statistics.getReadCalls() <= 5);
+		} finally {
+			index.close();
+		}
+	}
+
+	private void assertCharacterKeys(DBFIndex index) throws DBFException {
+		assertFind(index, NAME, "MARTIN", "MARTIN");
+		assertFind(index, NAME, "MARTINEZ", "MARTINEZ");
+		assertFind(index, NAME, "ADAMS", "ADAMS");
+		assertFind(index, NAME, "ZHANG", "ZHANG");
+		assertFind(index, NAME, "MAR", "MAT");
+		assertFind(index, NAME, "MARTIN", "SMITH");
+		assertFind(index, NAME, null, "BAKER");
+		assertFind(index, NAME, "WILSON", null);
+		assertFind(index, NAME, null, null);
+		assertEquals(records.size(), index.find(null, null).length);
+		assertEquals(0, index.find("NOBODY").length);
+		assertEquals(0, index.find("A").length);
+		assertArrayEquals(index.find("MARTIN"), index.find("MARTIN   "));
+	}
+
+	private void assertDateKeys(DBFIndex index) throws DBFException {
+		LocalDate born = (LocalDate) records.get(123)[BORN];
+
+		assertFind(index, BORN, born, born);
+		assertFind(index, BORN, new LocalDate(1960, 1, 1), new LocalDate(1965, 12, 31));
+		assertFind(index, BORN, null, new LocalDate(1951, 6, 30));
+		assertFind(index, BORN, new LocalDate(2000, 1, 1), null);
+		assertArrayEquals(index.find(born), index.find(born.toDate()));
+		assertEquals(0, index.find(new LocalDate(1900, 1, 1)).length);
+	}
+
+	/* expects the records with a key between from and to, in the order of the index */
+	private void assertFind(DBFIndex index, int field, Object from, Object to) throws DBFException {
+		int[] expected = expected(field, from, to);
+		assertTrue(from + " to " + to + " finds nothing", expected.length > 0);
+		assertArrayEquals(expected, index.find(from, to));
+	}
+
+	@Test
+	public void encodesCharacterKeysWithTheCodePageOfTheTable() throws Exception {
+		Charset cp866 = Charset.forName("cp866");
+		String[] names = { "ADAMS", "\u0418\u0412\u0410\u041D\u041E\u0412", "\u041F\u0415\u0422\u0420\u041E\u0412", "\u042F\u041A\u041E\u0412\u041B\u0415\u0412" };
+
+		File table = new File(folder.getRoot(), "names.dbf");
+		DBFWriter writer = new DBFWriter(table);
+		writer.setFields(Arrays.asList(DBFTestTables.field("NAME", 'C', 10, 0)));
+		writer.write();
+		RandomAccessFile file = new RandomAccessFile(table, "rw");
+		try {
+			/* language driver of the Russian MS-DOS code page */
+			file.seek(29);
+			file.write(0x66);
+		} finally {
+			file.close();
+		}
+
+		byte[][] keys = new byte[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			keys[i] = names[i].getBytes(cp866);
+		}
+		File ndx = new File(folder.getRoot(), "names.ndx");
+		writeNdx(ndx, "NAME", 10, keys);
+
+		DBFIndex index = DBFIndex.open(ndx);
+		try {
+			assertEquals(cp866, Charset.forName(index.getCharactersetName()));
+			for (int i = 0; i < names.length; i++) {
+				assertArrayEquals(new int[] { i }, index.find(names[i]));
+			}
+			assertArrayEquals(new int[] { 1, 2 }, index.find("\u0418", "\u041F\u042F"));
+
+			index.setCharactersetName("cp1252");
+			assertArrayEquals(new int[0], index.find("\u0418\u0412\u0410\u041D\u041E\u0412"));
+		} finally {
+			index.close();
+		}
+	}
+
+	/*
+	 Writes a dBase III .ndx of a root leaf holding the keys, in order, of
+	 records 0 to keys.length - 1: a header page with the root page, the
+	 page count, the key length, keys per page, key type, entry length and
+	 expression, then a page with the key count and entries of the child
+	 page, the record number counted from 1 and the key padded with spaces.
+	*/
+	private static void writeNdx(File file, String expression, int keyLength, byte[][] keys) throws Exception {
+		int entryLength = (keyLength + 8 + 3) & ~3;
+		ByteBuffer buff = ByteBuffer.allocate(2 * 512).order(ByteOrder.LITTLE_ENDIAN);
+
+		buff.putInt(0, 1);
+		buff.putInt(4, 2);
+		buff.putShort(12, (short) keyLength);
+		buff.putShort(14, (short) ((512 - 4) / entryLength));
+		buff.putShort(16, (short) 0);
+		buff.putShort(18, (short) entryLength);
+		byte[] t_expression = expression.getBytes("US-ASCII");
+		for (int i = 0; i < t_expression.length; i++) {
+			buff.put(24 + i, t_expression[i]);
+		}
+
+		buff.putInt(512, keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			int offset = 512 + 4 + i * entryLength;
+			buff.putInt(offset + 4, i + 1);
+			for (int j = 0; j < keyLength; j++) {
+				buff.put(offset + 8 + j, j < keys[i].length ? keys[i][j] : (byte) ' ');
+			}
+		}
+
+		Files.write(file.toPath(), buff.array());
+	}
+
+	/* the records with a key between from and to ordered by key, then by record */
+	private int[] expected(final int field, Object from, Object to) {
+		List<Integer> found = new ArrayList<Integer>();
+		for (int i = 0; i < records.size(); i++) {
+			Comparable<Object> key = key(i, field);
+			if ((from == null || key.compareTo(bound(from)) >= 0) && (to == null || key.compareTo(bound(to)) <= 0)) {
+				found.add(i);
+			}
+		}
+
+		Collections.sort(found, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = key(a, field).compareTo(key(b, field));
+				return c != 0 ? c : a.compareTo(b);
+			}
+		});
+
+		int[] indexes = new int[found.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = found.get(i);
+		}
+		return indexes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Comparable<Object> key(int record, int field) {
+		Object value = records.get(record)[field];
+		return (Comparable<Object>) (value instanceof String ? ((String) value).trim() : value);
+	}
+
+	private static Object bound(Object value) {
+		return value instanceof Integer ? new BigDecimal((Integer) value) : value;
+	}
+
+	private static File fixture(String name) throws Exception {
+		return new File(DBFIndexTest.class.getResource("/index/" + name).toURI());
+	}
+}
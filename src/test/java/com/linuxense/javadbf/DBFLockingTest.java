@@ -0,0 +1,57 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.channels.FileLock;
+import java.util.BitSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFLockingTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void clipperLocksPastOneBillion() {
+		assertEquals(1000000000L, DBFLocking.CLIPPER.getHeaderOffset());
+		assertEquals(1000000001L, DBFLocking.CLIPPER.getRecordOffset(0));
+		assertEquals(1000000010L, DBFLocking.CLIPPER.getRecordOffset(9));
+		assertEquals(1000000000L + Integer.MAX_VALUE, DBFLocking.CLIPPER.getRecordOffset(Integer.MAX_VALUE - 1));
+	}
+
+	@Test
+	public void foxProLocksDownFromTwoGigabytes() {
+		assertEquals(0x7FFFFFFEL, DBFLocking.FOXPRO.getHeaderOffset());
+		assertEquals(0x7FFFFFFDL, DBFLocking.FOXPRO.getRecordOffset(0));
+		assertEquals(0x7FFFFFF4L, DBFLocking.FOXPRO.getRecordOffset(9));
+	}
+
+	@Test
+	public void readersLockTheByteOfARecord() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		for (DBFLocking locking : DBFLocking.values()) {
+			DBFReader reader = new DBFReader(table);
+			try {
+				reader.setLocking(locking);
+
+				FileLock lock = reader.lockRecord(3);
+				try {
+					assertEquals(locking.getRecordOffset(3), lock.position());
+					assertEquals(1, lock.size());
+					assertTrue(lock.isShared());
+				} finally {
+					lock.release();
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFPackTest {
+
+	/* records of DBFTestTables.fields() in a block */
+	private static final int BLOCK_RECORDS = DBFPack.BLOCK_SIZE / recordLength();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void packsDeletedRecordsAtTheStart() throws Exception {
+		BitSet deleted = new BitSet();
+		deleted.set(0, 5);
+		assertPacks(100, deleted);
+	}
+
+	@Test
+	public void packsDeletedRecordsInTheMiddle() throws Exception {
+		BitSet deleted = new BitSet();
+		deleted.set(40);
+		deleted.set(50, 60);
+		assertPacks(100, deleted);
+	}
+
+	@Test
+	public void packsDeletedRecordsAtTheEnd() throws Exception {
+		BitSet deleted = new BitSet();
+		deleted.set(90, 100);
+		assertPacks(100, deleted);
+	}
+
+	@Test
+	public void packsTablesLargerThanABlock() throws Exception {
+		int records = BLOCK_RECORDS * 2 + 500;
+		BitSet deleted = DBFTestTables.deleted(records);
+		/* across the end of the first block */
+		deleted.set(BLOCK_RECORDS - 3, BLOCK_RECORDS + 3);
+		deleted.set(records - 1);
+		assertPacks(records, deleted);
+	}
+
+	@Test
+	public void packsTablesWithOnlyDeletedRecords() throws Exception {
+		BitSet deleted = new BitSet();
+		deleted.set(0, 100);
+		assertPacks(100, deleted);
+	}
+
+	@Test
+	public void leavesTablesWithoutDeletedRecordsAlone() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 100, new BitSet());
+		byte[] before = Files.readAllBytes(table.toPath());
+		long modified = table.lastModified() - 60000;
+		table.setLastModified(modified);
+
+		assertEquals(0, DBFPack.countDeleted(table));
+		assertEquals(0, DBFPack.pack(table));
+
+		assertArrayEquals(before, Files.readAllBytes(table.toPath()));
+		assertEquals(modified, table.lastModified());
+	}
+
+	@Test
+	public void packsTablesWhoseHeaderOverstatesTheRecordCount() throws Exception {
+		File table = folder.newFile("table.dbf");
+		File packed = new File(folder.getRoot(), "packed.dbf");
+		BitSet deleted = DBFTestTables.deleted(100);
+		DBFTestTables.write(table, 100, deleted);
+
+		/* a writer that died after publishing records it never wrote */
+		RandomAccessFile file = new RandomAccessFile(table, "rw");
+		try {
+			file.seek(4);
+			file.write(new byte[] { (byte) 150, 0, 0, 0 });
+		} finally {
+			file.close();
+		}
+
+		List<Object[]> live = new ArrayList<Object[]>();
+		for (int i = 0; i < 100; i++) {
+			if (!deleted.get(i)) {
+				live.add(DBFTestTables.record(i));
+			}
+		}
+
+		assertEquals(deleted.cardinality(), DBFPack.countDeleted(table));
+		assertEquals(deleted.cardinality(), DBFPack.pack(table, packed));
+		assertRecords(live, DBFTestTables.read(packed));
+		assertEquals(deleted.cardinality(), DBFPack.pack(table));
+		assertRecords(live, DBFTestTables.read(table));
+	}
+
+	/* packs the table into a new file and in place, expecting the live records of both */
+	private void assertPacks(int records, BitSet deleted) throws Exception {
+		File table = folder.newFile("table.dbf");
+		File packed = new File(folder.getRoot(), "packed.dbf");
+		DBFTestTables.write(table, records, deleted);
+
+		List<Object[]> live = new ArrayList<Object[]>();
+		for (int i = 0; i < records; i++) {
+			if (!deleted.get(i)) {
+				live.add(DBFTestTables.record(i));
+			}
+		}
+		assertRecords(live, DBFTestTables.read(table));
+		assertEquals(deleted.cardinality(), DBFPack.countDeleted(table));
+
+		assertEquals(deleted.cardinality(), DBFPack.pack(table, packed));
+		assertRecords(live, DBFTestTables.read(packed));
+
+		assertEquals(deleted.cardinality(), DBFPack.pack(table));
+		assertRecords(live, DBFTestTables.read(table));
+		assertEquals(0, DBFPack.countDeleted(table));
+
+		/* the same table, down to its length and END_OF_DATA mark */
+		assertArrayEquals(DBFTestTables.withoutDate(Files.readAllBytes(packed.toPath())), DBFTestTables.withoutDate(Files.readAllBytes(table.toPath())));
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			assertEquals(live.size(), reader.getRecordCount());
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void assertRecords(List<Object[]> expected, List<Object[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), actual.get(i));
+		}
+	}
+
+	private static int recordLength() {
+		int length = 1;
+		for (DBFField field : DBFTestTables.fields()) {
+			length += field.getFieldLength();
+		}
+		return length;
+	}
+}
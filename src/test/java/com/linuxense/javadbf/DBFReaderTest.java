@@ -0,0 +1,124 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsTheRecordsOfALiveWriterOnceCheckpointed() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFWriter writer = new DBFWriter(table);
+		writer.setLocking(DBFLocking.CLIPPER);
+		DBFReader reader = new DBFReader(table);
+		reader.setLocking(DBFLocking.CLIPPER);
+		try {
+			for (int i = 10; i < 15; i++) {
+				writer.addRecord(DBFTestTables.record(i));
+			}
+
+			/* appended but not published */
+			assertEquals(10, reader.refreshRecordCount());
+			assertRecords(reader, 0, 10);
+
+			writer.checkpoint();
+
+			/* published, but past the snapshot of the reader */
+			assertNull(reader.nextRecord());
+			assertEquals(10, reader.getRecordCount());
+
+			assertEquals(15, reader.refreshRecordCount());
+			assertRecords(reader, 10, 15);
+
+			DBFReader other = new DBFReader(table);
+			try {
+				assertEquals(15, other.getRecordCount());
+				assertRecords(other, 0, 15);
+			} finally {
+				other.close();
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	@Test
+	public void readsRecordsPublishedDuringTheScan() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFWriter writer = new DBFWriter(table);
+		DBFReader reader = new DBFReader(table);
+		try {
+			/* the first records and the END_OF_DATA mark after them are buffered */
+			assertRecords(reader, 0, 3);
+
+			for (int count = 15; count <= 25; count += 5) {
+				for (int i = count - 5; i < count; i++) {
+					writer.addRecord(DBFTestTables.record(i));
+				}
+				writer.checkpoint();
+
+				assertEquals(count, reader.refreshRecordCount());
+				assertEquals(count, reader.getRecordCount());
+			}
+
+			assertRecords(reader, 3, 25);
+			assertEquals(25, reader.refreshRecordCount());
+			assertNull(reader.nextRecord());
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	@Test
+	public void rejectsARecordCountThatShrank() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			RandomAccessFile file = new RandomAccessFile(table, "rw");
+			try {
+				file.seek(4);
+				file.write(new byte[] { 9, 0, 0, 0 });
+			} finally {
+				file.close();
+			}
+
+			reader.refreshRecordCount();
+			fail("refreshed to fewer records");
+		} catch (DBFException e) {
+			/* expected */
+		} finally {
+			reader.close();
+		}
+	}
+
+	/* reads record(from) to record(to - 1), then the end of the snapshot */
+	private static void assertRecords(DBFReader reader, int from, int to) throws DBFException {
+		for (int i = from; i < to; i++) {
+			assertArrayEquals("record " + i, DBFTestTables.record(i), reader.nextRecord());
+		}
+		if (to == reader.getRecordCount()) {
+			assertNull(reader.nextRecord());
+		}
+	}
+}
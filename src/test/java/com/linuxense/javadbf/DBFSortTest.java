@@ -0,0 +1,203 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFSortTest {
+
+	private static final int RECORDS = 5000;
+
+	private static final int ID = 0;
+	private static final int NAME = 1;
+	private static final int AMT = 2;
+	private static final int FLAG = 4;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void keepsTheOrderOfRecordsWithEqualKeys() throws Exception {
+		File table = table(RECORDS);
+		File sorted = new File(folder.getRoot(), "sorted.dbf");
+
+		new DBFSort().by("NAME").sort(table, sorted);
+
+		assertSorted(RECORDS, sorted, new Comparator<Object[]>() {
+
+			public int compare(Object[] a, Object[] b) {
+				return ((String) a[NAME]).compareTo((String) b[NAME]);
+			}
+		});
+	}
+
+	@Test
+	public void sortsDescendingFields() throws Exception {
+		File table = table(RECORDS);
+		File sorted = new File(folder.getRoot(), "sorted.dbf");
+
+		new DBFSort().by("FLAG").by("AMT", true).sort(table, sorted);
+
+		assertSorted(RECORDS, sorted, new Comparator<Object[]>() {
+
+			public int compare(Object[] a, Object[] b) {
+				int c = ((Boolean) a[FLAG]).compareTo((Boolean) b[FLAG]);
+				return c != 0 ? c : ((BigDecimal) b[AMT]).compareTo((BigDecimal) a[AMT]);
+			}
+		});
+	}
+
+	@Test
+	public void mergesSeveralRunFiles() throws Exception {
+		File table = table(RECORDS);
+		File sorted = new File(folder.getRoot(), "sorted.dbf");
+		File temp = folder.newFolder("runs");
+
+		/* chunks of 1024 records, merged two runs at a time */
+		DBFSort sort = new DBFSort().by("NAME", true).by("AMT");
+		sort.setMemoryLimit(1);
+		sort.setParallelism(3);
+		sort.setTempDirectory(temp);
+		sort.sort(table, sorted);
+
+		assertSorted(RECORDS, sorted, new Comparator<Object[]>() {
+
+			public int compare(Object[] a, Object[] b) {
+				int c = ((String) b[NAME]).compareTo((String) a[NAME]);
+				return c != 0 ? c : ((BigDecimal) a[AMT]).compareTo((BigDecimal) b[AMT]);
+			}
+		});
+		assertEquals(0, temp.list().length);
+	}
+
+	@Test
+	public void sortsBlankValuesFirstOrLastWhenDescending() throws Exception {
+		File table = folder.newFile("blanks.dbf");
+		DBFWriter writer = new DBFWriter(table);
+		writer.setFields(Arrays.asList(DBFTestTables.field("NAME", 'C', 8, 0), DBFTestTables.field("AMT", 'N', 8, 2)));
+		writer.addRecord(new Object[] { "BETA", new BigDecimal("2.50") });
+		writer.addRecord(new Object[] { null, null });
+		writer.addRecord(new Object[] { "ALPHA", new BigDecimal("-1.00") });
+		writer.addRecord(new Object[] { "", new BigDecimal("0.00") });
+		writer.write();
+
+		File sorted = new File(folder.getRoot(), "sorted.dbf");
+		new DBFSort().by("NAME").sort(table, sorted);
+		assertEquals(Arrays.asList("", "", "ALPHA", "BETA"), column(sorted, 0));
+		assertEquals(Arrays.asList(null, "0.00", "-1.00", "2.50"), column(sorted, 1));
+
+		new DBFSort().by("NAME", true).sort(table, sorted);
+		assertEquals(Arrays.asList("BETA", "ALPHA", "", ""), column(sorted, 0));
+
+		new DBFSort().by("AMT").sort(table, sorted);
+		assertEquals(Arrays.asList(null, "-1.00", "0.00", "2.50"), column(sorted, 1));
+
+		new DBFSort().by("AMT", true).sort(table, sorted);
+		assertEquals(Arrays.asList("2.50", "0.00", "-1.00", null), column(sorted, 1));
+	}
+
+	@Test
+	public void deletesTheRunFilesOfAFailedSort() throws Exception {
+		File table = table(RECORDS);
+		File temp = folder.newFolder("runs");
+
+		/* the third chunk fails once its run file is written, while the others may still run */
+		final AtomicInteger submitted = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+
+			@Override
+			protected <T> RunnableFuture<T> newTaskFor(final Callable<T> task) {
+				if (submitted.incrementAndGet() != 3) {
+					return super.newTaskFor(task);
+				}
+				return super.newTaskFor(new Callable<T>() {
+
+					public T call() throws Exception {
+						task.call();
+						throw new IOException("No space left on device");
+					}
+				});
+			}
+		};
+
+		DBFSort sort = new DBFSort().by("NAME");
+		sort.setMemoryLimit(1);
+		sort.setParallelism(2);
+		sort.setTempDirectory(temp);
+		sort.setExecutor(executor);
+
+		try {
+			sort.sort(table, new File(folder.getRoot(), "sorted.dbf"));
+			fail("sorted although writing a run failed");
+		} catch (DBFException e) {
+			/* expected */
+		}
+
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList(), Arrays.asList(temp.list()));
+	}
+
+	/* writes record(0) to record(records - 1) of DBFTestTables, deleting some */
+	private File table(int records) throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, records, DBFTestTables.deleted(records));
+		return table;
+	}
+
+	/* expects the live records sorted stably with the comparator */
+	private static void assertSorted(int records, File sorted, Comparator<Object[]> comparator) throws Exception {
+		BitSet deleted = DBFTestTables.deleted(records);
+		List<Object[]> expected = new ArrayList<Object[]>();
+		for (int i = 0; i < records; i++) {
+			if (!deleted.get(i)) {
+				expected.add(DBFTestTables.record(i));
+			}
+		}
+		Collections.sort(expected, comparator);
+
+		List<Object[]> actual = DBFTestTables.read(sorted);
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals("record " + i + " of ID " + expected.get(i)[ID], expected.get(i), actual.get(i));
+		}
+	}
+
+	/* the trimmed values of a field of the table, null for a blank number */
+	private static List<String> column(File table, int field) throws Exception {
+		List<String> values = new ArrayList<String>();
+		DBFReader reader = new DBFReader(table);
+		try {
+			Object[] record;
+			while ((record = reader.nextRecord()) != null) {
+				Object value = record[field];
+				values.add(value == null ? null : value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : ((String) value).trim());
+			}
+			assertNull(reader.nextRecord());
+		} finally {
+			reader.close();
+		}
+		return values;
+	}
+}
@@ -0,0 +1,57 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.BitSet;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFStatisticsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void keysParseTimesByFieldType() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 1000, new BitSet());
+
+		DBFStatistics statistics = new DBFStatistics();
+		DBFReader reader = new DBFReader(table);
+		try {
+			reader.setStatistics(statistics);
+			while (reader.nextRecord() != null) {
+				/* read everything */
+			}
+		} finally {
+			reader.close();
+		}
+
+		Map<DBFField.DataType, Long> parseNanos = statistics.getParseNanos();
+		assertEquals(statistics.snapshot().getParseNanos().keySet(), parseNanos.keySet());
+		assertTrue(parseNanos.get(DBFField.DataType.CHARACTER) > 0);
+		assertEquals(1000, statistics.getRecordsRead());
+	}
+
+	@Test
+	public void publishesParseTimesOverJmx() throws Exception {
+		DBFStatistics statistics = new DBFStatistics();
+		statistics.register("DBFStatisticsTest");
+		try {
+			ObjectName name = new ObjectName("com.linuxense.javadbf:type=DBFStatistics,name=" + ObjectName.quote("DBFStatisticsTest"));
+			TabularData parseNanos = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ParseNanos");
+			assertEquals(DBFField.DataType.values().length, parseNanos.size());
+		} finally {
+			statistics.unregister();
+		}
+	}
+}
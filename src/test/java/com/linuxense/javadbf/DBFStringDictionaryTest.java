@@ -0,0 +1,157 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFStringDictionaryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void keepsTheValuesOfLowCardinalityFields() throws Exception {
+		String[] codes = new String[5 * DBFStringDictionary.WINDOW];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = "BR" + i % 40;
+		}
+		File table = table(codes);
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			reader.setDictionary("CODE", DBFStringDictionary.DEFAULT_MAX_ENTRIES);
+			String[] read = readCodes(reader, codes.length);
+
+			DBFStringDictionary dictionary = reader.getDictionary("CODE");
+			assertTrue(dictionary.isEnabled());
+			assertEquals(40, dictionary.size());
+			assertEquals(codes.length, dictionary.getLookups());
+			assertEquals(codes.length - 40, dictionary.getHits());
+
+			/* equal values are one String */
+			for (int i = 40; i < codes.length; i++) {
+				assertSame(read[i - 40], read[i]);
+			}
+			assertEquals(7, dictionary.getCode("BR7"));
+			assertEquals(DBFTestTables.pad("BR7", 8), dictionary.get(7));
+			assertEquals(-1, dictionary.getCode("BR40"));
+		} finally {
+			reader.close();
+		}
+		assertArrayEquals(plainCodes(table, codes.length), readWithDictionary(table, codes.length));
+	}
+
+	@Test
+	public void givesUpOnHighCardinalityFields() throws Exception {
+		String[] codes = new String[3 * DBFStringDictionary.WINDOW];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = "C" + i;
+		}
+		File table = table(codes);
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			reader.setDictionary("CODE", 100000);
+			DBFStringDictionary dictionary = reader.getDictionary("CODE");
+
+			readCodes(reader, DBFStringDictionary.WINDOW - 1);
+			assertTrue(dictionary.isEnabled());
+			assertEquals(DBFStringDictionary.WINDOW - 1, dictionary.size());
+
+			readCodes(reader, 1);
+			assertFalse(dictionary.isEnabled());
+			assertEquals(0, dictionary.size());
+			assertEquals(-1, dictionary.getCode("C1"));
+
+			/* the rest is decoded without the dictionary */
+			readCodes(reader, codes.length - DBFStringDictionary.WINDOW);
+			assertEquals(DBFStringDictionary.WINDOW, dictionary.getLookups());
+			assertNull(reader.nextRecord());
+		} finally {
+			reader.close();
+		}
+		assertArrayEquals(plainCodes(table, codes.length), readWithDictionary(table, codes.length));
+	}
+
+	@Test
+	public void readsTheSameValuesAcrossTheSwitch() throws Exception {
+		/* two windows of few values, then distinct ones, among them those of the dictionary */
+		String[] codes = new String[5 * DBFStringDictionary.WINDOW + 17];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = i < 2 * DBFStringDictionary.WINDOW ? "BR" + i % 30 : i % 50 == 0 ? "BR" + i % 30 : "N" + i;
+		}
+		File table = table(codes);
+
+		DBFReader reader = new DBFReader(table);
+		try {
+			reader.setDictionary("CODE", DBFStringDictionary.DEFAULT_MAX_ENTRIES);
+			DBFStringDictionary dictionary = reader.getDictionary("CODE");
+
+			readCodes(reader, 2 * DBFStringDictionary.WINDOW);
+			assertTrue(dictionary.isEnabled());
+			assertEquals(30, dictionary.size());
+
+			readCodes(reader, DBFStringDictionary.WINDOW);
+			assertFalse(dictionary.isEnabled());
+		} finally {
+			reader.close();
+		}
+
+		String[] read = readWithDictionary(table, codes.length);
+		assertArrayEquals(plainCodes(table, codes.length), read);
+		for (int i = 0; i < codes.length; i++) {
+			assertEquals(DBFTestTables.pad(codes[i], 8), read[i]);
+		}
+	}
+
+	/* writes a table of one character field CODE */
+	private File table(String[] codes) throws Exception {
+		File table = folder.newFile("codes.dbf");
+		DBFWriter writer = new DBFWriter(table);
+		writer.setFields(Arrays.asList(DBFTestTables.field("CODE", 'C', 8, 0)));
+		for (String code : codes) {
+			writer.addRecord(new Object[] { code });
+		}
+		writer.write();
+		return table;
+	}
+
+	private static String[] readCodes(DBFReader reader, int count) throws Exception {
+		String[] codes = new String[count];
+		for (int i = 0; i < count; i++) {
+			codes[i] = (String) reader.nextRecord()[0];
+		}
+		return codes;
+	}
+
+	private static String[] plainCodes(File table, int count) throws Exception {
+		DBFReader reader = new DBFReader(table);
+		try {
+			return readCodes(reader, count);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String[] readWithDictionary(File table, int count) throws Exception {
+		DBFReader reader = new DBFReader(table);
+		try {
+			reader.setDictionary("CODE", DBFStringDictionary.DEFAULT_MAX_ENTRIES);
+			String[] codes = readCodes(reader, count);
+			assertNull(reader.nextRecord());
+			return codes;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFTailReaderTest {
+
+	public static class Booking {
+		int id;
+		String name;
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void nextRecordReadsAppendedRecords() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFTailReader reader = new DBFTailReader(table);
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertArrayEquals(DBFTestTables.record(i), reader.nextRecord());
+			}
+			assertNull(reader.nextRecord());
+
+			append(table, 10, 15);
+
+			for (int i = 10; i < 15; i++) {
+				assertArrayEquals(DBFTestTables.record(i), reader.nextRecord());
+			}
+			assertNull(reader.nextRecord());
+			assertEquals(15, reader.getRecordCount());
+			assertEquals(15, reader.getNextIndex());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void mappedRecordsShareTheCursor() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 4, new BitSet());
+
+		DBFTailReader reader = new DBFTailReader(table);
+		try {
+			assertArrayEquals(DBFTestTables.record(0), reader.nextRecord());
+			assertEquals(1, reader.nextRecord(Booking.class).id);
+			assertEquals(2, reader.nextRecord(DBFRecordMapper.bind(Booking.class, fields(reader))).id);
+			assertArrayEquals(DBFTestTables.record(3), reader.nextRecord());
+			assertNull(reader.nextRecord(Booking.class));
+
+			append(table, 4, 6);
+
+			Booking booking = reader.nextRecord(Booking.class);
+			assertEquals(4, booking.id);
+			assertEquals("NAME4", booking.name);
+			assertArrayEquals(DBFTestTables.record(5), reader.nextRecord());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void refreshRecordCountUpdatesTheCount() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFTailReader reader = new DBFTailReader(table);
+		try {
+			append(table, 10, 25);
+			assertEquals(10, reader.getRecordCount());
+
+			assertEquals(25, reader.refreshRecordCount());
+			assertEquals(25, reader.getRecordCount());
+			assertEquals(25, reader.refresh());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void aggregatesFromTheNextRecordToConsume() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFTailReader reader = new DBFTailReader(table);
+		try {
+			for (int i = 0; i < 4; i++) {
+				reader.nextRecord();
+			}
+			append(table, 10, 20);
+
+			List<DBFAggregate.Row> rows = DBFAggregate.on(reader).count().sum("ID").execute();
+			assertEquals(Long.valueOf(16), rows.get(0).get("COUNT(*)"));
+			assertEquals(new BigDecimal(184), rows.get(0).get("SUM(ID)"));
+
+			assertEquals(20, reader.getNextIndex());
+			assertNull(reader.nextRecord());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void appliesTheFilter() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFTailReader reader = new DBFTailReader(table);
+		try {
+			reader.setFilter("ID", 5, 12);
+
+			List<Object[]> records = reader.poll(100);
+			assertEquals(5, records.size());
+			assertArrayEquals(DBFTestTables.record(5), records.get(0));
+
+			append(table, 10, 20);
+
+			assertArrayEquals(DBFTestTables.record(10), reader.nextRecord());
+			assertArrayEquals(DBFTestTables.record(11), reader.nextRecord());
+			assertArrayEquals(DBFTestTables.record(12), reader.nextRecord());
+			assertNull(reader.nextRecord());
+			assertEquals(20, reader.getNextIndex());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void pollResumesFromTheCheckpoint() throws Exception {
+		File table = folder.newFile("table.dbf");
+		File checkpoint = new File(folder.getRoot(), "table.checkpoint");
+		DBFTestTables.write(table, 30, DBFTestTables.deleted(30));
+
+		final List<Integer> indexes = new ArrayList<Integer>();
+		DBFTailReader.RecordHandler handler = new DBFTailReader.RecordHandler() {
+
+			public void handleRecord(int recordIndex, Object[] values) {
+				assertArrayEquals(DBFTestTables.record(recordIndex), values);
+				indexes.add(recordIndex);
+			}
+		};
+
+		DBFTailReader reader = new DBFTailReader(table, checkpoint);
+		try {
+			assertEquals(30, reader.poll(handler));
+		} finally {
+			reader.close();
+		}
+		append(table, 30, 40);
+
+		reader = new DBFTailReader(table, checkpoint);
+		try {
+			assertEquals(30, reader.getNextIndex());
+			assertEquals(10, reader.poll(handler));
+			assertEquals(0, reader.poll(handler));
+		} finally {
+			reader.close();
+		}
+
+		List<Integer> expected = new ArrayList<Integer>();
+		BitSet deleted = DBFTestTables.deleted(30);
+		for (int i = 0; i < 40; i++) {
+			if (!deleted.get(i)) {
+				expected.add(i);
+			}
+		}
+		assertEquals(expected, indexes);
+	}
+
+	@Test(expected = DBFException.class)
+	public void rejectsTablesThatShrank() throws Exception {
+		File table = folder.newFile("table.dbf");
+		DBFTestTables.write(table, 10, new BitSet());
+
+		DBFTailReader reader = new DBFTailReader(table);
+		try {
+			assertEquals(10, reader.poll(100).size());
+
+			/* as a pack leaves it, with fewer records than were read */
+			RandomAccessFile file = new RandomAccessFile(table, "rw");
+			try {
+				file.seek(4);
+				file.write(new byte[] { 5, 0, 0, 0 });
+			} finally {
+				file.close();
+			}
+			reader.refresh();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/* appends record(from) to record(to - 1) and publishes them */
+	private static void append(File table, int from, int to) throws IOException {
+		DBFWriter writer = new DBFWriter(table);
+		try {
+			for (int i = from; i < to; i++) {
+				writer.addRecord(DBFTestTables.record(i));
+			}
+			writer.checkpoint();
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static List<DBFField> fields(DBFReader reader) throws DBFException {
+		List<DBFField> fields = new ArrayList<DBFField>();
+		for (int i = 0; i < reader.getFieldCount(); i++) {
+			fields.add(reader.getField(i));
+		}
+		return fields;
+	}
+}
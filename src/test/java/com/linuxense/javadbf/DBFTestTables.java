@@ -0,0 +1,107 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+/**
+	Tables the tests write and the records they expect to read back.
+*/
+final class DBFTestTables {
+
+	private DBFTestTables() {
+	}
+
+	static List<DBFField> fields() {
+		return Arrays.asList(field("ID", 'N', 10, 0), field("NAME", 'C', 12, 0), field("AMT", 'N', 12, 2), field("DAY", 'D', 8, 0), field("FLAG", 'L', 1, 0));
+	}
+
+	static DBFField field(String name, char type, int length, int decimals) {
+		DBFField field = new DBFField();
+		field.setName(name);
+		field.setDataType((byte) type);
+		if (type != 'D') {
+			field.setFieldLength(length);
+		}
+		field.setDecimalCount(decimals);
+		return field;
+	}
+
+	/* the values of records, as DBFReader returns them */
+	static List<Object[]> records(int count) {
+		List<Object[]> records = new ArrayList<Object[]>(count);
+		for (int i = 0; i < count; i++) {
+			records.add(record(i));
+		}
+		return records;
+	}
+
+	static Object[] record(int i) {
+		return new Object[] { new BigDecimal(i), pad("NAME" + i % 97, 12), BigDecimal.valueOf(i * 7L % 100000, 2), new LocalDate(2000, 1, 1).plusDays(i % 5000), i % 3 == 0 };
+	}
+
+	/* every seventh record and a run of them */
+	static BitSet deleted(int count) {
+		BitSet deleted = new BitSet(count);
+		for (int i = 0; i < count; i += 7) {
+			deleted.set(i);
+		}
+		deleted.set(Math.min(count, 5000), Math.min(count, 5100));
+		return deleted;
+	}
+
+	static String pad(String value, int length) {
+		StringBuilder padded = new StringBuilder(value);
+		while (padded.length() < length) {
+			padded.append(' ');
+		}
+		return padded.toString();
+	}
+
+	/* writes record(0) to record(count - 1) to the file, flagging the deleted ones */
+	static void write(File file, int count, BitSet deleted) throws DBFException {
+		DBFWriter writer = new DBFWriter(file);
+		writer.setFields(fields());
+		for (int i = 0; i < count; i++) {
+			if (deleted.get(i)) {
+				writer.addDeletedRecord(record(i));
+			} else {
+				writer.addRecord(record(i));
+			}
+		}
+		writer.write();
+	}
+
+	/* the records nextRecord() returns */
+	static List<Object[]> read(File file) throws DBFException {
+		DBFReader reader = new DBFReader(file);
+		try {
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				/* opened for reading only */
+			}
+		}
+	}
+
+	/* the date of last update may change between two writes */
+	static byte[] withoutDate(byte[] table) {
+		table[1] = 0;
+		table[2] = 0;
+		table[3] = 0;
+		return table;
+	}
+}
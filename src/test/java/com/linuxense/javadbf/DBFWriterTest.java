@@ -0,0 +1,296 @@
+package com.linuxense.javadbf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static com.linuxense.javadbf.DBFTestTables.deleted;
+import static com.linuxense.javadbf.DBFTestTables.fields;
+import static com.linuxense.javadbf.DBFTestTables.records;
+import static com.linuxense.javadbf.DBFTestTables.withoutDate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DBFWriterTest {
+
+	/* more records than the parallel writer keeps in flight */
+	private static final int RECORDS = DBFWriter.RECORDS_PER_CHUNK * DBFWriter.CHUNKS_IN_FLIGHT + 1234;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ExecutorService executor;
+
+	@Before
+	public void startExecutor() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void stopExecutor() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void parallelOutputIsIdenticalToSequentialOutput() throws Exception {
+		List<Object[]> records = records(RECORDS);
+		BitSet deleted = deleted(RECORDS);
+
+		DBFWriter sequential = new DBFWriter();
+		sequential.setFields(fields());
+		for (int i = 0; i < records.size(); i++) {
+			if (deleted.get(i)) {
+				sequential.addDeletedRecord(records.get(i));
+			} else {
+				sequential.addRecord(records.get(i));
+			}
+		}
+		byte[] expected = write(sequential, null);
+
+		DBFWriter parallel = new DBFWriter();
+		parallel.setFields(fields());
+		parallel.addRecords(records, deleted, executor);
+		assertArrayEquals(expected, write(parallel, null));
+
+		DBFWriter stream = new DBFWriter();
+		stream.setFields(fields());
+		for (int i = 0; i < records.size(); i++) {
+			if (deleted.get(i)) {
+				stream.addDeletedRecord(records.get(i));
+			} else {
+				stream.addRecord(records.get(i));
+			}
+		}
+		assertArrayEquals(expected, write(stream, executor));
+
+		DBFWriter buffer = new DBFWriter(ByteBuffer.allocate(4096));
+		buffer.setFields(fields());
+		buffer.addRecords(records, deleted, executor);
+		assertArrayEquals(expected, write(buffer, null));
+
+		File file = folder.newFile("parallel.dbf");
+		DBFWriter writer = new DBFWriter(file);
+		writer.setFields(fields());
+		writer.addRecords(records, deleted, executor);
+		writer.write();
+		assertArrayEquals(expected, withoutDate(Files.readAllBytes(file.toPath())));
+	}
+
+	@Test
+	public void fileWriterWritesEveryRecord() throws Exception {
+		File file = folder.newFile("sequential.dbf");
+		DBFTestTables.write(file, 100, new BitSet());
+
+		List<Object[]> read = DBFTestTables.read(file);
+		assertEquals(100, read.size());
+		for (int i = 0; i < read.size(); i++) {
+			assertArrayEquals(DBFTestTables.record(i), read.get(i));
+		}
+	}
+
+	@Test
+	public void updatesTheFirstAndLastRecords() throws Exception {
+		File file = folder.newFile("update.dbf");
+		BitSet deleted = new BitSet();
+		deleted.set(10);
+		DBFTestTables.write(file, 100, deleted);
+
+		DBFWriter writer = new DBFWriter(file);
+		writer.updateRecord(0, DBFTestTables.record(1000));
+		writer.updateField(0, "name", "FIRST");
+		writer.updateRecord(99, DBFTestTables.record(1099));
+		writer.updateField(99, "AMT", new BigDecimal("-1.50"));
+		writer.updateRecord(10, DBFTestTables.record(1010));
+		writer.deleteRecord(50);
+		writer.write();
+
+		Object[] first = DBFTestTables.record(1000);
+		first[1] = DBFTestTables.pad("FIRST", 12);
+		Object[] last = DBFTestTables.record(1099);
+		last[2] = new BigDecimal("-1.50");
+
+		DBFReader reader = new DBFReader(file);
+		try {
+			assertEquals(100, reader.getRecordCount());
+			assertArrayEquals(first, reader.getRecord(0));
+			assertArrayEquals(last, reader.getRecord(99));
+			assertArrayEquals(DBFTestTables.record(49), reader.getRecord(49));
+			assertArrayEquals(DBFTestTables.record(51), reader.getRecord(51));
+			/* deleted records stay deleted */
+			assertNull(reader.getRecord(10));
+			assertNull(reader.getRecord(50));
+		} finally {
+			reader.close();
+		}
+
+		assertEquals(98, DBFTestTables.read(file).size());
+	}
+
+	@Test
+	public void updatesRecordsAppendedBeforeWrite() throws Exception {
+		File file = folder.newFile("append.dbf");
+		DBFTestTables.write(file, 10, new BitSet());
+
+		DBFWriter writer = new DBFWriter(file);
+		writer.addRecord(DBFTestTables.record(10));
+		writer.addRecord(DBFTestTables.record(11));
+		writer.addRecord(DBFTestTables.record(12));
+		writer.updateRecord(10, DBFTestTables.record(110));
+		writer.updateField(11, "FLAG", Boolean.TRUE);
+		writer.deleteRecord(12);
+		writer.addRecord(DBFTestTables.record(13));
+		writer.write();
+
+		Object[] flagged = DBFTestTables.record(11);
+		flagged[4] = Boolean.TRUE;
+
+		List<Object[]> read = DBFTestTables.read(file);
+		assertEquals(13, read.size());
+		assertArrayEquals(DBFTestTables.record(9), read.get(9));
+		assertArrayEquals(DBFTestTables.record(110), read.get(10));
+		assertArrayEquals(flagged, read.get(11));
+		assertArrayEquals(DBFTestTables.record(13), read.get(12));
+	}
+
+	@Test
+	public void rejectsIndexesOutOfRange() throws Exception {
+		File file = folder.newFile("range.dbf");
+		DBFTestTables.write(file, 10, new BitSet());
+		byte[] before = Files.readAllBytes(file.toPath());
+
+		DBFWriter writer = new DBFWriter(file);
+		try {
+			for (int index : new int[] { -1, 10, Integer.MAX_VALUE }) {
+				try {
+					writer.updateRecord(index, DBFTestTables.record(0));
+					fail("updateRecord(" + index + ")");
+				} catch (DBFException e) {
+					/* expected */
+				}
+				try {
+					writer.updateField(index, "NAME", "X");
+					fail("updateField(" + index + ")");
+				} catch (DBFException e) {
+					/* expected */
+				}
+				try {
+					writer.deleteRecord(index);
+					fail("deleteRecord(" + index + ")");
+				} catch (DBFException e) {
+					/* expected */
+				}
+			}
+		} finally {
+			writer.close();
+		}
+
+		assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test(expected = DBFException.class)
+	public void updatesRecordsOfFilesOnly() throws Exception {
+		DBFWriter writer = new DBFWriter();
+		writer.setFields(DBFTestTables.fields());
+		writer.addRecord(DBFTestTables.record(0));
+		writer.updateRecord(0, DBFTestTables.record(1));
+	}
+
+	@Test
+	public void updatesWhereMatchesStraddleABlock() throws Exception {
+		int recordLength = 1;
+		for (DBFField field : DBFTestTables.fields()) {
+			recordLength += field.getFieldLength();
+		}
+		int blockRecords = DBFWriter.UPDATE_BLOCK_SIZE / recordLength;
+		int records = blockRecords * 2 + 100;
+		int from = blockRecords - 50;
+		int to = blockRecords + 50;
+
+		File file = folder.newFile("where.dbf");
+		BitSet deleted = DBFTestTables.deleted(records);
+		DBFTestTables.write(file, records, deleted);
+		byte[] before = Files.readAllBytes(file.toPath());
+
+		Map<String, Object> assignments = new LinkedHashMap<String, Object>();
+		assignments.put("NAME", "UPDATED");
+		assignments.put("flag", Boolean.TRUE);
+
+		DBFStatistics statistics = new DBFStatistics();
+		DBFWriter writer = new DBFWriter(file);
+		writer.setStatistics(statistics);
+		int matched = writer.updateWhere("ID", new BigDecimal(from), new BigDecimal(to), assignments);
+		assertEquals(to - from + 1 - deleted.get(from, to + 1).cardinality(), matched);
+
+		/* the values are in place now, a second run changes nothing */
+		long written = statistics.getBytesWritten();
+		assertTrue(written > 0);
+		assertEquals(matched, writer.updateWhere("ID", new BigDecimal(from), new BigDecimal(to), assignments));
+		assertEquals(written, statistics.getBytesWritten());
+		writer.close();
+
+		byte[] after = Files.readAllBytes(file.toPath());
+		assertEquals(before.length, after.length);
+
+		DBFReader reader = new DBFReader(file);
+		try {
+			int headerLength = reader.header.getHeaderLength();
+			assertArrayEquals(Arrays.copyOf(before, headerLength), Arrays.copyOf(after, headerLength));
+
+			for (int i = 0; i < records; i++) {
+				int start = headerLength + i * recordLength;
+				if (i < from || i > to || deleted.get(i)) {
+					assertArrayEquals("record " + i, Arrays.copyOfRange(before, start, start + recordLength), Arrays.copyOfRange(after, start, start + recordLength));
+				} else {
+					Object[] expected = DBFTestTables.record(i);
+					expected[1] = DBFTestTables.pad("UPDATED", 12);
+					expected[4] = Boolean.TRUE;
+					assertArrayEquals("record " + i, expected, reader.getRecord(i));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void updatesWhereBlanksNullAssignments() throws Exception {
+		File file = folder.newFile("blank.dbf");
+		DBFTestTables.write(file, 20, new BitSet());
+
+		DBFWriter writer = new DBFWriter(file);
+		assertEquals(1, writer.updateWhere("NAME", "NAME5", Collections.<String, Object> singletonMap("AMT", null)));
+		writer.close();
+
+		Object[] expected = DBFTestTables.record(5);
+		expected[2] = null;
+		List<Object[]> read = DBFTestTables.read(file);
+		assertArrayEquals(expected, read.get(5));
+		assertArrayEquals(DBFTestTables.record(4), read.get(4));
+		assertArrayEquals(DBFTestTables.record(6), read.get(6));
+	}
+
+	private static byte[] write(DBFWriter writer, ExecutorService executor) throws DBFException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(out, executor);
+		return withoutDate(out.toByteArray());
+	}
+}
@@ -0,0 +1,278 @@
+#!/usr/bin/env python3
+"""
+Writes the index fixtures of DBFIndexTest to src/test/resources/index:
+
+  people.dbf       dBase III table, ID N(6,0), NAME C(10), BORN D
+  people.cdx       FoxPro compound index, tags ID, NAME, BORN and NAMEDESC
+  people_name.idx  FoxBase single index on NAME, not compact
+  people_name.ndx  dBase III index on NAME
+  people_born.ndx  dBase III index on BORN
+
+The files follow the layouts of the FoxPro "Index File Structure (.idx
+and .cdx)" and dBase III .ndx documentation. Nodes are filled to at
+most a few keys so that every index is a tree of three or more levels.
+Run it again to regenerate them; the output only depends on this file.
+"""
+import datetime
+import os
+import struct
+
+HERE = os.path.join(os.path.dirname(os.path.abspath(__file__)), "..", "resources", "index")
+PAGE = 512
+RECORDS = 700
+NAMES = ["ADAMS", "BAKER", "CLARK", "DAVIS", "EVANS", "GARCIA", "HALL", "HARRIS", "JONES",
+         "KING", "LEE", "LEWIS", "MARTIN", "MARTINEZ", "MARTINS", "MILLER", "MOORE", "NELSON",
+         "PEREZ", "ROBERTS", "SMITH", "SMITHSON", "TAYLOR", "THOMAS", "WALKER", "WHITE",
+         "WILLIAMS", "WILSON", "YOUNG", "ZHANG"]
+
+
+def rows():
+    for i in range(RECORDS):
+        ident = (i * 37) % 1000 - 200
+        name = NAMES[(i * 13) % len(NAMES)]
+        born = datetime.date(1950, 1, 1) + datetime.timedelta(days=(i * 97) % 20000)
+        yield i + 1, ident, name, born
+
+
+# dBase III table
+
+def write_dbf(path):
+    fields = [(b"ID", b"N", 6, 0), (b"NAME", b"C", 10, 0), (b"BORN", b"D", 8, 0)]
+    record_length = 1 + sum(f[2] for f in fields)
+    header_length = 32 + 32 * len(fields) + 1
+    out = bytearray()
+    out += struct.pack("<BBBBIHH20x", 0x03, 124, 10, 19, RECORDS, header_length, record_length)
+    for name, kind, length, decimals in fields:
+        out += struct.pack("<11sc4xBB14x", name, kind, length, decimals)
+    out += b"\r"
+    for _, ident, name, born in rows():
+        out += b" " + str(ident).rjust(6).encode() + name.ljust(10).encode() + born.strftime("%Y%m%d").encode()
+    out += b"\x1a"
+    with open(path, "wb") as f:
+        f.write(out)
+
+
+# keys
+
+def char_key(name, length=10):
+    return name.ljust(length).encode("ascii")
+
+
+def julian_day(date):
+    return date.toordinal() + 1721425
+
+
+def fox_double(value):
+    """FoxPro numeric and date keys: big endian IEEE, sign bit flipped or all bits inverted"""
+    bits = struct.unpack(">Q", struct.pack(">d", float(value)))[0]
+    bits = bits ^ (1 << 63) if bits < (1 << 63) else bits ^ 0xFFFFFFFFFFFFFFFF
+    return struct.pack(">Q", bits)
+
+
+def sorted_keys(key, reverse=False, order=None):
+    """the keys and record numbers in index order, by key bytes unless an order is given"""
+    entries = [(key(row), row[0], order(row) if order else key(row)) for row in rows()]
+    entries.sort(key=lambda e: (e[2], e[1]), reverse=reverse)
+    return [(e[0], e[1]) for e in entries]
+
+
+def chunks(entries, size):
+    return [entries[i:i + size] for i in range(0, len(entries), size)]
+
+
+# FoxPro compact (.cdx) trees
+
+class File:
+    def __init__(self):
+        self.data = bytearray()
+
+    def allocate(self, length):
+        offset = len(self.data)
+        self.data += bytes(length)
+        return offset
+
+    def put(self, offset, data):
+        self.data[offset:offset + len(data)] = data
+
+
+def compact_leaf(entries, key_length, trail_byte, record_bits, duplicate_bits, trail_bits, entry_length):
+    assert record_bits + duplicate_bits + trail_bits == entry_length * 8
+    assert all(record < 1 << record_bits for _, record in entries)
+    node = bytearray(PAGE)
+    end = PAGE
+    previous = b""
+    for i, (key, record) in enumerate(entries):
+        trail = len(key) - len(key.rstrip(bytes([trail_byte])))
+        duplicates = 0
+        while duplicates < len(previous) and previous[duplicates] == key[duplicates]:
+            duplicates += 1
+        duplicates = min(duplicates, key_length - trail)
+        stored = key[duplicates:key_length - trail]
+        end -= len(stored)
+        node[end:end + len(stored)] = stored
+        packed = record | duplicates << record_bits | trail << (record_bits + duplicate_bits)
+        node[24 + i * entry_length:24 + (i + 1) * entry_length] = packed.to_bytes(entry_length, "little")
+        previous = key
+    assert 24 + len(entries) * entry_length <= end
+    struct.pack_into("<HIBBBBBB", node, 12, end - 24 - len(entries) * entry_length, (1 << record_bits) - 1,
+                     (1 << duplicate_bits) - 1, (1 << trail_bits) - 1, record_bits, duplicate_bits, trail_bits,
+                     entry_length)
+    return node
+
+
+def compact_tree(f, entries, key_length, trail_byte, bits, leaf_keys, branch_keys):
+    """writes the nodes of a tree, returns the position of the root"""
+    level = []
+    for chunk in chunks(entries, leaf_keys):
+        level.append((f.allocate(PAGE), chunk, compact_leaf(chunk, key_length, trail_byte, *bits)))
+    leaf = True
+    while True:
+        root = len(level) == 1
+        for i, (offset, chunk, node) in enumerate(level):
+            left = level[i - 1][0] if i > 0 else 0xFFFFFFFF
+            right = level[i + 1][0] if i + 1 < len(level) else 0xFFFFFFFF
+            struct.pack_into("<HHII", node, 0, (2 if leaf else 0) | (1 if root else 0), len(chunk), left, right)
+            f.put(offset, node)
+        if root:
+            return level[0][0]
+        # a branch entry holds the last key of its child, its record and the child
+        parents = []
+        for group in chunks([(chunk[-1][0], chunk[-1][1], offset) for offset, chunk, _ in level], branch_keys):
+            node = bytearray(PAGE)
+            for i, (key, record, child) in enumerate(group):
+                at = 12 + i * (key_length + 8)
+                node[at:at + key_length] = key
+                struct.pack_into(">II", node, at + key_length, record, child)
+            parents.append((f.allocate(PAGE), [(g[0], g[1]) for g in group], node))
+        level = parents
+        leaf = False
+
+
+def compact_header(offset, f, root, key_length, options, expression, descending=False):
+    header = bytearray(2 * PAGE)
+    struct.pack_into("<IIIHBB", header, 0, root, 0xFFFFFFFF, 0, key_length, options, 1)
+    struct.pack_into("<H", header, 502, 1 if descending else 0)
+    pool = expression.encode("ascii") + b"\0"
+    struct.pack_into("<H", header, 510, len(pool))
+    header[512:512 + len(pool)] = pool
+    f.put(offset, header)
+
+
+def write_cdx(path):
+    f = File()
+    structure = f.allocate(2 * PAGE)
+
+    tags = [
+        # name, expression, key length, keys in index order, trail byte, entry bits, descending
+        ("BORN", "BORN", 8, sorted_keys(lambda r: fox_double(julian_day(r[3]))), 0, (16, 4, 4, 3), False),
+        ("ID", "ID", 8, sorted_keys(lambda r: fox_double(r[1])), 0, (24, 4, 4, 4), False),
+        ("NAME", "NAME", 10, sorted_keys(lambda r: char_key(r[2])), 0x20, (16, 4, 4, 3), False),
+        ("NAMEDESC", "NAME", 10, sorted_keys(lambda r: char_key(r[2]), reverse=True), 0x20, (12, 6, 6, 3), True),
+    ]
+
+    directory = []
+    for name, expression, key_length, entries, trail_byte, bits, descending in tags:
+        header = f.allocate(2 * PAGE)
+        root = compact_tree(f, entries, key_length, trail_byte, bits, leaf_keys=20, branch_keys=6)
+        compact_header(header, f, root, key_length, 0x20, expression, descending)
+        directory.append((char_key(name), header))
+
+    # the record numbers of the tag directory are the positions of the tag headers
+    root = compact_tree(f, directory, 10, 0x20, (24, 4, 4, 4), leaf_keys=20, branch_keys=6)
+    compact_header(structure, f, root, 10, 0x60, "")
+
+    with open(path, "wb") as out:
+        out.write(f.data)
+
+
+# FoxBase (.idx) trees
+
+def write_idx(path):
+    key_length = 10
+    entries = sorted_keys(lambda r: char_key(r[2]))
+    f = File()
+    header = f.allocate(PAGE)
+
+    level = [(f.allocate(PAGE), chunk) for chunk in chunks(entries, 12)]
+    leaf = True
+    while True:
+        root = len(level) == 1
+        for i, (offset, chunk) in enumerate(level):
+            node = bytearray(PAGE)
+            left = level[i - 1][0] if i > 0 else 0xFFFFFFFF
+            right = level[i + 1][0] if i + 1 < len(level) else 0xFFFFFFFF
+            struct.pack_into("<HHII", node, 0, (2 if leaf else 0) | (1 if root else 0), len(chunk), left, right)
+            for j, (key, pointer) in enumerate(chunk):
+                at = 12 + j * (key_length + 4)
+                node[at:at + key_length] = key
+                struct.pack_into(">I", node, at + key_length, pointer)
+            f.put(offset, node)
+        if root:
+            break
+        # a branch entry holds the last key of its child and the child
+        level = [(f.allocate(PAGE), group) for group in chunks([(chunk[-1][0], offset) for offset, chunk in level], 5)]
+        leaf = False
+
+    head = bytearray(PAGE)
+    struct.pack_into("<IIIHBB", head, 0, level[0][0], 0xFFFFFFFF, len(f.data), key_length, 0, 1)
+    head[16:16 + 5] = b"NAME\0"
+    f.put(header, head)
+
+    with open(path, "wb") as out:
+        out.write(f.data)
+
+
+# dBase III (.ndx) trees
+
+def write_ndx(path, expression, key_length, numeric, entries):
+    entry_length = (key_length + 8 + 3) & ~3
+    pages = [None]  # page 0 is the header
+
+    def add(page):
+        pages.append(page)
+        return len(pages) - 1
+
+    level = []
+    for chunk in chunks(entries, 10):
+        node = bytearray(PAGE)
+        struct.pack_into("<I", node, 0, len(chunk))
+        for i, (key, record) in enumerate(chunk):
+            struct.pack_into("<II", node, 4 + i * entry_length, 0, record)
+            node[4 + i * entry_length + 8:4 + i * entry_length + 8 + key_length] = key
+        level.append((add(node), chunk[-1][0]))
+
+    while len(level) > 1:
+        # count keys and count + 1 children, the key of an entry is the last key of its child
+        parents = []
+        for group in chunks(level, 4):
+            node = bytearray(PAGE)
+            struct.pack_into("<I", node, 0, len(group) - 1)
+            for i, (child, last) in enumerate(group):
+                struct.pack_into("<II", node, 4 + i * entry_length, child, 0)
+                if i < len(group) - 1:
+                    node[4 + i * entry_length + 8:4 + i * entry_length + 8 + key_length] = last
+            parents.append((add(node), group[-1][1]))
+        level = parents
+
+    header = bytearray(PAGE)
+    struct.pack_into("<IIIHHHH", header, 0, level[0][0], len(pages), 0, key_length,
+                     (PAGE - 4) // entry_length, 1 if numeric else 0, entry_length)
+    header[24:24 + len(expression)] = expression.encode("ascii")
+    pages[0] = header
+
+    with open(path, "wb") as out:
+        for page in pages:
+            out.write(page)
+
+
+def ndx_double(value):
+    return struct.pack("<d", float(value))
+
+
+if __name__ == "__main__":
+    write_dbf(os.path.join(HERE, "people.dbf"))
+    write_cdx(os.path.join(HERE, "people.cdx"))
+    write_idx(os.path.join(HERE, "people_name.idx"))
+    write_ndx(os.path.join(HERE, "people_name.ndx"), "NAME", 10, False, sorted_keys(lambda r: char_key(r[2])))
+    write_ndx(os.path.join(HERE, "people_born.ndx"), "BORN", 8, True, sorted_keys(lambda r: ndx_double(julian_day(r[3])),
+                                                           order=lambda r: r[3]))